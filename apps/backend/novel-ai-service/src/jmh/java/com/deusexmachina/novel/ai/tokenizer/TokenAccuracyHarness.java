@@ -0,0 +1,196 @@
+package com.deusexmachina.novel.ai.tokenizer;
+
+import com.deusexmachina.novel.ai.model.GenerationParameters;
+import com.google.cloud.vertexai.VertexAI;
+import com.google.cloud.vertexai.generativeai.GenerativeModel;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accuracy of {@link CalibratedTokenEstimator} against exact counts from {@link VertexTokenCounter}
+ * over the fixed corpus in {@link TokenCorpus}.
+ *
+ * Each sample is scored twice: with the estimator's starting costs, and after calibrating a fresh
+ * estimator on the even-numbered samples of every file, in which case only the odd-numbered ones
+ * are scored. Exact counts are kept in {@code exact-counts.json} in the output directory and only
+ * missing ones are fetched, so a rerun with the same corpus and model needs no Vertex AI access.
+ *
+ * Usage: {@code TokenAccuracyHarness <output dir>}, with GCP_PROJECT_ID (and optionally GCP_REGION)
+ * set when counts have to be fetched. Writes {@code report.json} next to the counts.
+ */
+public final class TokenAccuracyHarness {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    
+    private TokenAccuracyHarness() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Path outputDir = Path.of(args.length > 0 ? args[0] : "build/reports/token-accuracy");
+        Files.createDirectories(outputDir);
+        String modelName = GenerationParameters.ModelPreference.BALANCED.getModelName();
+        
+        Map<String, List<String>> corpus = TokenCorpus.load();
+        Map<String, List<Integer>> exact = exactCounts(corpus, modelName, outputDir.resolve("exact-counts.json"));
+        
+        CalibratedTokenEstimator calibrated = new CalibratedTokenEstimator();
+        corpus.forEach((file, samples) -> {
+            for (int i = 0; i < samples.size(); i += 2) {
+                calibrated.calibrate(samples.get(i), exact.get(file).get(i));
+            }
+        });
+        CalibratedTokenEstimator uncalibrated = new CalibratedTokenEstimator();
+        
+        Map<String, Object> files = new LinkedHashMap<>();
+        System.out.printf("%-18s %4s | %22s | %22s%n", "", "", "uncalibrated", "calibrated (held out)");
+        System.out.printf("%-18s %4s | %7s %7s %6s | %7s %7s %6s%n",
+            "file", "n", "mean", "p90", "bias", "mean", "p90", "bias");
+        for (Map.Entry<String, List<String>> entry : corpus.entrySet()) {
+            List<String> samples = entry.getValue();
+            List<Integer> counts = exact.get(entry.getKey());
+            Errors before = new Errors();
+            Errors after = new Errors();
+            for (int i = 0; i < samples.size(); i++) {
+                before.add(uncalibrated.countTokens(samples.get(i)), counts.get(i));
+                if (i % 2 == 1) {
+                    after.add(calibrated.countTokens(samples.get(i)), counts.get(i));
+                }
+            }
+            System.out.printf("%-18s %4d | %6.1f%% %6.1f%% %+5.1f%% | %6.1f%% %6.1f%% %+5.1f%%%n",
+                entry.getKey(), samples.size(), before.mean(), before.p90(), before.bias(),
+                after.mean(), after.p90(), after.bias());
+            Map<String, Object> file = new LinkedHashMap<>();
+            file.put("samples", samples.size());
+            file.put("exactTokens", counts.stream().mapToInt(Integer::intValue).sum());
+            file.put("uncalibrated", before.toMap());
+            file.put("calibrated", after.toMap());
+            files.put(entry.getKey(), file);
+        }
+        
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("runAt", Instant.now().toString());
+        report.put("jdk", Runtime.version().toString());
+        report.put("model", modelName);
+        report.put("estimator", uncalibrated.counterId());
+        report.put("files", files);
+        report.put("calibration", calibrated.getCalibration());
+        Path reportFile = outputDir.resolve("report.json");
+        try (Writer writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            GSON.toJson(report, writer);
+        }
+        System.out.println("JDK " + Runtime.version() + ", model " + modelName + "; report written to " + reportFile);
+    }
+    
+    /**
+     * Exact counts for every sample, from the cache file where present and from Vertex AI otherwise.
+     * Entries are keyed by model and a hash of the text, so editing the corpus or changing model
+     * refetches only what changed.
+     */
+    private static Map<String, List<Integer>> exactCounts(Map<String, List<String>> corpus, String modelName,
+                                                          Path cacheFile) throws IOException {
+        Map<String, Integer> cached = new TreeMap<>();
+        if (Files.exists(cacheFile)) {
+            try (Reader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+                Map<String, Integer> stored = GSON.fromJson(reader, new TypeToken<Map<String, Integer>>() { }.getType());
+                if (stored != null) {
+                    cached.putAll(stored);
+                }
+            }
+        }
+        
+        VertexAI vertexAI = null;
+        TokenCounter vertex = null;
+        int fetched = 0;
+        try {
+            Map<String, List<Integer>> counts = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : corpus.entrySet()) {
+                List<Integer> fileCounts = new ArrayList<>();
+                for (String sample : entry.getValue()) {
+                    String key = modelName + ":" + Hashing.sha256().hashString(sample, StandardCharsets.UTF_8);
+                    Integer count = cached.get(key);
+                    if (count == null) {
+                        if (vertex == null) {
+                            String projectId = System.getenv("GCP_PROJECT_ID");
+                            if (projectId == null || projectId.isEmpty()) {
+                                throw new IllegalStateException("GCP_PROJECT_ID is required to fetch exact counts");
+                            }
+                            String location = System.getenv("GCP_REGION") != null ? System.getenv("GCP_REGION") : "us-central1";
+                            vertexAI = new VertexAI(projectId, location);
+                            // The harness calibrates its own estimators, so this one is discarded
+                            vertex = new VertexTokenCounter(new GenerativeModel(modelName, vertexAI), new CalibratedTokenEstimator());
+                        }
+                        count = vertex.countTokens(sample);
+                        cached.put(key, count);
+                        fetched++;
+                    }
+                    fileCounts.add(count);
+                }
+                counts.put(entry.getKey(), fileCounts);
+            }
+            return counts;
+        } finally {
+            if (fetched > 0) {
+                try (Writer writer = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8)) {
+                    GSON.toJson(cached, writer);
+                }
+                System.out.println("Fetched " + fetched + " exact counts from Vertex AI");
+            }
+            if (vertexAI != null) {
+                vertexAI.close();
+            }
+        }
+    }
+    
+    /**
+     * Signed relative errors of estimates, in percent of the exact count.
+     */
+    private static final class Errors {
+        private final List<Double> errors = new ArrayList<>();
+        
+        void add(int estimate, int exact) {
+            errors.add(100.0 * (estimate - exact) / exact);
+        }
+        
+        double mean() {
+            return errors.stream().mapToDouble(Math::abs).average().orElse(Double.NaN);
+        }
+        
+        double p90() {
+            if (errors.isEmpty()) {
+                return Double.NaN;
+            }
+            List<Double> absolute = new ArrayList<>();
+            errors.forEach(error -> absolute.add(Math.abs(error)));
+            Collections.sort(absolute);
+            return absolute.get((int) Math.ceil(0.9 * absolute.size()) - 1);
+        }
+        
+        double bias() {
+            return errors.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+        }
+        
+        Map<String, Object> toMap() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("samples", errors.size());
+            stats.put("meanAbsErrorPct", mean());
+            stats.put("p90AbsErrorPct", p90());
+            stats.put("biasPct", bias());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.deusexmachina.novel.ai.tokenizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed text samples for token measurements, one file per kind of text under
+ * {@code /token-corpus}. Each paragraph is one sample.
+ */
+final class TokenCorpus {
+    static final String[] FILES = {
+        "english-prose", "english-dialogue", "russian", "greek", "japanese", "chinese", "numbers-and-notes"
+    };
+    
+    private TokenCorpus() {
+    }
+    
+    static Map<String, List<String>> load() {
+        Map<String, List<String>> corpus = new LinkedHashMap<>();
+        for (String file : FILES) {
+            corpus.put(file, samples(file));
+        }
+        return corpus;
+    }
+    
+    static List<String> samples(String file) {
+        String path = "/token-corpus/" + file + ".txt";
+        try (InputStream in = TokenCorpus.class.getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing corpus file " + path);
+            }
+            List<String> samples = new ArrayList<>();
+            for (String paragraph : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\\n\\s*\\n")) {
+                if (!paragraph.isBlank()) {
+                    samples.add(paragraph.strip());
+                }
+            }
+            return samples;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + path, e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.deusexmachina.novel.ai.tokenizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of counting one corpus file, paragraph by paragraph, with the local estimator and
+ * through a warm {@link CachingTokenCounter}. The cached case is the price of hashing a text
+ * that has been counted before; against an exact delegate it replaces a Vertex AI round trip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TokenCounterBenchmark {
+    
+    @Param({"english-prose", "english-dialogue", "russian", "japanese", "numbers-and-notes"})
+    public String corpus;
+    
+    private List<String> samples;
+    private CalibratedTokenEstimator estimator;
+    private CachingTokenCounter cached;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        samples = TokenCorpus.samples(corpus);
+        estimator = new CalibratedTokenEstimator();
+        cached = new CachingTokenCounter(estimator, 1024, 1);
+        samples.forEach(cached::countTokens);
+    }
+    
+    @Benchmark
+    public void estimate(Blackhole blackhole) {
+        for (String sample : samples) {
+            blackhole.consume(estimator.countTokens(sample));
+        }
+    }
+    
+    @Benchmark
+    public void cachedHit(Blackhole blackhole) {
+        for (String sample : samples) {
+            blackhole.consume(cached.countTokens(sample));
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package com.deusexmachina.novel.ai;
 
 import com.deusexmachina.novel.ai.auth.AuthenticationMiddleware;
+import com.deusexmachina.novel.ai.concurrency.AdaptiveConcurrencyLimiter;
+import com.deusexmachina.novel.ai.controller.BatchController;
 import com.deusexmachina.novel.ai.controller.GenerationController;
+import com.deusexmachina.novel.ai.resilience.ResilientExecutor;
+import com.deusexmachina.novel.ai.service.GenerationService;
 import com.google.cloud.functions.HttpFunction;
 import com.google.cloud.functions.HttpRequest;
 import com.google.cloud.functions.HttpResponse;
+import com.google.gson.Gson;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -68,6 +74,8 @@ public class NovelAIFunction implements HttpFunction {
                 handleGenerationRequest(request, response);
             } else if (path.equals("/health")) {
                 handleHealthCheck(response);
+            } else if (path.equals("/metrics")) {
+                handleMetrics(response);
             } else {
                 response.setStatusCode(404);
                 try (BufferedWriter writer = response.getWriter()) {
@@ -91,7 +99,9 @@ public class NovelAIFunction implements HttpFunction {
             // Delegate based on specific path
             String path = request.getPath();
             
-            if (path.equals("/generate")) {
+            if (path.equals("/generate/batch") || path.startsWith("/generate/batch/")) {
+                injector.getInstance(BatchController.class).handleBatchRequest(request, response);
+            } else if (path.equals("/generate")) {
                 controller.handleGenerationRequest(request, response);
             } else if (path.equals("/generate/stream")) {
                 controller.handleStreamingRequest(request, response);
@@ -120,6 +130,20 @@ public class NovelAIFunction implements HttpFunction {
         }
     }
     
+    private void handleMetrics(HttpResponse response) throws IOException {
+        AdaptiveConcurrencyLimiter limiter = injector.getInstance(AdaptiveConcurrencyLimiter.class);
+        ResilientExecutor resilience = injector.getInstance(ResilientExecutor.class);
+        GenerationService generationService = injector.getInstance(GenerationService.class);
+        response.setStatusCode(200);
+        response.setContentType("application/json");
+        try (BufferedWriter writer = response.getWriter()) {
+            writer.write(new Gson().toJson(Map.of(
+                "concurrency", limiter.getStats(),
+                "resilience", resilience.getStats(),
+                "generation", generationService.getStats())));
+        }
+    }
+    
     private void handleCors(HttpRequest request, HttpResponse response) {
         Optional<String> origin = request.getFirstHeader("Origin");
         if (origin.isPresent()) {
@@ -132,7 +156,7 @@ public class NovelAIFunction implements HttpFunction {
         }
         
         response.appendHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        response.appendHeader("Access-Control-Allow-Headers", "Authorization, Content-Type, X-Request-ID");
+        response.appendHeader("Access-Control-Allow-Headers", "Authorization, Content-Type, X-Request-ID, Idempotency-Key");
         response.appendHeader("Access-Control-Max-Age", "3600");
         response.appendHeader("Access-Control-Allow-Credentials", "true");
     }
@@ -1,13 +1,29 @@
 package com.deusexmachina.novel.ai;
 
+import com.deusexmachina.novel.ai.concurrency.AdaptiveConcurrencyLimiter;
+import com.deusexmachina.novel.ai.controller.BatchController;
 import com.deusexmachina.novel.ai.controller.GenerationController;
+import com.deusexmachina.novel.ai.memory.HttpMemoryClient;
+import com.deusexmachina.novel.ai.memory.LocalMemoryClient;
+import com.deusexmachina.novel.ai.memory.MemoryClient;
+import com.deusexmachina.novel.ai.queue.BatchTaskQueue;
+import com.deusexmachina.novel.ai.queue.CloudTasksBatchTaskQueue;
+import com.deusexmachina.novel.ai.queue.LocalBatchTaskQueue;
+import com.deusexmachina.novel.ai.repository.BatchJobRepository;
+import com.deusexmachina.novel.ai.repository.impl.FirestoreBatchJobRepository;
+import com.deusexmachina.novel.ai.repository.impl.InMemoryBatchJobRepository;
+import com.deusexmachina.novel.ai.resilience.ResilientExecutor;
+import com.deusexmachina.novel.ai.service.BatchGenerationService;
 import com.deusexmachina.novel.ai.service.GenerationService;
+import com.deusexmachina.novel.ai.service.impl.BatchGenerationServiceImpl;
 import com.deusexmachina.novel.ai.service.impl.GeminiGenerationService;
 import com.google.inject.AbstractModule;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.FirestoreOptions;
+import java.time.Duration;
 import java.util.logging.Logger;
 
 /**
@@ -20,7 +36,9 @@ public class NovelAIModule extends AbstractModule {
     protected void configure() {
         // Bind interfaces to implementations
         bind(GenerationService.class).to(GeminiGenerationService.class).in(Singleton.class);
+        bind(BatchGenerationService.class).to(BatchGenerationServiceImpl.class).in(Singleton.class);
         bind(GenerationController.class).in(Singleton.class);
+        bind(BatchController.class).in(Singleton.class);
         
         logger.info("Configuring Novel AI Module");
     }
@@ -31,4 +49,89 @@ public class NovelAIModule extends AbstractModule {
         logger.info("Initializing Firestore client");
         return FirestoreOptions.getDefaultInstance().getService();
     }
+    
+    @Provides
+    @Singleton
+    public BatchJobRepository provideBatchJobRepository(Provider<Firestore> firestore) {
+        // BATCH_STORE=memory runs batches without Firestore, e.g. locally; jobs then die with the instance
+        if ("memory".equals(envOrDefault("BATCH_STORE", "firestore"))) {
+            return new InMemoryBatchJobRepository();
+        }
+        return new FirestoreBatchJobRepository(firestore.get());
+    }
+    
+    @Provides
+    @Singleton
+    public BatchTaskQueue provideBatchTaskQueue(Provider<BatchGenerationService> batchService) {
+        // BATCH_QUEUE=local runs batch tasks on in-process threads, e.g. locally; Cloud Functions
+        // throttles CPU between requests, so deployments use Cloud Tasks
+        if ("local".equals(envOrDefault("BATCH_QUEUE", "cloud-tasks"))) {
+            return new LocalBatchTaskQueue(batchService, Integer.parseInt(envOrDefault("BATCH_MAX_PARALLEL", "16")));
+        }
+        String taskUrl = System.getenv("BATCH_TASK_URL");
+        String serviceAccount = System.getenv("BATCH_TASK_SERVICE_ACCOUNT");
+        if (taskUrl == null || taskUrl.isEmpty() || serviceAccount == null || serviceAccount.isEmpty()) {
+            throw new IllegalStateException("BATCH_TASK_URL and BATCH_TASK_SERVICE_ACCOUNT are required for Cloud Tasks");
+        }
+        return new CloudTasksBatchTaskQueue(
+            System.getenv("GCP_PROJECT_ID"),
+            envOrDefault("BATCH_TASK_LOCATION", envOrDefault("GCP_REGION", "us-central1")),
+            envOrDefault("BATCH_TASK_QUEUE", "novel-ai-batch"),
+            taskUrl,
+            serviceAccount,
+            Duration.ofSeconds(Long.parseLong(envOrDefault("BATCH_TASK_DEADLINE_SECONDS", "300"))));
+    }
+    
+    @Provides
+    @Singleton
+    public MemoryClient provideMemoryClient() {
+        String url = System.getenv("MEMORY_SERVICE_URL");
+        if (url == null || url.isEmpty()) {
+            String projectId = System.getenv("GCP_PROJECT_ID");
+            if (projectId != null && !projectId.isEmpty()) {
+                // Deployed without the memory service: every useMemory generation runs without memory
+                logger.warning("MEMORY_SERVICE_URL not set in project " + projectId
+                    + ", using the local memory stub; generations will not see project memory");
+            } else {
+                logger.info("MEMORY_SERVICE_URL not set, using the local memory stub");
+            }
+            return new LocalMemoryClient();
+        }
+        String serviceToken = System.getenv("MEMORY_SERVICE_TOKEN");
+        if (serviceToken == null || serviceToken.isEmpty()) {
+            logger.warning("MEMORY_SERVICE_TOKEN not set; batch items will be generated without memory");
+        }
+        return new HttpMemoryClient(url, serviceToken,
+            Duration.ofMillis(Long.parseLong(envOrDefault("MEMORY_TIMEOUT_MS", "1500"))));
+    }
+    
+    @Provides
+    @Singleton
+    public AdaptiveConcurrencyLimiter provideConcurrencyLimiter() {
+        // One limiter per instance, shared by every call to the model provider
+        return new AdaptiveConcurrencyLimiter(
+            Integer.parseInt(envOrDefault("LIMITER_INITIAL", "8")),
+            Integer.parseInt(envOrDefault("LIMITER_MIN", "1")),
+            Integer.parseInt(envOrDefault("LIMITER_MAX", "64")),
+            Integer.parseInt(envOrDefault("LIMITER_QUEUE_CAPACITY", "64")),
+            Double.parseDouble(envOrDefault("LIMITER_BACKOFF_RATIO", "0.7")),
+            Double.parseDouble(envOrDefault("LIMITER_LATENCY_TOLERANCE", "2.0")),
+            Double.parseDouble(envOrDefault("LIMITER_BATCH_SHARE", "0.5")));
+    }
+    
+    @Provides
+    @Singleton
+    public ResilientExecutor provideResilientExecutor() {
+        return new ResilientExecutor(
+            Integer.parseInt(envOrDefault("GENERATION_MAX_ATTEMPTS", "3")),
+            Long.parseLong(envOrDefault("GENERATION_RETRY_BASE_MS", "200")),
+            Long.parseLong(envOrDefault("GENERATION_RETRY_MAX_MS", "5000")),
+            Boolean.parseBoolean(envOrDefault("GENERATION_HEDGING", "false")),
+            Double.parseDouble(envOrDefault("GENERATION_HEDGE_PERCENTILE", "0.95")));
+    }
+    
+    private static String envOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+package com.deusexmachina.novel.ai.cache;
+
+import com.deusexmachina.novel.ai.model.GenerationParameters;
+import com.deusexmachina.novel.ai.model.GenerationRequest;
+import com.deusexmachina.novel.ai.model.GenerationResponse;
+import com.deusexmachina.novel.ai.prompt.PromptSegments;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Opt-in cache of generation responses, isolated per user.
+ *
+ * The exact tier matches identical requests (same model, parameters, memory scope, memory
+ * version and whitespace-normalized prompt) and only serves deterministic ones, since at
+ * temperature above 0 a repeat request is asking for a different answer. The memory version
+ * moves on with every memory write, so it stands in for the retrieved memory and a lookup
+ * need not wait for the memory itself. The similar tier, used only when the request allows
+ * it, matches requests with the same prompt prefix, memory, previous context and parameters
+ * whose request line is close to a cached one by cosine similarity of hashed character
+ * trigrams. That catches resubmits differing in case, punctuation or a typo, while a changed
+ * name or time of day stays below the default threshold.
+ */
+public class ResponseCache {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final int DIMENSIONS = 512;
+    private static final int MAX_SIMILAR_PER_GROUP = 32;
+    
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final double similarityThreshold;
+    private final Map<String, Entry> entries; // exact key -> entry, LRU
+    private final Map<String, List<Entry>> groups = new HashMap<>(); // group key -> entries, oldest first
+    private long exactHits = 0;
+    private long similarHits = 0;
+    private long misses = 0;
+    
+    /**
+     * Cache key of one request, computed once and used for both lookup and store.
+     */
+    public static final class Key {
+        private final GenerationParameters.ResponseCacheMode mode;
+        private final boolean deterministic;
+        private final String exactKey;
+        private final String groupKey;
+        private final String requestText;
+        private float[] vector;
+        
+        private Key(GenerationParameters.ResponseCacheMode mode, boolean deterministic, String exactKey,
+                    String groupKey, String requestText) {
+            this.mode = mode;
+            this.deterministic = deterministic;
+            this.exactKey = exactKey;
+            this.groupKey = groupKey;
+            this.requestText = requestText;
+        }
+        
+        private float[] vector() {
+            if (vector == null) {
+                vector = embed(requestText);
+            }
+            return vector;
+        }
+    }
+    
+    public ResponseCache(int maxEntries, long ttlMillis, double similarityThreshold) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.similarityThreshold = similarityThreshold;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ResponseCache.this.maxEntries) {
+                    unlinkFromGroup(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Whether a request may use the cache: caching is on for it and the caller is identified,
+     * so there is a partition to isolate it in.
+     */
+    public boolean accepts(GenerationRequest request, GenerationParameters params) {
+        GenerationParameters.ResponseCacheMode mode = params.getResponseCache();
+        String userId = request.getUserId();
+        return mode != null && mode != GenerationParameters.ResponseCacheMode.OFF
+            && userId != null && !userId.isEmpty() && !"anonymous".equals(userId);
+    }
+    
+    /**
+     * Key for a request, or null when it must not use the cache.
+     * 
+     * @param segments The prompt before memory is added
+     * @param memoryVersion Version of the memory the request would be generated with
+     */
+    public Key keyFor(GenerationRequest request, String modelName, GenerationParameters params,
+                      PromptSegments segments, String memoryVersion) {
+        if (!accepts(request, params)) {
+            return null;
+        }
+        GenerationParameters.ResponseCacheMode mode = params.getResponseCache();
+        String userId = request.getUserId();
+        
+        String paramsKey = params.getTemperature() + "|" + params.getMaxTokens() + "|" + params.getTopK()
+            + "|" + params.getTopP() + "|" + params.getCandidateCount() + "|" + params.getSafetyLevel();
+        // Memory version and previous context, so a memory write or another scene never gets a stale answer
+        String context = normalize(segments.getContext());
+        String groupKey = HASH.newHasher()
+            .putString(userId, StandardCharsets.UTF_8)
+            .putChar('\u0000')
+            .putString(modelName, StandardCharsets.UTF_8)
+            .putChar('\u0000')
+            .putString(paramsKey, StandardCharsets.UTF_8)
+            .putChar('\u0000')
+            .putString(segments.getPrefixHash(), StandardCharsets.UTF_8)
+            .putChar('\u0000')
+            .putString(request.memoryScope(), StandardCharsets.UTF_8)
+            .putChar('\u0000')
+            .putString(memoryVersion, StandardCharsets.UTF_8)
+            .putChar('\u0000')
+            .putString(context, StandardCharsets.UTF_8)
+            .hash()
+            .toString();
+        String exactKey = HASH.newHasher()
+            .putString(groupKey, StandardCharsets.UTF_8)
+            .putChar('\u0000')
+            .putString(normalize(request.getPrompt()), StandardCharsets.UTF_8)
+            .hash()
+            .toString();
+        return new Key(mode, params.getTemperature() == 0, exactKey, groupKey, request.getPrompt());
+    }
+    
+    /**
+     * Find a cached response for the key, returning a copy marked as a cache hit.
+     */
+    public GenerationResponse lookup(Key key) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Entry match = null;
+        String tier = null;
+        double similarity = 1.0;
+        float[] vector = key.mode == GenerationParameters.ResponseCacheMode.SIMILAR ? key.vector() : null;
+        
+        synchronized (this) {
+            if (key.deterministic) {
+                Entry entry = entries.get(key.exactKey);
+                if (entry != null && entry.expiresAt > now) {
+                    match = entry;
+                    tier = "exact";
+                }
+            }
+            if (match == null && vector != null) {
+                List<Entry> group = groups.get(key.groupKey);
+                if (group != null) {
+                    for (Entry entry : group) {
+                        if (entry.expiresAt <= now) {
+                            continue;
+                        }
+                        double score = Math.min(1.0, dot(vector, entry.vector));
+                        if (score >= similarityThreshold && (match == null || score > similarity)) {
+                            match = entry;
+                            similarity = score;
+                        }
+                    }
+                    if (match != null) {
+                        tier = "similar";
+                        entries.get(match.exactKey); // Refresh LRU position
+                    }
+                }
+            }
+            
+            if (match == null) {
+                misses++;
+                return null;
+            }
+            if ("exact".equals(tier)) {
+                exactHits++;
+            } else {
+                similarHits++;
+            }
+        }
+        
+        return asHit(match.response, tier, similarity, System.nanoTime() - start);
+    }
+    
+    /**
+     * Cache a freshly generated response under the key.
+     */
+    public void store(Key key, GenerationResponse response) {
+        float[] vector = key.vector();
+        Entry entry = new Entry(key.exactKey, key.groupKey, vector, response, System.currentTimeMillis() + ttlMillis);
+        synchronized (this) {
+            Entry previous = entries.put(key.exactKey, entry);
+            if (previous != null) {
+                unlinkFromGroup(previous);
+            }
+            List<Entry> group = groups.computeIfAbsent(key.groupKey, k -> new ArrayList<>());
+            group.add(entry);
+            if (group.size() > MAX_SIMILAR_PER_GROUP) {
+                Entry oldest = group.remove(0);
+                entries.remove(oldest.exactKey);
+            }
+        }
+    }
+    
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("groups", groups.size());
+        stats.put("exactHits", exactHits);
+        stats.put("similarHits", similarHits);
+        stats.put("misses", misses);
+        return stats;
+    }
+    
+    private void unlinkFromGroup(Entry entry) {
+        List<Entry> group = groups.get(entry.groupKey);
+        if (group != null) {
+            group.remove(entry);
+            if (group.isEmpty()) {
+                groups.remove(entry.groupKey);
+            }
+        }
+    }
+    
+    private static GenerationResponse asHit(GenerationResponse cached, String tier, double similarity, long lookupNanos) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        if (cached.getMetadata() != null) {
+            metadata.putAll(cached.getMetadata());
+        }
+        metadata.put("responseCache", tier);
+        metadata.put("cachedGenerationId", cached.getGenerationId());
+        metadata.put("similarity", similarity);
+        
+        GenerationResponse.GenerationMetrics metrics = cached.getMetrics() == null ? null
+            : cached.getMetrics().toBuilder().estimatedCost(0).build();
+        return cached.toBuilder()
+            .generationId(UUID.randomUUID().toString())
+            .generationTimeMs(lookupNanos / 1_000_000)
+            .metrics(metrics)
+            .metadata(metadata)
+            .timestamp(Instant.now())
+            .build();
+    }
+    
+    /**
+     * Collapse runs of whitespace so reformatted but identical prompts share a key.
+     */
+    private static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ");
+    }
+    
+    /**
+     * L2-normalized feature-hashed vector of the character trigrams of the lowercased words.
+     */
+    private static float[] embed(String text) {
+        float[] vector = new float[DIMENSIONS];
+        String padded = " " + text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim() + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            int hash = mix(padded.substring(i, i + 3).hashCode());
+            // The sign bit comes from a different part of the hash so collisions tend to cancel out
+            vector[Math.floorMod(hash, DIMENSIONS)] += (hash & 0x40000000) == 0 ? 1f : -1f;
+        }
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        if (norm > 0f) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= norm;
+            }
+        }
+        return vector;
+    }
+    
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+    
+    private static float dot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+    
+    private static final class Entry {
+        private final String exactKey;
+        private final String groupKey;
+        private final float[] vector;
+        private final GenerationResponse response;
+        private final long expiresAt;
+        
+        private Entry(String exactKey, String groupKey, float[] vector, GenerationResponse response, long expiresAt) {
+            this.exactKey = exactKey;
+            this.groupKey = groupKey;
+            this.vector = vector;
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
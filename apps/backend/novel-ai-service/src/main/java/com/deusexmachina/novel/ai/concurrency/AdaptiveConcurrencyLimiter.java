@@ -0,0 +1,396 @@
+package com.deusexmachina.novel.ai.concurrency;
+
+import com.deusexmachina.novel.ai.model.GenerationPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for upstream model calls, with a concurrency limit that adapts by AIMD.
+ *
+ * The limit grows by about one per round trip while calls succeed at normal latency and is
+ * cut by a constant factor, at most once per round trip, when the provider rejects a call
+ * for overload or a call is much slower than the running baseline. Latency is compared per
+ * generated token, so short and long generations feed the same baseline.
+ *
+ * Callers over the limit wait in a bounded queue per priority class and are admitted highest
+ * class first, except that a waiter moves up one class for every second it has waited, so a
+ * steady stream of high-priority calls cannot starve the rest. Batch calls are further held
+ * to a share of the limit so interactive requests always find room. A caller is rejected up
+ * front when its queue is full or when the expected wait already runs past its deadline.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+    private static final int WARMUP_SAMPLES = 10;
+    private static final int MIN_TOKENS_PER_SAMPLE = 32;
+    private static final double BASELINE_ALPHA = 0.05;
+    private static final double HOLD_ALPHA = 0.1;
+    private static final long AGING_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueCapacity;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final double batchShare;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<GenerationPriority, Deque<Waiter>> queues = new EnumMap<>(GenerationPriority.class);
+    private double limit;
+    private int inFlight = 0;
+    private int batchInFlight = 0;
+    private double baselineMsPerToken = 0;
+    private long latencySamples = 0;
+    private double avgHoldMillis = 0;
+    private long lastDecreaseNanos = 0;
+    private long admitted = 0;
+    private long rejectedQueueFull = 0;
+    private long rejectedDeadline = 0;
+    private long dropped = 0;
+    private long latencyDecreases = 0;
+    
+    /**
+     * Thrown when a call is not admitted. Callers should shed the request, not retry inline.
+     */
+    public static class RejectedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        private final long retryAfterMillis;
+        
+        public RejectedException(String message, long retryAfterMillis) {
+            super(message);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+        
+        /**
+         * Suggested client backoff, about one average call.
+         */
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+    
+    /**
+     * One admitted call. Exactly one of the outcome methods must be called when it ends;
+     * later calls are ignored.
+     */
+    public final class Permit {
+        private final GenerationPriority priority;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        
+        private Permit(GenerationPriority priority) {
+            this.priority = priority;
+        }
+        
+        /**
+         * The call succeeded; its latency feeds the limit.
+         *
+         * @param generatedTokens Tokens produced, to normalize latency
+         */
+        public void onSuccess(int generatedTokens) {
+            if (released.compareAndSet(false, true)) {
+                long elapsedNanos = System.nanoTime() - startNanos;
+                release(this, elapsedNanos, Outcome.SUCCESS,
+                    TimeUnit.NANOSECONDS.toMicros(elapsedNanos) / 1000.0 / Math.max(generatedTokens, MIN_TOKENS_PER_SAMPLE));
+            }
+        }
+        
+        /**
+         * The provider rejected the call for overload (HTTP 429 / RESOURCE_EXHAUSTED).
+         */
+        public void onDropped() {
+            if (released.compareAndSet(false, true)) {
+                release(this, System.nanoTime() - startNanos, Outcome.DROPPED, 0);
+            }
+        }
+        
+        /**
+         * The call ended without saying anything about capacity: a client error, a cancellation.
+         */
+        public void onIgnore() {
+            if (released.compareAndSet(false, true)) {
+                release(this, System.nanoTime() - startNanos, Outcome.IGNORE, 0);
+            }
+        }
+    }
+    
+    private enum Outcome {
+        SUCCESS,
+        DROPPED,
+        IGNORE
+    }
+    
+    private final class Waiter {
+        private final GenerationPriority priority;
+        private final Condition admittedCondition = lock.newCondition();
+        private final long queuedNanos = System.nanoTime();
+        private boolean granted = false;
+        
+        private Waiter(GenerationPriority priority) {
+            this.priority = priority;
+        }
+        
+        /**
+         * Class rank after aging; lower is admitted first.
+         */
+        private double rank(long now) {
+            return priority.ordinal() - (double) (now - queuedNanos) / AGING_NANOS;
+        }
+    }
+    
+    /**
+     * @param initialLimit Starting concurrency limit
+     * @param minLimit Floor of the limit
+     * @param maxLimit Ceiling of the limit, e.g. the provider quota
+     * @param queueCapacity Maximum waiting callers per priority class
+     * @param backoffRatio Factor the limit is multiplied by on overload
+     * @param latencyTolerance How many times the baseline latency counts as overload
+     * @param batchShare Fraction of the limit batch calls may hold
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int queueCapacity,
+                                      double backoffRatio, double latencyTolerance, double batchShare) {
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueCapacity = queueCapacity;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.batchShare = batchShare;
+        for (GenerationPriority priority : GenerationPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+        }
+    }
+    
+    /**
+     * Wait for a slot.
+     *
+     * @param priority Scheduling class
+     * @param deadline When the caller stops waiting, or null for no deadline
+     * @return The permit, to be released with the call's outcome
+     * @throws RejectedException if the queue is full or the deadline cannot be met
+     * @throws InterruptedException if interrupted while queued
+     */
+    public Permit acquire(GenerationPriority priority, Instant deadline) throws InterruptedException {
+        long deadlineNanos = deadline == null ? Long.MAX_VALUE
+            : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline.toEpochMilli() - System.currentTimeMillis());
+        
+        lock.lock();
+        try {
+            if (queuedAhead(priority) == 0 && canAdmit(priority)) {
+                return admit(priority);
+            }
+            
+            Deque<Waiter> queue = queues.get(priority);
+            if (queue.size() >= queueCapacity) {
+                rejectedQueueFull++;
+                throw new RejectedException("Too many queued " + label(priority) + " requests", retryAfterMillis());
+            }
+            long expectedWaitNanos = expectedWaitNanos(priority);
+            if (deadline != null && System.nanoTime() + expectedWaitNanos > deadlineNanos) {
+                rejectedDeadline++;
+                throw new RejectedException("Request cannot start before its deadline", retryAfterMillis());
+            }
+            
+            Waiter waiter = new Waiter(priority);
+            queue.addLast(waiter);
+            try {
+                while (!waiter.granted) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.remove(waiter);
+                        rejectedDeadline++;
+                        throw new RejectedException("Request deadline passed while queued", retryAfterMillis());
+                    }
+                    waiter.admittedCondition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    // Admitted just as we were interrupted; hand the slot on
+                    releaseSlot(priority);
+                    grantWaiters();
+                } else {
+                    queue.remove(waiter);
+                }
+                throw e;
+            }
+            return new Permit(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Take a slot only if one is free right now, without queueing, for optional work such as
+     * a hedged duplicate call.
+     *
+     * @return The permit, or null if the call would have to wait
+     */
+    public Permit tryAcquire(GenerationPriority priority) {
+        lock.lock();
+        try {
+            return queuedAhead(priority) == 0 && canAdmit(priority) ? admit(priority) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            Map<String, Object> queued = new LinkedHashMap<>();
+            for (GenerationPriority priority : GenerationPriority.values()) {
+                queued.put(label(priority), queues.get(priority).size());
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("limit", Math.round(limit * 100) / 100.0);
+            stats.put("inFlight", inFlight);
+            stats.put("batchInFlight", batchInFlight);
+            stats.put("queued", queued);
+            stats.put("queueCapacity", queueCapacity);
+            stats.put("admitted", admitted);
+            stats.put("rejectedQueueFull", rejectedQueueFull);
+            stats.put("rejectedDeadline", rejectedDeadline);
+            stats.put("dropped", dropped);
+            stats.put("latencyDecreases", latencyDecreases);
+            stats.put("avgHoldMs", Math.round(avgHoldMillis));
+            stats.put("baselineMsPerToken", Math.round(baselineMsPerToken * 100) / 100.0);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void release(Permit permit, long elapsedNanos, Outcome outcome, double msPerToken) {
+        lock.lock();
+        try {
+            releaseSlot(permit.priority);
+            double holdMillis = TimeUnit.NANOSECONDS.toMicros(elapsedNanos) / 1000.0;
+            avgHoldMillis = avgHoldMillis == 0 ? holdMillis : avgHoldMillis + HOLD_ALPHA * (holdMillis - avgHoldMillis);
+            
+            if (outcome == Outcome.DROPPED) {
+                dropped++;
+                decrease("provider overload");
+            } else if (outcome == Outcome.SUCCESS) {
+                boolean slow = latencySamples >= WARMUP_SAMPLES && msPerToken > latencyTolerance * baselineMsPerToken;
+                baselineMsPerToken = latencySamples == 0 ? msPerToken
+                    : baselineMsPerToken + BASELINE_ALPHA * (msPerToken - baselineMsPerToken);
+                latencySamples++;
+                if (slow) {
+                    if (decrease("latency")) {
+                        latencyDecreases++;
+                    }
+                } else if (inFlight + 1 >= limit / 2) {
+                    // Only grow a limit that is actually being used
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            }
+            grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private boolean decrease(String reason) {
+        long now = System.nanoTime();
+        if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < TimeUnit.MILLISECONDS.toNanos(Math.round(avgHoldMillis))) {
+            return false;
+        }
+        lastDecreaseNanos = now;
+        double previous = limit;
+        limit = Math.max(minLimit, limit * backoffRatio);
+        logger.info("Concurrency limit {} -> {} ({})", String.format(Locale.ROOT, "%.1f", previous),
+            String.format(Locale.ROOT, "%.1f", limit), reason);
+        return true;
+    }
+    
+    /**
+     * Admit queued callers, best aged rank first, while there is room. Only the head of each
+     * queue competes, since it has waited longest in its class.
+     */
+    private void grantWaiters() {
+        long now = System.nanoTime();
+        while (inFlight < (int) limit) {
+            Waiter best = null;
+            for (Deque<Waiter> queue : queues.values()) {
+                Waiter head = queue.peekFirst();
+                if (head != null && canAdmit(head.priority) && (best == null || head.rank(now) < best.rank(now))) {
+                    best = head;
+                }
+            }
+            if (best == null) {
+                return;
+            }
+            queues.get(best.priority).removeFirst();
+            best.granted = true;
+            admit(best.priority);
+            best.admittedCondition.signal();
+        }
+    }
+    
+    private Permit admit(GenerationPriority priority) {
+        inFlight++;
+        if (priority == GenerationPriority.BATCH) {
+            batchInFlight++;
+        }
+        admitted++;
+        return new Permit(priority);
+    }
+    
+    private void releaseSlot(GenerationPriority priority) {
+        inFlight--;
+        if (priority == GenerationPriority.BATCH) {
+            batchInFlight--;
+        }
+    }
+    
+    private boolean canAdmit(GenerationPriority priority) {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        return priority != GenerationPriority.BATCH || batchInFlight < Math.max(1, (int) (limit * batchShare));
+    }
+    
+    /**
+     * Callers queued in this class or a higher one, who would be admitted first.
+     */
+    private int queuedAhead(GenerationPriority priority) {
+        int ahead = 0;
+        for (GenerationPriority other : GenerationPriority.values()) {
+            if (other.ordinal() <= priority.ordinal()) {
+                ahead += queues.get(other).size();
+            }
+        }
+        return ahead;
+    }
+    
+    /**
+     * Expected time to admission: the callers ahead drain at about limit per average call.
+     */
+    private long expectedWaitNanos(GenerationPriority priority) {
+        if (avgHoldMillis == 0) {
+            return 0;
+        }
+        double waitMillis = (queuedAhead(priority) + 1) * avgHoldMillis / Math.max(1.0, limit);
+        return TimeUnit.MICROSECONDS.toNanos(Math.round(waitMillis * 1000));
+    }
+    
+    private long retryAfterMillis() {
+        return Math.max(1000, Math.round(avgHoldMillis));
+    }
+    
+    private static String label(GenerationPriority priority) {
+        return priority.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,138 @@
+package com.deusexmachina.novel.ai.concurrency;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key into one in-flight call. Every caller gets its
+ * own future completed with the shared result; cancelling it only detaches that caller, and
+ * the shared call is cancelled once no caller is left waiting. Keys are released as soon as
+ * the call completes, so this never serves stale results.
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    
+    /**
+     * Run the call for a key, or join the one already in flight.
+     *
+     * @param key Identity of the call
+     * @param call Starts the call; cancelling its future must cancel the work
+     * @return This caller's view of the shared result
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        while (true) {
+            Flight created = new Flight();
+            Flight flight = flights.putIfAbsent(key, created);
+            boolean leader = flight == null;
+            if (leader) {
+                flight = created;
+            }
+            
+            CompletableFuture<V> waiter = flight.join();
+            if (waiter == null) {
+                // Joined a flight that was just abandoned; start over
+                flights.remove(key, flight);
+                continue;
+            }
+            
+            if (leader) {
+                started.incrementAndGet();
+                start(key, flight, call);
+            } else {
+                joined.incrementAndGet();
+            }
+            return waiter;
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", flights.size());
+        stats.put("started", started.get());
+        stats.put("coalesced", joined.get());
+        stats.put("cancelled", cancelled.get());
+        return stats;
+    }
+    
+    private void start(K key, Flight flight, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> upstream;
+        try {
+            upstream = call.get();
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            flight.shared.completeExceptionally(e);
+            return;
+        }
+        
+        upstream.whenComplete((value, error) -> {
+            flights.remove(key, flight);
+            if (error != null) {
+                flight.shared.completeExceptionally(error);
+            } else {
+                flight.shared.complete(value);
+            }
+        });
+        
+        if (!flight.attach(upstream)) {
+            // Every caller left before the call started
+            upstream.cancel(true);
+        }
+    }
+    
+    private final class Flight {
+        private final CompletableFuture<V> shared = new CompletableFuture<>();
+        private CompletableFuture<V> upstream;
+        private int waiters = 0;
+        private boolean abandoned = false;
+        
+        private synchronized CompletableFuture<V> join() {
+            if (abandoned) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<V> waiter = new CompletableFuture<>();
+            shared.whenComplete((value, error) -> {
+                if (error != null) {
+                    waiter.completeExceptionally(error);
+                } else {
+                    waiter.complete(value);
+                }
+            });
+            waiter.whenComplete((value, error) -> {
+                if (waiter.isCancelled()) {
+                    leave();
+                }
+            });
+            return waiter;
+        }
+        
+        private synchronized boolean attach(CompletableFuture<V> call) {
+            upstream = call;
+            return !abandoned;
+        }
+        
+        private void leave() {
+            CompletableFuture<V> toCancel;
+            synchronized (this) {
+                waiters--;
+                if (waiters > 0 || shared.isDone()) {
+                    return;
+                }
+                abandoned = true;
+                toCancel = upstream;
+            }
+            cancelled.incrementAndGet();
+            flights.values().remove(this);
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+    }
+}
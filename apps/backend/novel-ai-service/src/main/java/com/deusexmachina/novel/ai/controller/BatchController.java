@@ -0,0 +1,213 @@
+package com.deusexmachina.novel.ai.controller;
+
+import com.deusexmachina.novel.ai.auth.AuthenticationMiddleware;
+import com.deusexmachina.novel.ai.concurrency.AdaptiveConcurrencyLimiter;
+import com.deusexmachina.novel.ai.model.BatchItem;
+import com.deusexmachina.novel.ai.model.BatchJob;
+import com.deusexmachina.novel.ai.model.BatchSubmitRequest;
+import com.deusexmachina.novel.ai.model.BatchTask;
+import com.deusexmachina.novel.ai.model.GenerationRequest;
+import com.deusexmachina.novel.ai.model.InstantTypeAdapter;
+import com.deusexmachina.novel.ai.queue.BatchTaskQueue;
+import com.deusexmachina.novel.ai.service.BatchGenerationService;
+import com.google.cloud.functions.HttpRequest;
+import com.google.cloud.functions.HttpResponse;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller for batch generation jobs.
+ * 
+ * POST /generate/batch submits a job, GET /generate/batch/{jobId} reports its progress,
+ * GET /generate/batch/{jobId}/results?offset=&limit= pages through its results, and
+ * DELETE /generate/batch/{jobId} cancels it.
+ * 
+ * POST /generate/batch/tasks is where the task queue delivers item and callback tasks. It only
+ * accepts the queue's own dispatch token, and answers 503 with Retry-After when an item finds
+ * no capacity, so the queue delivers it again later.
+ */
+@Singleton
+public class BatchController {
+    private static final Logger logger = LoggerFactory.getLogger(BatchController.class);
+    private static final String BASE_PATH = "/generate/batch";
+    private static final String TASKS_SEGMENT = "tasks";
+    private static final int MAX_PAGE_SIZE = 100;
+    
+    private final BatchGenerationService batchService;
+    private final BatchTaskQueue taskQueue;
+    private final Gson gson = new GsonBuilder().registerTypeAdapter(Instant.class, new InstantTypeAdapter()).create();
+    
+    @Inject
+    public BatchController(BatchGenerationService batchService, BatchTaskQueue taskQueue) {
+        this.batchService = batchService;
+        this.taskQueue = taskQueue;
+    }
+    
+    /**
+     * Handle a request under /generate/batch.
+     * 
+     * @param request The HTTP request
+     * @param response The HTTP response
+     * @throws IOException if I/O fails
+     */
+    public void handleBatchRequest(HttpRequest request, HttpResponse response) throws IOException {
+        String userId = AuthenticationMiddleware.extractUserId(request);
+        String[] parts = request.getPath().substring(BASE_PATH.length()).replaceAll("^/+", "").split("/");
+        String jobId = parts[0].isEmpty() ? null : parts[0];
+        String method = request.getMethod();
+        
+        try {
+            if (TASKS_SEGMENT.equals(jobId) && parts.length == 1 && "POST".equals(method)) {
+                handleTask(request, response);
+            } else if (userId == null) {
+                // A token without a subject; jobs are looked up by owner, so there is nothing to show
+                writeJson(response, 401, Map.of("error", "Token has no user", "code", "UNAUTHORIZED"));
+            } else if (jobId == null && "POST".equals(method)) {
+                handleSubmit(request, response, userId);
+            } else if (jobId != null && parts.length == 1 && "GET".equals(method)) {
+                handleStatus(response, userId, jobId);
+            } else if (jobId != null && parts.length == 2 && "results".equals(parts[1]) && "GET".equals(method)) {
+                handleResults(request, response, userId, jobId);
+            } else if (jobId != null && parts.length == 1 && "DELETE".equals(method)) {
+                handleCancel(response, userId, jobId);
+            } else {
+                writeJson(response, 404, Map.of("error", "Unknown batch endpoint"));
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid batch request: {}", e.getMessage());
+            writeJson(response, 400, Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Batch request failed", e);
+            writeJson(response, 500, Map.of("error", "Batch request failed: " + e.getMessage()));
+        }
+    }
+    
+    private void handleTask(HttpRequest request, HttpResponse response) throws IOException {
+        String token = request.getFirstHeader("Authorization")
+            .filter(header -> header.startsWith("Bearer "))
+            .map(header -> header.substring(7))
+            .orElse(null);
+        if (!taskQueue.isDispatchToken(token)) {
+            logger.warn("Rejected batch task without a dispatch token");
+            writeJson(response, 403, Map.of("error", "Not a task dispatch"));
+            return;
+        }
+        BatchTask task;
+        try (BufferedReader reader = request.getReader()) {
+            task = gson.fromJson(reader, BatchTask.class);
+        }
+        if (task == null || task.getJobId() == null) {
+            throw new IllegalArgumentException("Job ID is required");
+        }
+        
+        try {
+            batchService.runTask(task);
+        } catch (AdaptiveConcurrencyLimiter.RejectedException e) {
+            logger.info("Batch task for job {} rejected, queue will retry: {}", task.getJobId(), e.getMessage());
+            response.appendHeader("Retry-After", String.valueOf(
+                TimeUnit.MILLISECONDS.toSeconds(e.getRetryAfterMillis() + 999)));
+            writeJson(response, 503, Map.of("error", "Service busy: " + e.getMessage()));
+            return;
+        }
+        writeJson(response, 200, Map.of("jobId", task.getJobId(), "status", "done"));
+    }
+    
+    private void handleSubmit(HttpRequest request, HttpResponse response, String userId) throws IOException {
+        BatchSubmitRequest submitRequest;
+        try (BufferedReader reader = request.getReader()) {
+            submitRequest = gson.fromJson(reader, BatchSubmitRequest.class);
+        }
+        if (submitRequest == null || submitRequest.getRequests() == null) {
+            throw new IllegalArgumentException("Requests are required");
+        }
+        List<GenerationRequest> requests = submitRequest.getRequests();
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                GenerationController.validateRequest(requests.get(i));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Request " + i + ": " + e.getMessage());
+            }
+        }
+        
+        BatchJob job = batchService.submit(userId, requests, submitRequest.getCallbackUrl());
+        response.appendHeader("Location", BASE_PATH + "/" + job.getJobId());
+        writeJson(response, 202, job);
+    }
+    
+    private void handleStatus(HttpResponse response, String userId, String jobId) throws IOException {
+        Optional<BatchJob> job = batchService.getJob(userId, jobId);
+        if (job.isEmpty()) {
+            writeJson(response, 404, Map.of("error", "Batch job not found"));
+            return;
+        }
+        writeJson(response, 200, job.get());
+    }
+    
+    private void handleResults(HttpRequest request, HttpResponse response, String userId, String jobId) throws IOException {
+        Optional<BatchJob> job = batchService.getJob(userId, jobId);
+        if (job.isEmpty()) {
+            writeJson(response, 404, Map.of("error", "Batch job not found"));
+            return;
+        }
+        int offset = Math.max(0, intParameter(request, "offset", 0));
+        int limit = Math.min(MAX_PAGE_SIZE, Math.max(1, intParameter(request, "limit", MAX_PAGE_SIZE)));
+        List<BatchItem> items = batchService.getResults(userId, jobId, offset, limit);
+        
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("jobId", jobId);
+        page.put("status", job.get().getStatus());
+        page.put("totalItems", job.get().getTotalItems());
+        page.put("offset", offset);
+        page.put("items", items);
+        if (offset + items.size() < job.get().getTotalItems()) {
+            page.put("nextOffset", offset + items.size());
+        }
+        writeJson(response, 200, page);
+    }
+    
+    private void handleCancel(HttpResponse response, String userId, String jobId) throws IOException {
+        if (batchService.getJob(userId, jobId).isEmpty()) {
+            writeJson(response, 404, Map.of("error", "Batch job not found"));
+            return;
+        }
+        if (!batchService.cancel(userId, jobId)) {
+            writeJson(response, 409, Map.of("error", "Batch job already finished"));
+            return;
+        }
+        writeJson(response, 200, Map.of("jobId", jobId, "status", BatchJob.Status.CANCELLED));
+    }
+    
+    private static int intParameter(HttpRequest request, String name, int defaultValue) {
+        List<String> values = request.getQueryParameters().get(name);
+        if (values == null || values.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(values.get(0));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + values.get(0));
+        }
+    }
+    
+    private void writeJson(HttpResponse response, int statusCode, Object body) throws IOException {
+        response.setStatusCode(statusCode);
+        response.setContentType("application/json");
+        try (BufferedWriter writer = response.getWriter()) {
+            writer.write(gson.toJson(body));
+        }
+    }
+}
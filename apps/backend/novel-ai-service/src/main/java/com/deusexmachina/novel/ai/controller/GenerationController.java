@@ -1,5 +1,8 @@
 package com.deusexmachina.novel.ai.controller;
 
+import com.deusexmachina.novel.ai.auth.AuthenticationMiddleware;
+import com.deusexmachina.novel.ai.concurrency.AdaptiveConcurrencyLimiter;
+import com.deusexmachina.novel.ai.model.GenerationPriority;
 import com.deusexmachina.novel.ai.model.GenerationRequest;
 import com.deusexmachina.novel.ai.model.GenerationResponse;
 import com.deusexmachina.novel.ai.service.GenerationService;
@@ -14,8 +17,15 @@ import org.slf4j.LoggerFactory;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Controller for handling generation requests.
@@ -55,9 +65,23 @@ public class GenerationController {
             // Validate request
             validateRequest(generationRequest);
             
+            // The caller's identity partitions per-user state such as the response cache
+            generationRequest.setUserId(AuthenticationMiddleware.extractUserId(request));
+            request.getFirstHeader("Idempotency-Key").ifPresent(generationRequest::setIdempotencyKey);
+            generationRequest.setPriority(GenerationPriority.INTERACTIVE_SYNC);
+            generationRequest.setAuthToken(bearerToken(request));
+            generationRequest.setDeadline(Instant.now().plusSeconds(GENERATION_TIMEOUT_SECONDS));
+            
             // Generate text asynchronously with timeout
             CompletableFuture<GenerationResponse> future = generationService.generateText(generationRequest);
-            GenerationResponse generationResponse = future.get(GENERATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            GenerationResponse generationResponse;
+            try {
+                generationResponse = future.get(GENERATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                // Stop waiting; upstream is cancelled once no other request shares the generation
+                future.cancel(true);
+                throw e;
+            }
             
             logger.info("Generation completed successfully. Generated {} tokens in {}ms", 
                 generationResponse.getTokenCount(), generationResponse.getGenerationTimeMs());
@@ -74,6 +98,22 @@ public class GenerationController {
             try (BufferedWriter writer = response.getWriter()) {
                 writer.write("{\"error\":\"" + e.getMessage() + "\"}");
             }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AdaptiveConcurrencyLimiter.RejectedException rejected) {
+                // Shed load with a hint instead of letting the request wait into a timeout
+                logger.warn("Generation rejected: {}", rejected.getMessage());
+                response.setStatusCode(503);
+                response.appendHeader("Retry-After", retryAfterSeconds(rejected));
+                try (BufferedWriter writer = response.getWriter()) {
+                    writer.write("{\"error\":\"Service busy: " + rejected.getMessage() + "\"}");
+                }
+                return;
+            }
+            logger.error("Generation failed", e);
+            response.setStatusCode(500);
+            try (BufferedWriter writer = response.getWriter()) {
+                writer.write("{\"error\":\"Generation failed: " + e.getMessage() + "\"}");
+            }
         } catch (Exception e) {
             logger.error("Generation failed", e);
             response.setStatusCode(500);
@@ -84,17 +124,130 @@ public class GenerationController {
     }
     
     /**
-     * Handle a streaming generation request.
+     * Handle a streaming generation request as server-sent events.
+     * Each chunk is flushed as a "chunk" event when it arrives; a trailing "done" event carries
+     * token counts and latency, or an "error" event reports a failure. If the client goes away
+     * the upstream stream is cancelled.
+     * 
+     * Headers go out with the first event, which comes after the request has been admitted,
+     * so a request the limiter rejects gets a 503 with Retry-After like the sync endpoint.
      * 
      * @param request The HTTP request
      * @param response The HTTP response
      * @throws IOException if I/O fails
      */
     public void handleStreamingRequest(HttpRequest request, HttpResponse response) throws IOException {
-        // TODO: Implement streaming generation
-        response.setStatusCode(501);
-        try (BufferedWriter writer = response.getWriter()) {
-            writer.write("{\"error\":\"Streaming not yet implemented\"}");
+        long startNanos = System.nanoTime();
+        Gson gson = new Gson();
+        GenerationRequest generationRequest;
+        try {
+            try (BufferedReader reader = request.getReader()) {
+                generationRequest = gson.fromJson(reader, GenerationRequest.class);
+            }
+            validateRequest(generationRequest);
+            generationRequest.setUserId(AuthenticationMiddleware.extractUserId(request));
+            generationRequest.setPriority(GenerationPriority.INTERACTIVE_STREAM);
+            generationRequest.setAuthToken(bearerToken(request));
+            generationRequest.setDeadline(Instant.now().plusSeconds(GENERATION_TIMEOUT_SECONDS));
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid streaming request: {}", e.getMessage());
+            response.setStatusCode(400);
+            try (BufferedWriter writer = response.getWriter()) {
+                writer.write("{\"error\":\"" + e.getMessage() + "\"}");
+            }
+            return;
+        } catch (Exception e) {
+            logger.error("Failed to read streaming request", e);
+            response.setStatusCode(400);
+            try (BufferedWriter writer = response.getWriter()) {
+                writer.write("{\"error\":\"Invalid request body\"}");
+            }
+            return;
+        }
+        
+        logger.info("Handling streaming request for type: {} with prompt length: {}", 
+            generationRequest.getGenerationType(), generationRequest.getPrompt().length());
+        
+        EventStream events = new EventStream(response, gson);
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        AtomicLong firstChunkNanos = new AtomicLong();
+        AtomicInteger chunkCount = new AtomicInteger();
+        
+        GenerationService.StreamCallback callback = new GenerationService.StreamCallback() {
+            @Override
+            public void onChunk(String chunk) {
+                firstChunkNanos.compareAndSet(0, System.nanoTime());
+                chunkCount.incrementAndGet();
+                try {
+                    events.send("chunk", Map.of("text", chunk));
+                } catch (IOException e) {
+                    finished.completeExceptionally(e);
+                }
+            }
+            
+            @Override
+            public void onComplete(GenerationResponse summary) {
+                Map<String, Object> metrics = new LinkedHashMap<>();
+                metrics.put("generationId", summary.getGenerationId());
+                metrics.put("modelUsed", summary.getModelUsed());
+                metrics.put("tokenCount", summary.getTokenCount());
+                metrics.put("promptTokenCount", summary.getPromptTokenCount());
+                metrics.put("totalTokenCount", summary.getTotalTokenCount());
+                metrics.put("chunkCount", chunkCount.get());
+                metrics.put("timeToFirstTokenMs", firstChunkNanos.get() > 0 ? 
+                    TimeUnit.NANOSECONDS.toMillis(firstChunkNanos.get() - startNanos) : null);
+                metrics.put("generationTimeMs", summary.getGenerationTimeMs());
+                metrics.put("totalTimeMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                metrics.put("truncated", summary.isTruncated());
+                if (summary.getMetadata() != null) {
+                    metrics.put("promptPrefixReused", summary.getMetadata().get("promptPrefixReused"));
+                }
+                metrics.put("estimatedCost", summary.getMetrics() != null ? summary.getMetrics().getEstimatedCost() : null);
+                try {
+                    events.send("done", metrics);
+                    finished.complete(null);
+                } catch (IOException e) {
+                    finished.completeExceptionally(e);
+                }
+            }
+            
+            @Override
+            public void onError(Throwable error) {
+                try {
+                    if (error instanceof AdaptiveConcurrencyLimiter.RejectedException rejected) {
+                        logger.warn("Streaming generation rejected: {}", rejected.getMessage());
+                        if (!events.reject(rejected)) {
+                            events.send("error", Map.of("error", "Service busy: " + rejected.getMessage(),
+                                "retryAfterMs", rejected.getRetryAfterMillis()));
+                        }
+                    } else {
+                        events.send("error", Map.of("error", "Generation failed: " + error.getMessage()));
+                    }
+                    finished.complete(null);
+                } catch (IOException e) {
+                    finished.completeExceptionally(e);
+                }
+            }
+        };
+        
+        CompletableFuture<Void> upstream = generationService.streamText(generationRequest, callback);
+        try {
+            finished.get(GENERATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            logger.info("Streaming completed: {} chunks in {}ms", chunkCount.get(), 
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } catch (ExecutionException e) {
+            // Writing to the client failed, so nobody is reading any more
+            logger.info("Client disconnected after {} chunks, cancelling upstream stream", chunkCount.get());
+            upstream.cancel(true);
+        } catch (TimeoutException e) {
+            logger.error("Streaming timed out after {} chunks", chunkCount.get());
+            upstream.cancel(true);
+            events.trySend("error", Map.of("error", "Generation timed out"));
+        } catch (InterruptedException e) {
+            upstream.cancel(true);
+            Thread.currentThread().interrupt();
+        } finally {
+            events.close();
         }
     }
     
@@ -144,7 +297,7 @@ public class GenerationController {
      * @param request The request to validate
      * @throws IllegalArgumentException if request is invalid
      */
-    private void validateRequest(GenerationRequest request) {
+    static void validateRequest(GenerationRequest request) {
         if (request == null) {
             throw new IllegalArgumentException("Request cannot be null");
         }
@@ -174,6 +327,95 @@ public class GenerationController {
         }
     }
     
+    /**
+     * The caller's bearer token, forwarded to the memory service, or null if there is none.
+     */
+    private static String bearerToken(HttpRequest request) {
+        return request.getFirstHeader("Authorization")
+            .filter(header -> header.startsWith("Bearer "))
+            .map(header -> header.substring(7))
+            .orElse(null);
+    }
+    
+    /**
+     * Retry-After value for a rejected request, in whole seconds rounded up.
+     */
+    private static String retryAfterSeconds(AdaptiveConcurrencyLimiter.RejectedException rejected) {
+        return String.valueOf(TimeUnit.MILLISECONDS.toSeconds(rejected.getRetryAfterMillis() + 999));
+    }
+    
+    /**
+     * Server-sent event writer. Writes come from the generation thread and, on timeout,
+     * from the request thread, so they are serialized; nothing is written after close.
+     * The 200 and event-stream headers are committed by the first event.
+     */
+    private static class EventStream {
+        private final HttpResponse response;
+        private final Gson gson;
+        private BufferedWriter writer;
+        private boolean closed = false;
+        
+        EventStream(HttpResponse response, Gson gson) {
+            this.response = response;
+            this.gson = gson;
+        }
+        
+        synchronized void send(String event, Object data) throws IOException {
+            if (closed) {
+                return;
+            }
+            if (writer == null) {
+                response.setContentType("text/event-stream");
+                response.appendHeader("Cache-Control", "no-cache");
+                response.appendHeader("X-Accel-Buffering", "no"); // Keep proxies from buffering the stream
+                response.setStatusCode(200);
+                writer = response.getWriter();
+            }
+            writer.write("event: " + event + "\n");
+            writer.write("data: " + gson.toJson(data) + "\n\n");
+            writer.flush();
+        }
+        
+        synchronized void trySend(String event, Object data) {
+            try {
+                send(event, data);
+            } catch (IOException e) {
+                logger.debug("Could not send {} event: {}", event, e.getMessage());
+            }
+        }
+        
+        /**
+         * Answer with a 503 and Retry-After instead of a stream, if no event has been sent yet.
+         *
+         * @return false if the stream had already started
+         */
+        synchronized boolean reject(AdaptiveConcurrencyLimiter.RejectedException rejected) throws IOException {
+            if (closed || writer != null) {
+                return false;
+            }
+            response.setStatusCode(503);
+            response.appendHeader("Retry-After", retryAfterSeconds(rejected));
+            response.setContentType("application/json");
+            writer = response.getWriter();
+            writer.write(gson.toJson(Map.of("error", "Service busy: " + rejected.getMessage())));
+            closed = true;
+            writer.close();
+            return true;
+        }
+        
+        synchronized void close() {
+            closed = true;
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.debug("Error closing event stream: {}", e.getMessage());
+            }
+        }
+    }
+    
     /**
      * Simple class for token count requests.
      */
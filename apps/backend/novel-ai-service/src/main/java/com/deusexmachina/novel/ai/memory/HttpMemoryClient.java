@@ -0,0 +1,119 @@
+package com.deusexmachina.novel.ai.memory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Fetches generation contexts from the memory service's context endpoint,
+ * GET /memory/context/{projectId}/{sceneId}?chapter=&scene=&tokenBudget=, and memory versions
+ * from GET /memory/version/{projectId}.
+ * 
+ * Calls carry the caller's bearer token, or the configured service token for work that runs
+ * without a caller, such as batch jobs.
+ */
+public class HttpMemoryClient implements MemoryClient {
+    private static final Logger logger = LoggerFactory.getLogger(HttpMemoryClient.class);
+    // The context path needs a scene; an unknown one yields a context without scene characters
+    private static final String NO_SCENE = "_";
+    
+    private final String baseUrl;
+    private final String serviceToken;
+    private final Duration requestTimeout;
+    private final HttpClient httpClient;
+    private final Gson gson = new Gson();
+    
+    /**
+     * @param baseUrl Memory service URL, without the /memory path
+     * @param serviceToken Bearer token for calls without a caller token; may be null
+     * @param requestTimeout Upper bound on one fetch
+     */
+    public HttpMemoryClient(String baseUrl, String serviceToken, Duration requestTimeout) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.serviceToken = serviceToken;
+        this.requestTimeout = requestTimeout;
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(requestTimeout)
+            .build();
+        logger.info("Memory client using {}", this.baseUrl);
+    }
+    
+    @Override
+    public CompletableFuture<MemoryContext> fetchContext(Query query) {
+        StringBuilder url = new StringBuilder(baseUrl)
+            .append("/memory/context/").append(encode(query.projectId()))
+            .append('/').append(query.sceneId() != null ? encode(query.sceneId()) : NO_SCENE)
+            .append("?tokenBudget=").append(query.tokenBudget());
+        if (query.chapterNumber() != null) {
+            url.append("&chapter=").append(query.chapterNumber());
+        }
+        if (query.sceneNumber() != null) {
+            url.append("&scene=").append(query.sceneNumber());
+        }
+        return get(url.toString(), query.authToken(), body -> gson.fromJson(body, MemoryContext.class));
+    }
+    
+    @Override
+    public CompletableFuture<Long> fetchVersion(String projectId, String authToken) {
+        return get(baseUrl + "/memory/version/" + encode(projectId), authToken,
+            body -> JsonParser.parseString(body).getAsJsonObject().get("version").getAsLong());
+    }
+    
+    /**
+     * GET a memory service resource and parse the body; a 404 completes with null.
+     */
+    private <T> CompletableFuture<T> get(String url, String authToken, Function<String, T> parser) {
+        String token = authToken != null ? authToken : serviceToken;
+        if (token == null || token.isEmpty()) {
+            return CompletableFuture.failedFuture(
+                new IllegalStateException("No credentials for the memory service"));
+        }
+        
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+            .timeout(requestTimeout)
+            .header("Accept", "application/json")
+            .header("Authorization", "Bearer " + token)
+            .GET()
+            .build();
+        
+        CompletableFuture<HttpResponse<String>> exchange = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<T> result = new CompletableFuture<>();
+        exchange.whenComplete((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (response.statusCode() == 404) {
+                result.complete(null);
+            } else if (response.statusCode() / 100 != 2) {
+                result.completeExceptionally(new IllegalStateException("Memory service returned " + response.statusCode()));
+            } else {
+                try {
+                    result.complete(parser.apply(response.body()));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        // Cancelling the future returned by sendAsync aborts the exchange
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+    
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
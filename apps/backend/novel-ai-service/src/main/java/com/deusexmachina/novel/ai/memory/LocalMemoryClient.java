@@ -0,0 +1,51 @@
+package com.deusexmachina.novel.ai.memory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in for the memory service, for local runs and tests. Contexts are
+ * registered per project and served after an optional simulated latency.
+ */
+public class LocalMemoryClient implements MemoryClient {
+    private final Map<String, MemoryContext> contexts = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final Duration latency;
+    
+    public LocalMemoryClient() {
+        this(Duration.ZERO);
+    }
+    
+    /**
+     * @param latency How long each fetch takes
+     */
+    public LocalMemoryClient(Duration latency) {
+        this.latency = latency;
+    }
+    
+    /**
+     * Register the context served for a project, moving its memory version on.
+     */
+    public void put(String projectId, MemoryContext context) {
+        contexts.put(projectId, context);
+        versions.merge(projectId, 1L, Long::sum);
+    }
+    
+    @Override
+    public CompletableFuture<MemoryContext> fetchContext(Query query) {
+        MemoryContext context = contexts.get(query.projectId());
+        if (latency.isZero()) {
+            return CompletableFuture.completedFuture(context);
+        }
+        return CompletableFuture.supplyAsync(() -> context,
+            CompletableFuture.delayedExecutor(latency.toMillis(), TimeUnit.MILLISECONDS));
+    }
+    
+    @Override
+    public CompletableFuture<Long> fetchVersion(String projectId, String authToken) {
+        return CompletableFuture.completedFuture(versions.getOrDefault(projectId, 0L));
+    }
+}
@@ -0,0 +1,43 @@
+package com.deusexmachina.novel.ai.memory;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of story memory for generation. {@link HttpMemoryClient} asks the memory service;
+ * {@link LocalMemoryClient} serves contexts held in process, for local runs and tests.
+ */
+public interface MemoryClient {
+    
+    /**
+     * Fetch the generation context for a scene. Cancelling the returned future abandons the
+     * fetch.
+     * 
+     * @param query What to fetch
+     * @return The context, or null if the memory has nothing for the project
+     */
+    CompletableFuture<MemoryContext> fetchContext(Query query);
+    
+    /**
+     * Fetch a project's memory version, which moves on whenever anything in its memory changes,
+     * so it can stand in for the memory in cache keys. Cancelling the returned future abandons
+     * the fetch.
+     * 
+     * @param projectId The memory context, i.e. the request's contextId
+     * @param authToken The caller's bearer token, if any
+     */
+    CompletableFuture<Long> fetchVersion(String projectId, String authToken);
+    
+    /**
+     * A context lookup.
+     * 
+     * @param projectId The memory context, i.e. the request's contextId
+     * @param sceneId The scene being written, if known
+     * @param chapterNumber Chapter of the scene, if known
+     * @param sceneNumber Scene number within the chapter, if known
+     * @param tokenBudget Upper bound on the size of the returned context
+     * @param authToken The caller's bearer token, if any
+     */
+    record Query(String projectId, String sceneId, Long chapterNumber, Long sceneNumber,
+                 int tokenBudget, String authToken) {
+    }
+}
@@ -0,0 +1,94 @@
+package com.deusexmachina.novel.ai.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Story memory for one scene, as packed by the memory service within a token budget.
+ * Mirrors the parts of the memory service's generation context that go into a prompt.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemoryContext {
+    private String projectId;
+    private String sceneId;
+    
+    // Character context
+    private List<CharacterState> activeCharacters;
+    private Map<String, String> characterRelationships;
+    private List<String> relatedCharacters; // Off-scene characters tied to those present
+    
+    // Plot context
+    private String currentPlotPhase;
+    private List<String> activeThreads;
+    private List<String> upcomingPlotPoints;
+    private Integer currentTensionLevel;
+    
+    // World context
+    private String currentLocation;
+    private List<String> relevantWorldFacts;
+    private String timeOfDay;
+    private String weather;
+    
+    // Recent narrative context
+    private String previousSceneSummary;
+    private List<String> recentEvents;
+    private List<String> recentDialogue;
+    
+    // Constraints and requirements
+    private List<String> mustInclude;
+    private List<String> mustAvoid;
+    private Map<String, String> consistencyRules;
+    
+    private PackingReport packingReport;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CharacterState {
+        private String characterId;
+        private String name;
+        private String currentState;
+        private String currentObjective;
+        private String emotionalState;
+        private List<String> recentActions;
+        private List<String> earlierHistory; // Compacted summaries of earlier chapters
+        private String voiceProfile;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PackingReport {
+        private Integer tokenBudget;
+        private Integer tokensUsed;
+    }
+    
+    /**
+     * Number of memory items in the context: characters, related characters, relationships,
+     * threads, plot points, facts, events, dialogue lines, constraints and the previous scene
+     * summary.
+     */
+    public int countItems() {
+        int count = size(activeCharacters) + size(relatedCharacters) + size(activeThreads) + size(upcomingPlotPoints)
+            + size(relevantWorldFacts) + size(recentEvents) + size(recentDialogue)
+            + size(mustInclude) + size(mustAvoid);
+        count += characterRelationships != null ? characterRelationships.size() : 0;
+        count += consistencyRules != null ? consistencyRules.size() : 0;
+        count += previousSceneSummary != null && !previousSceneSummary.isEmpty() ? 1 : 0;
+        return count;
+    }
+    
+    private static int size(List<?> list) {
+        return list != null ? list.size() : 0;
+    }
+}
@@ -0,0 +1,43 @@
+package com.deusexmachina.novel.ai.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * One request of a batch job and its outcome.
+ */
+@Data
+@Builder(toBuilder = true)
+public class BatchItem {
+    
+    public enum Status {
+        PENDING,
+        SUCCEEDED,
+        FAILED
+    }
+    
+    /**
+     * Position of the request in the submitted batch.
+     */
+    private int index;
+    
+    /**
+     * Current state of the item.
+     */
+    private Status status;
+    
+    /**
+     * The request to run. Stored with the item but not returned with results.
+     */
+    private transient GenerationRequest request;
+    
+    /**
+     * The generation, once the item succeeded.
+     */
+    private GenerationResponse response;
+    
+    /**
+     * Why the item failed.
+     */
+    private String error;
+}
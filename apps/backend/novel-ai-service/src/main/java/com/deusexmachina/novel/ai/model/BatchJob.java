@@ -0,0 +1,74 @@
+package com.deusexmachina.novel.ai.model;
+
+import lombok.Builder;
+import lombok.Data;
+import java.time.Instant;
+
+/**
+ * A batch of generation requests run in the background.
+ */
+@Data
+@Builder(toBuilder = true)
+public class BatchJob {
+    
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        CANCELLED;
+        
+        public boolean isTerminal() {
+            return this == COMPLETED || this == CANCELLED;
+        }
+    }
+    
+    /**
+     * Unique ID for this job.
+     */
+    private String jobId;
+    
+    /**
+     * The user who submitted the job; every item runs as this user.
+     */
+    private String userId;
+    
+    /**
+     * Current state of the job.
+     */
+    private Status status;
+    
+    /**
+     * HTTPS URL that receives the signed job summary when the job finishes, if set.
+     */
+    private String callbackUrl;
+    
+    /**
+     * Number of requests in the job.
+     */
+    private int totalItems;
+    
+    /**
+     * Items that finished with a response.
+     */
+    private int succeededItems;
+    
+    /**
+     * Items that finished with an error.
+     */
+    private int failedItems;
+    
+    /**
+     * When the job was submitted.
+     */
+    private Instant createdAt;
+    
+    /**
+     * When the job last changed.
+     */
+    private Instant updatedAt;
+    
+    /**
+     * When the job reached a terminal state.
+     */
+    private Instant completedAt;
+}
@@ -0,0 +1,23 @@
+package com.deusexmachina.novel.ai.model;
+
+import lombok.Builder;
+import lombok.Data;
+import java.util.List;
+
+/**
+ * Request body for submitting a batch job.
+ */
+@Data
+@Builder
+public class BatchSubmitRequest {
+    
+    /**
+     * The generation requests to run.
+     */
+    private List<GenerationRequest> requests;
+    
+    /**
+     * Optional HTTPS URL to notify when the job finishes; its host must be on the callback allowlist.
+     */
+    private String callbackUrl;
+}
@@ -0,0 +1,27 @@
+package com.deusexmachina.novel.ai.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * A unit of batch work dispatched by the task queue: one item of a job, or the job's
+ * completion callback.
+ */
+@Data
+@Builder
+public class BatchTask {
+    
+    /**
+     * The job the task belongs to.
+     */
+    private String jobId;
+    
+    /**
+     * Index of the item to run, or null for the completion callback.
+     */
+    private Integer itemIndex;
+    
+    public boolean isCallback() {
+        return itemIndex == null;
+    }
+}
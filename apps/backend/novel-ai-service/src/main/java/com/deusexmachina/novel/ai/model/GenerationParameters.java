@@ -80,6 +80,14 @@ public class GenerationParameters {
     @Builder.Default
     private double presencePenalty = 0.3;
     
+    /**
+     * Whether a cached response may be returned: OFF, EXACT for identical deterministic
+     * requests, or SIMILAR to also accept near-duplicate requests.
+     * Default: OFF
+     */
+    @Builder.Default
+    private ResponseCacheMode responseCache = ResponseCacheMode.OFF;
+    
     public enum ModelPreference {
         /**
          * Use Gemini Flash for fastest response.
@@ -107,6 +115,23 @@ public class GenerationParameters {
         }
     }
     
+    public enum ResponseCacheMode {
+        /**
+         * Always generate.
+         */
+        OFF,
+        
+        /**
+         * Reuse the response to an identical request at temperature 0.
+         */
+        EXACT,
+        
+        /**
+         * Also reuse the response to a near-identical request with the same context and parameters.
+         */
+        SIMILAR
+    }
+    
     public enum SafetyLevel {
         /**
          * Block only high-severity harmful content.
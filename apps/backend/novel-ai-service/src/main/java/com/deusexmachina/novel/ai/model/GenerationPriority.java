@@ -0,0 +1,21 @@
+package com.deusexmachina.novel.ai.model;
+
+/**
+ * Scheduling class of a generation when upstream capacity is short, highest first.
+ */
+public enum GenerationPriority {
+    /**
+     * A user is watching tokens arrive.
+     */
+    INTERACTIVE_STREAM,
+    
+    /**
+     * A user is waiting for the whole response.
+     */
+    INTERACTIVE_SYNC,
+    
+    /**
+     * Nobody is waiting on this particular generation.
+     */
+    BATCH
+}
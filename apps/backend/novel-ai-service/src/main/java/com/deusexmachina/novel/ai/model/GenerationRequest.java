@@ -2,6 +2,8 @@ package com.deusexmachina.novel.ai.model;
 
 import lombok.Builder;
 import lombok.Data;
+import lombok.ToString;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
@@ -73,4 +75,55 @@ public class GenerationRequest {
      * User ID for authentication and quota tracking.
      */
     private String userId;
-}
\ No newline at end of file
+    
+    /**
+     * Client-chosen key identifying a logical request. Concurrent requests from the same user
+     * with the same key share one generation, so a retried or double-submitted request does
+     * not generate twice.
+     */
+    private String idempotencyKey;
+    
+    /**
+     * Scheduling class, set by the server; defaults to interactive sync.
+     */
+    private transient GenerationPriority priority;
+    
+    /**
+     * When the caller stops waiting, set by the server. Requests that cannot start in time are
+     * rejected instead of queued.
+     */
+    private transient Instant deadline;
+    
+    /**
+     * The caller's bearer token, set by the server and forwarded to the memory service.
+     */
+    @ToString.Exclude
+    private transient String authToken;
+    
+    /**
+     * A number from the metadata, such as chapterNumber or sceneNumber, or null if absent.
+     */
+    public Long metadataNumber(String key) {
+        Object value = metadata != null ? metadata.get(key) : null;
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof String text) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * The story position the request draws memory for: context, document, chapter and scene.
+     * Keys that stand in for the full prompt include it, so requests for different projects
+     * or scenes never share a result.
+     */
+    public String memoryScope() {
+        return contextId + "|" + documentId + "|" + metadataNumber("chapterNumber") + "|" + metadataNumber("sceneNumber");
+    }
+}
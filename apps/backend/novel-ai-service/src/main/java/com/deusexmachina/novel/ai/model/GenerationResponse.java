@@ -10,7 +10,7 @@ import java.util.Map;
  * Response from AI text generation.
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class GenerationResponse {
     
     /**
@@ -105,7 +105,7 @@ public class GenerationResponse {
     private double confidenceScore;
     
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     public static class GenerationMetrics {
         /**
          * Estimated cost in USD.
@@ -0,0 +1,34 @@
+package com.deusexmachina.novel.ai.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Gson adapter writing Instants as ISO-8601 strings. Gson cannot reflect into java.time
+ * classes on recent JDKs, so any Gson that handles responses with timestamps needs this.
+ */
+public class InstantTypeAdapter extends TypeAdapter<Instant> {
+    
+    @Override
+    public void write(JsonWriter out, Instant value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(value.toString());
+        }
+    }
+    
+    @Override
+    public Instant read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return Instant.parse(in.nextString());
+    }
+}
@@ -0,0 +1,76 @@
+package com.deusexmachina.novel.ai.prompt;
+
+import com.deusexmachina.novel.ai.tokenizer.TokenCounter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-process prefix registry: an LRU of prefix hashes per model with a TTL matching a
+ * writing session. It stands in for the provider's context cache and remembers each
+ * prefix's token count, so only the suffix is counted on later requests.
+ */
+public class LocalPrefixCache implements PrefixCache {
+    private final TokenCounter tokenCounter;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+    private long hits = 0;
+    private long misses = 0;
+    
+    public LocalPrefixCache(TokenCounter tokenCounter, int maxEntries, long ttlMillis) {
+        this.tokenCounter = tokenCounter;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > LocalPrefixCache.this.maxEntries;
+            }
+        };
+    }
+    
+    @Override
+    public CachedPrefix resolve(String modelName, PromptSegments segments) {
+        String key = modelName + ":" + segments.getPrefixHash();
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                // Sliding expiry: an active session keeps its prefix
+                entry.expiresAt = now + ttlMillis;
+                hits++;
+                return new CachedPrefix(segments.getPrefixHash(), modelName, entry.prefixTokens, true);
+            }
+            misses++;
+        }
+        
+        int prefixTokens = tokenCounter.countTokens(segments.getPrefix());
+        synchronized (entries) {
+            entries.put(key, new Entry(prefixTokens, now + ttlMillis));
+        }
+        return new CachedPrefix(segments.getPrefixHash(), modelName, prefixTokens, false);
+    }
+    
+    @Override
+    public Map<String, Object> getStats() {
+        synchronized (entries) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("entries", entries.size());
+            stats.put("maxEntries", maxEntries);
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            return stats;
+        }
+    }
+    
+    private static final class Entry {
+        private final int prefixTokens;
+        private long expiresAt;
+        
+        private Entry(int prefixTokens, long expiresAt) {
+            this.prefixTokens = prefixTokens;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
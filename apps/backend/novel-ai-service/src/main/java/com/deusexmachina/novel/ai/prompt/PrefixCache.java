@@ -0,0 +1,64 @@
+package com.deusexmachina.novel.ai.prompt;
+
+import java.util.Map;
+
+/**
+ * Registry of stable prompt prefixes per model. A provider-backed implementation registers
+ * each prefix with the model provider's context cache so requests can reference it instead
+ * of resending it; {@link LocalPrefixCache} keeps the bookkeeping in process.
+ */
+public interface PrefixCache {
+    
+    /**
+     * Look up the prefix of a prompt for a model, registering it on first sight.
+     * 
+     * @param modelName The model the prompt is for
+     * @param segments The assembled prompt
+     * @return The cached prefix entry
+     */
+    CachedPrefix resolve(String modelName, PromptSegments segments);
+    
+    /**
+     * Cache statistics for monitoring.
+     */
+    Map<String, Object> getStats();
+    
+    /**
+     * A registered prefix.
+     */
+    final class CachedPrefix {
+        private final String prefixHash;
+        private final String modelName;
+        private final int prefixTokens;
+        private final boolean hit;
+        
+        public CachedPrefix(String prefixHash, String modelName, int prefixTokens, boolean hit) {
+            this.prefixHash = prefixHash;
+            this.modelName = modelName;
+            this.prefixTokens = prefixTokens;
+            this.hit = hit;
+        }
+        
+        public String getPrefixHash() {
+            return prefixHash;
+        }
+        
+        public String getModelName() {
+            return modelName;
+        }
+        
+        /**
+         * Token count of the prefix, computed once at registration.
+         */
+        public int getPrefixTokens() {
+            return prefixTokens;
+        }
+        
+        /**
+         * Whether the prefix was already registered.
+         */
+        public boolean isHit() {
+            return hit;
+        }
+    }
+}
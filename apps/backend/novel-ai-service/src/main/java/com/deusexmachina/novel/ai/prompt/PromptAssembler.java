@@ -0,0 +1,218 @@
+package com.deusexmachina.novel.ai.prompt;
+
+import com.deusexmachina.novel.ai.memory.MemoryContext;
+import com.deusexmachina.novel.ai.model.CharacterContext;
+import com.deusexmachina.novel.ai.model.GenerationRequest;
+import com.deusexmachina.novel.ai.model.GenerationType;
+import com.deusexmachina.novel.ai.model.StyleGuide;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds generation prompts as stable prefix segments followed by a variable suffix.
+ * The rendered text is the same prompt the service has always sent; only the split is new.
+ */
+public class PromptAssembler {
+    
+    /**
+     * Split a request into prefix segments (system instructions, style guide, characters)
+     * and a suffix (previous context and the request line).
+     */
+    public PromptSegments assemble(GenerationRequest request) {
+        List<PromptSegments.Segment> segments = new ArrayList<>();
+        
+        // Add system instructions based on generation type
+        segments.add(new PromptSegments.Segment(PromptSegments.Kind.SYSTEM, getSystemInstructions(request) + "\n\n"));
+        
+        // Add style guide if present
+        if (request.getStyleGuide() != null) {
+            segments.add(new PromptSegments.Segment(PromptSegments.Kind.STYLE,
+                buildStyleInstructions(request.getStyleGuide()) + "\n\n"));
+        }
+        
+        // Add character context if present
+        if (request.getCharacters() != null && !request.getCharacters().isEmpty()) {
+            segments.add(new PromptSegments.Segment(PromptSegments.Kind.CHARACTERS,
+                buildCharacterContext(request.getCharacters()) + "\n\n"));
+        }
+        
+        StringBuilder context = new StringBuilder();
+        
+        // Add previous context if present
+        if (request.getPreviousContext() != null && !request.getPreviousContext().isEmpty()) {
+            context.append("Previous context:\n");
+            request.getPreviousContext().forEach(ctx -> context.append(ctx).append("\n"));
+            context.append("\n");
+        }
+        
+        // Add the main prompt
+        return new PromptSegments(segments, context.toString(), "Request: " + request.getPrompt());
+    }
+    
+    /**
+     * Add story memory to an assembled prompt. Memory goes at the start of the suffix, since
+     * it changes as the story does, and leaves the prefix untouched. Characters sent with the
+     * request take the place of the remembered ones.
+     * 
+     * @param segments The prompt without memory
+     * @param memory The retrieved memory, or null
+     * @param request The request the prompt was assembled from
+     */
+    public PromptSegments withMemory(PromptSegments segments, MemoryContext memory, GenerationRequest request) {
+        if (memory == null) {
+            return segments;
+        }
+        boolean requestHasCharacters = request.getCharacters() != null && !request.getCharacters().isEmpty();
+        String block = buildMemoryContext(memory, !requestHasCharacters);
+        if (block.isEmpty()) {
+            return segments;
+        }
+        return new PromptSegments(segments.getPrefixSegments(), block + "\n" + segments.getContext(),
+            segments.getRequestLine());
+    }
+    
+    private String getSystemInstructions(GenerationRequest request) {
+        String baseInstructions = String.format(
+            "You are an AI writing assistant helping to create a novel. " +
+            "Your task is to %s. " +
+            "Write in a style appropriate for %s fiction. " +
+            "Maintain consistency with the established narrative and characters.",
+            request.getGenerationType().getDescription(),
+            request.getStyleGuide() != null ? request.getStyleGuide().getGenre() : "general"
+        );
+        
+        // Add specific instructions for scene generation
+        if (request.getGenerationType() == GenerationType.SCENE) {
+            baseInstructions += "\n\nFor scene generation:\n" +
+                "- Create vivid, engaging narrative prose\n" +
+                "- Include dialogue, action, and description\n" +
+                "- Show character emotions and motivations\n" +
+                "- Use sensory details to bring the scene to life\n" +
+                "- Aim for 500-1000 words unless specified otherwise\n" +
+                "- Begin the scene with an engaging hook\n" +
+                "- End with a compelling transition or cliffhanger";
+        }
+        
+        return baseInstructions;
+    }
+    
+    private String buildStyleInstructions(StyleGuide style) {
+        return String.format(
+            "Style Guidelines:\n" +
+            "- Genre: %s\n" +
+            "- Point of View: %s\n" +
+            "- Tense: %s\n" +
+            "- Tone: %s\n" +
+            "- Pacing: %s\n" +
+            "- Description Level: %s\n" +
+            "%s",
+            style.getGenre(),
+            style.getPointOfView(),
+            style.getTense(),
+            style.getTone() != null ? style.getTone() : "appropriate to scene",
+            style.getPacing(),
+            style.getDescriptionLevel(),
+            style.getCustomInstructions() != null ? "Additional: " + style.getCustomInstructions() : ""
+        );
+    }
+    
+    private String buildCharacterContext(List<CharacterContext> characters) {
+        StringBuilder context = new StringBuilder("Characters in this scene:\n");
+        
+        for (CharacterContext character : characters) {
+            context.append(String.format(
+                "\n%s: %s\n" +
+                "- Personality: %s\n" +
+                "- Voice: %s\n" +
+                "- Current mood: %s\n",
+                character.getName(),
+                character.getDescription(),
+                character.getPersonality(),
+                character.getVoice(),
+                character.getCurrentMood()
+            ));
+        }
+        
+        return context.toString();
+    }
+    
+    private String buildMemoryContext(MemoryContext memory, boolean includeCharacters) {
+        StringBuilder context = new StringBuilder();
+        
+        if (memory.getCurrentLocation() != null) {
+            context.append("Location: ").append(memory.getCurrentLocation());
+            if (memory.getTimeOfDay() != null) {
+                context.append(", ").append(memory.getTimeOfDay());
+            }
+            if (memory.getWeather() != null) {
+                context.append(", ").append(memory.getWeather());
+            }
+            context.append("\n");
+        }
+        if (memory.getCurrentPlotPhase() != null) {
+            context.append("Plot phase: ").append(memory.getCurrentPlotPhase());
+            if (memory.getCurrentTensionLevel() != null) {
+                context.append(" (tension ").append(memory.getCurrentTensionLevel()).append("/10)");
+            }
+            context.append("\n");
+        }
+        
+        if (includeCharacters && memory.getActiveCharacters() != null && !memory.getActiveCharacters().isEmpty()) {
+            context.append("Characters:\n");
+            for (MemoryContext.CharacterState character : memory.getActiveCharacters()) {
+                context.append("- ").append(character.getName());
+                appendIfPresent(context, ": ", character.getCurrentState());
+                appendIfPresent(context, "; feeling ", character.getEmotionalState());
+                appendIfPresent(context, "; wants ", character.getCurrentObjective());
+                appendIfPresent(context, "; voice: ", character.getVoiceProfile());
+                if (character.getRecentActions() != null && !character.getRecentActions().isEmpty()) {
+                    context.append("; recently: ").append(String.join("; ", character.getRecentActions()));
+                }
+                context.append("\n");
+                if (character.getEarlierHistory() != null && !character.getEarlierHistory().isEmpty()) {
+                    context.append("  Earlier: ").append(String.join(" ", character.getEarlierHistory())).append("\n");
+                }
+            }
+        }
+        appendMap(context, "Relationships", memory.getCharacterRelationships());
+        appendList(context, "Related characters (not in scene)", memory.getRelatedCharacters());
+        
+        appendList(context, "Active plot threads", memory.getActiveThreads());
+        appendList(context, "Upcoming plot points", memory.getUpcomingPlotPoints());
+        appendList(context, "World facts", memory.getRelevantWorldFacts());
+        if (memory.getPreviousSceneSummary() != null && !memory.getPreviousSceneSummary().isEmpty()) {
+            context.append("Previous scene: ").append(memory.getPreviousSceneSummary()).append("\n");
+        }
+        appendList(context, "Recent events", memory.getRecentEvents());
+        appendList(context, "Recent dialogue", memory.getRecentDialogue());
+        appendList(context, "Must include", memory.getMustInclude());
+        appendList(context, "Must avoid", memory.getMustAvoid());
+        appendMap(context, "Consistency rules", memory.getConsistencyRules());
+        
+        return context.length() > 0 ? "Story memory:\n" + context : "";
+    }
+    
+    private static void appendIfPresent(StringBuilder context, String label, String value) {
+        if (value != null && !value.isEmpty()) {
+            context.append(label).append(value);
+        }
+    }
+    
+    private static void appendList(StringBuilder context, String title, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        context.append(title).append(":\n");
+        values.forEach(value -> context.append("- ").append(value).append("\n"));
+    }
+    
+    private static void appendMap(StringBuilder context, String title, Map<String, String> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        context.append(title).append(":\n");
+        values.forEach((key, value) -> context.append("- ").append(key).append(": ").append(value).append("\n"));
+    }
+}
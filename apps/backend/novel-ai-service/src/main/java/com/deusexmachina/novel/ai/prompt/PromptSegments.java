@@ -0,0 +1,107 @@
+package com.deusexmachina.novel.ai.prompt;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A prompt split into stable prefix segments and a variable suffix. The prefix holds the
+ * blocks that stay the same across a writing session (system instructions, style guide,
+ * characters) and comes first, so consecutive requests share it byte for byte.
+ */
+public class PromptSegments {
+    
+    public enum Kind {
+        SYSTEM,
+        STYLE,
+        CHARACTERS
+    }
+    
+    /**
+     * One stable block of the prompt, including its trailing separator.
+     */
+    public static final class Segment {
+        private final Kind kind;
+        private final String text;
+        
+        Segment(Kind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+        
+        public Kind getKind() {
+            return kind;
+        }
+        
+        public String getText() {
+            return text;
+        }
+    }
+    
+    private final List<Segment> prefixSegments;
+    private final String prefix;
+    private final String context;
+    private final String requestLine;
+    private final String suffix;
+    private final String prefixHash;
+    
+    PromptSegments(List<Segment> prefixSegments, String context, String requestLine) {
+        this.prefixSegments = Collections.unmodifiableList(new ArrayList<>(prefixSegments));
+        StringBuilder prefixText = new StringBuilder();
+        for (Segment segment : prefixSegments) {
+            prefixText.append(segment.getText());
+        }
+        this.prefix = prefixText.toString();
+        this.context = context;
+        this.requestLine = requestLine;
+        this.suffix = context + requestLine;
+        this.prefixHash = Hashing.murmur3_128().hashString(prefix, StandardCharsets.UTF_8).toString();
+    }
+    
+    public List<Segment> getPrefixSegments() {
+        return prefixSegments;
+    }
+    
+    /**
+     * The stable part of the prompt.
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+    
+    /**
+     * The part that changes from request to request: memory, previous context and the request
+     * itself.
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+    
+    /**
+     * The suffix without the request line: memory and previous context.
+     */
+    public String getContext() {
+        return context;
+    }
+    
+    String getRequestLine() {
+        return requestLine;
+    }
+    
+    /**
+     * Content hash of the prefix, identifying it across requests and instances.
+     */
+    public String getPrefixHash() {
+        return prefixHash;
+    }
+    
+    /**
+     * The full prompt text.
+     */
+    public String render() {
+        return prefix + suffix;
+    }
+}
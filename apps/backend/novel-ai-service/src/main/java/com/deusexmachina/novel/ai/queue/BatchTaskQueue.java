@@ -0,0 +1,44 @@
+package com.deusexmachina.novel.ai.queue;
+
+import java.util.List;
+
+/**
+ * Dispatches batch work outside the request that created it. Each task is delivered as a
+ * separate call to {@code BatchGenerationService}, retried until it succeeds, so no work
+ * depends on an instance staying up or keeping CPU between requests.
+ */
+public interface BatchTaskQueue {
+    
+    /**
+     * Queue one task per item. Queueing the same item twice delivers it once where the
+     * queue can tell, and the service skips items that already have a result.
+     *
+     * @param jobId The job
+     * @param itemIndexes Items to run
+     */
+    void enqueueItems(String jobId, List<Integer> itemIndexes);
+    
+    /**
+     * Queue delivery of the job's completion callback.
+     *
+     * @param jobId The job, which has reached a terminal status
+     */
+    void enqueueCallback(String jobId);
+    
+    /**
+     * Whether a bearer token on an incoming task request was issued for this queue's
+     * dispatches, as opposed to a user's token.
+     */
+    boolean isDispatchToken(String bearerToken);
+    
+    /**
+     * Exception thrown when a task cannot be queued.
+     */
+    class QueueException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        public QueueException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.deusexmachina.novel.ai.queue;
+
+import com.deusexmachina.novel.ai.model.BatchTask;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.auth.oauth2.TokenVerifier;
+import com.google.cloud.tasks.v2.CloudTasksClient;
+import com.google.cloud.tasks.v2.CreateTaskRequest;
+import com.google.cloud.tasks.v2.HttpMethod;
+import com.google.cloud.tasks.v2.HttpRequest;
+import com.google.cloud.tasks.v2.OidcToken;
+import com.google.cloud.tasks.v2.QueueName;
+import com.google.cloud.tasks.v2.Task;
+import com.google.cloud.tasks.v2.TaskName;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.protobuf.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * BatchTaskQueue on Cloud Tasks. Each task is a POST of a {@link BatchTask} to this service's
+ * task endpoint, carrying an OIDC token for a dedicated service account. The queue itself
+ * sets how many tasks run at once and how failed ones are retried.
+ *
+ * Task names are derived from the job and item, so Cloud Tasks refuses a second copy of a
+ * task instead of running it twice.
+ */
+public class CloudTasksBatchTaskQueue implements BatchTaskQueue {
+    private static final Logger logger = LoggerFactory.getLogger(CloudTasksBatchTaskQueue.class);
+    private static final String GOOGLE_ISSUER = "https://accounts.google.com";
+    
+    private final CloudTasksClient client;
+    private final String projectId;
+    private final String location;
+    private final String queue;
+    private final String taskUrl;
+    private final String serviceAccount;
+    private final Duration dispatchDeadline;
+    private final TokenVerifier tokenVerifier;
+    private final Gson gson = new Gson();
+    
+    /**
+     * @param projectId Project of the queue
+     * @param location Region of the queue
+     * @param queue Queue ID
+     * @param taskUrl Full URL of the task endpoint, also the OIDC audience
+     * @param serviceAccount Email of the account tasks are dispatched as
+     * @param dispatchDeadline How long a task may run before Cloud Tasks retries it
+     */
+    public CloudTasksBatchTaskQueue(String projectId, String location, String queue, String taskUrl,
+                                    String serviceAccount, Duration dispatchDeadline) {
+        this.projectId = projectId;
+        this.location = location;
+        this.queue = queue;
+        this.taskUrl = taskUrl;
+        this.serviceAccount = serviceAccount;
+        this.dispatchDeadline = dispatchDeadline;
+        this.tokenVerifier = TokenVerifier.newBuilder()
+            .setAudience(taskUrl)
+            .setIssuer(GOOGLE_ISSUER)
+            .build();
+        try {
+            this.client = CloudTasksClient.create();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create Cloud Tasks client", e);
+        }
+        logger.info("Batch tasks go to queue {} in {} as {}", queue, location, serviceAccount);
+    }
+    
+    @Override
+    public void enqueueItems(String jobId, List<Integer> itemIndexes) {
+        // Created concurrently, so a large batch does not hold the submit request for long
+        List<ApiFuture<Task>> created = new ArrayList<>();
+        for (int index : itemIndexes) {
+            created.add(client.createTaskCallable().futureCall(
+                createRequest(jobId + "-item-" + index, BatchTask.builder().jobId(jobId).itemIndex(index).build())));
+        }
+        for (ApiFuture<Task> task : created) {
+            await(task, jobId);
+        }
+    }
+    
+    @Override
+    public void enqueueCallback(String jobId) {
+        await(client.createTaskCallable().futureCall(
+            createRequest(jobId + "-callback", BatchTask.builder().jobId(jobId).build())), jobId);
+    }
+    
+    @Override
+    public boolean isDispatchToken(String bearerToken) {
+        if (bearerToken == null || bearerToken.isEmpty()) {
+            return false;
+        }
+        try {
+            JsonWebSignature token = tokenVerifier.verify(bearerToken);
+            return serviceAccount.equals(token.getPayload().get("email"))
+                && Boolean.TRUE.equals(token.getPayload().get("email_verified"));
+        } catch (TokenVerifier.VerificationException e) {
+            logger.debug("Rejected task token: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    private CreateTaskRequest createRequest(String taskId, BatchTask payload) {
+        // Names sharing a prefix crowd one part of the queue's index, so they start with a hash
+        String name = Hashing.murmur3_32_fixed().hashString(taskId, StandardCharsets.UTF_8) + "-" + taskId;
+        Task task = Task.newBuilder()
+            .setName(TaskName.of(projectId, location, queue, name).toString())
+            .setDispatchDeadline(com.google.protobuf.Duration.newBuilder().setSeconds(dispatchDeadline.getSeconds()))
+            .setHttpRequest(HttpRequest.newBuilder()
+                .setUrl(taskUrl)
+                .setHttpMethod(HttpMethod.POST)
+                .putHeaders("Content-Type", "application/json")
+                .setBody(ByteString.copyFromUtf8(gson.toJson(payload)))
+                .setOidcToken(OidcToken.newBuilder()
+                    .setServiceAccountEmail(serviceAccount)
+                    .setAudience(taskUrl)))
+            .build();
+        return CreateTaskRequest.newBuilder()
+            .setParent(QueueName.of(projectId, location, queue).toString())
+            .setTask(task)
+            .build();
+    }
+    
+    private static void await(ApiFuture<Task> task, String jobId) {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AlreadyExistsException) {
+                logger.debug("Task for batch job {} was already queued", jobId);
+                return;
+            }
+            throw new QueueException("Failed to queue task for batch job " + jobId, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueueException("Interrupted while queueing tasks for batch job " + jobId, e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.deusexmachina.novel.ai.queue;
+
+import com.deusexmachina.novel.ai.concurrency.AdaptiveConcurrencyLimiter;
+import com.deusexmachina.novel.ai.model.BatchTask;
+import com.deusexmachina.novel.ai.service.BatchGenerationService;
+import com.google.inject.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * BatchTaskQueue that runs tasks on threads of this instance, for local development. Tasks
+ * are lost on restart and need CPU between requests, which Cloud Functions does not give.
+ * Rejected items wait out Retry-After and run again; other failures are logged and dropped.
+ */
+public class LocalBatchTaskQueue implements BatchTaskQueue {
+    private static final Logger logger = LoggerFactory.getLogger(LocalBatchTaskQueue.class);
+    
+    private final Provider<BatchGenerationService> batchService; // The service also enqueues, hence the provider
+    private final Semaphore slots;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    
+    public LocalBatchTaskQueue(Provider<BatchGenerationService> batchService, int maxParallel) {
+        this.batchService = batchService;
+        this.slots = new Semaphore(maxParallel);
+    }
+    
+    @Override
+    public void enqueueItems(String jobId, List<Integer> itemIndexes) {
+        for (int index : itemIndexes) {
+            workers.submit(() -> run(BatchTask.builder().jobId(jobId).itemIndex(index).build()));
+        }
+    }
+    
+    @Override
+    public void enqueueCallback(String jobId) {
+        workers.submit(() -> run(BatchTask.builder().jobId(jobId).build()));
+    }
+    
+    @Override
+    public boolean isDispatchToken(String bearerToken) {
+        // Nothing is dispatched over HTTP
+        return false;
+    }
+    
+    private void run(BatchTask task) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            while (true) {
+                try {
+                    batchService.get().runTask(task);
+                    return;
+                } catch (AdaptiveConcurrencyLimiter.RejectedException e) {
+                    Thread.sleep(e.getRetryAfterMillis());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Batch task {} failed", task, e);
+        } finally {
+            slots.release();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.deusexmachina.novel.ai.repository;
+
+import com.deusexmachina.novel.ai.model.BatchItem;
+import com.deusexmachina.novel.ai.model.BatchJob;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Durable storage for batch jobs and their items, so a job outlives the instance running it.
+ * Methods block; callers run them on worker threads.
+ */
+public interface BatchJobRepository {
+    
+    /**
+     * Store a new job together with all of its items.
+     */
+    void create(BatchJob job, List<BatchItem> items);
+    
+    Optional<BatchJob> findJob(String jobId);
+    
+    /**
+     * Items in index order, with their responses.
+     */
+    List<BatchItem> findItems(String jobId, int offset, int limit);
+    
+    /**
+     * One item with its request.
+     */
+    Optional<BatchItem> findItem(String jobId, int index);
+    
+    /**
+     * Record a finished item and add it to the job's counters, unless it was recorded already,
+     * as happens when a task is delivered twice.
+     *
+     * @return false if the item was already recorded or does not exist
+     */
+    boolean completeItem(String jobId, BatchItem item);
+    
+    /**
+     * Move the job to a new status unless it already reached a terminal one.
+     *
+     * @return false if the job was already terminal or does not exist
+     */
+    boolean transition(String jobId, BatchJob.Status status);
+    
+    /**
+     * Exception thrown when the store cannot be reached.
+     */
+    class RepositoryException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        public RepositoryException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.deusexmachina.novel.ai.repository.impl;
+
+import com.deusexmachina.novel.ai.model.BatchItem;
+import com.deusexmachina.novel.ai.model.BatchJob;
+import com.deusexmachina.novel.ai.model.GenerationRequest;
+import com.deusexmachina.novel.ai.model.GenerationResponse;
+import com.deusexmachina.novel.ai.model.InstantTypeAdapter;
+import com.deusexmachina.novel.ai.repository.BatchJobRepository;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Firestore implementation of BatchJobRepository. A job is one document in
+ * "generationBatches" and each item a document in its "items" subcollection, with the
+ * request and response stored as JSON.
+ */
+@Singleton
+public class FirestoreBatchJobRepository implements BatchJobRepository {
+    private static final Logger logger = LoggerFactory.getLogger(FirestoreBatchJobRepository.class);
+    private static final String COLLECTION_NAME = "generationBatches";
+    private static final String ITEMS_COLLECTION = "items";
+    private static final int MAX_BATCH_WRITES = 500;
+    
+    private final Firestore firestore;
+    private final Gson gson = new GsonBuilder().registerTypeAdapter(Instant.class, new InstantTypeAdapter()).create();
+    
+    @Inject
+    public FirestoreBatchJobRepository(Firestore firestore) {
+        this.firestore = firestore;
+    }
+    
+    @Override
+    public void create(BatchJob job, List<BatchItem> items) {
+        execute(() -> {
+            DocumentReference jobRef = firestore.collection(COLLECTION_NAME).document(job.getJobId());
+            // The job document goes last so a job never becomes visible without its items
+            for (int start = 0; start < items.size(); start += MAX_BATCH_WRITES) {
+                WriteBatch batch = firestore.batch();
+                for (BatchItem item : items.subList(start, Math.min(items.size(), start + MAX_BATCH_WRITES))) {
+                    batch.set(itemRef(job.getJobId(), item.getIndex()), itemToMap(item));
+                }
+                batch.commit().get();
+            }
+            jobRef.set(jobToMap(job)).get();
+            return null;
+        });
+    }
+    
+    @Override
+    public Optional<BatchJob> findJob(String jobId) {
+        return execute(() -> {
+            DocumentSnapshot document = firestore.collection(COLLECTION_NAME).document(jobId).get().get();
+            return document.exists() ? Optional.of(documentToJob(document)) : Optional.<BatchJob>empty();
+        });
+    }
+    
+    @Override
+    public List<BatchItem> findItems(String jobId, int offset, int limit) {
+        return execute(() -> {
+            QuerySnapshot snapshot = items(jobId)
+                .orderBy("index")
+                .offset(offset)
+                .limit(limit)
+                .get()
+                .get();
+            List<BatchItem> items = new ArrayList<>();
+            for (DocumentSnapshot document : snapshot.getDocuments()) {
+                items.add(documentToItem(document, false));
+            }
+            return items;
+        });
+    }
+    
+    @Override
+    public Optional<BatchItem> findItem(String jobId, int index) {
+        return execute(() -> {
+            DocumentSnapshot document = itemRef(jobId, index).get().get();
+            return document.exists() ? Optional.of(documentToItem(document, true)) : Optional.<BatchItem>empty();
+        });
+    }
+    
+    @Override
+    public boolean completeItem(String jobId, BatchItem item) {
+        DocumentReference jobRef = firestore.collection(COLLECTION_NAME).document(jobId);
+        DocumentReference itemRef = itemRef(jobId, item.getIndex());
+        return execute(() -> firestore.runTransaction(transaction -> {
+            // Only the item is read, so items finishing together do not contend on the job document
+            DocumentSnapshot document = transaction.get(itemRef).get();
+            if (!document.exists() || !BatchItem.Status.PENDING.name().equals(document.getString("status"))) {
+                return false;
+            }
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("status", item.getStatus().name());
+            updates.put("response", item.getResponse() != null ? gson.toJson(item.getResponse()) : null);
+            updates.put("error", item.getError());
+            updates.put("updatedAt", FieldValue.serverTimestamp());
+            transaction.update(itemRef, updates);
+            
+            Map<String, Object> progress = new HashMap<>();
+            progress.put(item.getStatus() == BatchItem.Status.SUCCEEDED ? "succeededItems" : "failedItems",
+                FieldValue.increment(1));
+            progress.put("updatedAt", FieldValue.serverTimestamp());
+            transaction.update(jobRef, progress);
+            return true;
+        }).get());
+    }
+    
+    @Override
+    public boolean transition(String jobId, BatchJob.Status status) {
+        DocumentReference jobRef = firestore.collection(COLLECTION_NAME).document(jobId);
+        return execute(() -> firestore.runTransaction(transaction -> {
+            DocumentSnapshot document = transaction.get(jobRef).get();
+            if (!document.exists() || BatchJob.Status.valueOf(document.getString("status")).isTerminal()) {
+                return false;
+            }
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("status", status.name());
+            updates.put("updatedAt", FieldValue.serverTimestamp());
+            if (status.isTerminal()) {
+                updates.put("completedAt", FieldValue.serverTimestamp());
+            }
+            transaction.update(jobRef, updates);
+            return true;
+        }).get());
+    }
+    
+    private CollectionReference items(String jobId) {
+        return firestore.collection(COLLECTION_NAME).document(jobId).collection(ITEMS_COLLECTION);
+    }
+    
+    private DocumentReference itemRef(String jobId, int index) {
+        // Zero-padded so document IDs sort like indexes
+        return items(jobId).document(String.format("%06d", index));
+    }
+    
+    private Map<String, Object> jobToMap(BatchJob job) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("jobId", job.getJobId());
+        data.put("userId", job.getUserId());
+        data.put("status", job.getStatus().name());
+        data.put("callbackUrl", job.getCallbackUrl());
+        data.put("totalItems", job.getTotalItems());
+        data.put("succeededItems", job.getSucceededItems());
+        data.put("failedItems", job.getFailedItems());
+        data.put("createdAt", FieldValue.serverTimestamp());
+        data.put("updatedAt", FieldValue.serverTimestamp());
+        return data;
+    }
+    
+    private Map<String, Object> itemToMap(BatchItem item) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("index", item.getIndex());
+        data.put("status", item.getStatus().name());
+        data.put("request", gson.toJson(item.getRequest()));
+        data.put("updatedAt", FieldValue.serverTimestamp());
+        return data;
+    }
+    
+    private BatchJob documentToJob(DocumentSnapshot document) {
+        return BatchJob.builder()
+            .jobId(document.getId())
+            .userId(document.getString("userId"))
+            .status(BatchJob.Status.valueOf(document.getString("status")))
+            .callbackUrl(document.getString("callbackUrl"))
+            .totalItems(intField(document, "totalItems"))
+            .succeededItems(intField(document, "succeededItems"))
+            .failedItems(intField(document, "failedItems"))
+            .createdAt(instantField(document, "createdAt"))
+            .updatedAt(instantField(document, "updatedAt"))
+            .completedAt(instantField(document, "completedAt"))
+            .build();
+    }
+    
+    private BatchItem documentToItem(DocumentSnapshot document, boolean withRequest) {
+        String response = document.getString("response");
+        return BatchItem.builder()
+            .index(intField(document, "index"))
+            .status(BatchItem.Status.valueOf(document.getString("status")))
+            .request(withRequest ? gson.fromJson(document.getString("request"), GenerationRequest.class) : null)
+            .response(response != null ? gson.fromJson(response, GenerationResponse.class) : null)
+            .error(document.getString("error"))
+            .build();
+    }
+    
+    private static int intField(DocumentSnapshot document, String field) {
+        Long value = document.getLong(field);
+        return value != null ? value.intValue() : 0;
+    }
+    
+    private static Instant instantField(DocumentSnapshot document, String field) {
+        Timestamp value = document.getTimestamp(field);
+        return value != null ? value.toDate().toInstant() : null;
+    }
+    
+    private <T> T execute(Callable<T> operation) {
+        try {
+            return operation.call();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while accessing batch jobs", e);
+        } catch (ExecutionException e) {
+            logger.error("Firestore operation failed", e.getCause());
+            throw new RepositoryException("Firestore operation failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RepositoryException("Firestore operation failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.deusexmachina.novel.ai.repository.impl;
+
+import com.deusexmachina.novel.ai.model.BatchItem;
+import com.deusexmachina.novel.ai.model.BatchJob;
+import com.deusexmachina.novel.ai.repository.BatchJobRepository;
+import com.google.inject.Singleton;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory implementation of BatchJobRepository for local development. Jobs do not survive
+ * a restart.
+ */
+@Singleton
+public class InMemoryBatchJobRepository implements BatchJobRepository {
+    private final Map<String, StoredJob> jobs = new HashMap<>();
+    
+    private static final class StoredJob {
+        private BatchJob job;
+        private final List<BatchItem> items;
+        
+        private StoredJob(BatchJob job, List<BatchItem> items) {
+            this.job = job;
+            this.items = items;
+        }
+    }
+    
+    @Override
+    public synchronized void create(BatchJob job, List<BatchItem> items) {
+        List<BatchItem> copies = new ArrayList<>();
+        for (BatchItem item : items) {
+            copies.add(item.toBuilder().build());
+        }
+        Instant now = Instant.now();
+        jobs.put(job.getJobId(), new StoredJob(job.toBuilder().createdAt(now).updatedAt(now).build(), copies));
+    }
+    
+    @Override
+    public synchronized Optional<BatchJob> findJob(String jobId) {
+        StoredJob stored = jobs.get(jobId);
+        return stored != null ? Optional.of(stored.job.toBuilder().build()) : Optional.empty();
+    }
+    
+    @Override
+    public synchronized List<BatchItem> findItems(String jobId, int offset, int limit) {
+        StoredJob stored = jobs.get(jobId);
+        List<BatchItem> items = new ArrayList<>();
+        if (stored != null) {
+            for (int i = offset; i < Math.min(stored.items.size(), offset + limit); i++) {
+                items.add(stored.items.get(i).toBuilder().request(null).build());
+            }
+        }
+        return items;
+    }
+    
+    @Override
+    public synchronized Optional<BatchItem> findItem(String jobId, int index) {
+        StoredJob stored = jobs.get(jobId);
+        if (stored == null || index < 0 || index >= stored.items.size()) {
+            return Optional.empty();
+        }
+        return Optional.of(stored.items.get(index).toBuilder().build());
+    }
+    
+    @Override
+    public synchronized boolean completeItem(String jobId, BatchItem item) {
+        StoredJob stored = jobs.get(jobId);
+        if (stored == null || item.getIndex() < 0 || item.getIndex() >= stored.items.size()) {
+            return false;
+        }
+        BatchItem current = stored.items.get(item.getIndex());
+        if (current.getStatus() != BatchItem.Status.PENDING) {
+            return false;
+        }
+        stored.items.set(item.getIndex(), current.toBuilder()
+            .status(item.getStatus())
+            .response(item.getResponse())
+            .error(item.getError())
+            .build());
+        boolean succeeded = item.getStatus() == BatchItem.Status.SUCCEEDED;
+        stored.job = stored.job.toBuilder()
+            .succeededItems(stored.job.getSucceededItems() + (succeeded ? 1 : 0))
+            .failedItems(stored.job.getFailedItems() + (succeeded ? 0 : 1))
+            .updatedAt(Instant.now())
+            .build();
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean transition(String jobId, BatchJob.Status status) {
+        StoredJob stored = jobs.get(jobId);
+        if (stored == null || stored.job.getStatus().isTerminal()) {
+            return false;
+        }
+        Instant now = Instant.now();
+        stored.job = stored.job.toBuilder()
+            .status(status)
+            .updatedAt(now)
+            .completedAt(status.isTerminal() ? now : null)
+            .build();
+        return true;
+    }
+}
@@ -0,0 +1,72 @@
+package com.deusexmachina.novel.ai.resilience;
+
+import com.google.api.gax.rpc.ApiException;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sorts failed model calls into what a caller should do about them.
+ */
+public final class FailureClassifier {
+    
+    public enum Kind {
+        /**
+         * The provider is over quota (HTTP 429 / RESOURCE_EXHAUSTED). Retry after a longer backoff.
+         */
+        RATE_LIMITED(true),
+        
+        /**
+         * A transient server or network failure. Retry.
+         */
+        TRANSIENT(true),
+        
+        /**
+         * The call ran out of time. Retry if the request deadline allows.
+         */
+        TIMEOUT(true),
+        
+        /**
+         * The request itself is at fault or was cancelled. Retrying gives the same answer.
+         */
+        PERMANENT(false);
+        
+        private final boolean retryable;
+        
+        Kind(boolean retryable) {
+            this.retryable = retryable;
+        }
+        
+        public boolean isRetryable() {
+            return retryable;
+        }
+    }
+    
+    private FailureClassifier() {
+    }
+    
+    /**
+     * Classify by the first cause that carries a status; anything unrecognized is permanent.
+     */
+    public static Kind classify(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException) {
+                return Kind.TIMEOUT;
+            }
+            if (cause instanceof ApiException apiException) {
+                switch (apiException.getStatusCode().getCode()) {
+                    case RESOURCE_EXHAUSTED:
+                        return Kind.RATE_LIMITED;
+                    case UNAVAILABLE:
+                    case INTERNAL:
+                    case ABORTED:
+                        return Kind.TRANSIENT;
+                    case DEADLINE_EXCEEDED:
+                        return Kind.TIMEOUT;
+                    default:
+                        return Kind.PERMANENT;
+                }
+            }
+        }
+        return Kind.PERMANENT;
+    }
+}
@@ -0,0 +1,49 @@
+package com.deusexmachina.novel.ai.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the most recent successful calls, for percentile estimates.
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private final int minSamples;
+    private int next = 0;
+    private int count = 0;
+    
+    /**
+     * @param windowSize Number of recent calls kept
+     * @param minSamples Calls needed before percentiles are reported
+     */
+    public LatencyTracker(int windowSize, int minSamples) {
+        this.samples = new long[windowSize];
+        this.minSamples = minSamples;
+    }
+    
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+    
+    /**
+     * The given percentile of the window in nanoseconds, or -1 until enough calls were seen.
+     *
+     * @param percentile Between 0 and 1, e.g. 0.95
+     */
+    public long percentile(double percentile) {
+        long[] window;
+        synchronized (this) {
+            if (count < minSamples) {
+                return -1;
+            }
+            window = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(window);
+        return window[Math.min(window.length - 1, (int) Math.ceil(percentile * window.length) - 1)];
+    }
+    
+    public synchronized int size() {
+        return count;
+    }
+}
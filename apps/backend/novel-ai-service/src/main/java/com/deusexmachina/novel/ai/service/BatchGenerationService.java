@@ -0,0 +1,67 @@
+package com.deusexmachina.novel.ai.service;
+
+import com.deusexmachina.novel.ai.model.BatchItem;
+import com.deusexmachina.novel.ai.model.BatchJob;
+import com.deusexmachina.novel.ai.model.BatchTask;
+import com.deusexmachina.novel.ai.model.GenerationRequest;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Service interface for background batch generation.
+ */
+public interface BatchGenerationService {
+    
+    /**
+     * Store a batch of requests and queue a task for each of them.
+     * 
+     * @param userId The user submitting the job
+     * @param requests The generation requests, already validated
+     * @param callbackUrl Optional HTTPS URL on an allowed host to notify when the job finishes
+     * @return The queued job
+     * @throws IllegalArgumentException if the batch is empty, too large or the callback URL is not allowed
+     */
+    BatchJob submit(String userId, List<GenerationRequest> requests, String callbackUrl);
+    
+    /**
+     * Get a job with its progress counters.
+     * 
+     * @param userId The user asking; other users' jobs are not found
+     * @param jobId The job ID
+     * @return The job, or empty if it does not exist or belongs to someone else
+     */
+    Optional<BatchJob> getJob(String userId, String jobId);
+    
+    /**
+     * Get a page of a job's items with their results.
+     * 
+     * @param userId The user asking
+     * @param jobId The job ID
+     * @param offset Index of the first item
+     * @param limit Maximum number of items
+     * @return The items, empty if the job is not the user's
+     */
+    List<BatchItem> getResults(String userId, String jobId, int offset, int limit);
+    
+    /**
+     * Cancel a job. Items already finished keep their results.
+     * 
+     * @param userId The user asking
+     * @param jobId The job ID
+     * @return true if the job was cancelled, false if it had already finished
+     */
+    boolean cancel(String userId, String jobId);
+    
+    /**
+     * Run one task delivered by the task queue: generate one item, or send the job's callback.
+     * Items of finished jobs and items that already have a result are skipped, so a task may
+     * safely be delivered more than once.
+     * 
+     * @param task The task
+     * @throws com.deusexmachina.novel.ai.concurrency.AdaptiveConcurrencyLimiter.RejectedException
+     *         if there is no room for the item now; the queue should deliver it again later
+     * @throws RuntimeException if the task failed and should be retried
+     */
+    void runTask(BatchTask task);
+}
@@ -2,6 +2,7 @@ package com.deusexmachina.novel.ai.service;
 
 import com.deusexmachina.novel.ai.model.GenerationRequest;
 import com.deusexmachina.novel.ai.model.GenerationResponse;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -28,6 +29,7 @@ public interface GenerationService {
     
     /**
      * Stream text generation for real-time output.
+     * Cancelling the returned future cancels the upstream model stream.
      * 
      * @param request The generation request
      * @param callback Callback for each generated chunk
@@ -51,12 +53,26 @@ public interface GenerationService {
      */
     int countTokens(String text);
     
+    /**
+     * Counters of the service's caches and token counting, for the metrics endpoint.
+     * 
+     * @return Stats by component
+     */
+    Map<String, Object> getStats();
+    
     /**
      * Callback interface for streaming responses.
      */
     interface StreamCallback {
         void onChunk(String chunk);
-        void onComplete();
+        
+        /**
+         * Called once the stream has finished.
+         * 
+         * @param summary Token counts, timings and metrics for the generation, without the text
+         */
+        void onComplete(GenerationResponse summary);
+        
         void onError(Throwable error);
     }
     
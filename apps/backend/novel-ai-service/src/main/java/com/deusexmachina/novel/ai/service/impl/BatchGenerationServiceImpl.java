@@ -0,0 +1,306 @@
+package com.deusexmachina.novel.ai.service.impl;
+
+import com.deusexmachina.novel.ai.concurrency.AdaptiveConcurrencyLimiter;
+import com.deusexmachina.novel.ai.model.BatchItem;
+import com.deusexmachina.novel.ai.model.BatchJob;
+import com.deusexmachina.novel.ai.model.BatchTask;
+import com.deusexmachina.novel.ai.model.GenerationPriority;
+import com.deusexmachina.novel.ai.model.GenerationRequest;
+import com.deusexmachina.novel.ai.model.InstantTypeAdapter;
+import com.deusexmachina.novel.ai.queue.BatchTaskQueue;
+import com.deusexmachina.novel.ai.repository.BatchJobRepository;
+import com.deusexmachina.novel.ai.service.BatchGenerationService;
+import com.deusexmachina.novel.ai.service.GenerationService;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Runs batch jobs one item per task at batch priority.
+ *
+ * Submitting a job stores it and queues a task per item; each task generates its item within
+ * the request that delivers it, so nothing runs between requests and no instance has to stay
+ * up for a job to finish. The queue retries failed deliveries, including items the concurrency
+ * limiter turned away, and bounds how many items run at once. The task that records the last
+ * item completes the job and queues its callback.
+ *
+ * Callbacks only go to hosts listed in BATCH_CALLBACK_HOSTS, and each body is signed with
+ * BATCH_CALLBACK_SECRET: the X-Batch-Signature header holds "sha256=" and the hex HMAC-SHA256
+ * of the X-Batch-Timestamp value, a ".", and the body.
+ */
+@Singleton
+public class BatchGenerationServiceImpl implements BatchGenerationService {
+    private static final Logger logger = LoggerFactory.getLogger(BatchGenerationServiceImpl.class);
+    
+    private final GenerationService generationService;
+    private final BatchJobRepository repository;
+    private final BatchTaskQueue taskQueue;
+    private final int maxItems;
+    private final Duration itemTimeout;
+    private final List<String> callbackHosts;
+    private final String callbackSecret;
+    // Redirects are not followed, so a callback cannot be bounced past the host allowlist
+    private final HttpClient httpClient = HttpClient.newBuilder()
+        .connectTimeout(Duration.ofSeconds(10))
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .build();
+    private final Gson gson = new GsonBuilder().registerTypeAdapter(Instant.class, new InstantTypeAdapter()).create();
+    
+    @Inject
+    public BatchGenerationServiceImpl(GenerationService generationService, BatchJobRepository repository,
+                                      BatchTaskQueue taskQueue) {
+        this.generationService = generationService;
+        this.repository = repository;
+        this.taskQueue = taskQueue;
+        this.maxItems = Integer.parseInt(envOrDefault("BATCH_MAX_ITEMS", "500"));
+        // Must finish within the task's dispatch deadline and the function timeout
+        this.itemTimeout = Duration.ofSeconds(Long.parseLong(envOrDefault("BATCH_ITEM_TIMEOUT_SECONDS", "240")));
+        this.callbackHosts = new ArrayList<>();
+        for (String host : envOrDefault("BATCH_CALLBACK_HOSTS", "").split(",")) {
+            if (!host.isBlank()) {
+                callbackHosts.add(host.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        this.callbackSecret = System.getenv("BATCH_CALLBACK_SECRET");
+        if (!callbackHosts.isEmpty() && (callbackSecret == null || callbackSecret.isEmpty())) {
+            logger.warn("BATCH_CALLBACK_HOSTS is set without BATCH_CALLBACK_SECRET; callbacks stay disabled");
+        }
+    }
+    
+    @Override
+    public BatchJob submit(String userId, List<GenerationRequest> requests, String callbackUrl) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("A batch needs at least one request");
+        }
+        if (requests.size() > maxItems) {
+            throw new IllegalArgumentException("A batch can have at most " + maxItems + " requests");
+        }
+        if (callbackUrl != null) {
+            callbackUri(callbackUrl);
+        }
+        
+        List<BatchItem> items = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            items.add(BatchItem.builder()
+                .index(i)
+                .status(BatchItem.Status.PENDING)
+                .request(requests.get(i))
+                .build());
+            indexes.add(i);
+        }
+        BatchJob job = BatchJob.builder()
+            .jobId(UUID.randomUUID().toString())
+            .userId(userId)
+            .status(BatchJob.Status.QUEUED)
+            .callbackUrl(callbackUrl)
+            .totalItems(items.size())
+            .createdAt(Instant.now())
+            .build();
+        repository.create(job, items);
+        
+        try {
+            taskQueue.enqueueItems(job.getJobId(), indexes);
+        } catch (RuntimeException e) {
+            // Tasks that did get queued find the job cancelled and do nothing
+            repository.transition(job.getJobId(), BatchJob.Status.CANCELLED);
+            throw e;
+        }
+        logger.info("Queued batch job {} with {} items for user {}", job.getJobId(), items.size(), userId);
+        return job;
+    }
+    
+    @Override
+    public Optional<BatchJob> getJob(String userId, String jobId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        return repository.findJob(jobId).filter(job -> userId.equals(job.getUserId()));
+    }
+    
+    @Override
+    public List<BatchItem> getResults(String userId, String jobId, int offset, int limit) {
+        if (getJob(userId, jobId).isEmpty()) {
+            return List.of();
+        }
+        return repository.findItems(jobId, offset, limit);
+    }
+    
+    @Override
+    public boolean cancel(String userId, String jobId) {
+        Optional<BatchJob> job = getJob(userId, jobId);
+        if (job.isEmpty() || !repository.transition(jobId, BatchJob.Status.CANCELLED)) {
+            return false;
+        }
+        // Items already generating finish and are recorded; the rest are skipped when delivered
+        logger.info("Cancelled batch job {}", jobId);
+        if (job.get().getCallbackUrl() != null) {
+            taskQueue.enqueueCallback(jobId);
+        }
+        return true;
+    }
+    
+    @Override
+    public void runTask(BatchTask task) {
+        BatchJob job = repository.findJob(task.getJobId()).orElse(null);
+        if (job == null) {
+            logger.warn("Dropping task for unknown batch job {}", task.getJobId());
+            return;
+        }
+        if (task.isCallback()) {
+            sendCallback(job);
+            return;
+        }
+        if (job.getStatus().isTerminal()) {
+            logger.debug("Skipping item {} of batch job {}: job is {}", task.getItemIndex(), job.getJobId(), job.getStatus());
+            return;
+        }
+        BatchItem item = repository.findItem(job.getJobId(), task.getItemIndex()).orElse(null);
+        if (item == null || item.getStatus() != BatchItem.Status.PENDING) {
+            // Delivered again after it was recorded
+            return;
+        }
+        if (job.getStatus() == BatchJob.Status.QUEUED) {
+            repository.transition(job.getJobId(), BatchJob.Status.RUNNING);
+        }
+        
+        runItem(job, item);
+        if (!repository.completeItem(job.getJobId(), item)) {
+            return;
+        }
+        BatchJob progress = repository.findJob(job.getJobId()).orElse(job);
+        if (progress.getSucceededItems() + progress.getFailedItems() >= progress.getTotalItems()
+                && repository.transition(job.getJobId(), BatchJob.Status.COMPLETED)) {
+            logger.info("Batch job {} completed: {} succeeded, {} failed",
+                job.getJobId(), progress.getSucceededItems(), progress.getFailedItems());
+            if (job.getCallbackUrl() != null) {
+                taskQueue.enqueueCallback(job.getJobId());
+            }
+        }
+    }
+    
+    /**
+     * Generate one item, recording the outcome on it. A rejection by the concurrency limiter
+     * is thrown so the queue delivers the item again later.
+     */
+    private void runItem(BatchJob job, BatchItem item) {
+        GenerationRequest request = item.getRequest();
+        request.setUserId(job.getUserId());
+        request.setPriority(GenerationPriority.BATCH);
+        request.setDeadline(Instant.now().plus(itemTimeout));
+        try {
+            item.setResponse(generationService.generateTextSync(request));
+            item.setStatus(BatchItem.Status.SUCCEEDED);
+        } catch (AdaptiveConcurrencyLimiter.RejectedException e) {
+            throw e;
+        } catch (GenerationService.GenerationException | RuntimeException e) {
+            logger.warn("Batch job {} item {} failed: {}", job.getJobId(), item.getIndex(), e.getMessage());
+            item.setStatus(BatchItem.Status.FAILED);
+            item.setError(e.getMessage());
+        }
+    }
+    
+    /**
+     * POST the signed job summary to the job's callback URL. Throws if the receiver does not
+     * accept it, so the queue retries the delivery.
+     */
+    private void sendCallback(BatchJob job) {
+        if (job.getCallbackUrl() == null) {
+            return;
+        }
+        URI uri;
+        try {
+            uri = callbackUri(job.getCallbackUrl());
+        } catch (IllegalArgumentException e) {
+            // Allowed at submit time but not any more; retrying will not change that
+            logger.warn("Not sending callback for batch job {}: {}", job.getJobId(), e.getMessage());
+            return;
+        }
+        
+        String body = gson.toJson(job);
+        String timestamp = String.valueOf(Instant.now().getEpochSecond());
+        String signature = Hashing.hmacSha256(callbackSecret.getBytes(StandardCharsets.UTF_8))
+            .hashString(timestamp + "." + body, StandardCharsets.UTF_8)
+            .toString();
+        HttpRequest callback = HttpRequest.newBuilder(uri)
+            .timeout(Duration.ofSeconds(10))
+            .header("Content-Type", "application/json")
+            .header("X-Batch-Timestamp", timestamp)
+            .header("X-Batch-Signature", "sha256=" + signature)
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        try {
+            HttpResponse<Void> response = httpClient.send(callback, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                throw new IllegalStateException("Callback for batch job " + job.getJobId() + " returned " + response.statusCode());
+            }
+            logger.info("Sent callback for batch job {}", job.getJobId());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Callback for batch job " + job.getJobId() + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sending callback for batch job " + job.getJobId(), e);
+        }
+    }
+    
+    /**
+     * Parse a callback URL, checking it is https on an allowed host.
+     *
+     * @throws IllegalArgumentException if callbacks are disabled or the URL is not allowed
+     */
+    private URI callbackUri(String callbackUrl) {
+        if (callbackHosts.isEmpty() || callbackSecret == null || callbackSecret.isEmpty()) {
+            throw new IllegalArgumentException("Callbacks are not enabled");
+        }
+        URI uri;
+        try {
+            uri = new URI(callbackUrl);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid callback URL");
+        }
+        if (!"https".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null || uri.getRawUserInfo() != null) {
+            throw new IllegalArgumentException("Callback URL must be an https URL without credentials");
+        }
+        if (!isAllowedHost(uri.getHost().toLowerCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("Callback host is not allowed: " + uri.getHost());
+        }
+        return uri;
+    }
+    
+    /**
+     * Whether a host is on the allowlist, either exactly or under a "*.example.com" entry.
+     */
+    private boolean isAllowedHost(String host) {
+        for (String allowed : callbackHosts) {
+            if (allowed.startsWith("*.") ? host.endsWith(allowed.substring(1)) : host.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String envOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
+}
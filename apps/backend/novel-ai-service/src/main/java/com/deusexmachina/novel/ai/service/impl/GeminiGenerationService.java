@@ -1,21 +1,51 @@
 package com.deusexmachina.novel.ai.service.impl;
 
+import com.deusexmachina.novel.ai.cache.ResponseCache;
+import com.deusexmachina.novel.ai.concurrency.AdaptiveConcurrencyLimiter;
+import com.deusexmachina.novel.ai.concurrency.SingleFlight;
+import com.deusexmachina.novel.ai.memory.MemoryClient;
+import com.deusexmachina.novel.ai.memory.MemoryContext;
 import com.deusexmachina.novel.ai.model.*;
+import com.deusexmachina.novel.ai.prompt.LocalPrefixCache;
+import com.deusexmachina.novel.ai.prompt.PrefixCache;
+import com.deusexmachina.novel.ai.prompt.PromptAssembler;
+import com.deusexmachina.novel.ai.prompt.PromptSegments;
+import com.deusexmachina.novel.ai.resilience.FailureClassifier;
+import com.deusexmachina.novel.ai.resilience.ResilientExecutor;
 import com.deusexmachina.novel.ai.service.GenerationService;
+import com.deusexmachina.novel.ai.tokenizer.CachingTokenCounter;
+import com.deusexmachina.novel.ai.tokenizer.CalibratedTokenEstimator;
+import com.deusexmachina.novel.ai.tokenizer.TokenCounter;
+import com.deusexmachina.novel.ai.tokenizer.VertexTokenCounter;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ServerStream;
 import com.google.cloud.vertexai.VertexAI;
 import com.google.cloud.vertexai.api.*;
-import com.google.cloud.vertexai.generativeai.ContentMaker;
 import com.google.cloud.vertexai.generativeai.GenerativeModel;
 import com.google.cloud.vertexai.generativeai.ResponseHandler;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -24,13 +54,32 @@ import java.util.stream.Collectors;
 @Singleton
 public class GeminiGenerationService implements GenerationService {
     private static final Logger logger = LoggerFactory.getLogger(GeminiGenerationService.class);
+    private static final int LONG_GENERATION_TOKENS = 2048;
     
     private final VertexAI vertexAI;
     private final String projectId;
     private final String location;
+    private final ModelHandleCache modelHandles;
+    private final CalibratedTokenEstimator estimator;
+    private final TokenCounter tokenCounter;
+    private final PromptAssembler promptAssembler = new PromptAssembler();
+    private final PrefixCache prefixCache;
+    private final ResponseCache responseCache;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ResilientExecutor resilience;
+    private final MemoryClient memoryClient;
+    private final int memoryTokenBudget;
+    private final long memoryTimeoutMillis;
+    private final Duration defaultDeadline;
+    private final SingleFlight<String, GenerationResponse> inFlight = new SingleFlight<>();
+    private final ExecutorService generationExecutor = Executors.newVirtualThreadPerTaskExecutor();
     
     @Inject
-    public GeminiGenerationService() {
+    public GeminiGenerationService(AdaptiveConcurrencyLimiter limiter, ResilientExecutor resilience,
+                                   MemoryClient memoryClient) {
+        this.limiter = limiter;
+        this.resilience = resilience;
+        this.memoryClient = memoryClient;
         this.projectId = System.getenv("GCP_PROJECT_ID");
         this.location = System.getenv("GCP_REGION") != null ? System.getenv("GCP_REGION") : "us-central1";
         
@@ -42,18 +91,85 @@ public class GeminiGenerationService implements GenerationService {
         
         // Initialize Vertex AI
         this.vertexAI = new VertexAI(projectId, location);
+        this.modelHandles = new ModelHandleCache(vertexAI, projectId, location,
+            Integer.parseInt(envOrDefault("MODEL_CACHE_MAX_ENTRIES", "32")));
+        if (Boolean.parseBoolean(envOrDefault("MODEL_CACHE_WARM", "true"))) {
+            modelHandles.warm();
+        }
+        
+        // Exact counts for callers who ask; generation itself uses the provider's usage counts
+        this.estimator = new CalibratedTokenEstimator();
+        if ("estimate".equals(envOrDefault("TOKEN_COUNTER", "vertex"))) {
+            this.tokenCounter = estimator;
+        } else {
+            GenerativeModel countingModel = modelHandles.get(
+                GenerationParameters.ModelPreference.BALANCED.getModelName(), GenerationParameters.builder().build()).getModel();
+            this.tokenCounter = new CachingTokenCounter(new VertexTokenCounter(countingModel, estimator),
+                Integer.parseInt(envOrDefault("TOKEN_CACHE_MAX_ENTRIES", "4096")), 1);
+        }
+        this.prefixCache = new LocalPrefixCache(estimator,
+            Integer.parseInt(envOrDefault("PROMPT_PREFIX_CACHE_MAX_ENTRIES", "1024")),
+            TimeUnit.MINUTES.toMillis(Long.parseLong(envOrDefault("PROMPT_PREFIX_TTL_MINUTES", "60"))));
+        this.responseCache = new ResponseCache(
+            Integer.parseInt(envOrDefault("RESPONSE_CACHE_MAX_ENTRIES", "2000")),
+            TimeUnit.MINUTES.toMillis(Long.parseLong(envOrDefault("RESPONSE_CACHE_TTL_MINUTES", "30"))),
+            Double.parseDouble(envOrDefault("RESPONSE_CACHE_SIMILARITY", "0.95")));
+        this.memoryTokenBudget = Integer.parseInt(envOrDefault("MEMORY_TOKEN_BUDGET", "2000"));
+        this.memoryTimeoutMillis = Long.parseLong(envOrDefault("MEMORY_TIMEOUT_MS", "1500"));
+        this.defaultDeadline = Duration.ofSeconds(Long.parseLong(envOrDefault("GENERATION_DEADLINE_SECONDS", "120")));
         logger.info("Initialized Gemini Generation Service for project: {} in location: {}", projectId, location);
     }
     
     @Override
     public CompletableFuture<GenerationResponse> generateText(GenerationRequest request) {
-        return CompletableFuture.supplyAsync(() -> {
+        // Identical concurrent requests share one upstream call
+        return inFlight.execute(coalescingKey(request), () -> submitGeneration(request));
+    }
+    
+    /**
+     * Run a generation on its own thread. Cancelling the returned future interrupts that
+     * thread, which cancels the request upstream or takes it out of the limiter queue.
+     */
+    private CompletableFuture<GenerationResponse> submitGeneration(GenerationRequest request) {
+        CompletableFuture<GenerationResponse> result = new CompletableFuture<>();
+        Future<?> task = generationExecutor.submit(() -> {
             try {
-                return generateTextSync(request);
+                result.complete(generateTextSync(request));
             } catch (GenerationException e) {
-                throw new RuntimeException(e);
+                result.completeExceptionally(new RuntimeException(e));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                logger.info("Generation cancelled, no requests waiting for it");
+                task.cancel(true);
             }
         });
+        return result;
+    }
+    
+    /**
+     * Identity of a request for coalescing, always scoped to the user: the idempotency key
+     * when the client sent one, otherwise a hash of the model, parameters, memory scope and
+     * prompt. Memory is fetched later, so the scope stands in for it.
+     */
+    private String coalescingKey(GenerationRequest request) {
+        String userId = request.getUserId() != null ? request.getUserId() : "anonymous";
+        if (request.getIdempotencyKey() != null && !request.getIdempotencyKey().isEmpty()) {
+            return userId + "|key|" + request.getIdempotencyKey();
+        }
+        GenerationParameters params = request.getParameters() != null ? 
+            request.getParameters() : GenerationParameters.builder().build();
+        String prompt = promptAssembler.assemble(request).render();
+        return userId + "|hash|" + Hashing.murmur3_128().newHasher()
+            .putString(ModelHandleCache.ModelKey.of(selectModel(request), params).toString(), StandardCharsets.UTF_8)
+            .putChar('\u0000')
+            .putString(request.memoryScope(), StandardCharsets.UTF_8)
+            .putChar('\u0000')
+            .putString(prompt, StandardCharsets.UTF_8)
+            .hash();
     }
     
     @Override
@@ -62,28 +178,53 @@ public class GeminiGenerationService implements GenerationService {
             request.getGenerationType(), request.getPrompt().length());
         
         long startTime = System.currentTimeMillis();
+        GenerationParameters params = request.getParameters() != null ? 
+            request.getParameters() : GenerationParameters.builder().build();
+        // Story memory is fetched while the prompt is assembled, along with its version when the
+        // response cache needs one
+        MemoryRetrieval memoryRetrieval = startMemoryRetrieval(request, responseCache.accepts(request, params));
         
         try {
             // Select model based on generation type and preference
             String modelName = selectModel(request);
-            GenerativeModel model = new GenerativeModel(modelName, vertexAI);
             
-            // Configure generation parameters
-            GenerationParameters params = request.getParameters() != null ? 
-                request.getParameters() : GenerationParameters.builder().build();
-            GenerativeModel configuredModel = model.withGenerationConfig(buildGenerationConfig(params))
-                .withSafetySettings(buildSafetySettings(params.getSafetyLevel()));
+            // Configured model for these parameters, shared across requests
+            ModelHandleCache.ModelHandle handle = modelHandles.get(modelName, params);
+            
+            // Build the prompt with context: stable prefix first, then what changed
+            long promptStart = System.nanoTime();
+            PromptSegments segments = promptAssembler.assemble(request);
+            long promptNanos = System.nanoTime() - promptStart;
+            
+            // Opt-in response cache, checked before anything goes upstream. The memory version
+            // stands in for the memory, so a hit does not wait for the memory fetch
+            ResponseCache.Key cacheKey = null;
+            String memoryVersion = memoryRetrieval.awaitVersion();
+            if (memoryVersion != null) {
+                cacheKey = responseCache.keyFor(request, modelName, params, segments, memoryVersion);
+                GenerationResponse cached = responseCache.lookup(cacheKey);
+                if (cached != null) {
+                    logger.info("Response cache hit ({}) for generation {}", 
+                        cached.getMetadata().get("responseCache"), cached.getMetadata().get("cachedGenerationId"));
+                    return cached;
+                }
+            }
             
-            // Build the prompt with context
-            String enhancedPrompt = buildEnhancedPrompt(request);
+            RetrievedMemory memory = memoryRetrieval.await();
+            promptStart = System.nanoTime();
+            segments = promptAssembler.withMemory(segments, memory.context(), request);
+            PrefixCache.CachedPrefix prefix = prefixCache.resolve(modelName, segments);
+            String enhancedPrompt = segments.render();
+            long promptConstructionMs = TimeUnit.NANOSECONDS.toMillis(promptNanos + System.nanoTime() - promptStart);
             logger.info("Enhanced prompt: {}", enhancedPrompt);
             
-            // Count tokens
-            int promptTokens = countTokens(enhancedPrompt);
+            // Estimate tokens; replaced by the provider's counts below
+            int promptTokens = prefix.getPrefixTokens() + estimator.countTokens(segments.getSuffix());
             
-            // Generate content
-            Content content = ContentMaker.fromString(enhancedPrompt);
-            GenerateContentResponse response = configuredModel.generateContent(content);
+            // Generate content, retried and hedged within the request deadline
+            long inferenceStart = System.currentTimeMillis();
+            GenerateContentResponse response = callModel(request, modelName, handle.newRequest(enhancedPrompt));
+            long modelInferenceMs = System.currentTimeMillis() - inferenceStart;
             
             // Log response details
             logger.info("Response candidates count: {}", 
@@ -100,7 +241,8 @@ public class GeminiGenerationService implements GenerationService {
             String generatedText = ResponseHandler.getText(response);
             
             // If no text generated, check if content was blocked
-            if (generatedText == null || generatedText.isEmpty()) {
+            boolean generated = generatedText != null && !generatedText.isEmpty();
+            if (!generated) {
                 logger.warn("No text generated. Checking for blocked content or other issues...");
                 
                 // Check if prompt filters blocked the content
@@ -124,10 +266,15 @@ public class GeminiGenerationService implements GenerationService {
             logger.info("Generated text length: {}, isEmpty: {}", 
                 generatedText != null ? generatedText.length() : "null",
                 generatedText != null ? generatedText.isEmpty() : "null");
-            int generatedTokens = countTokens(generatedText);
+            int generatedTokens = estimator.countTokens(generatedText);
+            if (response.hasUsageMetadata()) {
+                promptTokens = reportedTokens(enhancedPrompt, response.getUsageMetadata().getPromptTokenCount(), promptTokens);
+                generatedTokens = reportedTokens(generatedText,
+                    response.getUsageMetadata().getCandidatesTokenCount(), generatedTokens);
+            }
             
             // Build response
-            return GenerationResponse.builder()
+            GenerationResponse generationResponse = GenerationResponse.builder()
                 .generationId(UUID.randomUUID().toString())
                 .contextId(request.getContextId())
                 .generationType(request.getGenerationType())
@@ -137,47 +284,162 @@ public class GeminiGenerationService implements GenerationService {
                 .totalTokenCount(promptTokens + generatedTokens)
                 .generationTimeMs(System.currentTimeMillis() - startTime)
                 .modelUsed(modelName)
-                .metrics(buildMetrics(promptTokens, generatedTokens, System.currentTimeMillis() - startTime))
+                .metrics(buildMetrics(promptTokens, generatedTokens, System.currentTimeMillis() - startTime,
+                    memory, promptConstructionMs, inferenceStart - startTime, modelInferenceMs))
                 .safetyRatings(extractSafetyRatings(response))
                 .timestamp(Instant.now())
+                .metadata(promptMetadata(prefix))
                 .truncated(false)
                 .confidenceScore(0.85) // TODO: Calculate actual confidence
                 .build();
+            
+            // The fallback prompt for more details is not worth replaying, and neither is an
+            // answer generated without the memory its version promises
+            if (cacheKey != null && generated && memory.complete()) {
+                responseCache.store(cacheKey, generationResponse);
+            }
+            return generationResponse;
                 
         } catch (IOException e) {
             logger.error("Failed to generate text", e);
             throw new GenerationException("Failed to generate text: " + e.getMessage(), e);
+        } finally {
+            memoryRetrieval.cancel();
         }
     }
     
     @Override
     public CompletableFuture<Void> streamText(GenerationRequest request, StreamCallback callback) {
-        return CompletableFuture.runAsync(() -> {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        AtomicReference<ServerStream<GenerateContentResponse>> upstream = new AtomicReference<>();
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> permit = new AtomicReference<>();
+        
+        Future<?> task = generationExecutor.submit(() -> {
+            long startTime = System.currentTimeMillis();
+            MemoryRetrieval memoryRetrieval = startMemoryRetrieval(request, false);
             try {
                 String modelName = selectModel(request);
-                GenerativeModel model = new GenerativeModel(modelName, vertexAI);
+                GenerationParameters params = request.getParameters() != null ? 
+                    request.getParameters() : GenerationParameters.builder().build();
+                
+                ModelHandleCache.ModelHandle handle = modelHandles.get(modelName, params);
                 
-                GenerativeModel configuredModel = model.withGenerationConfig(buildGenerationConfig(request.getParameters()))
-                    .withSafetySettings(buildSafetySettings(request.getParameters().getSafetyLevel()));
+                long promptStart = System.nanoTime();
+                PromptSegments segments = promptAssembler.assemble(request);
+                long promptNanos = System.nanoTime() - promptStart;
+                RetrievedMemory memory = memoryRetrieval.await();
+                promptStart = System.nanoTime();
+                segments = promptAssembler.withMemory(segments, memory.context(), request);
+                PrefixCache.CachedPrefix prefix = prefixCache.resolve(modelName, segments);
+                String enhancedPrompt = segments.render();
+                long promptConstructionMs = TimeUnit.NANOSECONDS.toMillis(promptNanos + System.nanoTime() - promptStart);
+                int promptTokens = prefix.getPrefixTokens() + estimator.countTokens(segments.getSuffix());
                 
-                String enhancedPrompt = buildEnhancedPrompt(request);
-                Content content = ContentMaker.fromString(enhancedPrompt);
+                permit.set(acquirePermit(request));
+                long inferenceStart = System.currentTimeMillis();
                 
-                // Stream generation
-                var responseStream = configuredModel.generateContentStream(content);
+                // Call the streaming RPC directly; unlike ResponseStream, ServerStream can be cancelled
+                ServerStream<GenerateContentResponse> stream = vertexAI.getPredictionServiceClient()
+                    .streamGenerateContentCallable().call(handle.newRequest(enhancedPrompt));
+                upstream.set(stream);
+                if (result.isCancelled()) {
+                    stream.cancel();
+                    permit.get().onIgnore();
+                    return;
+                }
                 
-                responseStream.forEach(partialResponse -> {
-                    String chunk = ResponseHandler.getText(partialResponse);
-                    callback.onChunk(chunk);
-                });
+                StringBuilder generated = new StringBuilder();
+                GenerateContentResponse.UsageMetadata usage = null;
+                boolean truncated = false;
+                for (GenerateContentResponse partialResponse : stream) {
+                    if (result.isDone()) {
+                        break;
+                    }
+                    if (partialResponse.hasUsageMetadata()) {
+                        usage = partialResponse.getUsageMetadata();
+                    }
+                    if (partialResponse.getCandidatesCount() > 0) {
+                        Candidate.FinishReason finishReason = partialResponse.getCandidates(0).getFinishReason();
+                        if (finishReason == Candidate.FinishReason.SAFETY
+                                || finishReason == Candidate.FinishReason.RECITATION) {
+                            throw new GenerationException("Content blocked by safety filters: " + finishReason);
+                        }
+                        truncated |= finishReason == Candidate.FinishReason.MAX_TOKENS;
+                    }
+                    String chunk = chunkText(partialResponse);
+                    if (!chunk.isEmpty()) {
+                        generated.append(chunk);
+                        callback.onChunk(chunk);
+                    }
+                }
+                if (result.isDone()) {
+                    logger.info("Stream cancelled after {} characters", generated.length());
+                    permit.get().onIgnore();
+                    return;
+                }
                 
-                callback.onComplete();
+                // Prefer the provider's counts, which arrive with the last chunk
+                int generatedTokens = estimator.countTokens(generated.toString());
+                if (usage != null) {
+                    promptTokens = reportedTokens(enhancedPrompt, usage.getPromptTokenCount(), promptTokens);
+                    generatedTokens = reportedTokens(generated.toString(), usage.getCandidatesTokenCount(), generatedTokens);
+                }
+                long modelInferenceMs = System.currentTimeMillis() - inferenceStart;
+                long elapsed = System.currentTimeMillis() - startTime;
+                permit.get().onSuccess(generatedTokens);
                 
+                callback.onComplete(GenerationResponse.builder()
+                    .generationId(UUID.randomUUID().toString())
+                    .contextId(request.getContextId())
+                    .generationType(request.getGenerationType())
+                    .tokenCount(generatedTokens)
+                    .promptTokenCount(promptTokens)
+                    .totalTokenCount(promptTokens + generatedTokens)
+                    .generationTimeMs(elapsed)
+                    .modelUsed(modelName)
+                    .metrics(buildMetrics(promptTokens, generatedTokens, elapsed,
+                        memory, promptConstructionMs, inferenceStart - startTime, modelInferenceMs))
+                    .metadata(promptMetadata(prefix))
+                    .truncated(truncated)
+                    .build());
+                result.complete(null);
+            
             } catch (Exception e) {
+                if (permit.get() != null) {
+                    releaseOnFailure(permit.get(), e);
+                }
+                if (result.isCancelled()) {
+                    // Expected: the stream was cancelled underneath the iterator
+                    logger.info("Stream cancelled: {}", e.getMessage());
+                    return;
+                }
                 logger.error("Failed to stream text", e);
+                ServerStream<GenerateContentResponse> stream = upstream.get();
+                if (stream != null) {
+                    stream.cancel();
+                }
                 callback.onError(e);
+                result.completeExceptionally(e);
+            } finally {
+                memoryRetrieval.cancel();
             }
         });
+        
+        // Cancelling the returned future cancels the gRPC stream, which stops generation upstream,
+        // or takes the request out of the limiter queue if it has not started
+        result.whenComplete((ignored, error) -> {
+            if (!result.isCancelled()) {
+                return;
+            }
+            ServerStream<GenerateContentResponse> stream = upstream.get();
+            if (stream != null) {
+                stream.cancel();
+            } else {
+                task.cancel(true);
+            }
+        });
+        
+        return result;
     }
     
     @Override
@@ -188,153 +450,320 @@ public class GeminiGenerationService implements GenerationService {
     
     @Override
     public int countTokens(String text) {
-        // Rough estimation: ~0.75 tokens per character for English text
-        // TODO: Use actual tokenizer
-        return (int)(text.length() * 0.75);
+        try {
+            return tokenCounter.countTokens(text);
+        } catch (RuntimeException e) {
+            logger.warn("Exact token count failed, using estimate: {}", e.getMessage());
+            return estimator.countTokens(text);
+        }
     }
     
-    private String selectModel(GenerationRequest request) {
-        // First check model preference
-        if (request.getParameters() != null && request.getParameters().getModelPreference() != null) {
-            return request.getParameters().getModelPreference().getModelName();
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> tokens = new LinkedHashMap<>();
+        if (tokenCounter instanceof CachingTokenCounter caching) {
+            tokens.putAll(caching.getStats());
+        } else {
+            tokens.put("counter", tokenCounter.counterId());
         }
+        tokens.put("calibration", estimator.getCalibration());
         
-        // Otherwise use generation type recommendation
-        return request.getGenerationType().getRecommendedModel();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tokens", tokens);
+        stats.put("modelHandles", modelHandles.getStats());
+        stats.put("promptPrefixes", prefixCache.getStats());
+        stats.put("responses", responseCache.getStats());
+        stats.put("coalescing", inFlight.getStats());
+        return stats;
     }
     
-    private GenerationConfig buildGenerationConfig(GenerationParameters params) {
-        return GenerationConfig.newBuilder()
-            .setTemperature((float) params.getTemperature())
-            .setMaxOutputTokens(params.getMaxTokens())
-            .setTopK(params.getTopK())
-            .setTopP((float) params.getTopP())
-            .setCandidateCount(params.getCandidateCount())
-            .build();
+    /**
+     * Start fetching story memory for the request's context, if it wants memory, and the memory
+     * version alongside it if asked to.
+     */
+    private MemoryRetrieval startMemoryRetrieval(GenerationRequest request, boolean withVersion) {
+        if (!request.isUseMemory() || request.getContextId() == null || request.getContextId().isEmpty()) {
+            return new MemoryRetrieval(request.getContextId(), null, null, withVersion, 0);
+        }
+        MemoryClient.Query query = new MemoryClient.Query(request.getContextId(), request.getDocumentId(),
+            request.metadataNumber("chapterNumber"), request.metadataNumber("sceneNumber"),
+            memoryTokenBudget, request.getAuthToken());
+        CompletableFuture<Long> versionFetch = null;
+        CompletableFuture<MemoryContext> fetch;
+        try {
+            if (withVersion) {
+                versionFetch = memoryClient.fetchVersion(request.getContextId(), request.getAuthToken());
+            }
+            fetch = memoryClient.fetchContext(query);
+        } catch (RuntimeException e) {
+            fetch = CompletableFuture.failedFuture(e);
+        }
+        return new MemoryRetrieval(request.getContextId(), fetch, versionFetch, withVersion, memoryTimeoutMillis);
     }
     
-    private List<SafetySetting> buildSafetySettings(GenerationParameters.SafetyLevel level) {
-        SafetySetting.HarmBlockThreshold threshold = switch (level) {
-            case MINIMAL -> SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH;
-            case MODERATE -> SafetySetting.HarmBlockThreshold.BLOCK_MEDIUM_AND_ABOVE;
-            case STRICT -> SafetySetting.HarmBlockThreshold.BLOCK_LOW_AND_ABOVE;
-        };
-        
-        return Arrays.asList(
-            SafetySetting.newBuilder()
-                .setCategory(HarmCategory.HARM_CATEGORY_HATE_SPEECH)
-                .setThreshold(threshold)
-                .build(),
-            SafetySetting.newBuilder()
-                .setCategory(HarmCategory.HARM_CATEGORY_DANGEROUS_CONTENT)
-                .setThreshold(threshold)
-                .build(),
-            SafetySetting.newBuilder()
-                .setCategory(HarmCategory.HARM_CATEGORY_SEXUALLY_EXPLICIT)
-                .setThreshold(threshold)
-                .build(),
-            SafetySetting.newBuilder()
-                .setCategory(HarmCategory.HARM_CATEGORY_HARASSMENT)
-                .setThreshold(threshold)
-                .build()
-        );
+    /**
+     * Memory retrieved for a generation, how long the fetch took, and whether the generation has
+     * all the memory it asked for, i.e. the fetch neither failed nor timed out.
+     */
+    private record RetrievedMemory(MemoryContext context, long retrievalMs, boolean complete) {
+        int itemCount() {
+            return context != null ? context.countItems() : 0;
+        }
     }
     
-    private String buildEnhancedPrompt(GenerationRequest request) {
-        StringBuilder prompt = new StringBuilder();
+    /**
+     * A memory fetch running alongside prompt assembly.
+     */
+    private static final class MemoryRetrieval {
+        private static final String NO_MEMORY = "none";
         
-        // Add system instructions based on generation type
-        prompt.append(getSystemInstructions(request)).append("\n\n");
+        private final String contextId;
+        private final CompletableFuture<MemoryContext> fetch;
+        private final CompletableFuture<MemoryContext> timedFetch;
+        private final CompletableFuture<Long> versionFetch;
+        private final boolean withVersion;
+        private final long timeoutMillis;
+        private final long startNanos = System.nanoTime();
+        private volatile long finishNanos;
         
-        // Add style guide if present
-        if (request.getStyleGuide() != null) {
-            prompt.append(buildStyleInstructions(request.getStyleGuide())).append("\n\n");
+        private MemoryRetrieval(String contextId, CompletableFuture<MemoryContext> fetch,
+                                CompletableFuture<Long> versionFetch, boolean withVersion, long timeoutMillis) {
+            this.contextId = contextId;
+            this.fetch = fetch;
+            this.versionFetch = versionFetch;
+            this.withVersion = withVersion;
+            this.timeoutMillis = timeoutMillis;
+            // Runs before the dependent completes, so the finish time is set once await sees the result
+            this.timedFetch = fetch == null ? null : fetch.thenApply(context -> {
+                finishNanos = System.nanoTime();
+                return context;
+            });
         }
         
-        // Add character context if present
-        if (request.getCharacters() != null && !request.getCharacters().isEmpty()) {
-            prompt.append(buildCharacterContext(request.getCharacters())).append("\n\n");
+        /**
+         * Wait for the memory until the timeout from the start of the fetch. A failed or late
+         * fetch is abandoned and generation goes ahead without memory.
+         */
+        RetrievedMemory await() {
+            if (timedFetch == null) {
+                return new RetrievedMemory(null, 0, true);
+            }
+            long remainingNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - System.nanoTime();
+            try {
+                MemoryContext context = timedFetch.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+                return new RetrievedMemory(context, TimeUnit.NANOSECONDS.toMillis(finishNanos - startNanos), true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (TimeoutException e) {
+                logger.warn("Memory for context {} not ready after {}ms, generating without it", contextId, timeoutMillis);
+            } catch (ExecutionException | CancellationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.warn("Memory retrieval for context {} failed, generating without it: {}", contextId, cause.getMessage());
+            }
+            cancel();
+            return new RetrievedMemory(null, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), false);
         }
         
-        // Add previous context if present
-        if (request.getPreviousContext() != null && !request.getPreviousContext().isEmpty()) {
-            prompt.append("Previous context:\n");
-            request.getPreviousContext().forEach(ctx -> prompt.append(ctx).append("\n"));
-            prompt.append("\n");
+        /**
+         * Wait for the memory version, within the same timeout as the memory. Null when it was
+         * not asked for or could not be had; "none" when the request uses no memory.
+         */
+        String awaitVersion() {
+            if (!withVersion) {
+                return null;
+            }
+            if (fetch == null) {
+                return NO_MEMORY;
+            }
+            if (versionFetch == null) {
+                return null;
+            }
+            long remainingNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - System.nanoTime();
+            try {
+                Long version = versionFetch.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+                return version != null ? "v" + version : null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (TimeoutException e) {
+                logger.warn("Memory version for context {} not ready after {}ms, skipping the response cache",
+                    contextId, timeoutMillis);
+            } catch (ExecutionException | CancellationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.warn("Memory version for context {} failed, skipping the response cache: {}",
+                    contextId, cause.getMessage());
+            }
+            return null;
         }
         
-        // Add the main prompt
-        prompt.append("Request: ").append(request.getPrompt());
-        
-        return prompt.toString();
+        void cancel() {
+            if (fetch != null) {
+                fetch.cancel(true);
+            }
+            if (versionFetch != null) {
+                versionFetch.cancel(true);
+            }
+        }
     }
     
-    private String getSystemInstructions(GenerationRequest request) {
-        String baseInstructions = String.format(
-            "You are an AI writing assistant helping to create a novel. " +
-            "Your task is to %s. " +
-            "Write in a style appropriate for %s fiction. " +
-            "Maintain consistency with the established narrative and characters.",
-            request.getGenerationType().getDescription(),
-            request.getStyleGuide() != null ? request.getStyleGuide().getGenre() : "general"
-        );
-        
-        // Add specific instructions for scene generation
-        if (request.getGenerationType() == GenerationType.SCENE) {
-            baseInstructions += "\n\nFor scene generation:\n" +
-                "- Create vivid, engaging narrative prose\n" +
-                "- Include dialogue, action, and description\n" +
-                "- Show character emotions and motivations\n" +
-                "- Use sensory details to bring the scene to life\n" +
-                "- Aim for 500-1000 words unless specified otherwise\n" +
-                "- Begin the scene with an engaging hook\n" +
-                "- End with a compelling transition or cliffhanger";
+    /**
+     * The power of two at or above maxTokens, at least 256.
+     */
+    private static int maxTokensBucket(int maxTokens) {
+        return Math.max(256, Integer.highestOneBit(Math.max(1, maxTokens - 1)) << 1);
+    }
+    
+    /**
+     * Call the model with retries and, if enabled, hedging. Every attempt, hedges included,
+     * goes through the limiter; a hedge only runs if a slot is free right away.
+     */
+    private GenerateContentResponse callModel(GenerationRequest request, String modelName,
+                                              GenerateContentRequest upstreamRequest)
+            throws GenerationException, IOException {
+        GenerationPriority priority = request.getPriority() != null ? 
+            request.getPriority() : GenerationPriority.INTERACTIVE_SYNC;
+        Instant deadline = request.getDeadline() != null ? request.getDeadline() : Instant.now().plus(defaultDeadline);
+        int maxTokens = request.getParameters() != null ? 
+            request.getParameters().getMaxTokens() : GenerationParameters.builder().build().getMaxTokens();
+        // Latency grows with output length, so short and long generations are tracked apart
+        String latencyKey = modelName + "/" + maxTokensBucket(maxTokens);
+        // A long generation that timed out would not finish in the time left either
+        boolean retryTimeouts = maxTokens <= LONG_GENERATION_TOKENS;
+        try {
+            return resilience.execute(latencyKey, deadline, retryTimeouts, hedge -> {
+                if (!hedge) {
+                    return startCall(upstreamRequest, acquirePermit(request));
+                }
+                // Batch work is not latency sensitive enough to pay for duplicates
+                AdaptiveConcurrencyLimiter.Permit permit = priority == GenerationPriority.BATCH ? null 
+                    : limiter.tryAcquire(priority);
+                return permit != null ? startCall(upstreamRequest, permit) : null;
+            });
+        } catch (GenerationException | IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenerationException("Generation cancelled", e);
+        } catch (Exception e) {
+            // Checked failures of the attempts themselves, such as a timed-out final attempt
+            throw new GenerationException("Failed to generate text: " + e.getMessage(), e);
         }
-        
-        return baseInstructions;
     }
     
-    private String buildStyleInstructions(StyleGuide style) {
-        return String.format(
-            "Style Guidelines:\n" +
-            "- Genre: %s\n" +
-            "- Point of View: %s\n" +
-            "- Tense: %s\n" +
-            "- Tone: %s\n" +
-            "- Pacing: %s\n" +
-            "- Description Level: %s\n" +
-            "%s",
-            style.getGenre(),
-            style.getPointOfView(),
-            style.getTense(),
-            style.getTone() != null ? style.getTone() : "appropriate to scene",
-            style.getPacing(),
-            style.getDescriptionLevel(),
-            style.getCustomInstructions() != null ? "Additional: " + style.getCustomInstructions() : ""
-        );
+    /**
+     * Start one unary call. Cancelling the returned future cancels the RPC.
+     */
+    private CompletableFuture<GenerateContentResponse> startCall(GenerateContentRequest upstreamRequest,
+                                                                 AdaptiveConcurrencyLimiter.Permit permit)
+            throws IOException {
+        ApiFuture<GenerateContentResponse> call;
+        try {
+            call = vertexAI.getPredictionServiceClient().generateContentCallable().futureCall(upstreamRequest);
+        } catch (IOException | RuntimeException e) {
+            permit.onIgnore();
+            throw e;
+        }
+        CompletableFuture<GenerateContentResponse> result = new CompletableFuture<>();
+        ApiFutures.addCallback(call, new ApiFutureCallback<>() {
+            @Override
+            public void onSuccess(GenerateContentResponse response) {
+                permit.onSuccess(response.hasUsageMetadata() ? response.getUsageMetadata().getCandidatesTokenCount() : 0);
+                result.complete(response);
+            }
+            
+            @Override
+            public void onFailure(Throwable error) {
+                releaseOnFailure(permit, error);
+                result.completeExceptionally(error);
+            }
+        }, MoreExecutors.directExecutor());
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                permit.onIgnore();
+                call.cancel(true);
+            }
+        });
+        return result;
     }
     
-    private String buildCharacterContext(List<CharacterContext> characters) {
-        StringBuilder context = new StringBuilder("Characters in this scene:\n");
-        
-        for (CharacterContext character : characters) {
-            context.append(String.format(
-                "\n%s: %s\n" +
-                "- Personality: %s\n" +
-                "- Voice: %s\n" +
-                "- Current mood: %s\n",
-                character.getName(),
-                character.getDescription(),
-                character.getPersonality(),
-                character.getVoice(),
-                character.getCurrentMood()
-            ));
+    /**
+     * Wait for the limiter to admit an upstream call for this request.
+     */
+    private AdaptiveConcurrencyLimiter.Permit acquirePermit(GenerationRequest request) throws GenerationException {
+        GenerationPriority priority = request.getPriority() != null ? 
+            request.getPriority() : GenerationPriority.INTERACTIVE_SYNC;
+        try {
+            return limiter.acquire(priority, request.getDeadline());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenerationException("Generation cancelled while waiting for capacity", e);
+        }
+    }
+    
+    /**
+     * Release a permit after a failed call, telling the limiter whether the provider was overloaded.
+     */
+    private void releaseOnFailure(AdaptiveConcurrencyLimiter.Permit permit, Throwable error) {
+        if (FailureClassifier.classify(error) == FailureClassifier.Kind.RATE_LIMITED) {
+            logger.warn("Provider rejected the call for quota: {}", error.getMessage());
+            permit.onDropped();
+        } else {
+            permit.onIgnore();
+        }
+    }
+    
+    private Map<String, Object> promptMetadata(PrefixCache.CachedPrefix prefix) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("promptPrefixHash", prefix.getPrefixHash());
+        metadata.put("promptPrefixTokens", prefix.getPrefixTokens());
+        metadata.put("promptPrefixReused", prefix.isHit());
+        return metadata;
+    }
+    
+    /**
+     * The provider's count when it reported one, which also calibrates the estimator.
+     */
+    private int reportedTokens(String text, int reported, int estimated) {
+        if (reported <= 0) {
+            return estimated;
+        }
+        estimator.calibrate(text, reported);
+        return reported;
+    }
+    
+    private String selectModel(GenerationRequest request) {
+        // First check model preference
+        if (request.getParameters() != null && request.getParameters().getModelPreference() != null) {
+            return request.getParameters().getModelPreference().getModelName();
         }
         
-        return context.toString();
+        // Otherwise use generation type recommendation
+        return request.getGenerationType().getRecommendedModel();
     }
     
-    private GenerationResponse.GenerationMetrics buildMetrics(int promptTokens, int generatedTokens, long timeMs) {
+    /**
+     * Text of the first candidate in a streamed chunk. Unlike ResponseHandler.getText this
+     * tolerates chunks without candidates, such as a trailing usage-only chunk.
+     */
+    private String chunkText(GenerateContentResponse partialResponse) {
+        if (partialResponse.getCandidatesCount() == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (Part part : partialResponse.getCandidates(0).getContent().getPartsList()) {
+            text.append(part.getText());
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Metrics from measured stage timings. Memory retrieval overlaps prompt construction, so
+     * the stages can add up to more than the total.
+     * 
+     * @param modelStartMs When the model call started, relative to the start of the request
+     */
+    private GenerationResponse.GenerationMetrics buildMetrics(int promptTokens, int generatedTokens, long timeMs,
+                                                              RetrievedMemory memory, long promptConstructionMs,
+                                                              long modelStartMs, long modelInferenceMs) {
         // Rough cost estimation (varies by model)
         double costPerMillionTokens = 2.50; // Example rate
         double estimatedCost = ((promptTokens + generatedTokens) / 1_000_000.0) * costPerMillionTokens;
@@ -342,15 +771,15 @@ public class GeminiGenerationService implements GenerationService {
         return GenerationResponse.GenerationMetrics.builder()
             .estimatedCost(estimatedCost)
             .contextWindowUsage((promptTokens + generatedTokens) / 128000.0) // Assuming 128k context
-            .memoryItemsRetrieved(0) // TODO: Implement when memory service is integrated
+            .memoryItemsRetrieved(memory.itemCount())
             .coherenceScore(0.85) // TODO: Implement scoring
             .relevanceScore(0.90)
             .creativityScore(0.80)
             .latency(GenerationResponse.GenerationMetrics.LatencyBreakdown.builder()
-                .memoryRetrievalMs(0)
-                .promptConstructionMs(50)
-                .modelInferenceMs(timeMs - 50)
-                .postProcessingMs(0)
+                .memoryRetrievalMs(memory.retrievalMs())
+                .promptConstructionMs(promptConstructionMs)
+                .modelInferenceMs(modelInferenceMs)
+                .postProcessingMs(Math.max(0, timeMs - modelStartMs - modelInferenceMs))
                 .build())
             .build();
     }
@@ -366,4 +795,9 @@ public class GeminiGenerationService implements GenerationService {
             .contentBlocked(false)
             .build();
     }
+    
+    private static String envOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,217 @@
+package com.deusexmachina.novel.ai.service.impl;
+
+import com.deusexmachina.novel.ai.model.GenerationParameters;
+import com.google.cloud.vertexai.VertexAI;
+import com.google.cloud.vertexai.api.GenerateContentRequest;
+import com.google.cloud.vertexai.api.GenerationConfig;
+import com.google.cloud.vertexai.api.HarmCategory;
+import com.google.cloud.vertexai.api.SafetySetting;
+import com.google.cloud.vertexai.generativeai.ContentMaker;
+import com.google.cloud.vertexai.generativeai.GenerativeModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of configured model handles, keyed by model name, generation parameters
+ * and safety level. Handles are immutable, so one instance serves every request with the
+ * same settings instead of rebuilding the model, config and safety protos each time.
+ */
+public class ModelHandleCache {
+    private static final Logger logger = LoggerFactory.getLogger(ModelHandleCache.class);
+    
+    private static final HarmCategory[] SAFETY_CATEGORIES = {
+        HarmCategory.HARM_CATEGORY_HATE_SPEECH,
+        HarmCategory.HARM_CATEGORY_DANGEROUS_CONTENT,
+        HarmCategory.HARM_CATEGORY_SEXUALLY_EXPLICIT,
+        HarmCategory.HARM_CATEGORY_HARASSMENT
+    };
+    
+    private final VertexAI vertexAI;
+    private final String projectId;
+    private final String location;
+    private final int maxEntries;
+    private final Map<ModelKey, ModelHandle> handles;
+    private long hits = 0;
+    private long misses = 0;
+    
+    /**
+     * Configured model plus the pieces needed to call the prediction client directly.
+     */
+    public static final class ModelHandle {
+        private final String modelName;
+        private final String resourceName;
+        private final GenerativeModel model;
+        private final GenerationConfig generationConfig;
+        private final List<SafetySetting> safetySettings;
+        
+        private ModelHandle(String modelName, String resourceName, GenerativeModel model,
+                            GenerationConfig generationConfig, List<SafetySetting> safetySettings) {
+            this.modelName = modelName;
+            this.resourceName = resourceName;
+            this.model = model;
+            this.generationConfig = generationConfig;
+            this.safetySettings = safetySettings;
+        }
+        
+        public String getModelName() {
+            return modelName;
+        }
+        
+        public String getResourceName() {
+            return resourceName;
+        }
+        
+        public GenerativeModel getModel() {
+            return model;
+        }
+        
+        public GenerationConfig getGenerationConfig() {
+            return generationConfig;
+        }
+        
+        public List<SafetySetting> getSafetySettings() {
+            return safetySettings;
+        }
+        
+        /**
+         * Prediction request for a prompt with this handle's settings, as GenerativeModel would build it.
+         */
+        public GenerateContentRequest newRequest(String prompt) {
+            return GenerateContentRequest.newBuilder()
+                .setModel(resourceName)
+                .addContents(ContentMaker.fromString(prompt))
+                .setGenerationConfig(generationConfig)
+                .addAllSafetySettings(safetySettings)
+                .build();
+        }
+    }
+    
+    /**
+     * Everything that goes into a configured model. Parameters that do not reach the
+     * model config (streaming, penalties) are left out so they do not split the cache.
+     */
+    record ModelKey(String modelName, float temperature, int maxTokens, int topK, float topP,
+                    int candidateCount, GenerationParameters.SafetyLevel safetyLevel) {
+        
+        static ModelKey of(String modelName, GenerationParameters params) {
+            return new ModelKey(modelName, (float) params.getTemperature(), params.getMaxTokens(),
+                params.getTopK(), (float) params.getTopP(), params.getCandidateCount(), params.getSafetyLevel());
+        }
+    }
+    
+    public ModelHandleCache(VertexAI vertexAI, String projectId, String location, int maxEntries) {
+        this.vertexAI = vertexAI;
+        this.projectId = projectId;
+        this.location = location;
+        this.maxEntries = maxEntries;
+        this.handles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ModelKey, ModelHandle> eldest) {
+                return size() > ModelHandleCache.this.maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * Get the handle for a model and parameters, configuring it on first use.
+     */
+    public ModelHandle get(String modelName, GenerationParameters params) {
+        ModelKey key = ModelKey.of(modelName, params);
+        synchronized (handles) {
+            ModelHandle handle = handles.get(key);
+            if (handle != null) {
+                hits++;
+                return handle;
+            }
+            misses++;
+        }
+        
+        // Configure outside the lock; a racing duplicate is harmless and the last one wins
+        ModelHandle handle = create(key);
+        synchronized (handles) {
+            handles.put(key, handle);
+        }
+        return handle;
+    }
+    
+    /**
+     * Configure the default parameters for every model preference and open the prediction
+     * client, so the first requests do not pay for model or channel setup.
+     */
+    public void warm() {
+        for (GenerationParameters.ModelPreference preference : GenerationParameters.ModelPreference.values()) {
+            get(preference.getModelName(), GenerationParameters.builder().modelPreference(preference).build());
+        }
+        try {
+            vertexAI.getPredictionServiceClient();
+        } catch (IOException e) {
+            logger.warn("Could not open prediction client during warm-up: {}", e.getMessage());
+        }
+        logger.info("Warmed model handle cache with {} handles", size());
+    }
+    
+    public int size() {
+        synchronized (handles) {
+            return handles.size();
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        synchronized (handles) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("entries", handles.size());
+            stats.put("maxEntries", maxEntries);
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            return stats;
+        }
+    }
+    
+    private ModelHandle create(ModelKey key) {
+        GenerationConfig config = GenerationConfig.newBuilder()
+            .setTemperature(key.temperature())
+            .setMaxOutputTokens(key.maxTokens())
+            .setTopK(key.topK())
+            .setTopP(key.topP())
+            .setCandidateCount(key.candidateCount())
+            .build();
+        List<SafetySetting> safetySettings = buildSafetySettings(key.safetyLevel());
+        GenerativeModel model = new GenerativeModel(key.modelName(), vertexAI)
+            .withGenerationConfig(config)
+            .withSafetySettings(safetySettings);
+        return new ModelHandle(key.modelName(), resourceName(key.modelName()), model, config, safetySettings);
+    }
+    
+    private List<SafetySetting> buildSafetySettings(GenerationParameters.SafetyLevel level) {
+        SafetySetting.HarmBlockThreshold threshold = switch (level) {
+            case MINIMAL -> SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH;
+            case MODERATE -> SafetySetting.HarmBlockThreshold.BLOCK_MEDIUM_AND_ABOVE;
+            case STRICT -> SafetySetting.HarmBlockThreshold.BLOCK_LOW_AND_ABOVE;
+        };
+        
+        List<SafetySetting> settings = new ArrayList<>(SAFETY_CATEGORIES.length);
+        for (HarmCategory category : SAFETY_CATEGORIES) {
+            settings.add(SafetySetting.newBuilder()
+                .setCategory(category)
+                .setThreshold(threshold)
+                .build());
+        }
+        return List.copyOf(settings);
+    }
+    
+    /**
+     * Fully qualified publisher model name, as GenerativeModel builds it.
+     */
+    private String resourceName(String modelName) {
+        if (modelName.contains("/")) {
+            return modelName;
+        }
+        return String.format("projects/%s/locations/%s/publishers/google/models/%s", projectId, location, modelName);
+    }
+}
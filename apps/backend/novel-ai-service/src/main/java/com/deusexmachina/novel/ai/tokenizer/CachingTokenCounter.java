@@ -0,0 +1,82 @@
+package com.deusexmachina.novel.ai.tokenizer;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache in front of another counter, keyed by a 128-bit hash of the text. System
+ * instructions, style guides and character blocks repeat across requests, so their
+ * counts are computed once.
+ */
+public class CachingTokenCounter implements TokenCounter {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    
+    private final TokenCounter delegate;
+    private final int minLength;
+    private final int maxEntries;
+    private final Map<HashCode, Integer> counts;
+    private long hits = 0;
+    private long misses = 0;
+    
+    /**
+     * @param delegate Counter to cache
+     * @param maxEntries Maximum number of cached counts
+     * @param minLength Texts shorter than this bypass the cache
+     */
+    public CachingTokenCounter(TokenCounter delegate, int maxEntries, int minLength) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.minLength = minLength;
+        this.counts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<HashCode, Integer> eldest) {
+                return size() > CachingTokenCounter.this.maxEntries;
+            }
+        };
+    }
+    
+    @Override
+    public String counterId() {
+        return delegate.counterId();
+    }
+    
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.length() < minLength) {
+            return delegate.countTokens(text);
+        }
+        
+        HashCode key = HASH.hashString(text, StandardCharsets.UTF_8);
+        synchronized (counts) {
+            Integer cached = counts.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        
+        int count = delegate.countTokens(text);
+        synchronized (counts) {
+            counts.put(key, count);
+        }
+        return count;
+    }
+    
+    public Map<String, Object> getStats() {
+        synchronized (counts) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("counter", delegate.counterId());
+            stats.put("entries", counts.size());
+            stats.put("maxEntries", maxEntries);
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            return stats;
+        }
+    }
+}
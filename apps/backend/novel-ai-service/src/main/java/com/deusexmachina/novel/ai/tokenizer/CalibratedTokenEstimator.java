@@ -0,0 +1,231 @@
+package com.deusexmachina.novel.ai.tokenizer;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Local token estimate that looks at what the text is made of instead of its length alone.
+ * A word costs one token up to a script-dependent length and more beyond it, since common
+ * words are single vocabulary entries; CJK characters are counted individually. Digits and
+ * punctuation count as a token each, with runs like {@code ."} or {@code ...} costing less,
+ * which is what makes dialogue-heavy prose cost more than its length suggests. Whitespace
+ * is folded into the following word.
+ *
+ * The per-script costs start from typical Gemini tokenizer behaviour and are corrected from
+ * exact counts via {@link #calibrate}, using texts that are dominated by a single script.
+ */
+public class CalibratedTokenEstimator implements TokenCounter {
+    
+    public enum Script {
+        LATIN(8, 4.0),
+        CYRILLIC(6, 3.0),
+        GREEK(5, 3.0),
+        CJK(0, 1.3),
+        OTHER(4, 2.5);
+        
+        private final int singleTokenLetters; // Words up to this length are usually one token
+        private final double lettersPerExtraToken;
+        
+        Script(int singleTokenLetters, double lettersPerExtraToken) {
+            this.singleTokenLetters = singleTokenLetters;
+            this.lettersPerExtraToken = lettersPerExtraToken;
+        }
+        
+        double wordCost(int letters) {
+            if (this == CJK) {
+                return letters / lettersPerExtraToken;
+            }
+            return 1.0 + Math.max(0, letters - singleTokenLetters) / lettersPerExtraToken;
+        }
+    }
+    
+    private static final double SYMBOL_RUN_COST = 0.5; // Punctuation after punctuation often merges into one token
+    private static final double DOMINANT_SHARE = 0.8; // Share of word tokens a script needs before a text calibrates it
+    private static final double CALIBRATION_WEIGHT = 0.1; // EWMA weight of each new observation
+    private static final double MIN_CORRECTION = 0.5;
+    private static final double MAX_CORRECTION = 2.0;
+    
+    private final double[] corrections = new double[Script.values().length];
+    private final long[] samples = new long[Script.values().length];
+    
+    public CalibratedTokenEstimator() {
+        Arrays.fill(corrections, 1.0);
+    }
+    
+    @Override
+    public String counterId() {
+        return "calibrated-estimate-v1";
+    }
+    
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        Composition composition = Composition.of(text);
+        double[] current;
+        synchronized (corrections) {
+            current = corrections.clone();
+        }
+        return composition.estimate(current);
+    }
+    
+    /**
+     * Feed back an exact count for a text, adjusting the word cost of its dominant script.
+     * Texts mixing scripts are ignored.
+     */
+    public void calibrate(String text, int actualTokens) {
+        if (text == null || text.isEmpty() || actualTokens <= 0) {
+            return;
+        }
+        Composition composition = Composition.of(text);
+        Script dominant = composition.dominantScript();
+        if (dominant == null) {
+            return;
+        }
+        
+        // Solve for the correction that would have made the word part exact
+        double fixedTokens = composition.symbols;
+        for (Script script : Script.values()) {
+            if (script != dominant) {
+                fixedTokens += composition.wordTokens[script.ordinal()] * currentCorrection(script);
+            }
+        }
+        double wordTokens = composition.wordTokens[dominant.ordinal()];
+        if (wordTokens <= 0 || actualTokens <= fixedTokens) {
+            return;
+        }
+        double observed = Math.max(MIN_CORRECTION, Math.min(MAX_CORRECTION, (actualTokens - fixedTokens) / wordTokens));
+        synchronized (corrections) {
+            int i = dominant.ordinal();
+            corrections[i] = samples[i] == 0 ? observed
+                : corrections[i] * (1 - CALIBRATION_WEIGHT) + observed * CALIBRATION_WEIGHT;
+            samples[i]++;
+        }
+    }
+    
+    public Map<String, Object> getCalibration() {
+        Map<String, Object> calibration = new LinkedHashMap<>();
+        synchronized (corrections) {
+            for (Script script : Script.values()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("correction", corrections[script.ordinal()]);
+                entry.put("samples", samples[script.ordinal()]);
+                calibration.put(script.name().toLowerCase(), entry);
+            }
+        }
+        return calibration;
+    }
+    
+    private double currentCorrection(Script script) {
+        synchronized (corrections) {
+            return corrections[script.ordinal()];
+        }
+    }
+    
+    /**
+     * Uncalibrated token costs of a text by script, gathered in one pass.
+     */
+    static final class Composition {
+        final double[] wordTokens = new double[Script.values().length];
+        double symbols; // Punctuation, digits and other characters outside words
+        
+        static Composition of(String text) {
+            Composition composition = new Composition();
+            Script wordScript = null;
+            int wordLetters = 0;
+            boolean afterPunctuation = false;
+            for (int i = 0; i < text.length(); ) {
+                int c = text.codePointAt(i);
+                i += Character.charCount(c);
+                
+                Script letterScript = null;
+                boolean punctuation = false;
+                if (c < 0x80) {
+                    // ASCII fast path
+                    if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                        letterScript = Script.LATIN;
+                    } else if (c >= '0' && c <= '9') {
+                        composition.symbols++; // Digits are always split
+                    } else if (c != ' ' && c != '\n' && c != '\t' && c != '\r') {
+                        punctuation = true;
+                    }
+                } else if (Character.isLetter(c)) {
+                    letterScript = scriptOf(c);
+                } else if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                    // Combining marks belong to the letter before them
+                    continue;
+                } else if (Character.isDigit(c)) {
+                    composition.symbols++;
+                } else if (!Character.isWhitespace(c) && !Character.isSpaceChar(c)) {
+                    // Curly quotes, dashes, ellipses and symbols
+                    punctuation = true;
+                }
+                if (punctuation) {
+                    composition.symbols += afterPunctuation ? SYMBOL_RUN_COST : 1.0;
+                }
+                afterPunctuation = punctuation;
+                
+                if (letterScript != wordScript && wordScript != null) {
+                    composition.addWord(wordScript, wordLetters);
+                    wordLetters = 0;
+                }
+                wordScript = letterScript;
+                if (letterScript != null) {
+                    wordLetters++;
+                }
+            }
+            if (wordScript != null) {
+                composition.addWord(wordScript, wordLetters);
+            }
+            return composition;
+        }
+        
+        private void addWord(Script script, int letters) {
+            wordTokens[script.ordinal()] += script.wordCost(letters);
+        }
+        
+        int estimate(double[] corrections) {
+            double tokens = symbols;
+            for (Script script : Script.values()) {
+                tokens += wordTokens[script.ordinal()] * corrections[script.ordinal()];
+            }
+            return (int) Math.ceil(tokens);
+        }
+        
+        Script dominantScript() {
+            double total = 0;
+            double best = 0;
+            Script dominant = null;
+            for (Script script : Script.values()) {
+                double tokens = wordTokens[script.ordinal()];
+                total += tokens;
+                if (tokens > best) {
+                    best = tokens;
+                    dominant = script;
+                }
+            }
+            return total > 0 && best >= total * DOMINANT_SHARE ? dominant : null;
+        }
+    }
+    
+    private static Script scriptOf(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        switch (script) {
+            case LATIN:
+                return Script.LATIN;
+            case CYRILLIC:
+                return Script.CYRILLIC;
+            case GREEK:
+                return Script.GREEK;
+            case HAN:
+            case HIRAGANA:
+            case KATAKANA:
+            case HANGUL:
+                return Script.CJK;
+            default:
+                return Script.OTHER;
+        }
+    }
+}
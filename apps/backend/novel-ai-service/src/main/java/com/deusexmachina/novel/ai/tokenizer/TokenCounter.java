@@ -0,0 +1,20 @@
+package com.deusexmachina.novel.ai.tokenizer;
+
+/**
+ * Counts model tokens in a piece of text.
+ */
+public interface TokenCounter {
+    
+    /**
+     * Stable identifier of the counting method, for logs and stats.
+     */
+    String counterId();
+    
+    /**
+     * Number of tokens the model would see for the text.
+     *
+     * @param text The text to count
+     * @return The token count, 0 for null or empty text
+     */
+    int countTokens(String text);
+}
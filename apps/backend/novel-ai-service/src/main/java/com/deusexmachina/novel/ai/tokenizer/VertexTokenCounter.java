@@ -0,0 +1,40 @@
+package com.deusexmachina.novel.ai.tokenizer;
+
+import com.google.cloud.vertexai.generativeai.GenerativeModel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Exact counts from the model's own tokenizer through the Vertex AI countTokens call.
+ * Every exact count also calibrates the local estimator. Failures are thrown rather than
+ * estimated, so a caching wrapper never stores a guess as an exact count.
+ */
+public class VertexTokenCounter implements TokenCounter {
+    private final GenerativeModel model;
+    private final CalibratedTokenEstimator estimator;
+    
+    public VertexTokenCounter(GenerativeModel model, CalibratedTokenEstimator estimator) {
+        this.model = model;
+        this.estimator = estimator;
+    }
+    
+    @Override
+    public String counterId() {
+        return "vertex:" + model.getModelName();
+    }
+    
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        try {
+            int tokens = model.countTokens(text).getTotalTokens();
+            estimator.calibrate(text, tokens);
+            return tokens;
+        } catch (IOException e) {
+            throw new UncheckedIOException("countTokens failed for " + model.getModelName(), e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.deusexmachina.novel.memory.codec;
+
+import com.deusexmachina.novel.memory.NovelMemoryModule;
+import com.deusexmachina.novel.memory.models.GenerationContext;
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialize and deserialize cost of a generation context in the compact form against JSON.
+ * Payload sizes for each shape are printed once per trial, ahead of the timings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CompactCodecBenchmark {
+
+    @Param({"4", "16"})
+    public int characters;
+
+    @Param({"20", "200"})
+    public int facts;
+
+    private Gson gson;
+    private CompactCodec codec;
+    private GenerationContext context;
+    private byte[] compact;
+    private String json;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gson = new NovelMemoryModule().provideGson();
+        codec = new CompactCodec(gson);
+        context = sampleContext(characters, facts, new Random(42));
+        compact = codec.encode(context);
+        json = gson.toJson(context);
+
+        int jsonBytes = json.getBytes(StandardCharsets.UTF_8).length;
+        System.out.printf("%n[payload] characters=%d facts=%d json=%d bytes compact=%d bytes (%.0f%%)%n",
+            characters, facts, jsonBytes, compact.length, 100.0 * compact.length / jsonBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeCompact() {
+        return codec.encode(context);
+    }
+
+    @Benchmark
+    public GenerationContext decodeCompact() {
+        return codec.decode(compact, GenerationContext.class);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return gson.toJson(context).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public GenerationContext decodeJson() {
+        return gson.fromJson(json, GenerationContext.class);
+    }
+
+    /**
+     * A context shaped like a packed mid-novel scene: several characters with history, a
+     * relationship map, plot threads and a long tail of world facts and events.
+     */
+    static GenerationContext sampleContext(int characterCount, int factCount, Random random) {
+        List<GenerationContext.CharacterContext> characters = new ArrayList<>();
+        Map<String, String> relationships = new HashMap<>();
+        for (int i = 0; i < characterCount; i++) {
+            Map<String, String> inScene = new HashMap<>();
+            for (int j = 0; j < characterCount; j++) {
+                if (j != i) {
+                    inScene.put("char-" + j, sentence(random, 3));
+                    relationships.put("char-" + i + "_char-" + j, sentence(random, 4));
+                }
+            }
+            characters.add(GenerationContext.CharacterContext.builder()
+                .characterId("char-" + i)
+                .name("Character " + i)
+                .currentState(sentence(random, 12))
+                .currentObjective(sentence(random, 10))
+                .emotionalState(sentence(random, 2))
+                .recentActions(sentences(random, 5, 12))
+                .earlierHistory(sentences(random, 3, 40))
+                .voiceProfile(sentence(random, 15))
+                .speechPatterns(sentences(random, 3, 6))
+                .relationshipsInScene(inScene)
+                .build());
+        }
+
+        List<GenerationContext.PackedItem> included = new ArrayList<>();
+        for (int i = 0; i < factCount; i++) {
+            included.add(GenerationContext.PackedItem.builder()
+                .itemId("item-" + i)
+                .type(i % 3 == 0 ? "world_fact" : i % 3 == 1 ? "plot_point" : "recent_event")
+                .tokens(10 + random.nextInt(40))
+                .score(random.nextDouble())
+                .build());
+        }
+
+        return GenerationContext.builder()
+            .projectId("project-1")
+            .sceneId("scene-42")
+            .activeCharacters(characters)
+            .characterRelationships(relationships)
+            .relatedCharacters(sentences(random, 4, 3))
+            .currentPlotPhase("rising action")
+            .activeThreads(sentences(random, 4, 8))
+            .upcomingPlotPoints(sentences(random, 6, 14))
+            .currentTensionLevel(7)
+            .currentLocation("The harbour market")
+            .relevantWorldFacts(sentences(random, factCount, 18))
+            .previousSceneSummary(sentence(random, 80))
+            .recentEvents(sentences(random, 10, 16))
+            .recentDialogue(sentences(random, 8, 12))
+            .mustInclude(sentences(random, 2, 6))
+            .mustAvoid(sentences(random, 2, 6))
+            .packingReport(GenerationContext.PackingReport.builder()
+                .tokenBudget(2000)
+                .tokensUsed(1940)
+                .included(included)
+                .dropped(included.subList(0, Math.min(20, included.size())))
+                .droppedCount(factCount)
+                .build())
+            .build();
+    }
+
+    private static final String[] WORDS = {
+        "the", "harbour", "storm", "letter", "captain", "silver", "oath", "lantern", "market", "whispered",
+        "broken", "north", "tide", "guild", "secret", "blade", "quietly", "before", "after", "river"
+    };
+
+    private static List<String> sentences(Random random, int count, int words) {
+        List<String> sentences = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sentences.add(sentence(random, words));
+        }
+        return sentences;
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.append('.').toString();
+    }
+}
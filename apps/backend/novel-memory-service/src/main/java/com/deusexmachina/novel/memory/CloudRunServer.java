@@ -9,8 +9,13 @@ import com.google.cloud.functions.HttpResponse;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
@@ -20,15 +25,30 @@ public class CloudRunServer {
     private static final Logger logger = Logger.getLogger(CloudRunServer.class.getName());
     private static final int PORT = Integer.parseInt(System.getenv("PORT") != null ? System.getenv("PORT") : "8080");
     
+    // Server tuning, overridable through the environment
+    private static final String EXECUTOR = envOrDefault("SERVER_EXECUTOR", "virtual"); // virtual, fixed or cached
+    private static final int THREADS = Integer.parseInt(envOrDefault("SERVER_THREADS", "64")); // fixed executor only
+    private static final int BACKLOG = Integer.parseInt(envOrDefault("SERVER_BACKLOG", "256"));
+    private static final int MAX_IN_FLIGHT = Integer.parseInt(envOrDefault("MAX_IN_FLIGHT_REQUESTS", "512"));
+    private static final int DRAIN_SECONDS = Integer.parseInt(envOrDefault("SHUTDOWN_DRAIN_SECONDS", "8"));
+    
     public static void main(String[] args) throws IOException {
-        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), BACKLOG);
         
         NovelMemoryFunction function = new NovelMemoryFunction();
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        AtomicBoolean draining = new AtomicBoolean(false);
         
         // Route all requests to the function
         server.createContext("/", new HttpHandler() {
             @Override
             public void handle(HttpExchange exchange) throws IOException {
+                // Shed load instead of queueing work we cannot finish in time
+                if (draining.get() || !inFlight.tryAcquire()) {
+                    sendUnavailable(exchange);
+                    return;
+                }
+                
                 CloudRunHttpRequest request = new CloudRunHttpRequest(exchange);
                 CloudRunHttpResponse response = new CloudRunHttpResponse(exchange);
                 
@@ -37,11 +57,13 @@ public class CloudRunServer {
                 } catch (Exception e) {
                     logger.severe("Error handling request: " + e.getMessage());
                     e.printStackTrace();
-                    if (!response.isCommitted()) {
-                        exchange.sendResponseHeaders(500, -1);
-                    }
+                    response.sendError(500);
                 } finally {
-                    response.close();
+                    try {
+                        response.close();
+                    } finally {
+                        inFlight.release();
+                    }
                 }
             }
         });
@@ -56,18 +78,62 @@ public class CloudRunServer {
             }
         });
         
-        server.setExecutor(Executors.newCachedThreadPool());
+        ExecutorService executor = createExecutor();
+        server.setExecutor(executor);
         server.start();
         
-        logger.info("Novel Memory Service started on port " + PORT);
+        logger.info("Novel Memory Service started on port " + PORT + " (executor: " + EXECUTOR
+            + ", backlog: " + BACKLOG + ", max in-flight: " + MAX_IN_FLIGHT + ")");
         
-        // Add shutdown hook
+        // Stop accepting, let in-flight requests finish, then release the executor
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            logger.info("Shutting down server...");
-            server.stop(0);
+            logger.info("Shutting down server, draining " + (MAX_IN_FLIGHT - inFlight.availablePermits())
+                + " in-flight requests...");
+            draining.set(true);
+            server.stop(DRAIN_SECONDS);
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Server stopped");
         }));
     }
     
+    /**
+     * Requests block on Firestore for most of their life, so a virtual thread per request
+     * is the default; platform thread pools remain available as a fallback.
+     */
+    private static ExecutorService createExecutor() {
+        switch (EXECUTOR) {
+            case "fixed":
+                return Executors.newFixedThreadPool(THREADS);
+            case "cached":
+                return Executors.newCachedThreadPool();
+            default:
+                return Executors.newVirtualThreadPerTaskExecutor();
+        }
+    }
+    
+    private static void sendUnavailable(HttpExchange exchange) throws IOException {
+        byte[] body = "{\"error\":\"Service unavailable\"}".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+    
+    private static String envOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
+    
     // Adapter classes to bridge HttpExchange to Cloud Function interfaces
     static class CloudRunHttpRequest implements HttpRequest {
         private final HttpExchange exchange;
@@ -185,12 +251,28 @@ public class CloudRunServer {
         }
     }
     
+    /**
+     * Response adapter that buffers small bodies so they go out with a Content-Length and
+     * switches to chunked transfer encoding once a body outgrows the buffer, after which
+     * writes go straight to the exchange.
+     *
+     * Setting a status after the body was started means the function is replacing a response
+     * it failed to finish. A buffered body is discarded; a streamed one can no longer be replaced,
+     * so the exchange is aborted without the final chunk and the client sees a broken transfer
+     * rather than a complete-looking one.
+     */
     static class CloudRunHttpResponse implements HttpResponse {
+        private static final int BUFFER_LIMIT = 8 * 1024;
+        
         private final HttpExchange exchange;
         private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        private final PrintWriter writer = new PrintWriter(new OutputStreamWriter(buffer));
+        private final ResponseBody body = new ResponseBody();
+        private PrintWriter writer = newWriter();
+        private OutputStream stream; // Exchange body once streaming has started
         private int statusCode = 200;
         private boolean committed = false;
+        private boolean bodyStarted = false; // a writer or stream was handed out
+        private boolean aborted = false;
         
         CloudRunHttpResponse(HttpExchange exchange) {
             this.exchange = exchange;
@@ -198,12 +280,15 @@ public class CloudRunServer {
         
         @Override
         public void setStatusCode(int code) {
+            if (bodyStarted) {
+                discardBody();
+            }
             this.statusCode = code;
         }
         
         @Override
         public void setStatusCode(int code, String message) {
-            this.statusCode = code;
+            setStatusCode(code);
         }
         
         @Override
@@ -223,12 +308,14 @@ public class CloudRunServer {
         
         @Override
         public BufferedWriter getWriter() {
+            bodyStarted = true;
             return new BufferedWriter(writer);
         }
         
         @Override
         public OutputStream getOutputStream() throws IOException {
-            return buffer;
+            bodyStarted = true;
+            return body;
         }
         
         @Override
@@ -244,15 +331,102 @@ public class CloudRunServer {
             return committed;
         }
         
+        /**
+         * Replace an uncommitted response with an empty error status, or abort a committed one.
+         */
+        void sendError(int code) throws IOException {
+            if (!committed) {
+                buffer.reset();
+                exchange.sendResponseHeaders(code, -1);
+                committed = true;
+            } else {
+                aborted = true;
+            }
+        }
+        
+        /**
+         * Finish the response. Throws for an aborted one, so the server drops the connection
+         * instead of terminating the chunked body.
+         */
         void close() throws IOException {
+            if (aborted) {
+                throw new IOException("Response aborted after " + statusCode + " headers were sent");
+            }
+            writer.flush();
             if (!committed) {
-                writer.flush();
-                byte[] responseBytes = buffer.toByteArray();
-                exchange.sendResponseHeaders(statusCode, responseBytes.length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(responseBytes);
-                }
+                // Small body: send it in one piece with a Content-Length
+                exchange.sendResponseHeaders(statusCode, buffer.size() > 0 ? buffer.size() : -1);
                 committed = true;
+                if (buffer.size() > 0) {
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        buffer.writeTo(os);
+                    }
+                }
+            } else if (stream != null) {
+                // Terminates the chunked body
+                stream.close();
+            }
+        }
+        
+        private void discardBody() {
+            if (committed) {
+                logger.warning("Aborting a streamed response that could not be completed");
+                aborted = true;
+            } else {
+                // Bytes still sitting in the old writer's buffers are abandoned with it
+                buffer.reset();
+                writer = newWriter();
+                bodyStarted = false;
+            }
+        }
+        
+        private PrintWriter newWriter() {
+            return new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+        }
+        
+        private void startStreaming() throws IOException {
+            exchange.sendResponseHeaders(statusCode, 0);
+            committed = true;
+            stream = exchange.getResponseBody();
+            buffer.writeTo(stream);
+            buffer.reset();
+        }
+        
+        /**
+         * Body stream handed to the function. Closing it does not end the exchange;
+         * the server finishes the response once the function returns.
+         */
+        private class ResponseBody extends OutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+            
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                if (aborted) {
+                    return;
+                }
+                if (stream == null && !committed && buffer.size() + length > BUFFER_LIMIT) {
+                    startStreaming();
+                }
+                if (stream != null) {
+                    stream.write(bytes, offset, length);
+                } else if (!committed) {
+                    buffer.write(bytes, offset, length);
+                }
+            }
+            
+            @Override
+            public void flush() throws IOException {
+                if (stream != null && !aborted) {
+                    stream.flush();
+                }
+            }
+            
+            @Override
+            public void close() throws IOException {
+                flush();
             }
         }
     }
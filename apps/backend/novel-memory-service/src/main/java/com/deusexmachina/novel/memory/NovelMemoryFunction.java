@@ -95,10 +95,19 @@ public class NovelMemoryFunction implements HttpFunction {
             handlePlotMemoryRequest(subPath, method, request, response);
         } else if (subPath.startsWith("/world/")) {
             handleWorldMemoryRequest(subPath, method, request, response);
+        } else if (subPath.startsWith("/batch/")) {
+            handleBatchRequest(subPath, method, request, response);
+        } else if (subPath.startsWith("/compact/")) {
+            handleCompactRequest(subPath, method, request, response);
+        } else if (subPath.equals("/stats") && "GET".equals(method)) {
+            // GET /memory/stats - cache hit rates and sizes
+            memoryController.getStats(request, response);
         } else if (subPath.equals("/search") && "POST".equals(method)) {
             handleSearchRequest(request, response);
         } else if (subPath.startsWith("/context/")) {
             handleContextRequest(subPath, method, request, response);
+        } else if (subPath.startsWith("/version/")) {
+            handleVersionRequest(subPath, method, request, response);
         } else {
             response.setStatusCode(404);
             response.setContentType("application/json");
@@ -190,6 +199,40 @@ public class NovelMemoryFunction implements HttpFunction {
         }
     }
     
+    private void handleBatchRequest(String path, String method,
+            HttpRequest request, HttpResponse response) throws IOException {
+        if (!"POST".equals(method)) {
+            sendMethodNotAllowed(response);
+            return;
+        }
+        
+        // POST /batch/{projectId} - a scene's observations, facts, milestones and plot points
+        String[] parts = path.split("/");
+        if (parts.length != 3) {
+            sendBadRequest(response, "Invalid batch path");
+            return;
+        }
+        
+        memoryController.ingestBatch(parts[2], request, response);
+    }
+    
+    private void handleCompactRequest(String path, String method,
+            HttpRequest request, HttpResponse response) throws IOException {
+        if (!"POST".equals(method)) {
+            sendMethodNotAllowed(response);
+            return;
+        }
+        
+        // POST /compact/{projectId} - summarize and archive old character memory (run on a schedule)
+        String[] parts = path.split("/");
+        if (parts.length != 3) {
+            sendBadRequest(response, "Invalid compaction path");
+            return;
+        }
+        
+        memoryController.compactMemory(parts[2], request, response);
+    }
+    
     private void handleSearchRequest(HttpRequest request, HttpResponse response) throws IOException {
         memoryController.searchMemory(request, response);
     }
@@ -214,6 +257,23 @@ public class NovelMemoryFunction implements HttpFunction {
         getGenerationContext(projectId, sceneId, request, response);
     }
     
+    private void handleVersionRequest(String path, String method,
+            HttpRequest request, HttpResponse response) throws IOException {
+        if (!"GET".equals(method)) {
+            sendMethodNotAllowed(response);
+            return;
+        }
+        
+        // GET /version/{projectId} - changes whenever the project's memory does
+        String[] parts = path.split("/");
+        if (parts.length != 3 || parts[2].isEmpty()) {
+            sendBadRequest(response, "Invalid version path");
+            return;
+        }
+        
+        memoryController.getMemoryVersion(parts[2], request, response);
+    }
+    
     // Character Memory Methods
     private void getCharacterMemory(String characterId, HttpRequest request, HttpResponse response) 
             throws IOException {
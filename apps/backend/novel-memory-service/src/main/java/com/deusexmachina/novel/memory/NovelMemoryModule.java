@@ -1,15 +1,28 @@
 package com.deusexmachina.novel.memory;
 
+import com.deusexmachina.novel.memory.cache.ContextCache;
+import com.deusexmachina.novel.memory.cache.ContextPrefetcher;
+import com.deusexmachina.novel.memory.cache.MemoryVersions;
+import com.deusexmachina.novel.memory.cache.ProjectIndexCache;
+import com.deusexmachina.novel.memory.codec.CompactCodec;
+import com.deusexmachina.novel.memory.compaction.CompactionPolicy;
+import com.deusexmachina.novel.memory.compaction.ExtractiveSummarizer;
+import com.deusexmachina.novel.memory.compaction.MemorySummarizer;
 import com.deusexmachina.novel.memory.controllers.MemoryController;
+import com.deusexmachina.novel.memory.retrieval.EmbeddingProvider;
+import com.deusexmachina.novel.memory.retrieval.HashingEmbeddingProvider;
 import com.deusexmachina.novel.memory.services.*;
 import com.deusexmachina.novel.memory.services.impl.*;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.FirestoreOptions;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 /**
@@ -18,6 +31,11 @@ import java.util.logging.Logger;
 public class NovelMemoryModule extends AbstractModule {
     private static final Logger logger = Logger.getLogger(NovelMemoryModule.class.getName());
     
+    /**
+     * Name of the executor the services run their asynchronous work on.
+     */
+    public static final String MEMORY_EXECUTOR = "memoryExecutor";
+    
     @Override
     protected void configure() {
         // Bind service interfaces to implementations
@@ -25,6 +43,17 @@ public class NovelMemoryModule extends AbstractModule {
         bind(PlotMemoryService.class).to(PlotMemoryServiceImpl.class).in(Singleton.class);
         bind(WorldMemoryService.class).to(WorldMemoryServiceImpl.class).in(Singleton.class);
         bind(ContextService.class).to(ContextServiceImpl.class).in(Singleton.class);
+        bind(SemanticMemoryService.class).to(SemanticMemoryServiceImpl.class).in(Singleton.class);
+        bind(MemoryBatchService.class).to(MemoryBatchServiceImpl.class).in(Singleton.class);
+        bind(MemoryCompactionService.class).to(MemoryCompactionServiceImpl.class).in(Singleton.class);
+        
+        // Local, deterministic embeddings; swap in a model-backed provider here
+        bind(EmbeddingProvider.class).to(HashingEmbeddingProvider.class).in(Singleton.class);
+        
+        // Local, deterministic summaries for compaction; swap in a model-backed summarizer here
+        bind(MemorySummarizer.class).to(ExtractiveSummarizer.class).in(Singleton.class);
+        
+        bind(MemoryVersions.class).in(Singleton.class);
         
         // Bind controller
         bind(MemoryController.class).in(Singleton.class);
@@ -39,12 +68,62 @@ public class NovelMemoryModule extends AbstractModule {
         return FirestoreOptions.getDefaultInstance().getService();
     }
     
+    /**
+     * Service work blocks on Firestore and joins nested service calls, which would pin and
+     * eventually starve the common fork-join pool; a virtual thread per task blocks cheaply.
+     */
+    @Provides
+    @Singleton
+    @Named(MEMORY_EXECUTOR)
+    public Executor provideMemoryExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+    
+    @Provides
+    @Singleton
+    public ContextCache provideContextCache(CompactCodec codec) {
+        int maxEntries = Integer.parseInt(envOrDefault("CONTEXT_CACHE_MAX_ENTRIES", "500"));
+        long ttlSeconds = Long.parseLong(envOrDefault("CONTEXT_CACHE_TTL_SECONDS", "300"));
+        return new ContextCache(maxEntries, ttlSeconds * 1000, codec);
+    }
+    
+    @Provides
+    @Singleton
+    public ProjectIndexCache.Limits provideProjectIndexLimits() {
+        int maxProjects = Integer.parseInt(envOrDefault("INDEX_CACHE_MAX_PROJECTS", "200"));
+        long ttlSeconds = Long.parseLong(envOrDefault("INDEX_CACHE_TTL_SECONDS", "1800"));
+        return new ProjectIndexCache.Limits(maxProjects, ttlSeconds * 1000);
+    }
+    
+    @Provides
+    @Singleton
+    public ContextPrefetcher provideContextPrefetcher(ContextCache cache, MemoryVersions memoryVersions) {
+        int maxConcurrent = Integer.parseInt(envOrDefault("PREFETCH_MAX_CONCURRENT", "1")); // 0 disables
+        int maxQueued = Integer.parseInt(envOrDefault("PREFETCH_MAX_QUEUED", "8"));
+        long maxCacheMb = Long.parseLong(envOrDefault("PREFETCH_MAX_CACHE_MB", "64"));
+        return new ContextPrefetcher(maxConcurrent, maxQueued, maxCacheMb * 1024 * 1024, cache, memoryVersions);
+    }
+    
+    @Provides
+    @Singleton
+    public CompactionPolicy provideCompactionPolicy() {
+        int keepObservations = Integer.parseInt(envOrDefault("COMPACTION_KEEP_OBSERVATIONS", "50"));
+        int keepReflections = Integer.parseInt(envOrDefault("COMPACTION_KEEP_REFLECTIONS", "20"));
+        int triggerObservations = Integer.parseInt(envOrDefault("COMPACTION_TRIGGER_OBSERVATIONS", "100"));
+        return new CompactionPolicy(keepObservations, keepReflections, triggerObservations);
+    }
+    
     @Provides
     @Singleton
     public Gson provideGson() {
+        // Compact output: responses are read by services and the frontend, not by people
         return new GsonBuilder()
-            .setPrettyPrinting()
             .setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
             .create();
     }
+    
+    private static String envOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
 }
\ No newline at end of file
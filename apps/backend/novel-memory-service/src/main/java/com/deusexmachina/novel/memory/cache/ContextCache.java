@@ -0,0 +1,177 @@
+package com.deusexmachina.novel.memory.cache;
+
+import com.deusexmachina.novel.memory.codec.CompactCodec;
+import com.deusexmachina.novel.memory.models.GenerationContext;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of built generation contexts with a time-to-live.
+ * Keys include the project's memory version, so a memory write makes older entries unreachable;
+ * they then age out through LRU eviction or expiry.
+ *
+ * <p>Contexts are held in compact binary form, which keeps entries small and hands every
+ * caller its own copy, so a caller mutating a context cannot corrupt the cached one.
+ */
+public class ContextCache {
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final CompactCodec codec;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // access order
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long storedBytes;
+    
+    public ContextCache(int maxEntries, long ttlMillis, CompactCodec codec) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.codec = codec;
+    }
+    
+    /**
+     * Identifies a generation context request against a specific memory version.
+     */
+    public static final class Key {
+        private final String projectId;
+        private final String sceneId;
+        private final Long chapterNumber;
+        private final Long sceneNumber;
+        private final int tokenBudget;
+        private final long memoryVersion;
+        
+        public Key(String projectId, String sceneId, Long chapterNumber, Long sceneNumber,
+                int tokenBudget, long memoryVersion) {
+            this.projectId = projectId;
+            this.sceneId = sceneId;
+            this.chapterNumber = chapterNumber;
+            this.sceneNumber = sceneNumber;
+            this.tokenBudget = tokenBudget;
+            this.memoryVersion = memoryVersion;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return tokenBudget == other.tokenBudget
+                && memoryVersion == other.memoryVersion
+                && Objects.equals(projectId, other.projectId)
+                && Objects.equals(sceneId, other.sceneId)
+                && Objects.equals(chapterNumber, other.chapterNumber)
+                && Objects.equals(sceneNumber, other.sceneNumber);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(projectId, sceneId, chapterNumber, sceneNumber, tokenBudget, memoryVersion);
+        }
+    }
+    
+    /**
+     * Get a cached context, or null if absent or expired.
+     */
+    public GenerationContext get(Key key) {
+        byte[] encoded = getEncoded(key);
+        return encoded != null ? codec.decode(encoded, GenerationContext.class) : null;
+    }
+    
+    /**
+     * Get a cached context without counting the lookup as a hit or miss.
+     */
+    public GenerationContext peek(Key key) {
+        byte[] encoded;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            encoded = entry != null && System.currentTimeMillis() - entry.createdAt <= ttlMillis ? entry.encoded : null;
+        }
+        return encoded != null ? codec.decode(encoded, GenerationContext.class) : null;
+    }
+    
+    /**
+     * Whether a live entry exists for a key.
+     */
+    public synchronized boolean contains(Key key) {
+        Entry entry = entries.get(key);
+        return entry != null && System.currentTimeMillis() - entry.createdAt <= ttlMillis;
+    }
+    
+    /**
+     * Total encoded size of the cached contexts.
+     */
+    public synchronized long storedBytes() {
+        return storedBytes;
+    }
+    
+    /**
+     * Cache a context, evicting the least recently used entries beyond the size bound.
+     */
+    public void put(Key key, GenerationContext context) {
+        putEncoded(key, codec.encode(context));
+    }
+    
+    private synchronized byte[] getEncoded(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.createdAt > ttlMillis) {
+            entries.remove(key);
+            storedBytes -= entry.encoded.length;
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.encoded;
+    }
+    
+    private synchronized void putEncoded(Key key, byte[] encoded) {
+        Entry previous = entries.put(key, new Entry(encoded, System.currentTimeMillis()));
+        storedBytes += encoded.length - (previous != null ? previous.encoded.length : 0);
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            storedBytes -= eldest.next().getValue().encoded.length;
+            eldest.remove();
+            evictions++;
+        }
+    }
+    
+    /**
+     * Hit, miss and eviction counts since startup.
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long lookups = hits + misses;
+        stats.put("size", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("storedBytes", storedBytes);
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", lookups > 0 ? Math.round(hits * 1000.0 / lookups) / 1000.0 : 0.0);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        return stats;
+    }
+    
+    private static final class Entry {
+        private final byte[] encoded;
+        private final long createdAt;
+        
+        private Entry(byte[] encoded, long createdAt) {
+            this.encoded = encoded;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.deusexmachina.novel.memory.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Runs speculative context builds in the background within a fixed budget.
+ * At most maxConcurrent builds run at once, on low-priority threads, and at most maxQueued wait;
+ * anything beyond that, or anything submitted while the context cache is over its byte budget,
+ * is dropped. A memory write to a project cancels its queued and running builds.
+ */
+public class ContextPrefetcher {
+    private static final Logger logger = Logger.getLogger(ContextPrefetcher.class.getName());
+    private static final Future<?> SUBMITTING = new FutureTask<>(() -> null);
+    
+    private final ThreadPoolExecutor executor; // Null when prefetching is disabled
+    private final ContextCache cache;
+    private final long maxCacheBytes;
+    private final Map<String, Map<Object, Future<?>>> tasks = new ConcurrentHashMap<>(); // projectId -> key -> build
+    
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    
+    public ContextPrefetcher(int maxConcurrent, int maxQueued, long maxCacheBytes,
+            ContextCache cache, MemoryVersions memoryVersions) {
+        this.cache = cache;
+        this.maxCacheBytes = maxCacheBytes;
+        if (maxConcurrent > 0) {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueued)), runnable -> {
+                    Thread thread = new Thread(runnable, "context-prefetch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+        memoryVersions.addListener(this::cancelProject);
+    }
+    
+    /**
+     * Queue a build unless one for the same key is already pending or the budget is spent.
+     * Returns whether the build was queued.
+     */
+    public boolean submit(String projectId, Object key, Runnable build) {
+        if (executor == null) {
+            return false;
+        }
+        if (cache.storedBytes() >= maxCacheBytes) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        Map<Object, Future<?>> projectTasks = tasks.computeIfAbsent(projectId, id -> new ConcurrentHashMap<>());
+        if (projectTasks.putIfAbsent(key, SUBMITTING) != null) {
+            return false;
+        }
+        
+        try {
+            Future<?> future = executor.submit(() -> {
+                try {
+                    build.run();
+                    completed.incrementAndGet();
+                } catch (Exception e) {
+                    logger.fine("Context prefetch abandoned: " + e.getMessage());
+                } finally {
+                    projectTasks.remove(key);
+                }
+            });
+            // The build may already have finished and removed itself
+            projectTasks.replace(key, SUBMITTING, future);
+            submitted.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            projectTasks.remove(key);
+            dropped.incrementAndGet();
+            return false;
+        }
+    }
+    
+    /**
+     * Count a request served from a prefetched context.
+     */
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+    
+    /**
+     * Submission, completion and cancellation counts since startup.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", executor != null);
+        stats.put("maxConcurrent", executor != null ? executor.getMaximumPoolSize() : 0);
+        stats.put("active", executor != null ? executor.getActiveCount() : 0);
+        stats.put("queued", executor != null ? executor.getQueue().size() : 0);
+        stats.put("submitted", submitted.get());
+        stats.put("completed", completed.get());
+        stats.put("dropped", dropped.get());
+        stats.put("cancelled", cancelled.get());
+        stats.put("hits", hits.get());
+        return stats;
+    }
+    
+    /**
+     * Memory changed, so whatever is being prefetched for the project is already stale.
+     */
+    private void cancelProject(String projectId) {
+        Map<Object, Future<?>> projectTasks = tasks.remove(projectId);
+        if (projectTasks == null) {
+            return;
+        }
+        for (Future<?> future : projectTasks.values()) {
+            if (future != SUBMITTING && future.cancel(true)) {
+                cancelled.incrementAndGet();
+            }
+        }
+        if (executor != null) {
+            executor.purge();
+        }
+    }
+}
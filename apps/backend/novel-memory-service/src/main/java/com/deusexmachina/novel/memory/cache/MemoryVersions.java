@@ -0,0 +1,150 @@
+package com.deusexmachina.novel.memory.cache;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Per-project memory version, bumped by every memory write on any instance.
+ * Anything derived from a project's memory can key on the version to know when it is stale.
+ *
+ * The version is kept in Firestore so a write on one instance invalidates what the others
+ * derived. Reads are served from a local copy that is at most {@link #READ_INTERVAL_MS} old.
+ */
+@Singleton
+public class MemoryVersions {
+    private static final Logger logger = Logger.getLogger(MemoryVersions.class.getName());
+    private static final String COLLECTION_NAME = "memoryVersions";
+    static final long READ_INTERVAL_MS = 1000;
+    
+    private final Firestore firestore;
+    private final Map<String, ProjectVersion> versions = new ConcurrentHashMap<>(); // projectId -> version
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    
+    @Inject
+    public MemoryVersions(Firestore firestore) {
+        this.firestore = firestore;
+    }
+    
+    /**
+     * Current memory version of a project.
+     */
+    public long current(String projectId) {
+        ProjectVersion version = versionOf(projectId);
+        synchronized (version) {
+            if (System.nanoTime() - version.readAt < TimeUnit.MILLISECONDS.toNanos(READ_INTERVAL_MS)) {
+                return version.known;
+            }
+        }
+        
+        long stored;
+        try {
+            DocumentSnapshot doc = document(projectId).get().get();
+            Long value = doc.exists() ? doc.getLong("version") : null;
+            stored = value != null ? value : 0L;
+        } catch (Exception e) {
+            logger.warning("Error reading memory version for project " + projectId + ": " + e.getMessage());
+            synchronized (version) {
+                return version.known;
+            }
+        }
+        
+        synchronized (version) {
+            version.known = Math.max(version.known, stored);
+            version.readAt = System.nanoTime();
+            return version.known;
+        }
+    }
+    
+    /**
+     * Whether something derived from a project's memory at the given version is still up to date.
+     * It is when no write has happened since, or when every write since was made on this instance,
+     * since those keep the local indexes up to date as they go.
+     */
+    public boolean isCurrent(String projectId, long derivedAt) {
+        long current = current(projectId);
+        if (derivedAt == current) {
+            return true;
+        }
+        ProjectVersion version = versionOf(projectId);
+        synchronized (version) {
+            return version.localTo == current && version.localFrom <= derivedAt && derivedAt < current;
+        }
+    }
+    
+    /**
+     * Record that a project's memory changed. Called after the write has committed, so it never
+     * throws: a failed bump is logged, and this instance forgets what it knew about the version so
+     * the next read goes back to Firestore rather than trusting indexes it built itself.
+     */
+    public void bump(String projectId) {
+        if (projectId == null) {
+            return;
+        }
+        
+        ProjectVersion version = versionOf(projectId);
+        try {
+            DocumentReference ref = document(projectId);
+            long bumped = firestore.runTransaction(tx -> {
+                DocumentSnapshot doc = tx.get(ref).get();
+                Long value = doc.exists() ? doc.getLong("version") : null;
+                long next = (value != null ? value : 0L) + 1;
+                tx.set(ref, Map.of("version", next, "updatedAt", FieldValue.serverTimestamp()));
+                return next;
+            }).get();
+            
+            synchronized (version) {
+                // Extend the run of this instance's own writes, or start a new one after someone else's
+                if (version.localTo != bumped - 1) {
+                    version.localFrom = bumped - 1;
+                }
+                version.localTo = bumped;
+                version.known = Math.max(version.known, bumped);
+                version.readAt = System.nanoTime();
+            }
+        } catch (Exception e) {
+            // The write itself landed; other instances only notice it on their next successful bump
+            logger.severe("Error bumping memory version for project " + projectId + ": " + e.getMessage());
+            synchronized (version) {
+                // The bump may still have landed, so stop counting on this instance's run of writes
+                version.localFrom = -1;
+                version.localTo = -1;
+                version.readAt = Long.MIN_VALUE / 2;
+            }
+        } finally {
+            listeners.forEach(listener -> listener.accept(projectId));
+        }
+    }
+    
+    /**
+     * Be told the project ID whenever a project's memory changes on this instance.
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+    
+    private ProjectVersion versionOf(String projectId) {
+        return versions.computeIfAbsent(projectId, id -> new ProjectVersion());
+    }
+    
+    private DocumentReference document(String projectId) {
+        return firestore.collection(COLLECTION_NAME).document(projectId);
+    }
+    
+    private static final class ProjectVersion {
+        long known;
+        long readAt = Long.MIN_VALUE / 2;
+        long localFrom = -1; // versions in (localFrom, localTo] were all bumped on this instance
+        long localTo = -1;
+    }
+}
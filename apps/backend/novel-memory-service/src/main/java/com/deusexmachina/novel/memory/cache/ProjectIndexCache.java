@@ -0,0 +1,116 @@
+package com.deusexmachina.novel.memory.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Per-project in-memory indexes, tagged with the memory version they were built at.
+ * An index is rebuilt once a write from another instance has moved the version on; writes
+ * made on this instance are expected to update the index in place.
+ *
+ * Builds run outside any map lock, and concurrent requests for the same project share one build.
+ * At most {@link Limits#maxProjects} projects are held, least recently used first out, and a
+ * project's index is dropped once it has not been read for {@link Limits#expireAfterAccessMillis}.
+ */
+public class ProjectIndexCache<T> {
+    private final MemoryVersions memoryVersions;
+    private final Cache<String, Entry<T>> entries; // projectId -> index
+    private final Map<String, CompletableFuture<Entry<T>>> building = new ConcurrentHashMap<>();
+    
+    public ProjectIndexCache(MemoryVersions memoryVersions, Limits limits) {
+        this.memoryVersions = memoryVersions;
+        this.entries = CacheBuilder.newBuilder()
+            .maximumSize(limits.maxProjects)
+            .expireAfterAccess(limits.expireAfterAccessMillis, TimeUnit.MILLISECONDS)
+            .build();
+    }
+    
+    /**
+     * Bounds shared by every project index cache on an instance.
+     */
+    public static final class Limits {
+        final int maxProjects;
+        final long expireAfterAccessMillis;
+        
+        public Limits(int maxProjects, long expireAfterAccessMillis) {
+            this.maxProjects = maxProjects;
+            this.expireAfterAccessMillis = expireAfterAccessMillis;
+        }
+        
+        public int getMaxProjects() {
+            return maxProjects;
+        }
+        
+        public long getExpireAfterAccessMillis() {
+            return expireAfterAccessMillis;
+        }
+    }
+    
+    /**
+     * Get a project's index, building it with the given loader when missing or stale.
+     */
+    public T get(String projectId, Function<String, T> loader) {
+        while (true) {
+            Entry<T> entry = entries.getIfPresent(projectId);
+            if (entry != null && memoryVersions.isCurrent(projectId, entry.version)) {
+                return entry.index;
+            }
+            
+            CompletableFuture<Entry<T>> build = new CompletableFuture<>();
+            CompletableFuture<Entry<T>> running = building.putIfAbsent(projectId, build);
+            if (running != null) {
+                // Someone else is building; use theirs unless a newer write has already overtaken it
+                Entry<T> built = running.join();
+                if (memoryVersions.isCurrent(projectId, built.version)) {
+                    return built.index;
+                }
+                continue;
+            }
+            
+            try {
+                // Read the version first, so a write that lands mid-build leaves the index stale
+                long version = memoryVersions.current(projectId);
+                Entry<T> built = new Entry<>(version, loader.apply(projectId));
+                entries.asMap().merge(projectId, built, (old, fresh) -> fresh.version >= old.version ? fresh : old);
+                build.complete(built);
+                return built.index;
+            } catch (RuntimeException e) {
+                build.completeExceptionally(e);
+                throw e;
+            } finally {
+                building.remove(projectId, build);
+            }
+        }
+    }
+    
+    /**
+     * The loaded index of a project, current or not, for a write to update in place.
+     * Returns null when none is loaded.
+     */
+    public T getIfPresent(String projectId) {
+        Entry<T> entry = entries.getIfPresent(projectId);
+        return entry != null ? entry.index : null;
+    }
+    
+    /**
+     * Replace a project's index with one built at the given version.
+     */
+    public void put(String projectId, long version, T index) {
+        entries.put(projectId, new Entry<>(version, index));
+    }
+    
+    private static final class Entry<T> {
+        final long version;
+        final T index;
+        
+        Entry(long version, T index) {
+            this.version = version;
+            this.index = index;
+        }
+    }
+}
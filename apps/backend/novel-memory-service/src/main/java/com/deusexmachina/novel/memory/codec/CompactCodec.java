@@ -0,0 +1,288 @@
+package com.deusexmachina.novel.memory.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding for memory documents and generation contexts.
+ *
+ * <p>Objects go through the same Gson mapping as the JSON API, then the tree is written as
+ * tagged values with varint lengths and numbers. Field names are stored once per payload in a
+ * name table and referenced by index, which is where most of the saving over JSON comes from
+ * for lists of observations, facts and plot points. Fields are matched by name on decode, so
+ * adding or removing model fields stays compatible in both directions.
+ */
+@Singleton
+public class CompactCodec {
+    public static final String CONTENT_TYPE = "application/x-dem-compact";
+    
+    private static final int MAGIC = 0xDE;
+    private static final int FORMAT_VERSION = 1;
+    
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INTEGER = 3; // zigzag varint
+    private static final int DOUBLE = 4; // 8 bytes, big endian
+    private static final int STRING = 5; // varint length + UTF-8
+    private static final int ARRAY = 6; // varint count + values
+    private static final int OBJECT = 7; // varint count + (name index, value) pairs
+    
+    private final Gson gson;
+    
+    @Inject
+    public CompactCodec(Gson gson) {
+        this.gson = gson;
+    }
+    
+    /**
+     * Encode any model object.
+     */
+    public byte[] encode(Object value) {
+        return encodeTree(gson.toJsonTree(value));
+    }
+    
+    /**
+     * Decode bytes produced by {@link #encode} into a model object.
+     */
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return gson.fromJson(decodeTree(bytes), type);
+    }
+    
+    /**
+     * Decode into a generic type such as a list of models.
+     */
+    public <T> T decode(byte[] bytes, Type type) {
+        return gson.fromJson(decodeTree(bytes), type);
+    }
+    
+    static byte[] encodeTree(JsonElement element) {
+        Writer body = new Writer();
+        Map<String, Integer> names = new HashMap<>();
+        List<String> nameTable = new ArrayList<>();
+        writeValue(body, element, names, nameTable);
+        
+        Writer out = new Writer();
+        out.write(MAGIC);
+        out.write(FORMAT_VERSION);
+        out.writeVarint(nameTable.size());
+        for (String name : nameTable) {
+            out.writeString(name);
+        }
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+    
+    static JsonElement decodeTree(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        if (in.read() != MAGIC) {
+            throw new IllegalArgumentException("Not a compact payload");
+        }
+        int version = in.read();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported compact format version: " + version);
+        }
+        int nameCount = (int) in.readVarint();
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            names[i] = in.readString();
+        }
+        return readValue(in, names);
+    }
+    
+    private static void writeValue(Writer out, JsonElement element, Map<String, Integer> names,
+            List<String> nameTable) {
+        if (element == null || element.isJsonNull()) {
+            out.write(NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            out.write(OBJECT);
+            out.writeVarint(object.size());
+            for (Map.Entry<String, JsonElement> field : object.entrySet()) {
+                Integer index = names.get(field.getKey());
+                if (index == null) {
+                    index = nameTable.size();
+                    names.put(field.getKey(), index);
+                    nameTable.add(field.getKey());
+                }
+                out.writeVarint(index);
+                writeValue(out, field.getValue(), names, nameTable);
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            out.write(ARRAY);
+            out.writeVarint(array.size());
+            for (JsonElement item : array) {
+                writeValue(out, item, names, nameTable);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.write(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                Long integral = asLong(primitive.getAsNumber());
+                if (integral != null) {
+                    out.write(INTEGER);
+                    out.writeVarint((integral << 1) ^ (integral >> 63));
+                } else {
+                    out.write(DOUBLE);
+                    out.writeLong(Double.doubleToLongBits(primitive.getAsDouble()));
+                }
+            } else {
+                out.write(STRING);
+                out.writeString(primitive.getAsString());
+            }
+        }
+    }
+    
+    private static JsonElement readValue(Reader in, String[] names) {
+        int tag = in.read();
+        switch (tag) {
+            case NULL:
+                return JsonNull.INSTANCE;
+            case FALSE:
+                return new JsonPrimitive(false);
+            case TRUE:
+                return new JsonPrimitive(true);
+            case INTEGER: {
+                long zigzag = in.readVarint();
+                return new JsonPrimitive((zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            case DOUBLE:
+                return new JsonPrimitive(Double.longBitsToDouble(in.readLong()));
+            case STRING:
+                return new JsonPrimitive(in.readString());
+            case ARRAY: {
+                int count = (int) in.readVarint();
+                JsonArray array = new JsonArray(count);
+                for (int i = 0; i < count; i++) {
+                    array.add(readValue(in, names));
+                }
+                return array;
+            }
+            case OBJECT: {
+                int count = (int) in.readVarint();
+                JsonObject object = new JsonObject();
+                for (int i = 0; i < count; i++) {
+                    String name = names[(int) in.readVarint()];
+                    object.add(name, readValue(in, names));
+                }
+                return object;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown value tag: " + tag);
+        }
+    }
+    
+    /**
+     * The value as a long if it is a whole number that fits, otherwise null.
+     */
+    private static Long asLong(Number number) {
+        if (number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte) {
+            return number.longValue();
+        }
+        if (number instanceof Double || number instanceof Float) {
+            return null;
+        }
+        // Lazily parsed and big numbers: keep them integral only when exact
+        try {
+            BigDecimal decimal = new BigDecimal(number.toString());
+            BigInteger exact = decimal.toBigIntegerExact();
+            return exact.bitLength() < 64 ? exact.longValue() : null;
+        } catch (ArithmeticException | NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private static final class Writer extends ByteArrayOutputStream {
+        private Writer() {
+            super(256);
+        }
+        
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+        
+        private void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+        
+        private void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+        
+        private void writeTo(Writer other) {
+            other.write(buf, 0, count);
+        }
+    }
+    
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+        
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+        
+        private int read() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated compact payload");
+            }
+            return bytes[position++] & 0xFF;
+        }
+        
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+        
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+        
+        private String readString() {
+            int length = (int) readVarint();
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated compact payload");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
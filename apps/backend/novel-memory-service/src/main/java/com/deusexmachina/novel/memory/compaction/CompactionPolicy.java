@@ -0,0 +1,44 @@
+package com.deusexmachina.novel.memory.compaction;
+
+/**
+ * How much of a character's memory stays verbatim and when compaction kicks in.
+ */
+public class CompactionPolicy {
+    private final int keepRecentObservations;
+    private final int keepRecentReflections;
+    private final int triggerObservations;
+    
+    public CompactionPolicy(int keepRecentObservations, int keepRecentReflections, int triggerObservations) {
+        this.keepRecentObservations = keepRecentObservations;
+        this.keepRecentReflections = keepRecentReflections;
+        this.triggerObservations = Math.max(triggerObservations, keepRecentObservations);
+    }
+    
+    /**
+     * Newest observations kept verbatim on the character.
+     */
+    public int getKeepRecentObservations() {
+        return keepRecentObservations;
+    }
+    
+    /**
+     * Newest reflections kept verbatim on the character.
+     */
+    public int getKeepRecentReflections() {
+        return keepRecentReflections;
+    }
+    
+    /**
+     * Observation count above which a write schedules compaction for the character.
+     */
+    public int getTriggerObservations() {
+        return triggerObservations;
+    }
+    
+    /**
+     * Whether a character holds more entries than the policy keeps.
+     */
+    public boolean needsCompaction(int observations, int reflections) {
+        return observations > keepRecentObservations || reflections > keepRecentReflections;
+    }
+}
@@ -0,0 +1,62 @@
+package com.deusexmachina.novel.memory.compaction;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deterministic summarizer that keeps the leading sentence of each distinct entry up to a
+ * length limit, appended to any previous summary of the chapter. Needs no model call, so
+ * compaction works offline and gives stable output.
+ */
+public class ExtractiveSummarizer implements MemorySummarizer {
+    private static final int MAX_SUMMARY_CHARS = 600;
+    
+    @Override
+    public String summarizerId() {
+        return "extractive-v1";
+    }
+    
+    @Override
+    public String summarize(String characterName, Long chapterNumber, String previousSummary,
+            List<String> entries) {
+        String previous = previousSummary != null ? previousSummary.trim() : "";
+        Set<String> sentences = new LinkedHashSet<>();
+        for (String entry : entries) {
+            if (entry != null && !entry.isBlank()) {
+                String sentence = firstSentence(entry.trim());
+                if (!previous.contains(sentence)) {
+                    sentences.add(sentence);
+                }
+            }
+        }
+        
+        // The previous summary is kept as it is; the length limit applies to what is added to it
+        StringBuilder summary = new StringBuilder(previous);
+        int added = 0;
+        for (String sentence : sentences) {
+            if (added > 0 && summary.length() - previous.length() + sentence.length() + 1 > MAX_SUMMARY_CHARS) {
+                break;
+            }
+            if (summary.length() > 0) {
+                summary.append(' ');
+            }
+            summary.append(sentence);
+            added++;
+        }
+        if (added < sentences.size()) {
+            summary.append(" (+").append(sentences.size() - added).append(" more)");
+        }
+        return summary.toString();
+    }
+    
+    private static String firstSentence(String text) {
+        for (int i = 0; i < text.length() - 1; i++) {
+            char c = text.charAt(i);
+            if ((c == '.' || c == '!' || c == '?') && Character.isWhitespace(text.charAt(i + 1))) {
+                return text.substring(0, i + 1);
+            }
+        }
+        return text;
+    }
+}
@@ -0,0 +1,20 @@
+package com.deusexmachina.novel.memory.compaction;
+
+import java.util.List;
+
+/**
+ * Condenses a chapter's worth of a character's memory entries into one summary.
+ */
+public interface MemorySummarizer {
+    
+    /**
+     * Identifies the summarizer, recorded with each summary and archive entry.
+     */
+    String summarizerId();
+    
+    /**
+     * Summarize entries in story order. A null chapter means the entries carried no chapter number.
+     * A previous summary of the same chapter, if any, must survive whole; the new entries extend it.
+     */
+    String summarize(String characterName, Long chapterNumber, String previousSummary, List<String> entries);
+}
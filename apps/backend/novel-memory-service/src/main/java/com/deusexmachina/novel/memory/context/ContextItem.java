@@ -0,0 +1,26 @@
+package com.deusexmachina.novel.memory.context;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Candidate piece of memory competing for space in a generation context.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContextItem {
+    private String itemId;
+    private String type; // world_fact, plot_point, recent_event
+    private String text;
+    private Integer importance; // 1-10, null when unknown
+    private double recency; // 0-1, 1 being most recent or nearest to the scene
+    private Double similarity; // 0-1, set when the item came back from semantic search
+    
+    // Filled in by the packer
+    private int tokens;
+    private double score;
+}
@@ -0,0 +1,126 @@
+package com.deusexmachina.novel.memory.context;
+
+import com.deusexmachina.novel.memory.index.TextTokenizer;
+import com.deusexmachina.novel.memory.models.GenerationContext;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Scores candidate memory items against a scene and greedily fills a token budget.
+ * Scores blend importance, recency, overlap with the scene's characters and location,
+ * and semantic similarity to the scene when it is known.
+ */
+public class ContextPacker {
+    public static final int DEFAULT_TOKEN_BUDGET = 2000;
+    public static final int MAX_TOKEN_BUDGET = 32000;
+    static final int MAX_REPORTED_DROPS = 20; // Highest-scoring drops; the rest are only counted
+
+    private static final double IMPORTANCE_WEIGHT = 0.35;
+    private static final double RECENCY_WEIGHT = 0.25;
+    private static final double OVERLAP_WEIGHT = 0.25;
+    private static final double SIMILARITY_WEIGHT = 0.15;
+    private static final int DEFAULT_IMPORTANCE = 5;
+    private static final int OVERLAP_SATURATION = 2; // Mentions needed for a full overlap score
+
+    /**
+     * Outcome of packing: the chosen items in score order and a report of the decision.
+     */
+    public static class PackResult {
+        private final List<ContextItem> included;
+        private final GenerationContext.PackingReport report;
+
+        PackResult(List<ContextItem> included, GenerationContext.PackingReport report) {
+            this.included = included;
+            this.report = report;
+        }
+
+        public List<ContextItem> getIncluded() {
+            return included;
+        }
+
+        public GenerationContext.PackingReport getReport() {
+            return report;
+        }
+    }
+
+    /**
+     * Pack the highest-scoring candidates that fit within the token budget.
+     *
+     * @param candidates items competing for the budget
+     * @param sceneTerms lowercase terms naming the scene's characters and location
+     * @param tokenBudget maximum tokens the packed items may use
+     */
+    public PackResult pack(List<ContextItem> candidates, Set<String> sceneTerms, int tokenBudget) {
+        for (ContextItem item : candidates) {
+            item.setTokens(estimateTokens(item.getText()));
+            item.setScore(score(item, sceneTerms));
+        }
+
+        List<ContextItem> ranked = new ArrayList<>(candidates);
+        ranked.sort(Comparator.comparingDouble(ContextItem::getScore).reversed());
+
+        List<ContextItem> included = new ArrayList<>();
+        List<GenerationContext.PackedItem> includedReport = new ArrayList<>();
+        List<GenerationContext.PackedItem> droppedReport = new ArrayList<>();
+        int used = 0;
+
+        // Lower-scoring items that still fit keep filling the budget after a larger item is skipped
+        for (ContextItem item : ranked) {
+            if (used + item.getTokens() <= tokenBudget) {
+                used += item.getTokens();
+                included.add(item);
+                includedReport.add(toPackedItem(item));
+            } else if (droppedReport.size() < MAX_REPORTED_DROPS) {
+                droppedReport.add(toPackedItem(item));
+            }
+        }
+
+        GenerationContext.PackingReport report = GenerationContext.PackingReport.builder()
+            .tokenBudget(tokenBudget)
+            .tokensUsed(used)
+            .included(includedReport)
+            .dropped(droppedReport)
+            .droppedCount(ranked.size() - included.size())
+            .build();
+        return new PackResult(included, report);
+    }
+
+    /**
+     * Estimate tokens at roughly four characters per token.
+     */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+    private double score(ContextItem item, Set<String> sceneTerms) {
+        int importance = item.getImportance() != null ? item.getImportance() : DEFAULT_IMPORTANCE;
+        double importanceScore = Math.min(10, Math.max(0, importance)) / 10.0;
+
+        int mentions = 0;
+        if (!sceneTerms.isEmpty()) {
+            for (String token : TextTokenizer.tokenize(item.getText())) {
+                if (sceneTerms.contains(token)) {
+                    mentions++;
+                }
+            }
+        }
+        double overlapScore = Math.min(1.0, (double) mentions / OVERLAP_SATURATION);
+        double similarityScore = item.getSimilarity() != null ? Math.max(0, item.getSimilarity()) : 0;
+
+        return IMPORTANCE_WEIGHT * importanceScore
+            + RECENCY_WEIGHT * item.getRecency()
+            + OVERLAP_WEIGHT * overlapScore
+            + SIMILARITY_WEIGHT * similarityScore;
+    }
+
+    private static GenerationContext.PackedItem toPackedItem(ContextItem item) {
+        return GenerationContext.PackedItem.builder()
+            .itemId(item.getItemId())
+            .type(item.getType())
+            .tokens(item.getTokens())
+            .score(Math.round(item.getScore() * 1000) / 1000.0)
+            .build();
+    }
+}
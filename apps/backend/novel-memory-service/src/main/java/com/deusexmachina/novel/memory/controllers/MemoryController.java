@@ -1,5 +1,8 @@
 package com.deusexmachina.novel.memory.controllers;
 
+import com.deusexmachina.novel.memory.cache.MemoryVersions;
+import com.deusexmachina.novel.memory.codec.CompactCodec;
+import com.deusexmachina.novel.memory.context.ContextPacker;
 import com.deusexmachina.novel.memory.models.*;
 import com.deusexmachina.novel.memory.services.*;
 import com.google.cloud.functions.HttpRequest;
@@ -12,8 +15,11 @@ import com.google.inject.Singleton;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
@@ -28,6 +34,10 @@ public class MemoryController {
     private final PlotMemoryService plotService;
     private final WorldMemoryService worldService;
     private final ContextService contextService;
+    private final MemoryBatchService batchService;
+    private final MemoryCompactionService compactionService;
+    private final MemoryVersions memoryVersions;
+    private final CompactCodec codec;
     private final Gson gson;
     
     @Inject
@@ -35,11 +45,19 @@ public class MemoryController {
                           PlotMemoryService plotService,
                           WorldMemoryService worldService,
                           ContextService contextService,
+                          MemoryBatchService batchService,
+                          MemoryCompactionService compactionService,
+                          MemoryVersions memoryVersions,
+                          CompactCodec codec,
                           Gson gson) {
         this.characterService = characterService;
         this.plotService = plotService;
         this.worldService = worldService;
         this.contextService = contextService;
+        this.batchService = batchService;
+        this.compactionService = compactionService;
+        this.memoryVersions = memoryVersions;
+        this.codec = codec;
         this.gson = gson;
     }
     
@@ -234,6 +252,33 @@ public class MemoryController {
         }
     }
     
+    // Batch Handler
+    
+    public void ingestBatch(String projectId, HttpRequest request, HttpResponse response) throws IOException {
+        try {
+            JsonObject body = parseRequestBody(request);
+            MemoryBatchRequest batchRequest = gson.fromJson(body, MemoryBatchRequest.class);
+            
+            MemoryBatchResult result = batchService.ingest(projectId, batchRequest).join();
+            sendJsonResponse(response, result.isCommitted() ? 200 : 500, result);
+        } catch (Exception e) {
+            logger.severe("Error ingesting memory batch: " + e.getMessage());
+            sendErrorResponse(response, 500, "Internal server error");
+        }
+    }
+    
+    // Compaction Handler
+    
+    public void compactMemory(String projectId, HttpRequest request, HttpResponse response) throws IOException {
+        try {
+            List<CompactionResult> results = compactionService.compactProject(projectId).join();
+            sendJsonResponse(response, 200, results);
+        } catch (Exception e) {
+            logger.severe("Error compacting memory: " + e.getMessage());
+            sendErrorResponse(response, 500, "Internal server error");
+        }
+    }
+    
     // Search Handler
     
     public void searchMemory(HttpRequest request, HttpResponse response) throws IOException {
@@ -282,17 +327,61 @@ public class MemoryController {
         try {
             Long chapterNumber = extractLongParam(request, "chapter", 1L);
             Long sceneNumber = extractLongParam(request, "scene", 1L);
+            int tokenBudget;
+            try {
+                tokenBudget = extractIntParam(request, "tokenBudget", ContextPacker.DEFAULT_TOKEN_BUDGET);
+            } catch (NumberFormatException e) {
+                tokenBudget = -1;
+            }
+            if (tokenBudget <= 0 || tokenBudget > ContextPacker.MAX_TOKEN_BUDGET) {
+                sendErrorResponse(response, 400,
+                    "tokenBudget must be between 1 and " + ContextPacker.MAX_TOKEN_BUDGET);
+                return;
+            }
             
             GenerationContext context = contextService.buildGenerationContext(
-                projectId, sceneId, chapterNumber, sceneNumber).join();
+                projectId, sceneId, chapterNumber, sceneNumber, tokenBudget).join();
             
-            sendJsonResponse(response, 200, context);
+            // Internal callers can ask for the compact binary form instead of JSON
+            if (accepts(request, CompactCodec.CONTENT_TYPE)) {
+                sendCompactResponse(response, 200, context);
+            } else {
+                sendJsonResponse(response, 200, context);
+            }
         } catch (Exception e) {
             logger.severe("Error getting generation context: " + e.getMessage());
             sendErrorResponse(response, 500, "Internal server error");
         }
     }
     
+    /**
+     * The project's memory version, for callers that key their own caches on it.
+     */
+    public void getMemoryVersion(String projectId, HttpRequest request, HttpResponse response) throws IOException {
+        try {
+            Map<String, Object> version = new LinkedHashMap<>();
+            version.put("projectId", projectId);
+            version.put("version", memoryVersions.current(projectId));
+            sendJsonResponse(response, 200, version);
+        } catch (Exception e) {
+            logger.severe("Error getting memory version: " + e.getMessage());
+            sendErrorResponse(response, 500, "Internal server error");
+        }
+    }
+    
+    // Stats Handler
+    
+    public void getStats(HttpRequest request, HttpResponse response) throws IOException {
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("contextCache", contextService.getCacheStats());
+            sendJsonResponse(response, 200, stats);
+        } catch (Exception e) {
+            logger.severe("Error getting stats: " + e.getMessage());
+            sendErrorResponse(response, 500, "Internal server error");
+        }
+    }
+    
     // Helper methods
     
     private String extractProjectId(HttpRequest request) {
@@ -336,11 +425,28 @@ public class MemoryController {
     private void sendJsonResponse(HttpResponse response, int status, Object data) throws IOException {
         response.setStatusCode(status);
         response.setContentType("application/json");
-        try (BufferedWriter writer = response.getWriter()) {
-            writer.write(gson.toJson(data));
+        // Streamed as it is serialized. On failure the writer is left unflushed and the caller's
+        // error status replaces the body, or aborts the response once it has gone out chunked
+        BufferedWriter writer = response.getWriter();
+        gson.toJson(data, data != null ? data.getClass() : Object.class, gson.newJsonWriter(writer));
+        writer.close();
+    }
+    
+    private void sendCompactResponse(HttpResponse response, int status, Object data) throws IOException {
+        byte[] body = codec.encode(data);
+        response.setStatusCode(status);
+        response.setContentType(CompactCodec.CONTENT_TYPE);
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(body);
         }
     }
     
+    private boolean accepts(HttpRequest request, String contentType) {
+        return request.getFirstHeader("Accept")
+            .map(accept -> accept.contains(contentType))
+            .orElse(false);
+    }
+    
     private void sendErrorResponse(HttpResponse response, int status, String message) throws IOException {
         response.setStatusCode(status);
         response.setContentType("application/json");
@@ -0,0 +1,256 @@
+package com.deusexmachina.novel.memory.index;
+
+import com.deusexmachina.novel.memory.models.WorldMemory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Blocking index for contradiction detection across a project's world facts.
+ * Facts are normalized once when indexed and only compared with facts that share a key
+ * token or the same negation-stripped text, so validation avoids the all-pairs scan.
+ */
+public class ConsistencyIndex {
+    private static final String[][] OPPOSITES = {
+        {"alive", "dead"}, {"open", "closed"}, {"hot", "cold"}, {"day", "night"}
+    };
+    private static final Set<String> STOP_WORDS = Set.of(
+        "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "have", "in", "is",
+        "it", "its", "not", "of", "on", "or", "that", "the", "to", "was", "were", "will", "with");
+    private static final int MIN_BLOCK_LIMIT = 256;
+    private static final int MAX_BLOCK_FRACTION = 20;
+
+    private final Map<String, NormalizedFact> facts = new HashMap<>(); // fact ID -> normalized fact
+    private final Map<String, Set<NormalizedFact>> blocks = new HashMap<>(); // key token -> facts with opposites
+    private final Map<String, Set<NormalizedFact>> negationGroups = new HashMap<>(); // base text -> facts
+    private long sequence;
+    private volatile boolean validated; // every indexed fact has been compared with every other
+
+    /**
+     * Pair of facts found to contradict each other.
+     */
+    public static final class ConflictPair {
+        private final WorldMemory.WorldFact first;
+        private final WorldMemory.WorldFact second;
+
+        ConflictPair(WorldMemory.WorldFact first, WorldMemory.WorldFact second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        public WorldMemory.WorldFact getFirst() {
+            return first;
+        }
+
+        public WorldMemory.WorldFact getSecond() {
+            return second;
+        }
+    }
+
+    /**
+     * Index facts that are new or changed and return the contradictions they introduce.
+     * Facts already indexed with the same text are not re-checked.
+     */
+    public synchronized List<ConflictPair> addFacts(Collection<WorldMemory.WorldFact> candidates) {
+        List<WorldMemory.WorldFact> changed = new ArrayList<>();
+        for (WorldMemory.WorldFact fact : candidates) {
+            if (fact.getFactId() == null || fact.getFact() == null) {
+                continue;
+            }
+            NormalizedFact existing = facts.get(fact.getFactId());
+            if (existing == null || !existing.fact.getFact().equals(fact.getFact())) {
+                changed.add(fact);
+            }
+        }
+        if (changed.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Normalization is the expensive part and has no shared state
+        List<NormalizedFact> normalized = changed.parallelStream()
+            .map(NormalizedFact::new)
+            .collect(Collectors.toList());
+        for (NormalizedFact fact : normalized) {
+            removeLocked(fact.fact.getFactId());
+            fact.sequence = ++sequence;
+            register(fact);
+        }
+
+        // Index is read-only from here on; each pair is reported once, by its newer member
+        return normalized.parallelStream()
+            .flatMap(fact -> candidatesFor(fact).stream()
+                .filter(other -> other.sequence < fact.sequence)
+                .filter(other -> contradicts(fact, other))
+                .map(other -> new ConflictPair(other.fact, fact.fact)))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Drop indexed world facts that are no longer part of the project.
+     * Facts derived from locations and character states are kept.
+     */
+    public synchronized void retainFacts(Set<String> factIds) {
+        List<String> stale = facts.entrySet().stream()
+            .filter(entry -> !factIds.contains(entry.getKey()) && !DerivedFacts.isDerived(entry.getValue().fact))
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+        stale.forEach(this::removeLocked);
+    }
+
+    /**
+     * Remove a single fact from the index.
+     */
+    public synchronized void removeFact(String factId) {
+        removeLocked(factId);
+    }
+
+    /**
+     * Number of facts currently indexed.
+     */
+    public synchronized int size() {
+        return facts.size();
+    }
+
+    /**
+     * Whether the index was built by a full validation, rather than seeded with stored facts
+     * that were never compared with each other.
+     */
+    public boolean isValidated() {
+        return validated;
+    }
+
+    public void markValidated() {
+        validated = true;
+    }
+
+    private Set<NormalizedFact> candidatesFor(NormalizedFact fact) {
+        Set<NormalizedFact> candidates = new HashSet<>();
+        Set<NormalizedFact> group = negationGroups.get(fact.negationKey);
+        if (group != null) {
+            candidates.addAll(group);
+        }
+        if (fact.oppositeMask != 0) {
+            // Tokens shared by a large share of the project behave like stop words and are skipped,
+            // unless every block of this fact is that large, in which case the smallest is used
+            int maxBlockSize = Math.max(MIN_BLOCK_LIMIT, facts.size() / MAX_BLOCK_FRACTION);
+            Set<NormalizedFact> smallest = null;
+            boolean matched = false;
+            for (String token : fact.keyTokens) {
+                Set<NormalizedFact> block = blocks.get(token);
+                if (block == null) {
+                    continue;
+                }
+                if (block.size() <= maxBlockSize) {
+                    candidates.addAll(block);
+                    matched = true;
+                } else if (smallest == null || block.size() < smallest.size()) {
+                    smallest = block;
+                }
+            }
+            if (!matched && smallest != null) {
+                candidates.addAll(smallest);
+            }
+        }
+        candidates.remove(fact);
+        return candidates;
+    }
+
+    private static boolean contradicts(NormalizedFact a, NormalizedFact b) {
+        // Direct negation: "x is not y" vs "x is y"
+        if (a.negated != b.negated && a.negationKey.equals(b.negationKey)) {
+            return true;
+        }
+
+        // Mutually exclusive states: bit 2i is the first word of pair i, bit 2i+1 the second
+        long aFirst = a.oppositeMask & 0x5555555555555555L;
+        long aSecond = (a.oppositeMask >>> 1) & 0x5555555555555555L;
+        long bFirst = b.oppositeMask & 0x5555555555555555L;
+        long bSecond = (b.oppositeMask >>> 1) & 0x5555555555555555L;
+        return (aFirst & bSecond) != 0 || (aSecond & bFirst) != 0;
+    }
+
+    private void register(NormalizedFact fact) {
+        facts.put(fact.fact.getFactId(), fact);
+        negationGroups.computeIfAbsent(fact.negationKey, k -> new HashSet<>()).add(fact);
+        if (fact.oppositeMask != 0) {
+            for (String token : fact.keyTokens) {
+                blocks.computeIfAbsent(token, k -> new HashSet<>()).add(fact);
+            }
+        }
+    }
+
+    private void removeLocked(String factId) {
+        NormalizedFact existing = facts.remove(factId);
+        if (existing == null) {
+            return;
+        }
+        removeFrom(negationGroups, existing.negationKey, existing);
+        if (existing.oppositeMask != 0) {
+            for (String token : existing.keyTokens) {
+                removeFrom(blocks, token, existing);
+            }
+        }
+    }
+
+    private static void removeFrom(Map<String, Set<NormalizedFact>> map, String key, NormalizedFact fact) {
+        Set<NormalizedFact> set = map.get(key);
+        if (set != null) {
+            set.remove(fact);
+            if (set.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Fact text lowered, tokenized and reduced to the features the contradiction rules need.
+     */
+    private static final class NormalizedFact {
+        private final WorldMemory.WorldFact fact;
+        private final boolean negated;
+        private final String negationKey;
+        private final long oppositeMask;
+        private final Set<String> keyTokens;
+        private long sequence;
+
+        private NormalizedFact(WorldMemory.WorldFact fact) {
+            this.fact = fact;
+            String text = fact.getFact().toLowerCase().trim();
+            List<String> tokens = TextTokenizer.tokenize(text);
+
+            this.negated = tokens.contains("not");
+            this.negationKey = negated ? text.replace("not ", "").trim() : text;
+
+            long mask = 0;
+            Set<String> keys = new HashSet<>();
+            for (String token : tokens) {
+                int opposite = oppositeBit(token);
+                if (opposite >= 0) {
+                    mask |= 1L << opposite;
+                } else if (token.length() > 2 && !STOP_WORDS.contains(token)) {
+                    keys.add(token);
+                }
+            }
+            this.oppositeMask = mask;
+            this.keyTokens = keys;
+        }
+
+        private static int oppositeBit(String token) {
+            for (int i = 0; i < OPPOSITES.length; i++) {
+                if (OPPOSITES[i][0].equals(token)) {
+                    return i * 2;
+                }
+                if (OPPOSITES[i][1].equals(token)) {
+                    return i * 2 + 1;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.deusexmachina.novel.memory.index;
+
+import com.deusexmachina.novel.memory.models.CharacterMemory;
+import com.deusexmachina.novel.memory.models.WorldMemory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns locations and character states into fact-shaped entries so they can be checked
+ * against world facts by the consistency index.
+ */
+public final class DerivedFacts {
+    private static final String LOCATION_PREFIX = "location:";
+    private static final String CHARACTER_PREFIX = "character:";
+
+    private DerivedFacts() {
+    }
+
+    /**
+     * Whether a fact was derived from a location or character rather than stored as a world fact.
+     */
+    public static boolean isDerived(WorldMemory.WorldFact fact) {
+        String factId = fact.getFactId();
+        return factId != null && (factId.startsWith(LOCATION_PREFIX) || factId.startsWith(CHARACTER_PREFIX));
+    }
+
+    /**
+     * Derive a fact from a location's description.
+     */
+    public static List<WorldMemory.WorldFact> fromLocation(WorldMemory.Location location) {
+        List<WorldMemory.WorldFact> facts = new ArrayList<>();
+        if (location.getLocationId() != null && location.getDescription() != null) {
+            facts.add(WorldMemory.WorldFact.builder()
+                .factId(LOCATION_PREFIX + location.getLocationId())
+                .fact(location.getName() + ": " + location.getDescription())
+                .category("location")
+                .source("location")
+                .build());
+        }
+        return facts;
+    }
+
+    /**
+     * Derive one fact per populated state field, e.g. "Aria is wounded".
+     */
+    public static List<WorldMemory.WorldFact> fromCharacterState(CharacterMemory character) {
+        List<WorldMemory.WorldFact> facts = new ArrayList<>();
+        CharacterMemory.CharacterState state = character.getCurrentState();
+        if (state == null || character.getCharacterId() == null || character.getName() == null) {
+            return facts;
+        }
+        addStateFact(facts, character, "physical", state.getPhysicalState());
+        addStateFact(facts, character, "emotional", state.getEmotionalState());
+        addStateFact(facts, character, "mental", state.getMentalState());
+        return facts;
+    }
+
+    private static void addStateFact(List<WorldMemory.WorldFact> facts, CharacterMemory character,
+            String aspect, String value) {
+        if (value == null || value.isBlank()) {
+            return;
+        }
+        facts.add(WorldMemory.WorldFact.builder()
+            .factId(CHARACTER_PREFIX + character.getCharacterId() + ":" + aspect)
+            .fact(character.getName() + " is " + value)
+            .category("character")
+            .source("character-state")
+            .build());
+    }
+}
@@ -0,0 +1,161 @@
+package com.deusexmachina.novel.memory.index;
+
+import com.deusexmachina.novel.memory.models.PlotMemory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of a project's plot points by target chapter.
+ * Chapter-window queries walk only the points in range instead of every thread.
+ */
+public class PlotChapterIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<Long, List<IndexedPoint>> pointsByChapter = new TreeMap<>(); // chapter -> points
+    private final Map<String, PlotMemory> plots = new LinkedHashMap<>(); // plot ID -> plot
+    private final Set<String> pointlessPlots = new LinkedHashSet<>(); // plots with no plot point list
+    
+    /**
+     * Index (or re-index) a plot thread and its plot points.
+     */
+    public void indexPlot(PlotMemory plot) {
+        if (plot == null || plot.getPlotId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removePlotLocked(plot.getPlotId());
+            plots.put(plot.getPlotId(), plot);
+            if (plot.getPlotPoints() == null) {
+                pointlessPlots.add(plot.getPlotId());
+                return;
+            }
+            for (PlotMemory.PlotPoint point : plot.getPlotPoints()) {
+                if (point.getTargetChapter() != null) {
+                    pointsByChapter.computeIfAbsent(point.getTargetChapter(), k -> new ArrayList<>())
+                        .add(new IndexedPoint(plot.getPlotId(), point));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Drop a plot thread and its plot points.
+     */
+    public void removePlot(String plotId) {
+        lock.writeLock().lock();
+        try {
+            removePlotLocked(plotId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Threads that are not completed and have a plot point within the window around a chapter.
+     * Threads without plot points count as active while in development or climax.
+     */
+    public List<PlotMemory> getActiveThreads(long chapter, long window) {
+        lock.readLock().lock();
+        try {
+            Set<String> plotIds = new LinkedHashSet<>();
+            for (List<IndexedPoint> points
+                    : pointsByChapter.subMap(chapter - window, true, chapter + window, true).values()) {
+                for (IndexedPoint indexed : points) {
+                    plotIds.add(indexed.plotId);
+                }
+            }
+            for (String plotId : pointlessPlots) {
+                String status = plots.get(plotId).getStatus();
+                if ("development".equals(status) || "climax".equals(status)) {
+                    plotIds.add(plotId);
+                }
+            }
+            
+            List<PlotMemory> active = new ArrayList<>();
+            for (String plotId : plotIds) {
+                PlotMemory plot = plots.get(plotId);
+                // Threads without a status are left out, as the status != completed query did
+                if (plot.getStatus() != null && !"completed".equals(plot.getStatus())) {
+                    active.add(plot);
+                }
+            }
+            return active;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Unwritten plot points targeted after the current chapter and up to chaptersAhead beyond it,
+     * ordered by target chapter.
+     */
+    public List<PlotMemory.PlotPoint> getUpcomingPlotPoints(long currentChapter, long chaptersAhead) {
+        lock.readLock().lock();
+        try {
+            List<PlotMemory.PlotPoint> upcoming = new ArrayList<>();
+            for (List<IndexedPoint> points
+                    : pointsByChapter.subMap(currentChapter, false, currentChapter + chaptersAhead, true).values()) {
+                for (IndexedPoint indexed : points) {
+                    if (!"written".equals(indexed.point.getStatus())) {
+                        upcoming.add(indexed.point);
+                    }
+                }
+            }
+            return upcoming;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Number of plot threads currently indexed.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return plots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void removePlotLocked(String plotId) {
+        PlotMemory existing = plots.remove(plotId);
+        pointlessPlots.remove(plotId);
+        if (existing == null || existing.getPlotPoints() == null) {
+            return;
+        }
+        for (PlotMemory.PlotPoint point : existing.getPlotPoints()) {
+            if (point.getTargetChapter() == null) {
+                continue;
+            }
+            List<IndexedPoint> points = pointsByChapter.get(point.getTargetChapter());
+            if (points != null) {
+                points.removeIf(indexed -> indexed.plotId.equals(plotId));
+                if (points.isEmpty()) {
+                    pointsByChapter.remove(point.getTargetChapter());
+                }
+            }
+        }
+    }
+    
+    private static final class IndexedPoint {
+        private final String plotId;
+        private final PlotMemory.PlotPoint point;
+        
+        private IndexedPoint(String plotId, PlotMemory.PlotPoint point) {
+            this.plotId = plotId;
+            this.point = point;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package com.deusexmachina.novel.memory.index;
+
+import com.deusexmachina.novel.memory.models.CharacterMemory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory adjacency index of a project's character relationships.
+ * Characters are mapped to dense int ids and edges are kept in int arrays per character,
+ * so neighbour, multi-hop and path queries walk arrays rather than string-keyed maps.
+ * Relationships are directed as stored (character -> other -> type) but traversed both ways.
+ */
+public class RelationshipGraph {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> idsByCharacter = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>(); // int id -> node
+    
+    /**
+     * Off-scene character reached from a set of characters.
+     */
+    public static final class Connection {
+        private final String characterId;
+        private final String name;
+        private final int hops;
+        private final String viaCharacterId;
+        private final String relationship;
+        private final int links;
+        
+        Connection(String characterId, String name, int hops, String viaCharacterId, String relationship,
+                int links) {
+            this.characterId = characterId;
+            this.name = name;
+            this.hops = hops;
+            this.viaCharacterId = viaCharacterId;
+            this.relationship = relationship;
+            this.links = links;
+        }
+        
+        public String getCharacterId() {
+            return characterId;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * Distance from the nearest starting character.
+         */
+        public int getHops() {
+            return hops;
+        }
+        
+        /**
+         * Character one hop closer to the start, through which this one was reached.
+         */
+        public String getViaCharacterId() {
+            return viaCharacterId;
+        }
+        
+        /**
+         * Relationship between the via character and this one.
+         */
+        public String getRelationship() {
+            return relationship;
+        }
+        
+        /**
+         * Number of relationships tying this character to the previous hop.
+         */
+        public int getLinks() {
+            return links;
+        }
+    }
+    
+    /**
+     * One edge of a relationship path.
+     */
+    public static final class PathStep {
+        private final String fromCharacterId;
+        private final String toCharacterId;
+        private final String relationship;
+        
+        PathStep(String fromCharacterId, String toCharacterId, String relationship) {
+            this.fromCharacterId = fromCharacterId;
+            this.toCharacterId = toCharacterId;
+            this.relationship = relationship;
+        }
+        
+        public String getFromCharacterId() {
+            return fromCharacterId;
+        }
+        
+        public String getToCharacterId() {
+            return toCharacterId;
+        }
+        
+        public String getRelationship() {
+            return relationship;
+        }
+    }
+    
+    /**
+     * Index (or re-index) a character and replace its outgoing relationships.
+     */
+    public void indexCharacter(CharacterMemory character) {
+        if (character == null || character.getCharacterId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int id = idFor(character.getCharacterId());
+            Node node = nodes.get(id);
+            node.name = character.getName();
+            node.present = true;
+            clearOutgoingLocked(id);
+            if (character.getRelationships() != null) {
+                for (Map.Entry<String, String> rel : character.getRelationships().entrySet()) {
+                    setRelationshipLocked(id, idFor(rel.getKey()), rel.getValue());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Set one relationship from a character to another, as updateRelationships does in Firestore.
+     */
+    public void setRelationship(String characterId, String otherCharacterId, String relationshipType) {
+        lock.writeLock().lock();
+        try {
+            setRelationshipLocked(idFor(characterId), idFor(otherCharacterId), relationshipType);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Drop a character's own relationships. Relationships other characters hold towards it stay,
+     * as they do in their documents, but it is no longer returned from queries.
+     */
+    public void removeCharacter(String characterId) {
+        lock.writeLock().lock();
+        try {
+            Integer id = idsByCharacter.get(characterId);
+            if (id != null) {
+                clearOutgoingLocked(id);
+                nodes.get(id).present = false;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Relationships held by a character, keyed by the other character's ID.
+     */
+    public Map<String, String> getRelationships(String characterId) {
+        lock.readLock().lock();
+        try {
+            Map<String, String> relationships = new LinkedHashMap<>();
+            Integer id = idsByCharacter.get(characterId);
+            if (id != null) {
+                Node node = nodes.get(id);
+                for (int i = 0; i < node.outCount; i++) {
+                    relationships.put(nodes.get(node.out[i]).characterId, node.outTypes[i]);
+                }
+            }
+            return relationships;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Characters directly related to a character in either direction.
+     */
+    public List<Connection> getNeighbors(String characterId) {
+        return expand(Collections.singletonList(characterId), 1, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Characters exactly two relationships away from a character.
+     */
+    public List<Connection> getTwoHopNeighbors(String characterId) {
+        List<Connection> twoHop = new ArrayList<>();
+        for (Connection connection : expand(Collections.singletonList(characterId), 2, Integer.MAX_VALUE)) {
+            if (connection.hops == 2) {
+                twoHop.add(connection);
+            }
+        }
+        return twoHop;
+    }
+    
+    /**
+     * Characters within maxHops of any of the starting characters, excluding the starting ones.
+     * Nearer characters come first; within a hop, those with more ties to the previous hop rank higher.
+     */
+    public List<Connection> expand(Collection<String> characterIds, int maxHops, int limit) {
+        lock.readLock().lock();
+        try {
+            int size = nodes.size();
+            int[] hops = new int[size];
+            int[] via = new int[size];
+            int[] links = new int[size];
+            Arrays.fill(hops, -1);
+            
+            int[] frontier = new int[size];
+            int frontierSize = 0;
+            for (String characterId : characterIds) {
+                Integer id = idsByCharacter.get(characterId);
+                if (id != null && hops[id] < 0) {
+                    hops[id] = 0;
+                    frontier[frontierSize++] = id;
+                }
+            }
+            
+            List<Connection> connections = new ArrayList<>();
+            int[] next = new int[size];
+            for (int hop = 1; hop <= maxHops && frontierSize > 0 && connections.size() < limit; hop++) {
+                int nextSize = 0;
+                for (int f = 0; f < frontierSize; f++) {
+                    int from = frontier[f];
+                    Node node = nodes.get(from);
+                    for (int i = 0; i < node.outCount + node.inCount; i++) {
+                        int to = i < node.outCount ? node.out[i] : node.in[i - node.outCount];
+                        if (hops[to] < 0) {
+                            hops[to] = hop;
+                            via[to] = from;
+                            next[nextSize++] = to;
+                        }
+                        if (hops[to] == hop) {
+                            links[to]++;
+                        }
+                    }
+                }
+                
+                List<Integer> reached = new ArrayList<>(nextSize);
+                for (int i = 0; i < nextSize; i++) {
+                    if (nodes.get(next[i]).present) {
+                        reached.add(next[i]);
+                    }
+                }
+                reached.sort((a, b) -> Integer.compare(links[b], links[a]));
+                for (int id : reached) {
+                    if (connections.size() == limit) {
+                        break;
+                    }
+                    Node node = nodes.get(id);
+                    connections.add(new Connection(node.characterId, node.name, hop,
+                        nodes.get(via[id]).characterId, relationshipLocked(via[id], id), links[id]));
+                }
+                
+                int[] swap = frontier;
+                frontier = next;
+                next = swap;
+                frontierSize = nextSize;
+            }
+            return connections;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Shortest chain of relationships between two characters, or an empty list if they are
+     * not connected within maxHops.
+     */
+    public List<PathStep> shortestPath(String fromCharacterId, String toCharacterId, int maxHops) {
+        lock.readLock().lock();
+        try {
+            Integer from = idsByCharacter.get(fromCharacterId);
+            Integer to = idsByCharacter.get(toCharacterId);
+            if (from == null || to == null || from.equals(to)) {
+                return new ArrayList<>();
+            }
+            
+            int size = nodes.size();
+            int[] parent = new int[size];
+            int[] depth = new int[size];
+            Arrays.fill(parent, -1);
+            parent[from] = from;
+            
+            int[] queue = new int[size];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = from;
+            while (head < tail && parent[to] < 0) {
+                int current = queue[head++];
+                if (depth[current] == maxHops) {
+                    continue;
+                }
+                Node node = nodes.get(current);
+                for (int i = 0; i < node.outCount + node.inCount; i++) {
+                    int neighbour = i < node.outCount ? node.out[i] : node.in[i - node.outCount];
+                    if (parent[neighbour] < 0) {
+                        parent[neighbour] = current;
+                        depth[neighbour] = depth[current] + 1;
+                        queue[tail++] = neighbour;
+                    }
+                }
+            }
+            
+            List<PathStep> path = new ArrayList<>();
+            if (parent[to] < 0) {
+                return path;
+            }
+            for (int current = to; current != from; current = parent[current]) {
+                int previous = parent[current];
+                path.add(new PathStep(nodes.get(previous).characterId, nodes.get(current).characterId,
+                    relationshipLocked(previous, current)));
+            }
+            Collections.reverse(path);
+            return path;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Number of characters currently indexed.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int present = 0;
+            for (Node node : nodes) {
+                if (node.present) {
+                    present++;
+                }
+            }
+            return present;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private int idFor(String characterId) {
+        Integer id = idsByCharacter.get(characterId);
+        if (id == null) {
+            id = nodes.size();
+            idsByCharacter.put(characterId, id);
+            nodes.add(new Node(characterId));
+        }
+        return id;
+    }
+    
+    private void setRelationshipLocked(int from, int to, String type) {
+        Node node = nodes.get(from);
+        for (int i = 0; i < node.outCount; i++) {
+            if (node.out[i] == to) {
+                node.outTypes[i] = type;
+                return;
+            }
+        }
+        node.addOut(to, type);
+        nodes.get(to).addIn(from);
+    }
+    
+    private void clearOutgoingLocked(int id) {
+        Node node = nodes.get(id);
+        for (int i = 0; i < node.outCount; i++) {
+            nodes.get(node.out[i]).removeIn(id);
+        }
+        node.outCount = 0;
+        Arrays.fill(node.outTypes, null);
+    }
+    
+    /**
+     * Relationship label between two adjacent characters, preferring the a -> b direction.
+     */
+    private String relationshipLocked(int a, int b) {
+        String type = nodes.get(a).outType(b);
+        return type != null ? type : nodes.get(b).outType(a);
+    }
+    
+    private static final class Node {
+        private final String characterId;
+        private String name;
+        private boolean present; // Has a character document, not just incoming references
+        private int[] out = new int[4];
+        private String[] outTypes = new String[4];
+        private int outCount;
+        private int[] in = new int[4];
+        private int inCount;
+        
+        private Node(String characterId) {
+            this.characterId = characterId;
+        }
+        
+        private void addOut(int to, String type) {
+            if (outCount == out.length) {
+                out = Arrays.copyOf(out, outCount * 2);
+                outTypes = Arrays.copyOf(outTypes, outCount * 2);
+            }
+            out[outCount] = to;
+            outTypes[outCount++] = type;
+        }
+        
+        private String outType(int to) {
+            for (int i = 0; i < outCount; i++) {
+                if (out[i] == to) {
+                    return outTypes[i];
+                }
+            }
+            return null;
+        }
+        
+        private void addIn(int from) {
+            if (inCount == in.length) {
+                in = Arrays.copyOf(in, inCount * 2);
+            }
+            in[inCount++] = from;
+        }
+        
+        private void removeIn(int from) {
+            for (int i = 0; i < inCount; i++) {
+                if (in[i] == from) {
+                    in[i] = in[--inCount];
+                    return;
+                }
+            }
+        }
+    }
+}
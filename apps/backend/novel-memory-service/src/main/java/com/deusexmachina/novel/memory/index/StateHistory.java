@@ -0,0 +1,164 @@
+package com.deusexmachina.novel.memory.index;
+
+import com.deusexmachina.novel.memory.models.CharacterMemory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * History of one character's state, keyed by story position (chapter, scene).
+ * Each entry holds only the fields that changed from the state before it; a field keeps its
+ * value until a later entry changes it. Materialized checkpoints bound how many deltas an
+ * as-of lookup has to fold.
+ */
+public class StateHistory {
+    private static final int CHECKPOINT_INTERVAL = 16;
+    
+    private final NavigableMap<Long, Map<String, Object>> deltas = new TreeMap<>(); // position -> changed fields
+    private final NavigableMap<Long, Map<String, Object>> checkpoints = new TreeMap<>(); // position -> full state
+    
+    /**
+     * Story position as a single sortable key.
+     */
+    public static long position(long chapterNumber, long sceneNumber) {
+        return (chapterNumber << 32) | (sceneNumber & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Record the full state at a position, replacing anything recorded there before.
+     * Returns the deltas that should be persisted, by position: the one for this position and,
+     * when the entry lands before a later one, that entry's rewritten delta, so the later state
+     * is kept as it was rather than inheriting this entry's changes.
+     */
+    public synchronized Map<Long, Map<String, Object>> record(long position, Map<String, Object> state) {
+        Map<String, Object> before = stateBefore(position);
+        Long next = deltas.higherKey(position);
+        Map<String, Object> nextState = next != null ? fold(next) : null;
+        
+        Map<Long, Map<String, Object>> changed = new LinkedHashMap<>();
+        Map<String, Object> delta = changes(before, state);
+        load(position, delta);
+        changed.put(position, delta);
+        
+        if (next != null) {
+            Map<String, Object> after = new HashMap<>(before);
+            after.putAll(delta);
+            Map<String, Object> nextDelta = changes(after, nextState);
+            if (!nextDelta.equals(deltas.get(next))) {
+                load(next, nextDelta);
+                changed.put(next, nextDelta);
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Add a previously persisted delta.
+     */
+    public synchronized void load(long position, Map<String, Object> delta) {
+        deltas.put(position, delta);
+        // Later checkpoints folded the old entry at this position
+        checkpoints.tailMap(position, true).clear();
+    }
+    
+    /**
+     * State as of a position, or null if nothing was recorded at or before it.
+     */
+    public synchronized Map<String, Object> stateAt(long position) {
+        Long floor = deltas.floorKey(position);
+        if (floor == null) {
+            return null;
+        }
+        return new HashMap<>(fold(floor));
+    }
+    
+    /**
+     * Latest recorded position at or before a position, or null if there is none.
+     */
+    public synchronized Long floorPosition(long position) {
+        return deltas.floorKey(position);
+    }
+    
+    /**
+     * Latest recorded position, or null if the history is empty.
+     */
+    public synchronized Long latestPosition() {
+        return deltas.isEmpty() ? null : deltas.lastKey();
+    }
+    
+    public synchronized int size() {
+        return deltas.size();
+    }
+    
+    /**
+     * Fields of a state that are set and differ from the state before it.
+     */
+    private static Map<String, Object> changes(Map<String, Object> before, Map<String, Object> state) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> field : state.entrySet()) {
+            if (field.getValue() != null && !Objects.equals(field.getValue(), before.get(field.getKey()))) {
+                delta.put(field.getKey(), field.getValue());
+            }
+        }
+        return delta;
+    }
+    
+    private Map<String, Object> stateBefore(long position) {
+        Long lower = deltas.lowerKey(position);
+        return lower != null ? fold(lower) : new HashMap<>();
+    }
+    
+    /**
+     * Full state at a recorded position, starting from the nearest checkpoint at or before it.
+     */
+    private Map<String, Object> fold(long position) {
+        Map.Entry<Long, Map<String, Object>> checkpoint = checkpoints.floorEntry(position);
+        Map<String, Object> state = checkpoint != null ? new HashMap<>(checkpoint.getValue()) : new HashMap<>();
+        NavigableMap<Long, Map<String, Object>> pending = checkpoint != null
+            ? deltas.subMap(checkpoint.getKey(), false, position, true)
+            : deltas.headMap(position, true);
+        
+        for (Map<String, Object> delta : pending.values()) {
+            state.putAll(delta);
+        }
+        if (pending.size() >= CHECKPOINT_INTERVAL) {
+            checkpoints.put(position, new HashMap<>(state));
+        }
+        return state;
+    }
+    
+    /**
+     * Flatten a character state into history fields. Whole numbers are widened to Long so
+     * values compare equal to what Firestore returns.
+     */
+    public static Map<String, Object> fieldsOf(CharacterMemory.CharacterState state) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("emotionalState", state.getEmotionalState());
+        fields.put("physicalState", state.getPhysicalState());
+        fields.put("mentalState", state.getMentalState());
+        fields.put("inventory", state.getInventory());
+        fields.put("energyLevel", state.getEnergyLevel() != null ? state.getEnergyLevel().longValue() : null);
+        fields.put("stressLevel", state.getStressLevel() != null ? state.getStressLevel().longValue() : null);
+        return fields;
+    }
+    
+    /**
+     * Rebuild a character state from history fields.
+     */
+    @SuppressWarnings("unchecked")
+    public static CharacterMemory.CharacterState toState(Map<String, Object> fields, long position) {
+        return CharacterMemory.CharacterState.builder()
+            .emotionalState((String) fields.get("emotionalState"))
+            .physicalState((String) fields.get("physicalState"))
+            .mentalState((String) fields.get("mentalState"))
+            .inventory((Map<String, Object>) fields.get("inventory"))
+            .energyLevel(fields.get("energyLevel") != null ? ((Number) fields.get("energyLevel")).intValue() : null)
+            .stressLevel(fields.get("stressLevel") != null ? ((Number) fields.get("stressLevel")).intValue() : null)
+            .chapterNumber(position >>> 32)
+            .sceneNumber(position & 0xFFFFFFFFL)
+            .build();
+    }
+}
@@ -0,0 +1,187 @@
+package com.deusexmachina.novel.memory.index;
+
+import com.deusexmachina.novel.memory.models.WorldMemory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over the world facts of a single project.
+ * Terms live in a sorted dictionary so every query token can also match as a prefix.
+ */
+public class WorldFactIndex {
+    private static final int DEFAULT_IMPORTANCE = 5;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Set<String>> postings = new TreeMap<>(); // term -> fact IDs
+    private final Map<String, IndexedFact> facts = new HashMap<>(); // fact ID -> indexed fact
+    private final Map<String, Set<String>> factsByWorld = new HashMap<>(); // world ID -> fact IDs
+
+    /**
+     * Index (or re-index) every fact of a world memory document.
+     */
+    public void indexWorldMemory(WorldMemory memory) {
+        lock.writeLock().lock();
+        try {
+            removeWorldLocked(memory.getWorldId());
+            if (memory.getFacts() == null) {
+                return;
+            }
+            Set<String> worldFacts = new HashSet<>();
+            for (WorldMemory.WorldFact fact : memory.getFacts()) {
+                if (fact.getFactId() == null || fact.getFact() == null) {
+                    continue;
+                }
+                removeFactLocked(fact.getFactId());
+                Set<String> terms = new HashSet<>(TextTokenizer.tokenize(fact.getFact()));
+                terms.addAll(TextTokenizer.tokenize(fact.getCategory()));
+                for (String term : terms) {
+                    postings.computeIfAbsent(term, k -> new HashSet<>()).add(fact.getFactId());
+                }
+                facts.put(fact.getFactId(), new IndexedFact(fact, terms, memory.getWorldId()));
+                worldFacts.add(fact.getFactId());
+            }
+            factsByWorld.put(memory.getWorldId(), worldFacts);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop every fact that belongs to a world memory document.
+     */
+    public void removeWorldMemory(String worldId) {
+        lock.writeLock().lock();
+        try {
+            removeWorldLocked(worldId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Search facts whose terms match every query token, exactly or by prefix.
+     * Results are ordered by match score weighted by fact importance.
+     */
+    public List<WorldMemory.WorldFact> search(String query) {
+        List<String> tokens = TextTokenizer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<String, Double> scores = null;
+            for (String token : tokens) {
+                Map<String, Double> tokenScores = matchToken(token);
+                if (scores == null) {
+                    scores = tokenScores;
+                } else {
+                    scores.keySet().retainAll(tokenScores.keySet());
+                    scores.replaceAll((factId, score) -> score + tokenScores.get(factId));
+                }
+                if (scores.isEmpty()) {
+                    return new ArrayList<>();
+                }
+            }
+
+            List<ScoredFact> ranked = new ArrayList<>(scores.size());
+            for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                WorldMemory.WorldFact fact = facts.get(entry.getKey()).fact;
+                int importance = fact.getImportance() != null ? fact.getImportance() : DEFAULT_IMPORTANCE;
+                double score = (entry.getValue() / tokens.size()) * (1.0 + importance / 10.0);
+                ranked.add(new ScoredFact(fact, score));
+            }
+            ranked.sort((a, b) -> Double.compare(b.score, a.score));
+
+            List<WorldMemory.WorldFact> results = new ArrayList<>(ranked.size());
+            for (ScoredFact scored : ranked) {
+                results.add(scored.fact);
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of facts currently indexed.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return facts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Double> matchToken(String token) {
+        Map<String, Double> matches = new HashMap<>();
+        // Exact hits score 1.0, prefix hits score by how much of the term the token covers
+        for (Map.Entry<String, Set<String>> entry
+                : postings.subMap(token, true, token + Character.MAX_VALUE, false).entrySet()) {
+            double termScore = (double) token.length() / entry.getKey().length();
+            for (String factId : entry.getValue()) {
+                matches.merge(factId, termScore, Math::max);
+            }
+        }
+        return matches;
+    }
+
+    private void removeWorldLocked(String worldId) {
+        Set<String> worldFacts = factsByWorld.remove(worldId);
+        if (worldFacts != null) {
+            worldFacts.forEach(this::removeFactLocked);
+        }
+    }
+
+    private void removeFactLocked(String factId) {
+        IndexedFact existing = facts.remove(factId);
+        if (existing == null) {
+            return;
+        }
+        for (String term : existing.terms) {
+            Set<String> termPostings = postings.get(term);
+            if (termPostings != null) {
+                termPostings.remove(factId);
+                if (termPostings.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        Set<String> worldFacts = factsByWorld.get(existing.worldId);
+        if (worldFacts != null) {
+            worldFacts.remove(factId);
+        }
+    }
+
+    private static final class IndexedFact {
+        private final WorldMemory.WorldFact fact;
+        private final Set<String> terms;
+        private final String worldId;
+
+        private IndexedFact(WorldMemory.WorldFact fact, Set<String> terms, String worldId) {
+            this.fact = fact;
+            this.terms = terms;
+            this.worldId = worldId;
+        }
+    }
+
+    private static final class ScoredFact {
+        private final WorldMemory.WorldFact fact;
+        private final double score;
+
+        private ScoredFact(WorldMemory.WorldFact fact, double score) {
+            this.fact = fact;
+            this.score = score;
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class CharacterMemory {
     
     // Reflections (R in SCORE)
     private List<CharacterReflection> reflections;
+    private List<MemorySummary> memorySummaries; // Compacted older observations and reflections, per chapter
     private String characterArc;
     private Map<String, Integer> emotionalJourney; // Chapter -> emotional state
     
@@ -77,6 +78,8 @@ public class CharacterMemory {
         private Integer energyLevel; // 0-100
         private Integer stressLevel; // 0-100
         private Timestamp stateTimestamp;
+        private Long chapterNumber; // Story position the state applies from
+        private Long sceneNumber;
     }
     
     @Data
@@ -91,6 +94,7 @@ public class CharacterMemory {
         private List<String> involvedCharacterIds;
         private Timestamp timestamp;
         private Long sceneNumber;
+        private Long chapterNumber;
     }
     
     @Data
@@ -105,4 +109,17 @@ public class CharacterMemory {
         private Timestamp timestamp;
         private Long chapterNumber;
     }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MemorySummary {
+        private Long chapterNumber; // Null for entries that carried no chapter
+        private String summary;
+        private Integer observationCount;
+        private Integer reflectionCount;
+        private String summarizer;
+        private Timestamp compactedAt;
+    }
 }
\ No newline at end of file
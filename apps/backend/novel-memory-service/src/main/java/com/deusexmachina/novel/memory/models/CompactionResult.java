@@ -0,0 +1,22 @@
+package com.deusexmachina.novel.memory.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of compacting one character's observations and reflections.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompactionResult {
+    private String characterId;
+    private int observationsArchived;
+    private int reflectionsArchived;
+    private int summariesWritten;
+    private int observationsKept;
+    private int reflectionsKept;
+}
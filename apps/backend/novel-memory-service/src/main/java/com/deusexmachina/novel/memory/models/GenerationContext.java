@@ -21,6 +21,7 @@ public class GenerationContext {
     // Character context
     private List<CharacterContext> activeCharacters;
     private Map<String, String> characterRelationships; // char1_char2 -> relationship
+    private List<String> relatedCharacters; // Off-scene characters tied to those present
     
     // Plot context
     private String currentPlotPhase;
@@ -50,6 +51,9 @@ public class GenerationContext {
     private List<String> mustAvoid; // Elements to avoid
     private Map<String, String> consistencyRules; // Rules to follow
     
+    // What the token budget let in and what it left out
+    private PackingReport packingReport;
+    
     @Data
     @Builder
     @NoArgsConstructor
@@ -61,8 +65,32 @@ public class GenerationContext {
         private String currentObjective;
         private String emotionalState;
         private List<String> recentActions;
+        private List<String> earlierHistory; // Latest compacted chapter summaries
         private String voiceProfile;
         private List<String> speechPatterns;
         private Map<String, String> relationshipsInScene; // Other chars -> relationship
     }
-}
\ No newline at end of file
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PackingReport {
+        private Integer tokenBudget;
+        private Integer tokensUsed;
+        private List<PackedItem> included;
+        private List<PackedItem> dropped; // Highest-scoring drops only
+        private Integer droppedCount;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PackedItem {
+        private String itemId;
+        private String type; // world_fact, plot_point, recent_event
+        private Integer tokens;
+        private Double score;
+    }
+}
@@ -0,0 +1,60 @@
+package com.deusexmachina.novel.memory.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * A scene's worth of memory updates, written together in one batch.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemoryBatchRequest {
+    private String sceneId; // Applied to observations that do not name a scene
+    private Long chapterNumber; // Position of the scene; when given, the next scene's context is prefetched
+    private Long sceneNumber;
+    private List<ObservationEntry> observations;
+    private List<WorldFactEntry> worldFacts;
+    private List<MilestoneEntry> milestones;
+    private List<PlotPointEntry> plotPoints;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ObservationEntry {
+        private String characterId;
+        private CharacterMemory.CharacterObservation observation;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class WorldFactEntry {
+        private String category;
+        private WorldMemory.WorldFact fact;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MilestoneEntry {
+        private String plotId;
+        private PlotMemory.Milestone milestone;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PlotPointEntry {
+        private String plotId;
+        private PlotMemory.PlotPoint plotPoint;
+    }
+}
@@ -0,0 +1,37 @@
+package com.deusexmachina.novel.memory.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * Outcome of a batch ingestion, with one result per submitted item.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemoryBatchResult {
+    public static final String WRITTEN = "written";
+    public static final String REJECTED = "rejected";
+    public static final String FAILED = "failed";
+    
+    private boolean committed;
+    private int documentsWritten;
+    private List<ItemResult> results;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemResult {
+        private String type; // observation, world_fact, milestone, plot_point
+        private int index; // Position within its list in the request
+        private String targetId; // Character, plot or category the item was written to
+        private String itemId;
+        private String status; // written, rejected, failed
+        private String error;
+    }
+}
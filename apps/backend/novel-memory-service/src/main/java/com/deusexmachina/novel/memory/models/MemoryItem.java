@@ -0,0 +1,33 @@
+package com.deusexmachina.novel.memory.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A single retrievable piece of memory (world fact, observation or plot point)
+ * as stored in the semantic index.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemoryItem {
+    public static final String WORLD_FACT = "world_fact";
+    public static final String PLOT_POINT = "plot_point";
+    public static final String RECENT_EVENT = "recent_event";
+    
+    private String itemId;
+    private String type; // world_fact, plot_point, recent_event
+    private String text;
+    private Integer importance; // 1-10
+    private Double similarity; // Set on search results only
+    
+    /**
+     * Key that is unique across item types within a project.
+     */
+    public String key() {
+        return type + ":" + itemId;
+    }
+}
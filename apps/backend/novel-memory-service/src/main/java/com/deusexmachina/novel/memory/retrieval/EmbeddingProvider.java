@@ -0,0 +1,22 @@
+package com.deusexmachina.novel.memory.retrieval;
+
+/**
+ * Turns memory text into dense vectors for semantic retrieval.
+ */
+public interface EmbeddingProvider {
+    
+    /**
+     * Identifier of the embedding model; vectors from different models are never mixed.
+     */
+    String modelId();
+    
+    /**
+     * Number of dimensions of the vectors this provider produces.
+     */
+    int dimensions();
+    
+    /**
+     * Embed text into an L2-normalized vector.
+     */
+    float[] embed(String text);
+}
@@ -0,0 +1,52 @@
+package com.deusexmachina.novel.memory.retrieval;
+
+import com.deusexmachina.novel.memory.index.TextTokenizer;
+import java.util.List;
+
+/**
+ * Deterministic local embedding based on feature hashing of unigrams and bigrams.
+ * Needs no model or network access, which makes it the default for local runs and tests.
+ */
+public class HashingEmbeddingProvider implements EmbeddingProvider {
+    private static final int DIMENSIONS = 256;
+    private static final float BIGRAM_WEIGHT = 0.5f;
+    
+    @Override
+    public String modelId() {
+        return "hashing-v1-" + DIMENSIONS;
+    }
+    
+    @Override
+    public int dimensions() {
+        return DIMENSIONS;
+    }
+    
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[DIMENSIONS];
+        List<String> tokens = TextTokenizer.tokenize(text);
+        for (int i = 0; i < tokens.size(); i++) {
+            addFeature(vector, tokens.get(i), 1.0f);
+            if (i > 0) {
+                addFeature(vector, tokens.get(i - 1) + " " + tokens.get(i), BIGRAM_WEIGHT);
+            }
+        }
+        return VectorMath.normalize(vector);
+    }
+    
+    private static void addFeature(float[] vector, String feature, float weight) {
+        int hash = mix(feature.hashCode());
+        int bucket = Math.floorMod(hash, DIMENSIONS);
+        // The sign bit comes from a different part of the hash so collisions tend to cancel out
+        vector[bucket] += (hash & 0x40000000) == 0 ? weight : -weight;
+    }
+    
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
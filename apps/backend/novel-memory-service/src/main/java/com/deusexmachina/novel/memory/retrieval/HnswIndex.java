@@ -0,0 +1,342 @@
+package com.deusexmachina.novel.memory.retrieval;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process approximate nearest neighbour index (HNSW) over normalized vectors.
+ * Vectors are compared by cosine similarity. Replacing or removing a key tombstones
+ * the old node; tombstoned nodes still route searches but are never returned, and are
+ * only reclaimed by rebuilding the index from {@link #liveVectors()}.
+ */
+public class HnswIndex {
+    private static final int DEFAULT_M = 16;
+    private static final int DEFAULT_EF_CONSTRUCTION = 100;
+    private static final int DEFAULT_EF_SEARCH = 64;
+    
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<String, Integer> nodeByKey = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int tombstones;
+    
+    /**
+     * Nearest neighbour returned by a search.
+     */
+    public static final class SearchResult {
+        private final String key;
+        private final float similarity;
+        
+        SearchResult(String key, float similarity) {
+            this.key = key;
+            this.similarity = similarity;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        public float getSimilarity() {
+            return similarity;
+        }
+    }
+    
+    public HnswIndex() {
+        this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+    
+    public HnswIndex(int m, int efConstruction, int efSearch) {
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+    
+    /**
+     * Add a vector under a key, replacing any previous vector for that key.
+     */
+    public void add(String key, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            Integer previous = nodeByKey.get(key);
+            if (previous != null) {
+                nodes.get(previous).deleted = true;
+                tombstones++;
+            }
+            
+            int level = randomLevel();
+            int id = nodes.size();
+            Node node = new Node(key, vector, level);
+            nodes.add(node);
+            nodeByKey.put(key, id);
+            
+            if (entryPoint < 0) {
+                entryPoint = id;
+                maxLevel = level;
+                return;
+            }
+            
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedyClosest(vector, current, l);
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                List<Candidate> found = searchLayer(vector, current, efConstruction, l);
+                int connections = Math.min(m, found.size());
+                for (int i = 0; i < connections; i++) {
+                    Candidate neighbour = found.get(i);
+                    connect(id, neighbour.node, l, neighbour.distance);
+                    connect(neighbour.node, id, l, neighbour.distance);
+                }
+                current = found.get(0).node;
+            }
+            
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = id;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Remove the vector stored under a key.
+     */
+    public void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            Integer id = nodeByKey.remove(key);
+            if (id != null) {
+                nodes.get(id).deleted = true;
+                tombstones++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Find the k live vectors most similar to the query, best first.
+     */
+    public List<SearchResult> search(float[] query, int k) {
+        lock.readLock().lock();
+        try {
+            List<SearchResult> results = new ArrayList<>();
+            if (entryPoint < 0 || k <= 0) {
+                return results;
+            }
+            
+            int current = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedyClosest(query, current, l);
+            }
+            for (Candidate candidate : searchLayer(query, current, Math.max(efSearch, k), 0)) {
+                Node node = nodes.get(candidate.node);
+                if (!node.deleted) {
+                    results.add(new SearchResult(node.key, 1f - candidate.distance));
+                    if (results.size() == k) {
+                        break;
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Number of live vectors.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Number of replaced or removed nodes still held in the graph.
+     */
+    public int tombstones() {
+        lock.readLock().lock();
+        try {
+            return tombstones;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * The vector stored under a key, or null when there is none.
+     */
+    public float[] vector(String key) {
+        lock.readLock().lock();
+        try {
+            Integer id = nodeByKey.get(key);
+            return id != null ? nodes.get(id).vector : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * A snapshot of every live key and its vector, for rebuilding without tombstones.
+     */
+    public Map<String, float[]> liveVectors() {
+        lock.readLock().lock();
+        try {
+            Map<String, float[]> live = new HashMap<>();
+            for (Map.Entry<String, Integer> entry : nodeByKey.entrySet()) {
+                live.put(entry.getKey(), nodes.get(entry.getValue()).vector);
+            }
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+    
+    private float distance(float[] a, int node) {
+        return 1f - VectorMath.dot(a, nodes.get(node).vector);
+    }
+    
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node node = nodes.get(current);
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                int neighbour = node.links[level][i];
+                float d = distance(query, neighbour);
+                if (d < best) {
+                    best = d;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Best-first search of one layer, returning up to ef candidates sorted nearest first.
+     */
+    private List<Candidate> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingDouble(c -> c.distance));
+        PriorityQueue<Candidate> best = new PriorityQueue<>(
+            Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+        
+        Candidate first = new Candidate(start, distance(query, start));
+        visited.set(start);
+        frontier.add(first);
+        best.add(first);
+        
+        while (!frontier.isEmpty()) {
+            Candidate candidate = frontier.poll();
+            if (candidate.distance > best.peek().distance && best.size() >= ef) {
+                break;
+            }
+            Node node = nodes.get(candidate.node);
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                int neighbour = node.links[level][i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float d = distance(query, neighbour);
+                if (best.size() < ef || d < best.peek().distance) {
+                    Candidate next = new Candidate(neighbour, d);
+                    frontier.add(next);
+                    best.add(next);
+                    if (best.size() > ef) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+        
+        List<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort(Comparator.comparingDouble(c -> c.distance));
+        return sorted;
+    }
+    
+    private void connect(int from, int to, int level, float distance) {
+        Node node = nodes.get(from);
+        int capacity = node.links[level].length;
+        if (node.linkCounts[level] < capacity) {
+            node.linkDistances[level][node.linkCounts[level]] = distance;
+            node.links[level][node.linkCounts[level]++] = to;
+            return;
+        }
+        
+        // Full: replace the farthest link if the new one is closer
+        int farthest = 0;
+        for (int i = 1; i < capacity; i++) {
+            if (node.linkDistances[level][i] > node.linkDistances[level][farthest]) {
+                farthest = i;
+            }
+        }
+        if (distance < node.linkDistances[level][farthest]) {
+            node.links[level][farthest] = to;
+            node.linkDistances[level][farthest] = distance;
+        }
+    }
+    
+    private final class Node {
+        private final String key;
+        private final float[] vector;
+        private final int[][] links;
+        private final float[][] linkDistances; // Parallel to links, so pruning needs no recomputation
+        private final int[] linkCounts;
+        private volatile boolean deleted;
+        
+        private Node(String key, float[] vector, int level) {
+            this.key = key;
+            this.vector = vector;
+            this.links = new int[level + 1][];
+            this.linkDistances = new float[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                links[l] = new int[l == 0 ? maxM0 : m];
+                linkDistances[l] = new float[l == 0 ? maxM0 : m];
+            }
+        }
+    }
+    
+    private static final class Candidate {
+        private final int node;
+        private final float distance;
+        
+        private Candidate(int node, float distance) {
+            this.node = node;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.deusexmachina.novel.memory.retrieval;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Small vector helpers shared by the embedding providers and the vector index.
+ */
+public final class VectorMath {
+    
+    private VectorMath() {
+    }
+    
+    /**
+     * Dot product; equals cosine similarity for normalized vectors.
+     */
+    public static float dot(float[] a, float[] b) {
+        // Independent accumulators let the JIT pipeline the multiply-adds
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+    
+    /**
+     * Scale a vector to unit length in place. Zero vectors are returned unchanged.
+     */
+    public static float[] normalize(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        if (norm > 0f) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= norm;
+            }
+        }
+        return vector;
+    }
+    
+    /**
+     * Pack a vector into bytes for storage.
+     */
+    public static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES);
+        for (float value : vector) {
+            buffer.putFloat(value);
+        }
+        return buffer.array();
+    }
+    
+    /**
+     * Unpack a vector stored with {@link #toBytes(float[])}.
+     */
+    public static float[] fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        float[] vector = new float[bytes.length / Float.BYTES];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = buffer.getFloat();
+        }
+        return vector;
+    }
+}
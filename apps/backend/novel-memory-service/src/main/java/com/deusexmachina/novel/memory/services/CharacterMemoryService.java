@@ -1,7 +1,10 @@
 package com.deusexmachina.novel.memory.services;
 
+import com.deusexmachina.novel.memory.index.RelationshipGraph;
 import com.deusexmachina.novel.memory.models.CharacterMemory;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -20,11 +23,20 @@ public interface CharacterMemoryService {
     CompletableFuture<CharacterMemory> getCharacterMemory(String projectId, String characterId);
     
     /**
-     * Update a character's current state.
+     * Update a character's current state. A state carrying a chapter (and scene) number is also
+     * appended to the character's state history; a state for a position before the latest
+     * recorded one only goes into history and leaves the current state alone.
      */
     CompletableFuture<CharacterMemory> updateCharacterState(String projectId, String characterId, 
             CharacterMemory.CharacterState newState);
     
+    /**
+     * Get the states of characters as of a story position. Only characters whose recorded
+     * history differs at that position are included; the rest are at their current state.
+     */
+    CompletableFuture<Map<String, CharacterMemory.CharacterState>> getCharacterStatesAsOf(String projectId,
+            Collection<String> characterIds, Long chapterNumber, Long sceneNumber);
+    
     /**
      * Add an observation to a character's memory.
      */
@@ -59,6 +71,18 @@ public interface CharacterMemoryService {
     CompletableFuture<CharacterMemory> updateRelationships(String projectId, String characterId,
             String otherCharacterId, String relationshipType);
     
+    /**
+     * Get characters related to the given ones within maxHops, nearest and most connected first.
+     */
+    CompletableFuture<List<RelationshipGraph.Connection>> getRelatedCharacters(String projectId,
+            Collection<String> characterIds, int maxHops, int limit);
+    
+    /**
+     * Get the shortest chain of relationships linking two characters.
+     */
+    CompletableFuture<List<RelationshipGraph.PathStep>> getRelationshipPath(String projectId,
+            String fromCharacterId, String toCharacterId);
+    
     /**
      * Delete a character's memory.
      */
@@ -1,6 +1,7 @@
 package com.deusexmachina.novel.memory.services;
 
 import com.deusexmachina.novel.memory.models.GenerationContext;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -14,6 +15,19 @@ public interface ContextService {
     CompletableFuture<GenerationContext> buildGenerationContext(String projectId, String sceneId,
             Long chapterNumber, Long sceneNumber);
     
+    /**
+     * Build generation context for a scene, packing world facts, plot points and recent
+     * events into the given token budget by relevance.
+     */
+    CompletableFuture<GenerationContext> buildGenerationContext(String projectId, String sceneId,
+            Long chapterNumber, Long sceneNumber, int tokenBudget);
+    
+    /**
+     * Build and cache, in the background, the contexts of the scenes most likely to follow:
+     * the next scene in the chapter and the first scene of the next chapter.
+     */
+    void prefetchNextScenes(String projectId, Long chapterNumber, Long sceneNumber, int tokenBudget);
+    
     /**
      * Build character-focused context.
      */
@@ -35,4 +49,9 @@ public interface ContextService {
      * Validate context for consistency.
      */
     CompletableFuture<Boolean> validateContext(GenerationContext context);
+    
+    /**
+     * Size and hit-rate figures for the generation context cache and its prefetcher.
+     */
+    Map<String, Object> getCacheStats();
 }
\ No newline at end of file
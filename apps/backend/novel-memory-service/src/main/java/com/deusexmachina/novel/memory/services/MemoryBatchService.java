@@ -0,0 +1,17 @@
+package com.deusexmachina.novel.memory.services;
+
+import com.deusexmachina.novel.memory.models.MemoryBatchRequest;
+import com.deusexmachina.novel.memory.models.MemoryBatchResult;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service interface for ingesting many memory updates in a single write.
+ */
+public interface MemoryBatchService {
+    
+    /**
+     * Group updates by target document and commit them atomically.
+     * Items whose target does not exist are rejected without failing the rest.
+     */
+    CompletableFuture<MemoryBatchResult> ingest(String projectId, MemoryBatchRequest request);
+}
@@ -0,0 +1,28 @@
+package com.deusexmachina.novel.memory.services;
+
+import com.deusexmachina.novel.memory.models.CharacterMemory;
+import com.deusexmachina.novel.memory.models.CompactionResult;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service interface for rolling old character memory into per-chapter summaries.
+ */
+public interface MemoryCompactionService {
+    
+    /**
+     * Summarize a character's observations and reflections beyond the recent ones kept verbatim,
+     * archiving the raw entries.
+     */
+    CompletableFuture<CompactionResult> compactCharacter(String projectId, String characterId);
+    
+    /**
+     * Compact every character in a project that holds more entries than the policy keeps.
+     */
+    CompletableFuture<List<CompactionResult>> compactProject(String projectId);
+    
+    /**
+     * Compact a character whose observations have grown past the trigger; completes with null otherwise.
+     */
+    CompletableFuture<CompactionResult> compactIfNeeded(String projectId, CharacterMemory memory);
+}
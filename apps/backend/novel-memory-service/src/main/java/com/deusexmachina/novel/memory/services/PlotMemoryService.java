@@ -1,6 +1,7 @@
 package com.deusexmachina.novel.memory.services;
 
 import com.deusexmachina.novel.memory.models.PlotMemory;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -63,6 +64,11 @@ public interface PlotMemoryService {
     CompletableFuture<List<PlotMemory.PlotPoint>> getUpcomingPlotPoints(
             String projectId, Long currentChapter, int chaptersAhead);
     
+    /**
+     * Reload plot threads that were written outside this service so in-memory indexes reflect them.
+     */
+    CompletableFuture<Void> refreshPlots(String projectId, Collection<String> plotIds);
+    
     /**
      * Delete a plot thread.
      */
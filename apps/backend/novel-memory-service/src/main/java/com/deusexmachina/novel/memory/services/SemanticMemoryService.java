@@ -0,0 +1,39 @@
+package com.deusexmachina.novel.memory.services;
+
+import com.deusexmachina.novel.memory.models.MemoryItem;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service interface for embedding-based retrieval over memory items.
+ */
+public interface SemanticMemoryService {
+    
+    /**
+     * Embed and index items that are new or whose text changed.
+     * Returns the number of items that were embedded.
+     */
+    CompletableFuture<Integer> indexItems(String projectId, List<MemoryItem> items);
+    
+    /**
+     * The items that are not indexed yet or whose text changed since they were indexed.
+     * Answers from memory only, and returns nothing while the project's vectors are still loading.
+     */
+    List<MemoryItem> changedItems(String projectId, List<MemoryItem> items);
+    
+    /**
+     * Find the k items most similar to the query text.
+     */
+    CompletableFuture<List<MemoryItem>> search(String projectId, String query, int k);
+    
+    /**
+     * Remove an item from the index.
+     */
+    CompletableFuture<Void> removeItem(String projectId, String type, String itemId);
+    
+    /**
+     * Remove several items of one type from the index.
+     */
+    CompletableFuture<Void> removeItems(String projectId, String type, Collection<String> itemIds);
+}
@@ -1,6 +1,7 @@
 package com.deusexmachina.novel.memory.services;
 
 import com.deusexmachina.novel.memory.models.WorldMemory;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -48,10 +49,17 @@ public interface WorldMemoryService {
             WorldMemory.HistoricalEvent event);
     
     /**
-     * Validate world consistency.
+     * Validate world consistency, returning contradictions not already on record.
      */
     CompletableFuture<List<WorldMemory.Contradiction>> validateConsistency(String projectId);
     
+    /**
+     * Check new or changed facts against the project's consistency index.
+     * Contradictions found are recorded on the project's world memory.
+     */
+    CompletableFuture<List<WorldMemory.Contradiction>> checkConsistency(String projectId,
+            List<WorldMemory.WorldFact> facts);
+    
     /**
      * Add detected contradiction.
      */
@@ -68,6 +76,12 @@ public interface WorldMemoryService {
      */
     CompletableFuture<List<WorldMemory.WorldFact>> getLocationFacts(String projectId, String locationId);
     
+    /**
+     * Reload world memory documents that were written outside this service, such as by a
+     * batch ingestion, so in-memory indexes reflect them.
+     */
+    CompletableFuture<Void> refreshWorldMemory(String projectId, Collection<String> worldIds);
+    
     /**
      * Delete world memory category.
      */
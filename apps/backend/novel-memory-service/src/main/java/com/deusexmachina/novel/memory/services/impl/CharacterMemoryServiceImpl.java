@@ -1,18 +1,33 @@
 package com.deusexmachina.novel.memory.services.impl;
 
+import com.deusexmachina.novel.memory.NovelMemoryModule;
+import com.deusexmachina.novel.memory.cache.MemoryVersions;
+import com.deusexmachina.novel.memory.cache.ProjectIndexCache;
+import com.deusexmachina.novel.memory.index.DerivedFacts;
+import com.deusexmachina.novel.memory.index.RelationshipGraph;
+import com.deusexmachina.novel.memory.index.StateHistory;
 import com.deusexmachina.novel.memory.models.CharacterMemory;
+import com.deusexmachina.novel.memory.models.MemoryItem;
 import com.deusexmachina.novel.memory.services.CharacterMemoryService;
+import com.deusexmachina.novel.memory.services.MemoryCompactionService;
+import com.deusexmachina.novel.memory.services.SemanticMemoryService;
+import com.deusexmachina.novel.memory.services.WorldMemoryService;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -23,12 +38,33 @@ import java.util.stream.Collectors;
 public class CharacterMemoryServiceImpl implements CharacterMemoryService {
     private static final Logger logger = Logger.getLogger(CharacterMemoryServiceImpl.class.getName());
     private static final String COLLECTION_NAME = "characterMemory";
+    private static final String HISTORY_COLLECTION = "stateHistory";
+    private static final int MAX_BATCH_WRITES = 500;
+    private static final int MAX_PATH_HOPS = 6;
     
     private final Firestore firestore;
+    private final WorldMemoryService worldService;
+    private final SemanticMemoryService semanticService;
+    private final MemoryVersions memoryVersions;
+    private final MemoryCompactionService compactionService;
+    private final ProjectIndexCache<RelationshipGraph> relationshipGraphs;
+    private final ProjectIndexCache<Map<String, StateHistory>> stateHistories; // characterId -> history
+    private final Executor executor;
     
     @Inject
-    public CharacterMemoryServiceImpl(Firestore firestore) {
+    public CharacterMemoryServiceImpl(Firestore firestore, WorldMemoryService worldService,
+                                    SemanticMemoryService semanticService, MemoryVersions memoryVersions,
+                                    ProjectIndexCache.Limits indexLimits,
+                                    MemoryCompactionService compactionService,
+                                    @Named(NovelMemoryModule.MEMORY_EXECUTOR) Executor executor) {
         this.firestore = firestore;
+        this.worldService = worldService;
+        this.semanticService = semanticService;
+        this.memoryVersions = memoryVersions;
+        this.compactionService = compactionService;
+        this.relationshipGraphs = new ProjectIndexCache<>(memoryVersions, indexLimits);
+        this.stateHistories = new ProjectIndexCache<>(memoryVersions, indexLimits);
+        this.executor = executor;
     }
     
     @Override
@@ -48,13 +84,19 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 ApiFuture<WriteResult> future = docRef.set(memory);
                 future.get();
                 
+                RelationshipGraph graph = relationshipGraphs.getIfPresent(memory.getProjectId());
+                if (graph != null) {
+                    graph.indexCharacter(memory);
+                }
+                
+                memoryVersions.bump(memory.getProjectId());
                 logger.info("Saved character memory: " + memory.getCharacterId());
                 return memory;
             } catch (Exception e) {
                 logger.severe("Error saving character memory: " + e.getMessage());
                 throw new RuntimeException("Failed to save character memory", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -80,7 +122,7 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 logger.severe("Error getting character memory: " + e.getMessage());
                 throw new RuntimeException("Failed to get character memory", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -93,23 +135,99 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                     .collection(COLLECTION_NAME).document(characterId);
                 
                 newState.setStateTimestamp(Timestamp.now());
+                Long chapterNumber = newState.getChapterNumber();
+                long sceneNumber = newState.getSceneNumber() != null ? newState.getSceneNumber() : 0L;
+                long position = chapterNumber != null ? StateHistory.position(chapterNumber, sceneNumber) : 0L;
+                
+                // Read the history inside the transaction, so a write from another instance that
+                // lands first makes this one retry against it rather than against a stale copy
+                StateHistory history = firestore.runTransaction(tx -> {
+                    Map<String, Object> updates = new HashMap<>();
+                    updates.put("updatedAt", FieldValue.serverTimestamp());
+                    
+                    StateHistory stored = null;
+                    boolean latest = true;
+                    if (chapterNumber != null) {
+                        stored = historyOf(tx.get(docRef.collection(HISTORY_COLLECTION)).get());
+                        for (Map.Entry<Long, Map<String, Object>> changed
+                                : stored.record(position, StateHistory.fieldsOf(newState)).entrySet()) {
+                            long entryPosition = changed.getKey();
+                            Map<String, Object> entry = new HashMap<>();
+                            entry.put("chapterNumber", entryPosition >>> 32);
+                            entry.put("sceneNumber", entryPosition & 0xFFFFFFFFL);
+                            entry.put("changes", changed.getValue());
+                            entry.put("recordedAt", FieldValue.serverTimestamp());
+                            tx.set(docRef.collection(HISTORY_COLLECTION)
+                                .document(historyEntryId(entryPosition >>> 32, entryPosition & 0xFFFFFFFFL)), entry);
+                        }
+                        latest = stored.latestPosition() == position;
+                    }
+                    // A state for an earlier scene is history only; the character has moved on since
+                    if (latest) {
+                        updates.put("currentState", newState);
+                    }
+                    tx.update(docRef, updates);
+                    return stored;
+                }).get();
+                
+                if (history != null) {
+                    Map<String, StateHistory> histories = stateHistories.getIfPresent(projectId);
+                    if (histories != null) {
+                        histories.put(characterId, history);
+                    }
+                }
                 
-                Map<String, Object> updates = new HashMap<>();
-                updates.put("currentState", newState);
-                updates.put("updatedAt", FieldValue.serverTimestamp());
-                
-                ApiFuture<WriteResult> future = docRef.update(updates);
-                future.get();
-                
+                memoryVersions.bump(projectId);
                 logger.info("Updated character state for: " + characterId);
                 
                 // Return updated character memory
-                return getCharacterMemory(projectId, characterId).join();
+                CharacterMemory updated = getCharacterMemory(projectId, characterId).join();
+                
+                // Check the new state against world facts without holding up the response
+                if (updated != null) {
+                    worldService.checkConsistency(projectId, DerivedFacts.fromCharacterState(updated))
+                        .exceptionally(e -> {
+                            logger.warning("Background consistency check failed: " + e.getMessage());
+                            return null;
+                        });
+                }
+                
+                return updated;
             } catch (Exception e) {
                 logger.severe("Error updating character state: " + e.getMessage());
                 throw new RuntimeException("Failed to update character state", e);
             }
-        });
+        }, executor);
+    }
+    
+    @Override
+    public CompletableFuture<Map<String, CharacterMemory.CharacterState>> getCharacterStatesAsOf(String projectId,
+            Collection<String> characterIds, Long chapterNumber, Long sceneNumber) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Map<String, CharacterMemory.CharacterState> states = new HashMap<>();
+                if (chapterNumber == null) {
+                    return states;
+                }
+                long position = StateHistory.position(chapterNumber, sceneNumber != null ? sceneNumber : 0L);
+                
+                for (String characterId : characterIds) {
+                    StateHistory history = getStateHistory(projectId, characterId);
+                    Long latestPosition = history.latestPosition();
+                    if (latestPosition == null || position >= latestPosition) {
+                        continue; // Current state applies
+                    }
+                    Map<String, Object> fields = history.stateAt(position);
+                    if (fields != null) {
+                        states.put(characterId, StateHistory.toState(fields, history.floorPosition(position)));
+                    }
+                }
+                return states;
+            } catch (Exception e) {
+                logger.severe("Error getting character states: " + e.getMessage());
+                throw new RuntimeException("Failed to get character states", e);
+            }
+        }, executor);
     }
     
     @Override
@@ -140,14 +258,32 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 ApiFuture<WriteResult> future = docRef.update(updates);
                 future.get();
                 
+                memoryVersions.bump(projectId);
                 logger.info("Added observation to character: " + characterId);
                 
-                return getCharacterMemory(projectId, characterId).join();
+                if (observation.getObservation() != null) {
+                    MemoryItem item = MemoryItem.builder()
+                        .itemId(observation.getObservationId())
+                        .type(MemoryItem.RECENT_EVENT)
+                        .text(observation.getObservation())
+                        .build();
+                    semanticService.indexItems(projectId, Collections.singletonList(item)).exceptionally(e -> {
+                        logger.warning("Background embedding failed: " + e.getMessage());
+                        return null;
+                    });
+                }
+                
+                CharacterMemory updated = getCharacterMemory(projectId, characterId).join();
+                compactionService.compactIfNeeded(projectId, updated).exceptionally(e -> {
+                    logger.warning("Background compaction failed: " + e.getMessage());
+                    return null;
+                });
+                return updated;
             } catch (Exception e) {
                 logger.severe("Error adding observation: " + e.getMessage());
                 throw new RuntimeException("Failed to add observation", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -173,6 +309,7 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 ApiFuture<WriteResult> future = docRef.update(updates);
                 future.get();
                 
+                memoryVersions.bump(projectId);
                 logger.info("Added reflection to character: " + characterId);
                 
                 return getCharacterMemory(projectId, characterId).join();
@@ -180,7 +317,7 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 logger.severe("Error adding reflection: " + e.getMessage());
                 throw new RuntimeException("Failed to add reflection", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -204,7 +341,7 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 logger.severe("Error getting project characters: " + e.getMessage());
                 throw new RuntimeException("Failed to get project characters", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -229,7 +366,7 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 logger.severe("Error getting scene characters: " + e.getMessage());
                 throw new RuntimeException("Failed to get scene characters", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -259,7 +396,7 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 logger.severe("Error getting character timeline: " + e.getMessage());
                 throw new RuntimeException("Failed to get character timeline", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -278,6 +415,12 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 ApiFuture<WriteResult> future = docRef.update(updates);
                 future.get();
                 
+                RelationshipGraph graph = relationshipGraphs.getIfPresent(projectId);
+                if (graph != null) {
+                    graph.setRelationship(characterId, otherCharacterId, relationshipType);
+                }
+                
+                memoryVersions.bump(projectId);
                 logger.info("Updated relationship for character: " + characterId);
                 
                 return getCharacterMemory(projectId, characterId).join();
@@ -285,7 +428,33 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                 logger.severe("Error updating relationships: " + e.getMessage());
                 throw new RuntimeException("Failed to update relationships", e);
             }
-        });
+        }, executor);
+    }
+    
+    @Override
+    public CompletableFuture<List<RelationshipGraph.Connection>> getRelatedCharacters(String projectId,
+            Collection<String> characterIds, int maxHops, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getRelationshipGraph(projectId).expand(characterIds, maxHops, limit);
+            } catch (Exception e) {
+                logger.severe("Error getting related characters: " + e.getMessage());
+                throw new RuntimeException("Failed to get related characters", e);
+            }
+        }, executor);
+    }
+    
+    @Override
+    public CompletableFuture<List<RelationshipGraph.PathStep>> getRelationshipPath(String projectId,
+            String fromCharacterId, String toCharacterId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getRelationshipGraph(projectId).shortestPath(fromCharacterId, toCharacterId, MAX_PATH_HOPS);
+            } catch (Exception e) {
+                logger.severe("Error getting relationship path: " + e.getMessage());
+                throw new RuntimeException("Failed to get relationship path", e);
+            }
+        }, executor);
     }
     
     @Override
@@ -296,14 +465,109 @@ public class CharacterMemoryServiceImpl implements CharacterMemoryService {
                     .collection("projects").document(projectId)
                     .collection(COLLECTION_NAME).document(characterId);
                 
-                ApiFuture<WriteResult> future = docRef.delete();
-                future.get();
+                // Observations, live and archived, are also embedded for semantic retrieval
+                List<String> observationIds = new ArrayList<>();
+                CharacterMemory memory = docRef.get().get().toObject(CharacterMemory.class);
+                if (memory != null && memory.getObservations() != null) {
+                    memory.getObservations().forEach(observation -> observationIds.add(observation.getObservationId()));
+                }
                 
+                // Firestore leaves subcollections behind, so remove the state history and the
+                // archived memory with the character
+                WriteBatch batch = firestore.batch();
+                int pending = 0;
+                for (String subcollection : List.of(HISTORY_COLLECTION, MemoryCompactionServiceImpl.ARCHIVE_COLLECTION)) {
+                    for (QueryDocumentSnapshot entry : docRef.collection(subcollection).get().get().getDocuments()) {
+                        observationIds.addAll(MemoryCompactionServiceImpl.archivedObservationIds(entry));
+                        batch.delete(entry.getReference());
+                        if (++pending == MAX_BATCH_WRITES) {
+                            batch.commit().get();
+                            batch = firestore.batch();
+                            pending = 0;
+                        }
+                    }
+                }
+                batch.delete(docRef);
+                batch.commit().get();
+                forgetStateHistory(projectId, characterId);
+                
+                RelationshipGraph graph = relationshipGraphs.getIfPresent(projectId);
+                if (graph != null) {
+                    graph.removeCharacter(characterId);
+                }
+                
+                memoryVersions.bump(projectId);
+                semanticService.removeItems(projectId, MemoryItem.RECENT_EVENT, observationIds).exceptionally(e -> {
+                    logger.warning("Background embedding removal failed: " + e.getMessage());
+                    return null;
+                });
                 logger.info("Deleted character memory: " + characterId);
             } catch (Exception e) {
                 logger.severe("Error deleting character memory: " + e.getMessage());
                 throw new RuntimeException("Failed to delete character memory", e);
             }
+        }, executor);
+    }
+    
+    /**
+     * Get the relationship graph for a project, building it from the stored characters on first use
+     * and whenever another instance has written since.
+     */
+    private RelationshipGraph getRelationshipGraph(String projectId) {
+        return relationshipGraphs.get(projectId, id -> {
+            RelationshipGraph graph = new RelationshipGraph();
+            getProjectCharacters(id).join().forEach(graph::indexCharacter);
+            logger.info("Built relationship graph with " + graph.size() + " characters for project: " + id);
+            return graph;
         });
     }
+    
+    /**
+     * Get a character's state history, loading the persisted deltas on first use and whenever
+     * another instance has written since.
+     */
+    private StateHistory getStateHistory(String projectId, String characterId) {
+        Map<String, StateHistory> histories = stateHistories.get(projectId, id -> new ConcurrentHashMap<>());
+        StateHistory history = histories.get(characterId);
+        if (history != null) {
+            return history;
+        }
+        try {
+            QuerySnapshot snapshot = firestore
+                .collection("projects").document(projectId)
+                .collection(COLLECTION_NAME).document(characterId)
+                .collection(HISTORY_COLLECTION)
+                .get().get();
+            StateHistory loaded = historyOf(snapshot);
+            StateHistory raced = histories.putIfAbsent(characterId, loaded);
+            return raced != null ? raced : loaded;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load state history for character " + characterId, e);
+        }
+    }
+    
+    private static StateHistory historyOf(QuerySnapshot snapshot) {
+        StateHistory history = new StateHistory();
+        for (QueryDocumentSnapshot doc : snapshot.getDocuments()) {
+            Long chapterNumber = doc.getLong("chapterNumber");
+            Long sceneNumber = doc.getLong("sceneNumber");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> changes = (Map<String, Object>) doc.get("changes");
+            if (chapterNumber != null && changes != null) {
+                history.load(StateHistory.position(chapterNumber, sceneNumber != null ? sceneNumber : 0L), changes);
+            }
+        }
+        return history;
+    }
+    
+    private void forgetStateHistory(String projectId, String characterId) {
+        Map<String, StateHistory> histories = stateHistories.getIfPresent(projectId);
+        if (histories != null) {
+            histories.remove(characterId);
+        }
+    }
+    
+    private static String historyEntryId(long chapterNumber, long sceneNumber) {
+        return String.format("%06d-%06d", chapterNumber, sceneNumber);
+    }
 }
\ No newline at end of file
@@ -1,11 +1,22 @@
 package com.deusexmachina.novel.memory.services.impl;
 
+import com.deusexmachina.novel.memory.NovelMemoryModule;
+import com.deusexmachina.novel.memory.cache.ContextCache;
+import com.deusexmachina.novel.memory.cache.ContextPrefetcher;
+import com.deusexmachina.novel.memory.cache.MemoryVersions;
+import com.deusexmachina.novel.memory.context.ContextItem;
+import com.deusexmachina.novel.memory.context.ContextPacker;
+import com.deusexmachina.novel.memory.index.RelationshipGraph;
+import com.deusexmachina.novel.memory.index.TextTokenizer;
 import com.deusexmachina.novel.memory.models.*;
 import com.deusexmachina.novel.memory.services.*;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -15,169 +26,442 @@ import java.util.stream.Collectors;
 @Singleton
 public class ContextServiceImpl implements ContextService {
     private static final Logger logger = Logger.getLogger(ContextServiceImpl.class.getName());
+    private static final int SEMANTIC_RESULTS = 20;
+    private static final int RELATED_CHARACTER_HOPS = 2;
+    private static final int RELATED_CHARACTERS = 5;
+    private static final int HISTORY_SUMMARIES = 2;
     
     private final CharacterMemoryService characterService;
     private final PlotMemoryService plotService;
     private final WorldMemoryService worldService;
+    private final SemanticMemoryService semanticService;
+    private final MemoryVersions memoryVersions;
+    private final ContextCache contextCache;
+    private final ContextPrefetcher prefetcher;
+    private final ContextPacker contextPacker = new ContextPacker();
+    private final Map<String, SceneReferences> sceneReferences = new ConcurrentHashMap<>(); // projectId -> scenes
+    private final Executor executor;
     
     @Inject
     public ContextServiceImpl(CharacterMemoryService characterService,
                             PlotMemoryService plotService,
-                            WorldMemoryService worldService) {
+                            WorldMemoryService worldService,
+                            SemanticMemoryService semanticService,
+                            MemoryVersions memoryVersions,
+                            ContextCache contextCache,
+                            ContextPrefetcher prefetcher,
+                            @Named(NovelMemoryModule.MEMORY_EXECUTOR) Executor executor) {
         this.characterService = characterService;
         this.plotService = plotService;
         this.worldService = worldService;
+        this.semanticService = semanticService;
+        this.memoryVersions = memoryVersions;
+        this.contextCache = contextCache;
+        this.prefetcher = prefetcher;
+        this.executor = executor;
     }
     
     @Override
     public CompletableFuture<GenerationContext> buildGenerationContext(String projectId, String sceneId,
             Long chapterNumber, Long sceneNumber) {
+        return buildGenerationContext(projectId, sceneId, chapterNumber, sceneNumber,
+            ContextPacker.DEFAULT_TOKEN_BUDGET);
+    }
+    
+    @Override
+    public CompletableFuture<GenerationContext> buildGenerationContext(String projectId, String sceneId,
+            Long chapterNumber, Long sceneNumber, int tokenBudget) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                logger.info("Building generation context for scene: " + sceneId);
-                
-                GenerationContext.GenerationContextBuilder contextBuilder = GenerationContext.builder()
-                    .projectId(projectId)
-                    .sceneId(sceneId);
-                
-                // Get all scene characters
-                List<CharacterMemory> sceneCharacters = characterService.getSceneCharacters(projectId, sceneId).join();
-                List<GenerationContext.CharacterContext> characterContexts = new ArrayList<>();
-                Map<String, String> characterRelationships = new HashMap<>();
-                
-                // Build character contexts
-                for (CharacterMemory character : sceneCharacters) {
-                    GenerationContext.CharacterContext charContext = buildCharacterContext(character, sceneCharacters);
-                    characterContexts.add(charContext);
-                    
-                    // Collect relationships
-                    if (character.getRelationships() != null) {
-                        for (Map.Entry<String, String> rel : character.getRelationships().entrySet()) {
-                            String key = character.getCharacterId() + "_" + rel.getKey();
-                            characterRelationships.put(key, rel.getValue());
-                        }
-                    }
+                // Read the version before building, so a write that lands mid-build invalidates the result
+                long version = memoryVersions.current(projectId);
+                ContextCache.Key cacheKey = new ContextCache.Key(projectId, sceneId, chapterNumber, sceneNumber,
+                    tokenBudget, version);
+                GenerationContext cached = contextCache.get(cacheKey);
+                if (cached != null) {
+                    logger.info("Serving cached generation context for scene: " + sceneId);
+                    return cached;
                 }
                 
-                contextBuilder.activeCharacters(characterContexts);
-                contextBuilder.characterRelationships(characterRelationships);
-                
-                // Get active plot threads
-                List<PlotMemory> activePlots = plotService.getActiveThreads(projectId, chapterNumber).join();
-                List<String> activeThreadNames = activePlots.stream()
-                    .map(PlotMemory::getThreadName)
-                    .collect(Collectors.toList());
-                
-                // Get main plot for current phase and tension
-                PlotMemory mainPlot = plotService.getMainPlot(projectId).join();
-                if (mainPlot != null) {
-                    contextBuilder.currentPlotPhase(mainPlot.getCurrentPhase());
-                    contextBuilder.currentTensionLevel(mainPlot.getTensionLevel());
-                }
-                
-                // Get upcoming plot points
-                List<PlotMemory.PlotPoint> upcomingPoints = plotService.getUpcomingPlotPoints(projectId, chapterNumber, 3).join();
-                List<String> upcomingPlotPointDescriptions = upcomingPoints.stream()
-                    .map(PlotMemory.PlotPoint::getDescription)
-                    .limit(5)
-                    .collect(Collectors.toList());
-                
-                contextBuilder.activeThreads(activeThreadNames);
-                contextBuilder.upcomingPlotPoints(upcomingPlotPointDescriptions);
-                
-                // Get world context
-                List<WorldMemory> worldMemories = worldService.getProjectWorldMemory(projectId).join();
-                
-                // Extract current location from characters
-                String currentLocation = sceneCharacters.stream()
-                    .map(CharacterMemory::getCurrentLocation)
-                    .filter(Objects::nonNull)
-                    .findFirst()
-                    .orElse("Unknown location");
-                
-                contextBuilder.currentLocation(currentLocation);
-                
-                // Get location details
-                Map<String, String> locationDetails = new HashMap<>();
-                for (WorldMemory worldMem : worldMemories) {
-                    if (worldMem.getLocations() != null) {
-                        worldMem.getLocations().stream()
-                            .filter(loc -> currentLocation.equals(loc.getName()))
-                            .findFirst()
-                            .ifPresent(loc -> {
-                                locationDetails.put("description", loc.getDescription());
-                                locationDetails.put("type", loc.getType());
-                                if (loc.getProperties() != null) {
-                                    loc.getProperties().forEach((k, v) -> 
-                                        locationDetails.put(k, String.valueOf(v)));
-                                }
-                            });
-                    }
+                GenerationContext context = prefetchedContext(projectId, sceneId, chapterNumber, sceneNumber,
+                    tokenBudget, version);
+                if (context != null) {
+                    logger.info("Serving prefetched generation context for scene: " + sceneId);
+                } else {
+                    context = assembleContext(projectId, sceneId, chapterNumber, sceneNumber, tokenBudget);
                 }
-                contextBuilder.locationDetails(locationDetails);
+                contextCache.put(cacheKey, context);
                 
-                // Get relevant world facts
-                List<String> relevantFacts = new ArrayList<>();
-                for (WorldMemory worldMem : worldMemories) {
-                    if (worldMem.getFacts() != null) {
-                        worldMem.getFacts().stream()
-                            .filter(fact -> fact.getImportance() != null && fact.getImportance() >= 7)
-                            .limit(10)
-                            .forEach(fact -> relevantFacts.add(fact.getFact()));
-                    }
-                }
-                contextBuilder.relevantWorldFacts(relevantFacts);
+                // Writers usually go straight on to the next scene; have its context ready
+                prefetchNextScenes(projectId, chapterNumber, sceneNumber, tokenBudget);
                 
-                // Get recent events from character observations
-                List<String> recentEvents = new ArrayList<>();
-                for (CharacterMemory character : sceneCharacters) {
-                    if (character.getObservations() != null) {
-                        character.getObservations().stream()
-                            .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-                            .limit(3)
-                            .forEach(obs -> recentEvents.add(obs.getObservation()));
-                    }
+                return context;
+            } catch (Exception e) {
+                logger.severe("Error building generation context: " + e.getMessage());
+                throw new RuntimeException("Failed to build generation context", e);
+            }
+        }, executor);
+    }
+    
+    /**
+     * Build a context from memory without consulting the cache. A null scene ID builds the
+     * context of a scene no character has appeared in yet.
+     */
+    private GenerationContext assembleContext(String projectId, String sceneId, Long chapterNumber,
+            Long sceneNumber, int tokenBudget) {
+        logger.info("Building generation context for scene: " + (sceneId != null ? sceneId : "(prefetch)"));
+        
+        GenerationContext.GenerationContextBuilder contextBuilder = GenerationContext.builder()
+            .projectId(projectId)
+            .sceneId(sceneId);
+        
+        // Get all scene characters
+        List<CharacterMemory> sceneCharacters = sceneId != null
+            ? characterService.getSceneCharacters(projectId, sceneId).join()
+            : new ArrayList<>();
+        
+        // Regenerating an earlier scene needs characters as they were then, not as they are now
+        List<String> sceneCharacterIds = sceneCharacters.stream()
+            .map(CharacterMemory::getCharacterId)
+            .collect(Collectors.toList());
+        Map<String, CharacterMemory.CharacterState> pastStates = characterService.getCharacterStatesAsOf(
+            projectId, sceneCharacterIds, chapterNumber, sceneNumber).join();
+        for (CharacterMemory character : sceneCharacters) {
+            CharacterMemory.CharacterState pastState = pastStates.get(character.getCharacterId());
+            if (pastState != null) {
+                character.setCurrentState(pastState);
+            }
+        }
+        List<GenerationContext.CharacterContext> characterContexts = new ArrayList<>();
+        Map<String, String> characterRelationships = new HashMap<>();
+        
+        // Build character contexts
+        for (CharacterMemory character : sceneCharacters) {
+            GenerationContext.CharacterContext charContext = buildCharacterContext(character, sceneCharacters);
+            characterContexts.add(charContext);
+            
+            // Collect relationships
+            if (character.getRelationships() != null) {
+                for (Map.Entry<String, String> rel : character.getRelationships().entrySet()) {
+                    String key = character.getCharacterId() + "_" + rel.getKey();
+                    characterRelationships.put(key, rel.getValue());
                 }
-                contextBuilder.recentEvents(recentEvents);
-                
-                // Build consistency rules
-                Map<String, String> consistencyRules = new HashMap<>();
-                
-                // Character consistency rules
-                for (CharacterMemory character : sceneCharacters) {
-                    if (character.getConsistencyRules() != null) {
-                        character.getConsistencyRules().forEach((rule, value) ->
-                            consistencyRules.put(character.getName() + "_" + rule, String.valueOf(value)));
+            }
+        }
+        
+        contextBuilder.activeCharacters(characterContexts);
+        contextBuilder.characterRelationships(characterRelationships);
+        contextBuilder.relatedCharacters(findRelatedCharacters(projectId, sceneCharacters));
+        
+        // Get active plot threads
+        List<PlotMemory> activePlots = plotService.getActiveThreads(projectId, chapterNumber).join();
+        List<String> activeThreadNames = activePlots.stream()
+            .map(PlotMemory::getThreadName)
+            .collect(Collectors.toList());
+        
+        // Get main plot for current phase and tension
+        PlotMemory mainPlot = plotService.getMainPlot(projectId).join();
+        if (mainPlot != null) {
+            contextBuilder.currentPlotPhase(mainPlot.getCurrentPhase());
+            contextBuilder.currentTensionLevel(mainPlot.getTensionLevel());
+        }
+        
+        // Get upcoming plot points
+        List<PlotMemory.PlotPoint> upcomingPoints = plotService.getUpcomingPlotPoints(projectId, chapterNumber, 3).join();
+        List<ContextItem> candidates = new ArrayList<>();
+        for (PlotMemory.PlotPoint point : upcomingPoints) {
+            if (point.getDescription() != null) {
+                candidates.add(ContextItem.builder()
+                    .itemId(point.getPointId())
+                    .type(MemoryItem.PLOT_POINT)
+                    .text(point.getDescription())
+                    .importance(point.getImportance())
+                    .recency(1.0 / (1 + Math.max(0, point.getTargetChapter() - chapterNumber)))
+                    .build());
+            }
+        }
+        
+        contextBuilder.activeThreads(activeThreadNames);
+        
+        // Get world context
+        List<WorldMemory> worldMemories = worldService.getProjectWorldMemory(projectId).join();
+        
+        // Extract current location from characters
+        String currentLocation = sceneCharacters.stream()
+            .map(CharacterMemory::getCurrentLocation)
+            .filter(Objects::nonNull)
+            .findFirst()
+            .orElse("Unknown location");
+        
+        contextBuilder.currentLocation(currentLocation);
+        
+        // Get location details
+        Map<String, String> locationDetails = new HashMap<>();
+        for (WorldMemory worldMem : worldMemories) {
+            if (worldMem.getLocations() != null) {
+                worldMem.getLocations().stream()
+                    .filter(loc -> currentLocation.equals(loc.getName()))
+                    .findFirst()
+                    .ifPresent(loc -> {
+                        locationDetails.put("description", loc.getDescription());
+                        locationDetails.put("type", loc.getType());
+                        if (loc.getProperties() != null) {
+                            loc.getProperties().forEach((k, v) -> 
+                                locationDetails.put(k, String.valueOf(v)));
+                        }
+                    });
+            }
+        }
+        contextBuilder.locationDetails(locationDetails);
+        
+        // World facts compete for the budget on importance, chapter proximity and scene overlap
+        for (WorldMemory worldMem : worldMemories) {
+            if (worldMem.getFacts() != null) {
+                for (WorldMemory.WorldFact fact : worldMem.getFacts()) {
+                    if (fact.getFact() == null) {
+                        continue;
                     }
+                    double recency = fact.getEstablishedChapter() != null
+                        ? 1.0 / (1 + Math.abs(chapterNumber - fact.getEstablishedChapter()) / 5.0)
+                        : 0.5;
+                    candidates.add(ContextItem.builder()
+                        .itemId(fact.getFactId())
+                        .type(MemoryItem.WORLD_FACT)
+                        .text(fact.getFact())
+                        .importance(fact.getImportance())
+                        .recency(recency)
+                        .build());
                 }
-                
-                // World consistency rules
-                for (WorldMemory worldMem : worldMemories) {
-                    if (worldMem.getConsistencyRules() != null) {
-                        worldMem.getConsistencyRules().forEach(rule ->
-                            consistencyRules.put("world_" + rule.getRuleId(), rule.getRule()));
+            }
+        }
+        
+        // Recent events from character observations, ranked newest first across the scene
+        Map<String, CharacterMemory.CharacterObservation> observations = new LinkedHashMap<>();
+        for (CharacterMemory character : sceneCharacters) {
+            if (character.getObservations() != null) {
+                for (CharacterMemory.CharacterObservation obs : character.getObservations()) {
+                    if (obs.getObservation() != null && obs.getTimestamp() != null) {
+                        observations.putIfAbsent(obs.getObservationId() != null 
+                            ? obs.getObservationId() : obs.getObservation(), obs);
                     }
                 }
-                
-                contextBuilder.consistencyRules(consistencyRules);
-                
-                // Set themes from main plot
-                if (mainPlot != null && mainPlot.getThemes() != null) {
-                    contextBuilder.themesToEmphasize(mainPlot.getThemes());
-                }
-                
-                GenerationContext context = contextBuilder.build();
-                logger.info("Built generation context with " + characterContexts.size() + 
-                          " characters and " + activeThreadNames.size() + " active plots");
-                
-                return context;
-            } catch (Exception e) {
-                logger.severe("Error building generation context: " + e.getMessage());
-                throw new RuntimeException("Failed to build generation context", e);
+            }
+        }
+        List<CharacterMemory.CharacterObservation> newestFirst = new ArrayList<>(observations.values());
+        newestFirst.sort((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()));
+        for (int rank = 0; rank < newestFirst.size(); rank++) {
+            CharacterMemory.CharacterObservation obs = newestFirst.get(rank);
+            candidates.add(ContextItem.builder()
+                .itemId(obs.getObservationId())
+                .type(MemoryItem.RECENT_EVENT)
+                .text(obs.getObservation())
+                .recency(1.0 / (1 + rank / 5.0))
+                .build());
+        }
+        
+        // Pull in the items semantically closest to the scene, wherever they live in the project
+        addSemanticCandidates(projectId, buildSceneQuery(sceneCharacters, currentLocation, upcomingPoints),
+            candidates);
+        
+        // Fill the token budget with the best-scoring items
+        Set<String> sceneTerms = new HashSet<>();
+        sceneCharacters.forEach(character -> sceneTerms.addAll(TextTokenizer.tokenize(character.getName())));
+        if (!"Unknown location".equals(currentLocation)) {
+            sceneTerms.addAll(TextTokenizer.tokenize(currentLocation));
+        }
+        ContextPacker.PackResult packed = contextPacker.pack(candidates, sceneTerms, tokenBudget);
+        contextBuilder.upcomingPlotPoints(textsOfType(packed, MemoryItem.PLOT_POINT));
+        contextBuilder.relevantWorldFacts(textsOfType(packed, MemoryItem.WORLD_FACT));
+        contextBuilder.recentEvents(textsOfType(packed, MemoryItem.RECENT_EVENT));
+        contextBuilder.packingReport(packed.getReport());
+        
+        // Build consistency rules
+        Map<String, String> consistencyRules = new HashMap<>();
+        
+        // Character consistency rules
+        for (CharacterMemory character : sceneCharacters) {
+            if (character.getConsistencyRules() != null) {
+                character.getConsistencyRules().forEach((rule, value) ->
+                    consistencyRules.put(character.getName() + "_" + rule, String.valueOf(value)));
+            }
+        }
+        
+        // World consistency rules
+        for (WorldMemory worldMem : worldMemories) {
+            if (worldMem.getConsistencyRules() != null) {
+                worldMem.getConsistencyRules().forEach(rule ->
+                    consistencyRules.put("world_" + rule.getRuleId(), rule.getRule()));
+            }
+        }
+        
+        contextBuilder.consistencyRules(consistencyRules);
+        
+        // Set themes from main plot
+        if (mainPlot != null && mainPlot.getThemes() != null) {
+            contextBuilder.themesToEmphasize(mainPlot.getThemes());
+        }
+        
+        GenerationContext context = contextBuilder.build();
+        logger.info("Built generation context with " + characterContexts.size() + 
+                  " characters and " + activeThreadNames.size() + " active plots, using " +
+                  packed.getReport().getTokensUsed() + "/" + tokenBudget + " tokens");
+        
+        return context;
+    }
+    
+    @Override
+    public void prefetchNextScenes(String projectId, Long chapterNumber, Long sceneNumber, int tokenBudget) {
+        if (chapterNumber == null || sceneNumber == null) {
+            return;
+        }
+        long version = memoryVersions.current(projectId);
+        prefetch(projectId, chapterNumber, sceneNumber + 1, tokenBudget, version);
+        prefetch(projectId, chapterNumber + 1, 1L, tokenBudget, version);
+    }
+    
+    private void prefetch(String projectId, long chapterNumber, long sceneNumber, int tokenBudget, long version) {
+        ContextCache.Key key = new ContextCache.Key(projectId, null, chapterNumber, sceneNumber, tokenBudget, version);
+        if (contextCache.contains(key)) {
+            return;
+        }
+        prefetcher.submit(projectId, key, () -> {
+            recordSceneReferences(projectId, version);
+            GenerationContext context = assembleContext(projectId, null, chapterNumber, sceneNumber, tokenBudget);
+            // Only keep it if memory is still at the version it was built from
+            if (memoryVersions.current(projectId) == version) {
+                contextCache.put(key, context);
             }
         });
     }
     
+    /**
+     * A context prefetched without a scene is exactly what a build would produce for any scene no
+     * character has been placed in yet, which covers every scene that has not been written.
+     * Returns null when there is no such context or the scene already has characters.
+     */
+    private GenerationContext prefetchedContext(String projectId, String sceneId, Long chapterNumber,
+            Long sceneNumber, int tokenBudget, long version) {
+        SceneReferences references = sceneReferences.get(projectId);
+        if (sceneId == null || references == null || references.version != version
+                || references.sceneIds.contains(sceneId)) {
+            return null;
+        }
+        GenerationContext context = contextCache.peek(
+            new ContextCache.Key(projectId, null, chapterNumber, sceneNumber, tokenBudget, version));
+        if (context != null) {
+            context.setSceneId(sceneId);
+            prefetcher.recordHit();
+        }
+        return context;
+    }
+    
+    /**
+     * Record which scenes characters have appeared in at a memory version. Reading after the version
+     * can only add newer scenes, which just makes prefetched contexts apply to fewer scenes.
+     */
+    private void recordSceneReferences(String projectId, long version) {
+        SceneReferences current = sceneReferences.get(projectId);
+        if (current != null && current.version == version) {
+            return;
+        }
+        Set<String> sceneIds = new HashSet<>();
+        for (CharacterMemory character : characterService.getProjectCharacters(projectId).join()) {
+            if (character.getRecentSceneIds() != null) {
+                sceneIds.addAll(character.getRecentSceneIds());
+            }
+        }
+        sceneReferences.put(projectId, new SceneReferences(version, sceneIds));
+    }
+    
+    /**
+     * Describe the scene as free text for semantic search.
+     */
+    private static String buildSceneQuery(List<CharacterMemory> sceneCharacters, String currentLocation,
+            List<PlotMemory.PlotPoint> upcomingPoints) {
+        StringBuilder query = new StringBuilder();
+        for (CharacterMemory character : sceneCharacters) {
+            query.append(character.getName()).append(' ');
+            if (character.getCurrentObjective() != null) {
+                query.append(character.getCurrentObjective()).append(' ');
+            }
+        }
+        if (!"Unknown location".equals(currentLocation)) {
+            query.append(currentLocation).append(' ');
+        }
+        for (PlotMemory.PlotPoint point : upcomingPoints) {
+            if (point.getDescription() != null) {
+                query.append(point.getDescription()).append(' ');
+            }
+        }
+        return query.toString().trim();
+    }
+    
+    /**
+     * Mark candidates that semantic search also found with their similarity and add the hits
+     * that keyword gathering missed. Candidates that are new or changed are indexed in the
+     * background so later scenes can find them; the rest are not handed to the index at all.
+     */
+    private void addSemanticCandidates(String projectId, String query, List<ContextItem> candidates) {
+        Map<String, ContextItem> byKey = new HashMap<>();
+        List<MemoryItem> toIndex = new ArrayList<>();
+        for (ContextItem candidate : candidates) {
+            if (candidate.getItemId() == null) {
+                continue;
+            }
+            MemoryItem item = MemoryItem.builder()
+                .itemId(candidate.getItemId())
+                .type(candidate.getType())
+                .text(candidate.getText())
+                .importance(candidate.getImportance())
+                .build();
+            byKey.put(item.key(), candidate);
+            toIndex.add(item);
+        }
+        
+        try {
+            for (MemoryItem hit : semanticService.search(projectId, query, SEMANTIC_RESULTS).join()) {
+                ContextItem existing = byKey.get(hit.key());
+                if (existing != null) {
+                    existing.setSimilarity(hit.getSimilarity());
+                } else {
+                    candidates.add(ContextItem.builder()
+                        .itemId(hit.getItemId())
+                        .type(hit.getType())
+                        .text(hit.getText())
+                        .importance(hit.getImportance())
+                        .recency(0.5)
+                        .similarity(hit.getSimilarity())
+                        .build());
+                }
+            }
+        } catch (Exception e) {
+            // Keyword-gathered candidates are still usable on their own
+            logger.warning("Semantic retrieval failed: " + e.getMessage());
+        }
+        
+        List<MemoryItem> changed = semanticService.changedItems(projectId, toIndex);
+        if (!changed.isEmpty()) {
+            semanticService.indexItems(projectId, changed).exceptionally(e -> {
+                logger.warning("Background embedding failed: " + e.getMessage());
+                return null;
+            });
+        }
+    }
+    
+    @Override
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = contextCache.getStats();
+        stats.put("prefetch", prefetcher.getStats());
+        return stats;
+    }
+    
+    private static List<String> textsOfType(ContextPacker.PackResult packed, String type) {
+        return packed.getIncluded().stream()
+            .filter(item -> type.equals(item.getType()))
+            .map(ContextItem::getText)
+            .collect(Collectors.toList());
+    }
+    
     private GenerationContext.CharacterContext buildCharacterContext(CharacterMemory character,
             List<CharacterMemory> sceneCharacters) {
         GenerationContext.CharacterContext.CharacterContextBuilder builder = 
@@ -211,6 +495,19 @@ public class ContextServiceImpl implements ContextService {
         }
         builder.recentActions(recentActions);
         
+        // Older observations survive only as per-chapter summaries; the latest few stand in for them
+        List<String> earlierHistory = new ArrayList<>();
+        if (character.getMemorySummaries() != null) {
+            List<CharacterMemory.MemorySummary> summaries = character.getMemorySummaries();
+            for (CharacterMemory.MemorySummary summary
+                    : summaries.subList(Math.max(0, summaries.size() - HISTORY_SUMMARIES), summaries.size())) {
+                earlierHistory.add(summary.getChapterNumber() != null
+                    ? "Chapter " + summary.getChapterNumber() + ": " + summary.getSummary()
+                    : summary.getSummary());
+            }
+        }
+        builder.earlierHistory(earlierHistory);
+        
         // Build relationships with other characters in scene
         Map<String, String> sceneRelationships = new HashMap<>();
         if (character.getRelationships() != null) {
@@ -228,6 +525,37 @@ public class ContextServiceImpl implements ContextService {
         return builder.build();
     }
     
+    /**
+     * Describe off-scene characters closely tied to the scene's characters, e.g. "Mara (mentor, via Jon)",
+     * so generation can mention them where natural.
+     */
+    private List<String> findRelatedCharacters(String projectId, List<CharacterMemory> sceneCharacters) {
+        List<String> related = new ArrayList<>();
+        if (sceneCharacters.isEmpty()) {
+            return related;
+        }
+        
+        Map<String, String> names = new HashMap<>();
+        for (CharacterMemory character : sceneCharacters) {
+            names.put(character.getCharacterId(), character.getName());
+        }
+        List<RelationshipGraph.Connection> connections = characterService.getRelatedCharacters(
+            projectId, names.keySet(), RELATED_CHARACTER_HOPS, RELATED_CHARACTERS).join();
+        for (RelationshipGraph.Connection connection : connections) {
+            names.put(connection.getCharacterId(), connection.getName());
+        }
+        
+        for (RelationshipGraph.Connection connection : connections) {
+            StringBuilder description = new StringBuilder(String.valueOf(connection.getName())).append(" (");
+            if (connection.getRelationship() != null) {
+                description.append(connection.getRelationship()).append(", ");
+            }
+            description.append("via ").append(names.get(connection.getViaCharacterId())).append(")");
+            related.add(description.toString());
+        }
+        return related;
+    }
+    
     @Override
     public CompletableFuture<GenerationContext> buildCharacterContext(String projectId, String characterId,
             String sceneId) {
@@ -277,7 +605,7 @@ public class ContextServiceImpl implements ContextService {
                 logger.severe("Error building character context: " + e.getMessage());
                 throw new RuntimeException("Failed to build character context", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -342,7 +670,7 @@ public class ContextServiceImpl implements ContextService {
                 logger.severe("Error building plot context: " + e.getMessage());
                 throw new RuntimeException("Failed to build plot context", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -399,7 +727,7 @@ public class ContextServiceImpl implements ContextService {
                 logger.severe("Error building location context: " + e.getMessage());
                 throw new RuntimeException("Failed to build location context", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -434,6 +762,16 @@ public class ContextServiceImpl implements ContextService {
                 logger.severe("Error validating context: " + e.getMessage());
                 return false;
             }
-        });
+        }, executor);
+    }
+    
+    private static final class SceneReferences {
+        private final long version;
+        private final Set<String> sceneIds;
+        
+        private SceneReferences(long version, Set<String> sceneIds) {
+            this.version = version;
+            this.sceneIds = sceneIds;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,476 @@
+package com.deusexmachina.novel.memory.services.impl;
+
+import com.deusexmachina.novel.memory.NovelMemoryModule;
+import com.deusexmachina.novel.memory.cache.MemoryVersions;
+import com.deusexmachina.novel.memory.context.ContextPacker;
+import com.deusexmachina.novel.memory.models.CharacterMemory;
+import com.deusexmachina.novel.memory.models.MemoryBatchRequest;
+import com.deusexmachina.novel.memory.models.MemoryBatchResult;
+import com.deusexmachina.novel.memory.models.MemoryItem;
+import com.deusexmachina.novel.memory.models.PlotMemory;
+import com.deusexmachina.novel.memory.models.WorldMemory;
+import com.deusexmachina.novel.memory.services.ContextService;
+import com.deusexmachina.novel.memory.services.MemoryBatchService;
+import com.deusexmachina.novel.memory.services.MemoryCompactionService;
+import com.deusexmachina.novel.memory.services.PlotMemoryService;
+import com.deusexmachina.novel.memory.services.SemanticMemoryService;
+import com.deusexmachina.novel.memory.services.WorldMemoryService;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of MemoryBatchService that commits a scene's memory updates in one Firestore batch.
+ * Updates are grouped so each target document receives a single write.
+ */
+@Singleton
+public class MemoryBatchServiceImpl implements MemoryBatchService {
+    private static final Logger logger = Logger.getLogger(MemoryBatchServiceImpl.class.getName());
+    private static final String CHARACTER_COLLECTION = "characterMemory";
+    private static final String PLOT_COLLECTION = "plotMemory";
+    private static final String WORLD_COLLECTION = "worldMemory";
+    private static final int MAX_BATCH_WRITES = 500; // Firestore limit per batch
+    
+    private static final String OBSERVATION = "observation";
+    private static final String WORLD_FACT = "world_fact";
+    private static final String MILESTONE = "milestone";
+    private static final String PLOT_POINT = "plot_point";
+    
+    private final Firestore firestore;
+    private final WorldMemoryService worldService;
+    private final PlotMemoryService plotService;
+    private final SemanticMemoryService semanticService;
+    private final MemoryVersions memoryVersions;
+    private final ContextService contextService;
+    private final MemoryCompactionService compactionService;
+    private final Executor executor;
+    
+    @Inject
+    public MemoryBatchServiceImpl(Firestore firestore,
+                                WorldMemoryService worldService,
+                                PlotMemoryService plotService,
+                                SemanticMemoryService semanticService,
+                                MemoryVersions memoryVersions,
+                                ContextService contextService,
+                                MemoryCompactionService compactionService,
+                                @Named(NovelMemoryModule.MEMORY_EXECUTOR) Executor executor) {
+        this.firestore = firestore;
+        this.worldService = worldService;
+        this.plotService = plotService;
+        this.semanticService = semanticService;
+        this.memoryVersions = memoryVersions;
+        this.contextService = contextService;
+        this.compactionService = compactionService;
+        this.executor = executor;
+    }
+    
+    @Override
+    public CompletableFuture<MemoryBatchResult> ingest(String projectId, MemoryBatchRequest request) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                DocumentReference project = firestore.collection("projects").document(projectId);
+                List<MemoryBatchResult.ItemResult> results = new ArrayList<>();
+                List<MemoryBatchResult.ItemResult> accepted = new ArrayList<>();
+                
+                // Group updates by the document they land in
+                Map<String, List<CharacterMemory.CharacterObservation>> observationsByCharacter = new LinkedHashMap<>();
+                Map<String, List<PlotMemory.Milestone>> milestonesByPlot = new LinkedHashMap<>();
+                Map<String, List<PlotMemory.PlotPoint>> pointsByPlot = new LinkedHashMap<>();
+                Map<String, List<WorldMemory.WorldFact>> factsByCategory = new LinkedHashMap<>();
+                Map<String, List<MemoryBatchResult.ItemResult>> resultsByTarget = new HashMap<>();
+                
+                List<MemoryBatchRequest.ObservationEntry> observations = orEmpty(request.getObservations());
+                for (int i = 0; i < observations.size(); i++) {
+                    MemoryBatchRequest.ObservationEntry entry = observations.get(i);
+                    CharacterMemory.CharacterObservation observation = entry.getObservation();
+                    if (entry.getCharacterId() == null || observation == null || observation.getObservation() == null) {
+                        results.add(rejected(OBSERVATION, i, entry.getCharacterId(), "characterId and observation are required"));
+                        continue;
+                    }
+                    if (observation.getObservationId() == null) {
+                        observation.setObservationId(UUID.randomUUID().toString());
+                    }
+                    if (observation.getTimestamp() == null) {
+                        observation.setTimestamp(Timestamp.now());
+                    }
+                    if (observation.getSceneId() == null) {
+                        observation.setSceneId(request.getSceneId());
+                    }
+                    observationsByCharacter.computeIfAbsent(entry.getCharacterId(), k -> new ArrayList<>()).add(observation);
+                    track(results, accepted, resultsByTarget, CHARACTER_COLLECTION + "/" + entry.getCharacterId(),
+                        OBSERVATION, i, entry.getCharacterId(), observation.getObservationId());
+                }
+                
+                List<MemoryBatchRequest.MilestoneEntry> milestones = orEmpty(request.getMilestones());
+                for (int i = 0; i < milestones.size(); i++) {
+                    MemoryBatchRequest.MilestoneEntry entry = milestones.get(i);
+                    PlotMemory.Milestone milestone = entry.getMilestone();
+                    if (entry.getPlotId() == null || milestone == null) {
+                        results.add(rejected(MILESTONE, i, entry.getPlotId(), "plotId and milestone are required"));
+                        continue;
+                    }
+                    if (milestone.getMilestoneId() == null) {
+                        milestone.setMilestoneId(UUID.randomUUID().toString());
+                    }
+                    if (milestone.getAchievedAt() == null) {
+                        milestone.setAchievedAt(Timestamp.now());
+                    }
+                    milestonesByPlot.computeIfAbsent(entry.getPlotId(), k -> new ArrayList<>()).add(milestone);
+                    track(results, accepted, resultsByTarget, PLOT_COLLECTION + "/" + entry.getPlotId(),
+                        MILESTONE, i, entry.getPlotId(), milestone.getMilestoneId());
+                }
+                
+                List<MemoryBatchRequest.PlotPointEntry> plotPoints = orEmpty(request.getPlotPoints());
+                for (int i = 0; i < plotPoints.size(); i++) {
+                    MemoryBatchRequest.PlotPointEntry entry = plotPoints.get(i);
+                    PlotMemory.PlotPoint point = entry.getPlotPoint();
+                    if (entry.getPlotId() == null || point == null) {
+                        results.add(rejected(PLOT_POINT, i, entry.getPlotId(), "plotId and plotPoint are required"));
+                        continue;
+                    }
+                    if (point.getPointId() == null) {
+                        point.setPointId(UUID.randomUUID().toString());
+                    }
+                    pointsByPlot.computeIfAbsent(entry.getPlotId(), k -> new ArrayList<>()).add(point);
+                    track(results, accepted, resultsByTarget, PLOT_COLLECTION + "/" + entry.getPlotId(),
+                        PLOT_POINT, i, entry.getPlotId(), point.getPointId());
+                }
+                
+                List<MemoryBatchRequest.WorldFactEntry> worldFacts = orEmpty(request.getWorldFacts());
+                for (int i = 0; i < worldFacts.size(); i++) {
+                    MemoryBatchRequest.WorldFactEntry entry = worldFacts.get(i);
+                    WorldMemory.WorldFact fact = entry.getFact();
+                    if (entry.getCategory() == null || fact == null || fact.getFact() == null) {
+                        results.add(rejected(WORLD_FACT, i, entry.getCategory(), "category and fact are required"));
+                        continue;
+                    }
+                    if (fact.getFactId() == null) {
+                        fact.setFactId(UUID.randomUUID().toString());
+                    }
+                    if (fact.getCreatedAt() == null) {
+                        fact.setCreatedAt(Timestamp.now());
+                    }
+                    factsByCategory.computeIfAbsent(entry.getCategory(), k -> new ArrayList<>()).add(fact);
+                    track(results, accepted, resultsByTarget, WORLD_COLLECTION + "/" + entry.getCategory(),
+                        WORLD_FACT, i, entry.getCategory(), fact.getFactId());
+                }
+                
+                // Character and plot documents must already exist; check them all in one read
+                Set<String> missingTargets = findMissing(project, observationsByCharacter.keySet(),
+                    milestonesByPlot.keySet(), pointsByPlot.keySet());
+                for (String target : missingTargets) {
+                    for (MemoryBatchResult.ItemResult result : resultsByTarget.get(target)) {
+                        result.setStatus(MemoryBatchResult.REJECTED);
+                        result.setError("Target not found: " + result.getTargetId());
+                        accepted.remove(result);
+                    }
+                }
+                
+                WriteBatch batch = firestore.batch();
+                int writes = 0;
+                
+                for (Map.Entry<String, List<CharacterMemory.CharacterObservation>> entry : observationsByCharacter.entrySet()) {
+                    if (missingTargets.contains(CHARACTER_COLLECTION + "/" + entry.getKey())) {
+                        continue;
+                    }
+                    Set<String> sceneIds = new HashSet<>();
+                    entry.getValue().forEach(obs -> {
+                        if (obs.getSceneId() != null) {
+                            sceneIds.add(obs.getSceneId());
+                        }
+                    });
+                    
+                    Map<String, Object> updates = new HashMap<>();
+                    updates.put("observations", FieldValue.arrayUnion(entry.getValue().toArray()));
+                    updates.put("updatedAt", FieldValue.serverTimestamp());
+                    if (!sceneIds.isEmpty()) {
+                        updates.put("recentSceneIds", FieldValue.arrayUnion(sceneIds.toArray()));
+                    }
+                    batch.update(project.collection(CHARACTER_COLLECTION).document(entry.getKey()), updates);
+                    writes++;
+                }
+                
+                Set<String> plotIds = new HashSet<>(milestonesByPlot.keySet());
+                plotIds.addAll(pointsByPlot.keySet());
+                for (String plotId : plotIds) {
+                    if (missingTargets.contains(PLOT_COLLECTION + "/" + plotId)) {
+                        continue;
+                    }
+                    Map<String, Object> updates = new HashMap<>();
+                    if (milestonesByPlot.containsKey(plotId)) {
+                        updates.put("milestones", FieldValue.arrayUnion(milestonesByPlot.get(plotId).toArray()));
+                    }
+                    if (pointsByPlot.containsKey(plotId)) {
+                        updates.put("plotPoints", FieldValue.arrayUnion(pointsByPlot.get(plotId).toArray()));
+                    }
+                    updates.put("updatedAt", FieldValue.serverTimestamp());
+                    batch.update(project.collection(PLOT_COLLECTION).document(plotId), updates);
+                    writes++;
+                }
+                
+                List<String> worldIds = new ArrayList<>();
+                if (!factsByCategory.isEmpty()) {
+                    Map<String, WorldMemory> memoryByCategory = new HashMap<>();
+                    for (WorldMemory memory : worldService.getProjectWorldMemory(projectId).join()) {
+                        memoryByCategory.putIfAbsent(memory.getCategory(), memory);
+                    }
+                    for (Map.Entry<String, List<WorldMemory.WorldFact>> entry : factsByCategory.entrySet()) {
+                        worldIds.add(stageWorldFacts(batch, project, projectId, entry.getKey(), entry.getValue(),
+                            memoryByCategory.get(entry.getKey())));
+                        writes++;
+                    }
+                }
+                
+                if (writes > MAX_BATCH_WRITES) {
+                    throw new IllegalArgumentException("Batch touches " + writes
+                        + " documents, more than the " + MAX_BATCH_WRITES + " allowed");
+                }
+                
+                boolean committed = true;
+                if (writes > 0) {
+                    try {
+                        batch.commit().get();
+                    } catch (Exception e) {
+                        logger.severe("Error committing memory batch: " + e.getMessage());
+                        committed = false;
+                    }
+                }
+                for (MemoryBatchResult.ItemResult result : accepted) {
+                    result.setStatus(committed ? MemoryBatchResult.WRITTEN : MemoryBatchResult.FAILED);
+                    if (!committed) {
+                        result.setError("Batch commit failed");
+                    }
+                }
+                
+                if (committed && writes > 0) {
+                    memoryVersions.bump(projectId);
+                    afterCommit(projectId, request, observationsByCharacter, pointsByPlot, factsByCategory,
+                        missingTargets, plotIds, worldIds);
+                }
+                
+                logger.info("Ingested memory batch for project " + projectId + ": " + accepted.size()
+                    + " items in " + writes + " documents");
+                return MemoryBatchResult.builder()
+                    .committed(committed)
+                    .documentsWritten(committed ? writes : 0)
+                    .results(results)
+                    .build();
+            } catch (Exception e) {
+                logger.severe("Error ingesting memory batch: " + e.getMessage());
+                throw new RuntimeException("Failed to ingest memory batch", e);
+            }
+        }, executor);
+    }
+    
+    /**
+     * Append facts to the category's world memory, creating the document when the category is new.
+     * Returns the ID of the world memory document written.
+     */
+    private String stageWorldFacts(WriteBatch batch, DocumentReference project, String projectId, String category,
+            List<WorldMemory.WorldFact> facts, WorldMemory existing) {
+        Map<String, List<String>> idsByFactCategory = new HashMap<>();
+        for (WorldMemory.WorldFact fact : facts) {
+            idsByFactCategory.computeIfAbsent(String.valueOf(fact.getCategory()), k -> new ArrayList<>())
+                .add(fact.getFactId());
+        }
+        
+        if (existing == null) {
+            WorldMemory memory = WorldMemory.builder()
+                .worldId(UUID.randomUUID().toString())
+                .projectId(projectId)
+                .category(category)
+                .facts(new ArrayList<>(facts))
+                .factCategories(idsByFactCategory)
+                .locations(new ArrayList<>())
+                .timeline(new ArrayList<>())
+                .consistencyRules(new ArrayList<>())
+                .detectedContradictions(new ArrayList<>())
+                .build();
+            batch.set(project.collection(WORLD_COLLECTION).document(memory.getWorldId()), memory);
+            return memory.getWorldId();
+        }
+        
+        // Field paths rather than dotted strings, since fact categories are free text
+        List<Object> moreUpdates = new ArrayList<>();
+        idsByFactCategory.forEach((factCategory, ids) -> {
+            moreUpdates.add(FieldPath.of("factCategories", factCategory));
+            moreUpdates.add(FieldValue.arrayUnion(ids.toArray()));
+        });
+        moreUpdates.add(FieldPath.of("updatedAt"));
+        moreUpdates.add(FieldValue.serverTimestamp());
+        
+        DocumentReference docRef = project.collection(WORLD_COLLECTION).document(existing.getWorldId());
+        batch.update(docRef, FieldPath.of("facts"), FieldValue.arrayUnion(facts.toArray()), moreUpdates.toArray());
+        return existing.getWorldId();
+    }
+    
+    /**
+     * Bring indexes up to date and run the checks single writes would have triggered.
+     * None of this holds up the response.
+     */
+    private void afterCommit(String projectId, MemoryBatchRequest request,
+            Map<String, List<CharacterMemory.CharacterObservation>> observationsByCharacter,
+            Map<String, List<PlotMemory.PlotPoint>> pointsByPlot,
+            Map<String, List<WorldMemory.WorldFact>> factsByCategory,
+            Set<String> missingTargets, Set<String> plotIds, List<String> worldIds) {
+        List<MemoryItem> items = new ArrayList<>();
+        List<WorldMemory.WorldFact> facts = new ArrayList<>();
+        List<String> writtenCharacters = new ArrayList<>();
+        
+        observationsByCharacter.forEach((characterId, observations) -> {
+            if (!missingTargets.contains(CHARACTER_COLLECTION + "/" + characterId)) {
+                writtenCharacters.add(characterId);
+                observations.forEach(obs -> items.add(MemoryItem.builder()
+                    .itemId(obs.getObservationId())
+                    .type(MemoryItem.RECENT_EVENT)
+                    .text(obs.getObservation())
+                    .build()));
+            }
+        });
+        pointsByPlot.forEach((plotId, points) -> {
+            if (!missingTargets.contains(PLOT_COLLECTION + "/" + plotId)) {
+                points.stream()
+                    .filter(point -> point.getDescription() != null)
+                    .forEach(point -> items.add(MemoryItem.builder()
+                        .itemId(point.getPointId())
+                        .type(MemoryItem.PLOT_POINT)
+                        .text(point.getDescription())
+                        .importance(point.getImportance())
+                        .build()));
+            }
+        });
+        factsByCategory.values().forEach(categoryFacts -> categoryFacts.forEach(fact -> {
+            facts.add(fact);
+            items.add(MemoryItem.builder()
+                .itemId(fact.getFactId())
+                .type(MemoryItem.WORLD_FACT)
+                .text(fact.getFact())
+                .importance(fact.getImportance())
+                .build());
+        }));
+        
+        List<String> writtenPlots = new ArrayList<>();
+        plotIds.stream()
+            .filter(plotId -> !missingTargets.contains(PLOT_COLLECTION + "/" + plotId))
+            .forEach(writtenPlots::add);
+        
+        CompletableFuture.allOf(
+                plotService.refreshPlots(projectId, writtenPlots),
+                worldService.refreshWorldMemory(projectId, worldIds)
+                    .thenCompose(v -> facts.isEmpty()
+                        ? CompletableFuture.completedFuture(null)
+                        : worldService.checkConsistency(projectId, facts)),
+                items.isEmpty()
+                    ? CompletableFuture.completedFuture(null)
+                    : semanticService.indexItems(projectId, items))
+            .thenRun(() -> {
+                // Contexts built while the indexes were refreshing may have missed this batch
+                memoryVersions.bump(projectId);
+                contextService.prefetchNextScenes(projectId, request.getChapterNumber(), request.getSceneNumber(),
+                    ContextPacker.DEFAULT_TOKEN_BUDGET);
+            })
+            .exceptionally(e -> {
+                logger.warning("Post-batch indexing failed: " + e.getMessage());
+                return null;
+            });
+        
+        if (!writtenCharacters.isEmpty()) {
+            compactCharacters(projectId, writtenCharacters).exceptionally(e -> {
+                logger.warning("Reading characters for compaction failed: " + e.getMessage());
+                return null;
+            });
+        }
+    }
+    
+    /**
+     * Compact the characters this batch added observations to, as single observation writes do,
+     * so characters fed through batches do not grow without limit.
+     */
+    private CompletableFuture<Void> compactCharacters(String projectId, List<String> characterIds) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                DocumentReference project = firestore.collection("projects").document(projectId);
+                DocumentReference[] refs = characterIds.stream()
+                    .map(id -> project.collection(CHARACTER_COLLECTION).document(id))
+                    .toArray(DocumentReference[]::new);
+                for (DocumentSnapshot doc : firestore.getAll(refs).get()) {
+                    if (doc.exists()) {
+                        compactionService.compactIfNeeded(projectId, doc.toObject(CharacterMemory.class))
+                            .exceptionally(e -> {
+                                logger.warning("Background compaction failed for character " + doc.getId()
+                                    + ": " + e.getMessage());
+                                return null;
+                            });
+                    }
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to read batch characters", e);
+            }
+        }, executor);
+    }
+    
+    /**
+     * Return the character and plot documents, as "collection/id", that do not exist.
+     */
+    private Set<String> findMissing(DocumentReference project, Set<String> characterIds,
+            Set<String> milestonePlotIds, Set<String> pointPlotIds) throws Exception {
+        List<DocumentReference> refs = new ArrayList<>();
+        characterIds.forEach(id -> refs.add(project.collection(CHARACTER_COLLECTION).document(id)));
+        Set<String> plotIds = new HashSet<>(milestonePlotIds);
+        plotIds.addAll(pointPlotIds);
+        plotIds.forEach(id -> refs.add(project.collection(PLOT_COLLECTION).document(id)));
+        
+        Set<String> missing = new HashSet<>();
+        if (refs.isEmpty()) {
+            return missing;
+        }
+        for (DocumentSnapshot doc : firestore.getAll(refs.toArray(new DocumentReference[0])).get()) {
+            if (!doc.exists()) {
+                missing.add(doc.getReference().getParent().getId() + "/" + doc.getId());
+            }
+        }
+        return missing;
+    }
+    
+    private static void track(List<MemoryBatchResult.ItemResult> results, List<MemoryBatchResult.ItemResult> accepted,
+            Map<String, List<MemoryBatchResult.ItemResult>> resultsByTarget, String target,
+            String type, int index, String targetId, String itemId) {
+        MemoryBatchResult.ItemResult result = MemoryBatchResult.ItemResult.builder()
+            .type(type)
+            .index(index)
+            .targetId(targetId)
+            .itemId(itemId)
+            .build();
+        results.add(result);
+        accepted.add(result);
+        resultsByTarget.computeIfAbsent(target, k -> new ArrayList<>()).add(result);
+    }
+    
+    private static MemoryBatchResult.ItemResult rejected(String type, int index, String targetId, String error) {
+        return MemoryBatchResult.ItemResult.builder()
+            .type(type)
+            .index(index)
+            .targetId(targetId)
+            .status(MemoryBatchResult.REJECTED)
+            .error(error)
+            .build();
+    }
+    
+    private static <T> List<T> orEmpty(List<T> list) {
+        return list != null ? list : Collections.emptyList();
+    }
+}
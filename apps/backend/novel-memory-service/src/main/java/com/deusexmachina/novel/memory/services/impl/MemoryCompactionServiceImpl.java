@@ -0,0 +1,285 @@
+package com.deusexmachina.novel.memory.services.impl;
+
+import com.deusexmachina.novel.memory.NovelMemoryModule;
+import com.deusexmachina.novel.memory.cache.MemoryVersions;
+import com.deusexmachina.novel.memory.compaction.CompactionPolicy;
+import com.deusexmachina.novel.memory.compaction.MemorySummarizer;
+import com.deusexmachina.novel.memory.models.CharacterMemory;
+import com.deusexmachina.novel.memory.models.CompactionResult;
+import com.deusexmachina.novel.memory.models.MemoryItem;
+import com.deusexmachina.novel.memory.services.MemoryCompactionService;
+import com.deusexmachina.novel.memory.services.SemanticMemoryService;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of MemoryCompactionService using Firestore.
+ * Each run rewrites the character document in a transaction, so observations added
+ * concurrently are either compacted or kept, never lost. Raw entries go to an archive
+ * subcollection that normal reads never touch.
+ */
+@Singleton
+public class MemoryCompactionServiceImpl implements MemoryCompactionService {
+    private static final Logger logger = Logger.getLogger(MemoryCompactionServiceImpl.class.getName());
+    private static final String COLLECTION_NAME = "characterMemory";
+    static final String ARCHIVE_COLLECTION = "memoryArchive";
+    private static final int MAX_CHAPTERS_PER_RUN = 400; // One archive write per chapter, under the 500-write limit
+    
+    private static final Comparator<Long> CHAPTER_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+    
+    private final Firestore firestore;
+    private final MemorySummarizer summarizer;
+    private final CompactionPolicy policy;
+    private final MemoryVersions memoryVersions;
+    private final SemanticMemoryService semanticService;
+    private final Set<String> running = ConcurrentHashMap.newKeySet(); // projectId/characterId
+    private final Executor executor;
+    
+    @Inject
+    public MemoryCompactionServiceImpl(Firestore firestore, MemorySummarizer summarizer,
+                                     CompactionPolicy policy, MemoryVersions memoryVersions,
+                                     SemanticMemoryService semanticService,
+                                     @Named(NovelMemoryModule.MEMORY_EXECUTOR) Executor executor) {
+        this.firestore = firestore;
+        this.summarizer = summarizer;
+        this.policy = policy;
+        this.memoryVersions = memoryVersions;
+        this.semanticService = semanticService;
+        this.executor = executor;
+    }
+    
+    @Override
+    public CompletableFuture<CompactionResult> compactCharacter(String projectId, String characterId) {
+        return CompletableFuture.supplyAsync(() -> {
+            String key = projectId + "/" + characterId;
+            if (!running.add(key)) {
+                // Another run for this character is in flight and will cover these entries
+                return CompactionResult.builder().characterId(characterId).build();
+            }
+            try {
+                DocumentReference docRef = firestore
+                    .collection("projects").document(projectId)
+                    .collection(COLLECTION_NAME).document(characterId);
+                
+                List<String> archivedIds = new ArrayList<>();
+                CompactionResult result = firestore.runTransaction(
+                    transaction -> compact(transaction, docRef, characterId, archivedIds)).get();
+                
+                if (result.getSummariesWritten() > 0) {
+                    memoryVersions.bump(projectId);
+                    // Archived observations are only reachable through their chapter summary now
+                    semanticService.removeItems(projectId, MemoryItem.RECENT_EVENT, archivedIds).exceptionally(e -> {
+                        logger.warning("Background embedding removal failed: " + e.getMessage());
+                        return null;
+                    });
+                    logger.info("Compacted " + result.getObservationsArchived() + " observations and "
+                        + result.getReflectionsArchived() + " reflections for character: " + characterId);
+                }
+                return result;
+            } catch (Exception e) {
+                logger.severe("Error compacting character memory: " + e.getMessage());
+                throw new RuntimeException("Failed to compact character memory", e);
+            } finally {
+                running.remove(key);
+            }
+        }, executor);
+    }
+    
+    @Override
+    public CompletableFuture<List<CompactionResult>> compactProject(String projectId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                QuerySnapshot snapshot = firestore
+                    .collection("projects").document(projectId)
+                    .collection(COLLECTION_NAME)
+                    .get().get();
+                
+                List<CompactionResult> results = new ArrayList<>();
+                for (QueryDocumentSnapshot doc : snapshot.getDocuments()) {
+                    CharacterMemory memory = doc.toObject(CharacterMemory.class);
+                    if (policy.needsCompaction(sizeOf(memory.getObservations()), sizeOf(memory.getReflections()))) {
+                        results.add(compactCharacter(projectId, doc.getId()).join());
+                    }
+                }
+                
+                logger.info("Compacted " + results.size() + " characters for project: " + projectId);
+                return results;
+            } catch (Exception e) {
+                logger.severe("Error compacting project memory: " + e.getMessage());
+                throw new RuntimeException("Failed to compact project memory", e);
+            }
+        }, executor);
+    }
+    
+    @Override
+    public CompletableFuture<CompactionResult> compactIfNeeded(String projectId, CharacterMemory memory) {
+        if (memory == null || sizeOf(memory.getObservations()) <= policy.getTriggerObservations()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return compactCharacter(projectId, memory.getCharacterId());
+    }
+    
+    private CompactionResult compact(Transaction transaction, DocumentReference docRef, String characterId,
+            List<String> archivedIds) throws Exception {
+        archivedIds.clear(); // The transaction may run more than once
+        DocumentSnapshot doc = transaction.get(docRef).get();
+        if (!doc.exists()) {
+            return CompactionResult.builder().characterId(characterId).build();
+        }
+        CharacterMemory memory = doc.toObject(CharacterMemory.class);
+        
+        List<CharacterMemory.CharacterObservation> observations = new ArrayList<>(listOrEmpty(memory.getObservations()));
+        observations.sort(Comparator
+            .comparing(CharacterMemory.CharacterObservation::getChapterNumber, CHAPTER_ORDER)
+            .thenComparing(CharacterMemory.CharacterObservation::getSceneNumber, CHAPTER_ORDER)
+            .thenComparing(CharacterMemory.CharacterObservation::getTimestamp,
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+        List<CharacterMemory.CharacterReflection> reflections = new ArrayList<>(listOrEmpty(memory.getReflections()));
+        reflections.sort(Comparator
+            .comparing(CharacterMemory.CharacterReflection::getChapterNumber, CHAPTER_ORDER)
+            .thenComparing(CharacterMemory.CharacterReflection::getTimestamp,
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+        
+        int oldObservations = Math.max(0, observations.size() - policy.getKeepRecentObservations());
+        int oldReflections = Math.max(0, reflections.size() - policy.getKeepRecentReflections());
+        if (oldObservations == 0 && oldReflections == 0) {
+            return CompactionResult.builder()
+                .characterId(characterId)
+                .observationsKept(observations.size())
+                .reflectionsKept(reflections.size())
+                .build();
+        }
+        
+        // Group the old entries by chapter, oldest chapters first
+        NavigableMap<Long, ChapterEntries> chapters = new TreeMap<>(CHAPTER_ORDER);
+        for (CharacterMemory.CharacterObservation observation : observations.subList(0, oldObservations)) {
+            chapters.computeIfAbsent(observation.getChapterNumber(), k -> new ChapterEntries())
+                .observations.add(observation);
+        }
+        for (CharacterMemory.CharacterReflection reflection : reflections.subList(0, oldReflections)) {
+            chapters.computeIfAbsent(reflection.getChapterNumber(), k -> new ChapterEntries())
+                .reflections.add(reflection);
+        }
+        
+        NavigableMap<Long, CharacterMemory.MemorySummary> summaries = new TreeMap<>(CHAPTER_ORDER);
+        for (CharacterMemory.MemorySummary summary : listOrEmpty(memory.getMemorySummaries())) {
+            summaries.put(summary.getChapterNumber(), summary);
+        }
+        
+        List<CharacterMemory.CharacterObservation> keptObservations = new ArrayList<>();
+        List<CharacterMemory.CharacterReflection> keptReflections = new ArrayList<>();
+        int archivedObservations = 0;
+        int archivedReflections = 0;
+        int summariesWritten = 0;
+        
+        for (Map.Entry<Long, ChapterEntries> chapter : chapters.entrySet()) {
+            ChapterEntries entries = chapter.getValue();
+            if (summariesWritten == MAX_CHAPTERS_PER_RUN) {
+                // Left for the next run
+                keptObservations.addAll(entries.observations);
+                keptReflections.addAll(entries.reflections);
+                continue;
+            }
+            
+            // Fold into the chapter's existing summary so repeated runs do not lose earlier material
+            CharacterMemory.MemorySummary previous = summaries.get(chapter.getKey());
+            List<String> texts = new ArrayList<>();
+            entries.observations.forEach(observation -> texts.add(observation.getObservation()));
+            entries.reflections.forEach(reflection -> texts.add(reflection.getReflection()));
+            
+            summaries.put(chapter.getKey(), CharacterMemory.MemorySummary.builder()
+                .chapterNumber(chapter.getKey())
+                .summary(summarizer.summarize(memory.getName(), chapter.getKey(),
+                    previous != null ? previous.getSummary() : null, texts))
+                .observationCount(countOf(previous, true) + entries.observations.size())
+                .reflectionCount(countOf(previous, false) + entries.reflections.size())
+                .summarizer(summarizer.summarizerId())
+                .compactedAt(Timestamp.now())
+                .build());
+            
+            Map<String, Object> archive = new HashMap<>();
+            archive.put("chapterNumber", chapter.getKey());
+            archive.put("observations", entries.observations);
+            archive.put("reflections", entries.reflections);
+            archive.put("summarizer", summarizer.summarizerId());
+            archive.put("archivedAt", FieldValue.serverTimestamp());
+            transaction.set(docRef.collection(ARCHIVE_COLLECTION).document(), archive);
+            
+            entries.observations.forEach(observation -> archivedIds.add(observation.getObservationId()));
+            archivedObservations += entries.observations.size();
+            archivedReflections += entries.reflections.size();
+            summariesWritten++;
+        }
+        
+        keptObservations.addAll(observations.subList(oldObservations, observations.size()));
+        keptReflections.addAll(reflections.subList(oldReflections, reflections.size()));
+        
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("observations", keptObservations);
+        updates.put("reflections", keptReflections);
+        updates.put("memorySummaries", new ArrayList<>(summaries.values()));
+        updates.put("updatedAt", FieldValue.serverTimestamp());
+        transaction.update(docRef, updates);
+        
+        return CompactionResult.builder()
+            .characterId(characterId)
+            .observationsArchived(archivedObservations)
+            .reflectionsArchived(archivedReflections)
+            .summariesWritten(summariesWritten)
+            .observationsKept(keptObservations.size())
+            .reflectionsKept(keptReflections.size())
+            .build();
+    }
+    
+    private static int countOf(CharacterMemory.MemorySummary summary, boolean observations) {
+        if (summary == null) {
+            return 0;
+        }
+        Integer count = observations ? summary.getObservationCount() : summary.getReflectionCount();
+        return count != null ? count : 0;
+    }
+    
+    /**
+     * IDs of the observations held by an archive entry.
+     */
+    static List<String> archivedObservationIds(DocumentSnapshot archive) {
+        List<String> ids = new ArrayList<>();
+        Object observations = archive.get("observations");
+        if (observations instanceof List<?> list) {
+            for (Object observation : list) {
+                if (observation instanceof Map<?, ?> fields && fields.get("observationId") instanceof String id) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+    
+    private static int sizeOf(List<?> list) {
+        return list != null ? list.size() : 0;
+    }
+    
+    private static <T> List<T> listOrEmpty(List<T> list) {
+        return list != null ? list : new ArrayList<>();
+    }
+    
+    private static final class ChapterEntries {
+        private final List<CharacterMemory.CharacterObservation> observations = new ArrayList<>();
+        private final List<CharacterMemory.CharacterReflection> reflections = new ArrayList<>();
+    }
+}
@@ -1,18 +1,28 @@
 package com.deusexmachina.novel.memory.services.impl;
 
+import com.deusexmachina.novel.memory.NovelMemoryModule;
+import com.deusexmachina.novel.memory.cache.MemoryVersions;
+import com.deusexmachina.novel.memory.cache.ProjectIndexCache;
+import com.deusexmachina.novel.memory.index.PlotChapterIndex;
+import com.deusexmachina.novel.memory.models.MemoryItem;
 import com.deusexmachina.novel.memory.models.PlotMemory;
 import com.deusexmachina.novel.memory.services.PlotMemoryService;
+import com.deusexmachina.novel.memory.services.SemanticMemoryService;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -23,12 +33,23 @@ import java.util.stream.Collectors;
 public class PlotMemoryServiceImpl implements PlotMemoryService {
     private static final Logger logger = Logger.getLogger(PlotMemoryServiceImpl.class.getName());
     private static final String COLLECTION_NAME = "plotMemory";
+    private static final long ACTIVE_CHAPTER_WINDOW = 2; // Chapters either side a plot point keeps its thread active
     
     private final Firestore firestore;
+    private final SemanticMemoryService semanticService;
+    private final MemoryVersions memoryVersions;
+    private final ProjectIndexCache<PlotChapterIndex> chapterIndexes;
+    private final Executor executor;
     
     @Inject
-    public PlotMemoryServiceImpl(Firestore firestore) {
+    public PlotMemoryServiceImpl(Firestore firestore, SemanticMemoryService semanticService,
+                               MemoryVersions memoryVersions, ProjectIndexCache.Limits indexLimits,
+                               @Named(NovelMemoryModule.MEMORY_EXECUTOR) Executor executor) {
         this.firestore = firestore;
+        this.semanticService = semanticService;
+        this.memoryVersions = memoryVersions;
+        this.chapterIndexes = new ProjectIndexCache<>(memoryVersions, indexLimits);
+        this.executor = executor;
     }
     
     @Override
@@ -46,13 +67,19 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 ApiFuture<WriteResult> future = docRef.set(memory);
                 future.get();
                 
+                PlotChapterIndex index = chapterIndexes.getIfPresent(memory.getProjectId());
+                if (index != null) {
+                    index.indexPlot(memory);
+                }
+                
+                memoryVersions.bump(memory.getProjectId());
                 logger.info("Saved plot memory: " + memory.getPlotId());
                 return memory;
             } catch (Exception e) {
                 logger.severe("Error saving plot memory: " + e.getMessage());
                 throw new RuntimeException("Failed to save plot memory", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -76,7 +103,7 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 logger.severe("Error getting project plots: " + e.getMessage());
                 throw new RuntimeException("Failed to get project plots", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -102,7 +129,7 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 logger.severe("Error getting plot memory: " + e.getMessage());
                 throw new RuntimeException("Failed to get plot memory", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -130,7 +157,7 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 logger.severe("Error getting main plot: " + e.getMessage());
                 throw new RuntimeException("Failed to get main plot", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -153,14 +180,28 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 ApiFuture<WriteResult> future = docRef.update(updates);
                 future.get();
                 
+                memoryVersions.bump(projectId);
                 logger.info("Added plot point to plot: " + plotId);
                 
-                return getPlotMemory(projectId, plotId).join();
+                if (plotPoint.getDescription() != null) {
+                    MemoryItem item = MemoryItem.builder()
+                        .itemId(plotPoint.getPointId())
+                        .type(MemoryItem.PLOT_POINT)
+                        .text(plotPoint.getDescription())
+                        .importance(plotPoint.getImportance())
+                        .build();
+                    semanticService.indexItems(projectId, Collections.singletonList(item)).exceptionally(e -> {
+                        logger.warning("Background embedding failed: " + e.getMessage());
+                        return null;
+                    });
+                }
+                
+                return reloadPlot(projectId, plotId);
             } catch (Exception e) {
                 logger.severe("Error adding plot point: " + e.getMessage());
                 throw new RuntimeException("Failed to add plot point", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -186,14 +227,15 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 ApiFuture<WriteResult> future = docRef.update(updates);
                 future.get();
                 
+                memoryVersions.bump(projectId);
                 logger.info("Added milestone to plot: " + plotId);
                 
-                return getPlotMemory(projectId, plotId).join();
+                return reloadPlot(projectId, plotId);
             } catch (Exception e) {
                 logger.severe("Error adding milestone: " + e.getMessage());
                 throw new RuntimeException("Failed to add milestone", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -213,32 +255,23 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 ApiFuture<WriteResult> future = docRef.update(updates);
                 future.get();
                 
+                memoryVersions.bump(projectId);
                 logger.info("Updated tension level for plot: " + plotId);
                 
-                return getPlotMemory(projectId, plotId).join();
+                return reloadPlot(projectId, plotId);
             } catch (Exception e) {
                 logger.severe("Error updating tension: " + e.getMessage());
                 throw new RuntimeException("Failed to update tension", e);
             }
-        });
+        }, executor);
     }
     
     @Override
     public CompletableFuture<List<PlotMemory>> getActiveThreads(String projectId, Long chapterNumber) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                Query query = firestore
-                    .collection("projects").document(projectId)
-                    .collection(COLLECTION_NAME)
-                    .whereNotEqualTo("status", "completed");
-                
-                ApiFuture<QuerySnapshot> future = query.get();
-                QuerySnapshot snapshot = future.get();
-                
-                List<PlotMemory> activeThreads = snapshot.getDocuments().stream()
-                    .map(doc -> doc.toObject(PlotMemory.class))
-                    .filter(plot -> isActiveInChapter(plot, chapterNumber))
-                    .collect(Collectors.toList());
+                List<PlotMemory> activeThreads = getChapterIndex(projectId)
+                    .getActiveThreads(chapterNumber, ACTIVE_CHAPTER_WINDOW);
                 
                 logger.info("Found " + activeThreads.size() + " active threads for chapter: " + chapterNumber);
                 return activeThreads;
@@ -246,17 +279,7 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 logger.severe("Error getting active threads: " + e.getMessage());
                 throw new RuntimeException("Failed to get active threads", e);
             }
-        });
-    }
-    
-    private boolean isActiveInChapter(PlotMemory plot, Long chapterNumber) {
-        // Check if any plot points are near this chapter
-        if (plot.getPlotPoints() != null) {
-            return plot.getPlotPoints().stream()
-                .anyMatch(pp -> pp.getTargetChapter() != null && 
-                         Math.abs(pp.getTargetChapter() - chapterNumber) <= 2);
-        }
-        return "development".equals(plot.getStatus()) || "climax".equals(plot.getStatus());
+        }, executor);
     }
     
     @Override
@@ -274,14 +297,15 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 ApiFuture<WriteResult> future = docRef.update(updates);
                 future.get();
                 
+                memoryVersions.bump(projectId);
                 logger.info("Updated status for plot: " + plotId + " to: " + status);
                 
-                return getPlotMemory(projectId, plotId).join();
+                return reloadPlot(projectId, plotId);
             } catch (Exception e) {
                 logger.severe("Error updating thread status: " + e.getMessage());
                 throw new RuntimeException("Failed to update thread status", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -289,22 +313,8 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
             String projectId, Long currentChapter, int chaptersAhead) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                List<PlotMemory> plots = getProjectPlots(projectId).join();
-                List<PlotMemory.PlotPoint> upcomingPoints = new ArrayList<>();
-                
-                for (PlotMemory plot : plots) {
-                    if (plot.getPlotPoints() != null) {
-                        plot.getPlotPoints().stream()
-                            .filter(pp -> pp.getTargetChapter() != null &&
-                                   pp.getTargetChapter() > currentChapter &&
-                                   pp.getTargetChapter() <= currentChapter + chaptersAhead &&
-                                   !"written".equals(pp.getStatus()))
-                            .forEach(upcomingPoints::add);
-                    }
-                }
-                
-                // Sort by target chapter
-                upcomingPoints.sort((a, b) -> a.getTargetChapter().compareTo(b.getTargetChapter()));
+                List<PlotMemory.PlotPoint> upcomingPoints = getChapterIndex(projectId)
+                    .getUpcomingPlotPoints(currentChapter, chaptersAhead);
                 
                 logger.info("Found " + upcomingPoints.size() + " upcoming plot points");
                 return upcomingPoints;
@@ -312,7 +322,21 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                 logger.severe("Error getting upcoming plot points: " + e.getMessage());
                 throw new RuntimeException("Failed to get upcoming plot points", e);
             }
-        });
+        }, executor);
+    }
+    
+    @Override
+    public CompletableFuture<Void> refreshPlots(String projectId, Collection<String> plotIds) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                if (chapterIndexes.getIfPresent(projectId) != null) {
+                    plotIds.forEach(plotId -> reloadPlot(projectId, plotId));
+                }
+            } catch (Exception e) {
+                logger.severe("Error refreshing plots: " + e.getMessage());
+                throw new RuntimeException("Failed to refresh plots", e);
+            }
+        }, executor);
     }
     
     @Override
@@ -323,14 +347,60 @@ public class PlotMemoryServiceImpl implements PlotMemoryService {
                     .collection("projects").document(projectId)
                     .collection(COLLECTION_NAME).document(plotId);
                 
+                // Read what was embedded from the document before it goes
+                List<String> pointIds = new ArrayList<>();
+                PlotMemory plot = docRef.get().get().toObject(PlotMemory.class);
+                if (plot != null && plot.getPlotPoints() != null) {
+                    plot.getPlotPoints().forEach(point -> pointIds.add(point.getPointId()));
+                }
+                
                 ApiFuture<WriteResult> future = docRef.delete();
                 future.get();
                 
+                PlotChapterIndex index = chapterIndexes.getIfPresent(projectId);
+                if (index != null) {
+                    index.removePlot(plotId);
+                }
+                
+                memoryVersions.bump(projectId);
+                semanticService.removeItems(projectId, MemoryItem.PLOT_POINT, pointIds).exceptionally(e -> {
+                    logger.warning("Background embedding removal failed: " + e.getMessage());
+                    return null;
+                });
                 logger.info("Deleted plot memory: " + plotId);
             } catch (Exception e) {
                 logger.severe("Error deleting plot memory: " + e.getMessage());
                 throw new RuntimeException("Failed to delete plot memory", e);
             }
+        }, executor);
+    }
+    
+    /**
+     * Re-read a plot after an update and refresh it in the chapter index if one is loaded.
+     */
+    private PlotMemory reloadPlot(String projectId, String plotId) {
+        PlotMemory plot = getPlotMemory(projectId, plotId).join();
+        PlotChapterIndex index = chapterIndexes.getIfPresent(projectId);
+        if (index != null) {
+            if (plot != null) {
+                index.indexPlot(plot);
+            } else {
+                index.removePlot(plotId);
+            }
+        }
+        return plot;
+    }
+    
+    /**
+     * Get the chapter index for a project, building it from the stored plots on first use and
+     * whenever another instance has written since.
+     */
+    private PlotChapterIndex getChapterIndex(String projectId) {
+        return chapterIndexes.get(projectId, id -> {
+            PlotChapterIndex index = new PlotChapterIndex();
+            getProjectPlots(id).join().forEach(index::indexPlot);
+            logger.info("Built chapter index with " + index.size() + " plots for project: " + id);
+            return index;
         });
     }
 }
\ No newline at end of file
@@ -0,0 +1,367 @@
+package com.deusexmachina.novel.memory.services.impl;
+
+import com.deusexmachina.novel.memory.NovelMemoryModule;
+import com.deusexmachina.novel.memory.cache.ProjectIndexCache;
+import com.deusexmachina.novel.memory.models.MemoryItem;
+import com.deusexmachina.novel.memory.retrieval.EmbeddingProvider;
+import com.deusexmachina.novel.memory.retrieval.HnswIndex;
+import com.deusexmachina.novel.memory.retrieval.VectorMath;
+import com.deusexmachina.novel.memory.services.SemanticMemoryService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.cloud.firestore.*;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of SemanticMemoryService backed by an in-process HNSW index per project.
+ * Embeddings are persisted to Firestore so an instance rebuilds the graph without re-embedding.
+ *
+ * A project's graph is loaded and built on the executor the first time it is needed and only
+ * published once complete; searches against a project that is still warming return nothing, so
+ * context builds fall back to keyword candidates instead of waiting. Loaded projects share the
+ * bounds of the other per-project indexes. Once replaced and removed vectors make up a large
+ * share of a graph, it is rebuilt from the live vectors in the background and swapped in.
+ */
+@Singleton
+public class SemanticMemoryServiceImpl implements SemanticMemoryService {
+    private static final Logger logger = Logger.getLogger(SemanticMemoryServiceImpl.class.getName());
+    private static final String COLLECTION_NAME = "memoryEmbeddings";
+    private static final int MAX_BATCH_WRITES = 500;
+    private static final int COMPACTION_MIN_TOMBSTONES = 256;
+    private static final double COMPACTION_TOMBSTONE_RATIO = 0.25; // Of live vectors
+    
+    private final Firestore firestore;
+    private final EmbeddingProvider embeddingProvider;
+    private final Cache<String, ProjectVectors> projects; // projectId -> vectors
+    private final Map<String, CompletableFuture<ProjectVectors>> loading = new ConcurrentHashMap<>();
+    private final Executor executor;
+    
+    @Inject
+    public SemanticMemoryServiceImpl(Firestore firestore, EmbeddingProvider embeddingProvider,
+                                     ProjectIndexCache.Limits indexLimits,
+                                     @Named(NovelMemoryModule.MEMORY_EXECUTOR) Executor executor) {
+        this.firestore = firestore;
+        this.embeddingProvider = embeddingProvider;
+        this.projects = CacheBuilder.newBuilder()
+            .maximumSize(indexLimits.getMaxProjects())
+            .expireAfterAccess(indexLimits.getExpireAfterAccessMillis(), TimeUnit.MILLISECONDS)
+            .build();
+        this.executor = executor;
+    }
+    
+    @Override
+    public CompletableFuture<Integer> indexItems(String projectId, List<MemoryItem> items) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                ProjectVectors project = warm(projectId).join();
+                List<MemoryItem> changed = changedItems(project, items);
+                if (changed.isEmpty()) {
+                    return 0;
+                }
+                
+                CollectionReference collection = embeddingsCollection(projectId);
+                WriteBatch batch = firestore.batch();
+                int pending = 0;
+                for (MemoryItem item : changed) {
+                    float[] vector = embeddingProvider.embed(item.getText());
+                    MemoryItem stored = MemoryItem.builder()
+                        .itemId(item.getItemId())
+                        .type(item.getType())
+                        .text(item.getText())
+                        .importance(item.getImportance())
+                        .build();
+                    synchronized (project) {
+                        project.items.put(stored.key(), stored);
+                        project.index.add(stored.key(), vector);
+                        project.touch(stored.key());
+                    }
+                    
+                    batch.set(collection.document(stored.key()), toDocument(stored, vector));
+                    if (++pending == MAX_BATCH_WRITES) {
+                        batch.commit().get();
+                        batch = firestore.batch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    batch.commit().get();
+                }
+                compactIfNeeded(projectId, project);
+                
+                logger.info("Embedded " + changed.size() + " memory items for project: " + projectId);
+                return changed.size();
+            } catch (Exception e) {
+                logger.severe("Error indexing memory items: " + e.getMessage());
+                throw new RuntimeException("Failed to index memory items", e);
+            }
+        }, executor);
+    }
+    
+    @Override
+    public List<MemoryItem> changedItems(String projectId, List<MemoryItem> items) {
+        ProjectVectors project = projects.getIfPresent(projectId);
+        if (project == null) {
+            // Whatever is missing gets indexed by a later call once the project is warm
+            warm(projectId);
+            return Collections.emptyList();
+        }
+        return changedItems(project, items);
+    }
+    
+    @Override
+    public CompletableFuture<List<MemoryItem>> search(String projectId, String query, int k) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                List<MemoryItem> results = new ArrayList<>();
+                if (query == null || query.isBlank()) {
+                    return results;
+                }
+                ProjectVectors project = projects.getIfPresent(projectId);
+                if (project == null) {
+                    warm(projectId);
+                    return results;
+                }
+                
+                float[] vector = embeddingProvider.embed(query);
+                for (HnswIndex.SearchResult hit : project.index.search(vector, k)) {
+                    MemoryItem item = project.items.get(hit.getKey());
+                    if (item != null) {
+                        results.add(item.toBuilder().similarity((double) hit.getSimilarity()).build());
+                    }
+                }
+                return results;
+            } catch (Exception e) {
+                logger.severe("Error searching memory items: " + e.getMessage());
+                throw new RuntimeException("Failed to search memory items", e);
+            }
+        }, executor);
+    }
+    
+    @Override
+    public CompletableFuture<Void> removeItem(String projectId, String type, String itemId) {
+        return removeItems(projectId, type, Collections.singletonList(itemId));
+    }
+    
+    @Override
+    public CompletableFuture<Void> removeItems(String projectId, String type, Collection<String> itemIds) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                if (itemIds.isEmpty()) {
+                    return;
+                }
+                ProjectVectors project = loadedOrLoading(projectId);
+                CollectionReference collection = embeddingsCollection(projectId);
+                WriteBatch batch = firestore.batch();
+                int pending = 0;
+                for (String itemId : itemIds) {
+                    String key = MemoryItem.builder().type(type).itemId(itemId).build().key();
+                    if (project != null) {
+                        synchronized (project) {
+                            project.items.remove(key);
+                            project.index.remove(key);
+                            project.touch(key);
+                        }
+                    }
+                    
+                    batch.delete(collection.document(key));
+                    if (++pending == MAX_BATCH_WRITES) {
+                        batch.commit().get();
+                        batch = firestore.batch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    batch.commit().get();
+                }
+                if (project != null) {
+                    compactIfNeeded(projectId, project);
+                }
+            } catch (Exception e) {
+                logger.severe("Error removing memory items: " + e.getMessage());
+                throw new RuntimeException("Failed to remove memory items", e);
+            }
+        }, executor);
+    }
+    
+    private static List<MemoryItem> changedItems(ProjectVectors project, List<MemoryItem> items) {
+        List<MemoryItem> changed = new ArrayList<>();
+        for (MemoryItem item : items) {
+            if (item.getItemId() == null || item.getText() == null) {
+                continue;
+            }
+            MemoryItem existing = project.items.get(item.key());
+            if (existing == null || !existing.getText().equals(item.getText())) {
+                changed.add(item);
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Get the vectors for a project, loading them on the executor when they are not held yet.
+     * Concurrent callers share one load.
+     */
+    private CompletableFuture<ProjectVectors> warm(String projectId) {
+        ProjectVectors project = projects.getIfPresent(projectId);
+        if (project != null) {
+            return CompletableFuture.completedFuture(project);
+        }
+        
+        CompletableFuture<ProjectVectors> load = new CompletableFuture<>();
+        CompletableFuture<ProjectVectors> running = loading.putIfAbsent(projectId, load);
+        if (running != null) {
+            return running;
+        }
+        executor.execute(() -> {
+            try {
+                // Another load may have been published between the lookup and claiming this one
+                ProjectVectors loaded = projects.getIfPresent(projectId);
+                if (loaded == null) {
+                    loaded = load(projectId);
+                    projects.put(projectId, loaded);
+                }
+                load.complete(loaded);
+            } catch (Exception e) {
+                logger.warning("Failed to load embeddings for project " + projectId + ": " + e.getMessage());
+                load.completeExceptionally(e);
+            } finally {
+                loading.remove(projectId, load);
+            }
+        });
+        return load;
+    }
+    
+    /**
+     * The vectors of a project that is loaded or loading, or null when neither. A removal waits
+     * for a load in flight, since the load may have read the items before they were deleted.
+     */
+    private ProjectVectors loadedOrLoading(String projectId) {
+        ProjectVectors project = projects.getIfPresent(projectId);
+        if (project != null) {
+            return project;
+        }
+        CompletableFuture<ProjectVectors> running = loading.get(projectId);
+        return running != null ? running.handle((loaded, e) -> loaded).join() : null;
+    }
+    
+    /**
+     * Load persisted embeddings and build the graph from them.
+     * Embeddings produced by a different model are ignored and re-embedded on the next index call.
+     */
+    private ProjectVectors load(String projectId) throws Exception {
+        long start = System.currentTimeMillis();
+        ProjectVectors loaded = new ProjectVectors();
+        QuerySnapshot snapshot = embeddingsCollection(projectId)
+            .whereEqualTo("model", embeddingProvider.modelId())
+            .get().get();
+        
+        for (QueryDocumentSnapshot doc : snapshot.getDocuments()) {
+            Blob vector = doc.getBlob("vector");
+            if (vector == null) {
+                continue;
+            }
+            Long importance = doc.getLong("importance");
+            MemoryItem item = MemoryItem.builder()
+                .itemId(doc.getString("itemId"))
+                .type(doc.getString("type"))
+                .text(doc.getString("text"))
+                .importance(importance != null ? importance.intValue() : null)
+                .build();
+            loaded.items.put(item.key(), item);
+            loaded.index.add(item.key(), VectorMath.fromBytes(vector.toBytes()));
+        }
+        
+        logger.info("Loaded vector graph with " + loaded.items.size() + " items for project: " + projectId
+            + " in " + (System.currentTimeMillis() - start) + "ms");
+        return loaded;
+    }
+    
+    /**
+     * Rebuild a project's graph without its tombstones once they pass the threshold. Searches and
+     * writes keep using the old graph meanwhile; writes made during the rebuild are replayed onto
+     * the new graph before it is swapped in.
+     */
+    private void compactIfNeeded(String projectId, ProjectVectors project) {
+        Map<String, float[]> live;
+        synchronized (project) {
+            int tombstones = project.index.tombstones();
+            if (project.touched != null || tombstones < COMPACTION_MIN_TOMBSTONES
+                    || tombstones < project.index.size() * COMPACTION_TOMBSTONE_RATIO) {
+                return;
+            }
+            project.touched = new HashSet<>();
+            live = project.index.liveVectors();
+        }
+        
+        CompletableFuture.runAsync(() -> {
+            long start = System.currentTimeMillis();
+            HnswIndex rebuilt = new HnswIndex();
+            live.forEach(rebuilt::add);
+            synchronized (project) {
+                for (String key : project.touched) {
+                    float[] vector = project.index.vector(key);
+                    if (vector != null) {
+                        rebuilt.add(key, vector);
+                    } else {
+                        rebuilt.remove(key);
+                    }
+                }
+                project.index = rebuilt;
+                project.touched = null;
+            }
+            logger.info("Compacted vector graph to " + rebuilt.size() + " items for project: " + projectId
+                + " in " + (System.currentTimeMillis() - start) + "ms");
+        }, executor).exceptionally(e -> {
+            synchronized (project) {
+                project.touched = null;
+            }
+            logger.warning("Vector graph compaction failed: " + e.getMessage());
+            return null;
+        });
+    }
+    
+    private CollectionReference embeddingsCollection(String projectId) {
+        return firestore
+            .collection("projects").document(projectId)
+            .collection(COLLECTION_NAME);
+    }
+    
+    private Map<String, Object> toDocument(MemoryItem item, float[] vector) {
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("itemId", item.getItemId());
+        doc.put("type", item.getType());
+        doc.put("text", item.getText());
+        doc.put("importance", item.getImportance());
+        doc.put("model", embeddingProvider.modelId());
+        doc.put("vector", Blob.fromBytes(VectorMath.toBytes(vector)));
+        doc.put("updatedAt", FieldValue.serverTimestamp());
+        return doc;
+    }
+    
+    private static final class ProjectVectors {
+        private volatile HnswIndex index = new HnswIndex(); // Writes hold the ProjectVectors lock
+        private final Map<String, MemoryItem> items = new ConcurrentHashMap<>(); // key -> item
+        private Set<String> touched; // Keys written while a compaction runs, null otherwise
+        
+        private void touch(String key) {
+            if (touched != null) {
+                touched.add(key);
+            }
+        }
+    }
+}
@@ -1,18 +1,33 @@
 package com.deusexmachina.novel.memory.services.impl;
 
+import com.deusexmachina.novel.memory.NovelMemoryModule;
+import com.deusexmachina.novel.memory.cache.MemoryVersions;
+import com.deusexmachina.novel.memory.cache.ProjectIndexCache;
+import com.deusexmachina.novel.memory.index.ConsistencyIndex;
+import com.deusexmachina.novel.memory.index.DerivedFacts;
+import com.deusexmachina.novel.memory.index.WorldFactIndex;
+import com.deusexmachina.novel.memory.models.MemoryItem;
 import com.deusexmachina.novel.memory.models.WorldMemory;
+import com.deusexmachina.novel.memory.services.SemanticMemoryService;
 import com.deusexmachina.novel.memory.services.WorldMemoryService;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -25,10 +40,22 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
     private static final String COLLECTION_NAME = "worldMemory";
     
     private final Firestore firestore;
+    private final SemanticMemoryService semanticService;
+    private final MemoryVersions memoryVersions;
+    private final ProjectIndexCache<WorldFactIndex> factIndexes;
+    private final ProjectIndexCache<ConsistencyIndex> consistencyIndexes;
+    private final Executor executor;
     
     @Inject
-    public WorldMemoryServiceImpl(Firestore firestore) {
+    public WorldMemoryServiceImpl(Firestore firestore, SemanticMemoryService semanticService,
+                                MemoryVersions memoryVersions, ProjectIndexCache.Limits indexLimits,
+                                @Named(NovelMemoryModule.MEMORY_EXECUTOR) Executor executor) {
         this.firestore = firestore;
+        this.semanticService = semanticService;
+        this.memoryVersions = memoryVersions;
+        this.factIndexes = new ProjectIndexCache<>(memoryVersions, indexLimits);
+        this.consistencyIndexes = new ProjectIndexCache<>(memoryVersions, indexLimits);
+        this.executor = executor;
     }
     
     @Override
@@ -46,13 +73,20 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                 ApiFuture<WriteResult> future = docRef.set(memory);
                 future.get();
                 
+                // Keep the fact index in step with the stored document
+                WorldFactIndex index = factIndexes.getIfPresent(memory.getProjectId());
+                if (index != null) {
+                    index.indexWorldMemory(memory);
+                }
+                
+                memoryVersions.bump(memory.getProjectId());
                 logger.info("Saved world memory: " + memory.getWorldId());
                 return memory;
             } catch (Exception e) {
                 logger.severe("Error saving world memory: " + e.getMessage());
                 throw new RuntimeException("Failed to save world memory", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -76,7 +110,7 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                 logger.severe("Error getting project world memory: " + e.getMessage());
                 throw new RuntimeException("Failed to get project world memory", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -101,7 +135,7 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                 logger.severe("Error getting world memory by category: " + e.getMessage());
                 throw new RuntimeException("Failed to get world memory by category", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -149,12 +183,26 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                 memory.getFactCategories().computeIfAbsent(fact.getCategory(), k -> new ArrayList<>())
                     .add(fact.getFactId());
                 
-                return saveWorldMemory(memory).join();
+                WorldMemory saved = saveWorldMemory(memory).join();
+                checkInBackground(projectId, Collections.singletonList(fact));
+                
+                // Embed the fact for semantic retrieval without holding up the response
+                MemoryItem item = MemoryItem.builder()
+                    .itemId(fact.getFactId())
+                    .type(MemoryItem.WORLD_FACT)
+                    .text(fact.getFact())
+                    .importance(fact.getImportance())
+                    .build();
+                semanticService.indexItems(projectId, Collections.singletonList(item)).exceptionally(e -> {
+                    logger.warning("Background embedding failed: " + e.getMessage());
+                    return null;
+                });
+                return saved;
             } catch (Exception e) {
                 logger.severe("Error adding world fact: " + e.getMessage());
                 throw new RuntimeException("Failed to add world fact", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -195,12 +243,14 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                     memory.getLocationHierarchy().put(location.getLocationId(), location.getParentLocationId());
                 }
                 
-                return saveWorldMemory(memory).join();
+                WorldMemory saved = saveWorldMemory(memory).join();
+                checkInBackground(projectId, DerivedFacts.fromLocation(location));
+                return saved;
             } catch (Exception e) {
                 logger.severe("Error adding location: " + e.getMessage());
                 throw new RuntimeException("Failed to add location", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -225,7 +275,7 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                 logger.severe("Error getting location: " + e.getMessage());
                 throw new RuntimeException("Failed to get location", e);
             }
-        });
+        }, executor);
     }
     
     @Override
@@ -270,91 +320,182 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                 logger.severe("Error adding historical event: " + e.getMessage());
                 throw new RuntimeException("Failed to add historical event", e);
             }
-        });
+        }, executor);
     }
     
     @Override
     public CompletableFuture<List<WorldMemory.Contradiction>> validateConsistency(String projectId) {
         return CompletableFuture.supplyAsync(() -> {
             try {
+                long version = memoryVersions.current(projectId);
                 List<WorldMemory> allMemories = getProjectWorldMemory(projectId).join();
-                List<WorldMemory.Contradiction> contradictions = new ArrayList<>();
                 
-                // Collect all facts
+                // Collect all facts and the contradictions already on record
                 List<WorldMemory.WorldFact> allFacts = new ArrayList<>();
+                Set<String> knownPairs = new HashSet<>();
                 for (WorldMemory memory : allMemories) {
                     if (memory.getFacts() != null) {
                         allFacts.addAll(memory.getFacts());
                     }
+                    if (memory.getDetectedContradictions() != null) {
+                        memory.getDetectedContradictions().forEach(c ->
+                            knownPairs.add(pairKey(c.getFactId1(), c.getFactId2())));
+                    }
                 }
                 
-                // Simple contradiction detection - look for conflicting facts
-                for (int i = 0; i < allFacts.size(); i++) {
-                    for (int j = i + 1; j < allFacts.size(); j++) {
-                        WorldMemory.WorldFact fact1 = allFacts.get(i);
-                        WorldMemory.WorldFact fact2 = allFacts.get(j);
-                        
-                        // Check if facts contradict (simplified logic)
-                        if (factsContradict(fact1, fact2)) {
-                            WorldMemory.Contradiction contradiction = WorldMemory.Contradiction.builder()
-                                .contradictionId(UUID.randomUUID().toString())
-                                .factId1(fact1.getFactId())
-                                .factId2(fact2.getFactId())
-                                .description("Conflicting facts: " + fact1.getFact() + " vs " + fact2.getFact())
-                                .severity("major")
-                                .resolved(false)
-                                .detectedAt(Timestamp.now())
-                                .build();
-                            contradictions.add(contradiction);
-                        }
-                    }
+                // Once a project has been fully validated, only facts that are new or changed since
+                // are checked; an index that was only seeded by write-time checks is rebuilt
+                ConsistencyIndex index = consistencyIndexes.getIfPresent(projectId);
+                if (index == null || !index.isValidated()) {
+                    index = new ConsistencyIndex();
+                    index.markValidated();
                 }
+                consistencyIndexes.put(projectId, version, index);
+                index.retainFacts(allFacts.stream()
+                    .map(WorldMemory.WorldFact::getFactId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+                List<ConsistencyIndex.ConflictPair> conflicts = index.addFacts(allFacts);
                 
-                // Save detected contradictions
-                for (WorldMemory memory : allMemories) {
-                    if (!contradictions.isEmpty()) {
-                        if (memory.getDetectedContradictions() == null) {
-                            memory.setDetectedContradictions(new ArrayList<>());
-                        }
-                        memory.getDetectedContradictions().addAll(contradictions);
-                        saveWorldMemory(memory).join();
+                List<WorldMemory.Contradiction> contradictions = new ArrayList<>();
+                for (ConsistencyIndex.ConflictPair conflict : conflicts) {
+                    WorldMemory.WorldFact fact1 = conflict.getFirst();
+                    WorldMemory.WorldFact fact2 = conflict.getSecond();
+                    if (knownPairs.add(pairKey(fact1.getFactId(), fact2.getFactId()))) {
+                        contradictions.add(buildContradiction(fact1, fact2));
                     }
                 }
                 
-                logger.info("Detected " + contradictions.size() + " contradictions");
+                // Record them the same way incremental checks do, dropping any recorded meanwhile
+                if (!contradictions.isEmpty()) {
+                    contradictions = recordContradictions(projectId, contradictions);
+                }
+                
+                logger.info("Detected " + contradictions.size() + " new contradictions across " + 
+                          index.size() + " indexed facts");
                 return contradictions;
             } catch (Exception e) {
                 logger.severe("Error validating consistency: " + e.getMessage());
                 throw new RuntimeException("Failed to validate consistency", e);
             }
-        });
+        }, executor);
     }
     
-    private boolean factsContradict(WorldMemory.WorldFact fact1, WorldMemory.WorldFact fact2) {
-        // Simplified contradiction detection
-        // In a real implementation, this would use NLP or more sophisticated logic
-        String f1Lower = fact1.getFact().toLowerCase();
-        String f2Lower = fact2.getFact().toLowerCase();
-        
-        // Check for direct negation patterns
-        if ((f1Lower.contains("not") && !f2Lower.contains("not") && 
-             f1Lower.replace("not ", "").trim().equals(f2Lower)) ||
-            (!f1Lower.contains("not") && f2Lower.contains("not") && 
-             f2Lower.replace("not ", "").trim().equals(f1Lower))) {
-            return true;
-        }
-        
-        // Check for mutually exclusive states
-        String[] opposites = {"alive:dead", "open:closed", "hot:cold", "day:night"};
-        for (String pair : opposites) {
-            String[] parts = pair.split(":");
-            if ((f1Lower.contains(parts[0]) && f2Lower.contains(parts[1])) ||
-                (f1Lower.contains(parts[1]) && f2Lower.contains(parts[0]))) {
-                return true;
+    @Override
+    public CompletableFuture<List<WorldMemory.Contradiction>> checkConsistency(String projectId,
+            List<WorldMemory.WorldFact> facts) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Set<String> checkedIds = facts.stream()
+                    .map(WorldMemory.WorldFact::getFactId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+                ConsistencyIndex index = getConsistencyIndex(projectId, checkedIds);
+                
+                List<WorldMemory.Contradiction> contradictions = index.addFacts(facts).stream()
+                    .map(conflict -> buildContradiction(conflict.getFirst(), conflict.getSecond()))
+                    .collect(Collectors.toList());
+                if (!contradictions.isEmpty()) {
+                    contradictions = recordContradictions(projectId, contradictions);
+                }
+                
+                logger.info("Incremental check found " + contradictions.size() + 
+                          " new contradictions for project: " + projectId);
+                return contradictions;
+            } catch (Exception e) {
+                logger.severe("Error checking consistency: " + e.getMessage());
+                throw new RuntimeException("Failed to check consistency", e);
             }
+        }, executor);
+    }
+    
+    private void checkInBackground(String projectId, List<WorldMemory.WorldFact> facts) {
+        if (facts.isEmpty()) {
+            return;
         }
+        checkConsistency(projectId, facts).exceptionally(e -> {
+            logger.warning("Background consistency check failed: " + e.getMessage());
+            return null;
+        });
+    }
+    
+    /**
+     * Get the consistency index for a project, seeding it with the stored facts on first use and
+     * whenever another instance has written since.
+     * Facts about to be checked are left out of the seed so they are compared, not skipped.
+     */
+    private ConsistencyIndex getConsistencyIndex(String projectId, Set<String> excludedFactIds) {
+        return consistencyIndexes.get(projectId, id -> {
+            // A seeded index has not compared the stored facts with each other, so is not validated
+            ConsistencyIndex index = new ConsistencyIndex();
+            List<WorldMemory.WorldFact> existing = new ArrayList<>();
+            for (WorldMemory memory : getProjectWorldMemory(id).join()) {
+                if (memory.getFacts() != null) {
+                    memory.getFacts().stream()
+                        .filter(fact -> !excludedFactIds.contains(fact.getFactId()))
+                        .forEach(existing::add);
+                }
+            }
+            index.addFacts(existing);
+            return index;
+        });
+    }
+    
+    /**
+     * Record contradictions that are not already on record, returning the ones that were new.
+     * They go to the project's first world memory by document ID, so every instance picks the same one.
+     */
+    private List<WorldMemory.Contradiction> recordContradictions(String projectId,
+            List<WorldMemory.Contradiction> contradictions) throws Exception {
+        Query query = firestore
+            .collection("projects").document(projectId)
+            .collection(COLLECTION_NAME)
+            .orderBy(FieldPath.documentId());
         
-        return false;
+        return firestore.runTransaction(tx -> {
+            QuerySnapshot snapshot = tx.get(query).get();
+            if (snapshot.isEmpty()) {
+                logger.warning("No world memory to record contradictions for project: " + projectId);
+                return Collections.<WorldMemory.Contradiction>emptyList();
+            }
+            
+            Set<String> knownPairs = new HashSet<>();
+            for (QueryDocumentSnapshot doc : snapshot.getDocuments()) {
+                WorldMemory memory = doc.toObject(WorldMemory.class);
+                if (memory.getDetectedContradictions() != null) {
+                    memory.getDetectedContradictions().forEach(c ->
+                        knownPairs.add(pairKey(c.getFactId1(), c.getFactId2())));
+                }
+            }
+            List<WorldMemory.Contradiction> fresh = contradictions.stream()
+                .filter(c -> knownPairs.add(pairKey(c.getFactId1(), c.getFactId2())))
+                .collect(Collectors.toList());
+            
+            if (!fresh.isEmpty()) {
+                tx.update(snapshot.getDocuments().get(0).getReference(),
+                    "detectedContradictions", FieldValue.arrayUnion(fresh.toArray()),
+                    "updatedAt", FieldValue.serverTimestamp());
+            }
+            return fresh;
+        }).get();
+    }
+    
+    private WorldMemory.Contradiction buildContradiction(WorldMemory.WorldFact fact1, WorldMemory.WorldFact fact2) {
+        return WorldMemory.Contradiction.builder()
+            .contradictionId(UUID.randomUUID().toString())
+            .factId1(fact1.getFactId())
+            .factId2(fact2.getFactId())
+            .description("Conflicting facts: " + fact1.getFact() + " vs " + fact2.getFact())
+            .severity("major")
+            .resolved(false)
+            .detectedAt(Timestamp.now())
+            .build();
+    }
+    
+    private static String pairKey(String factId1, String factId2) {
+        return factId1 != null && factId2 != null && factId1.compareTo(factId2) > 0
+            ? factId2 + "|" + factId1
+            : factId1 + "|" + factId2;
     }
     
     @Override
@@ -387,25 +528,14 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                 logger.severe("Error adding contradiction: " + e.getMessage());
                 throw new RuntimeException("Failed to add contradiction", e);
             }
-        });
+        }, executor);
     }
     
     @Override
     public CompletableFuture<List<WorldMemory.WorldFact>> searchFacts(String projectId, String query) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                List<WorldMemory> memories = getProjectWorldMemory(projectId).join();
-                List<WorldMemory.WorldFact> matchingFacts = new ArrayList<>();
-                String queryLower = query.toLowerCase();
-                
-                for (WorldMemory memory : memories) {
-                    if (memory.getFacts() != null) {
-                        memory.getFacts().stream()
-                            .filter(fact -> fact.getFact().toLowerCase().contains(queryLower) ||
-                                          (fact.getCategory() != null && fact.getCategory().toLowerCase().contains(queryLower)))
-                            .forEach(matchingFacts::add);
-                    }
-                }
+                List<WorldMemory.WorldFact> matchingFacts = getFactIndex(projectId).search(query);
                 
                 logger.info("Found " + matchingFacts.size() + " facts matching query: " + query);
                 return matchingFacts;
@@ -413,6 +543,19 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                 logger.severe("Error searching facts: " + e.getMessage());
                 throw new RuntimeException("Failed to search facts", e);
             }
+        }, executor);
+    }
+    
+    /**
+     * Get the fact index for a project, building it from Firestore on first use and whenever
+     * another instance has written since.
+     */
+    private WorldFactIndex getFactIndex(String projectId) {
+        return factIndexes.get(projectId, id -> {
+            WorldFactIndex index = new WorldFactIndex();
+            getProjectWorldMemory(id).join().forEach(index::indexWorldMemory);
+            logger.info("Built fact index with " + index.size() + " facts for project: " + id);
+            return index;
         });
     }
     
@@ -431,7 +574,37 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                 logger.severe("Error getting location facts: " + e.getMessage());
                 throw new RuntimeException("Failed to get location facts", e);
             }
-        });
+        }, executor);
+    }
+    
+    @Override
+    public CompletableFuture<Void> refreshWorldMemory(String projectId, Collection<String> worldIds) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                WorldFactIndex index = factIndexes.getIfPresent(projectId);
+                if (index == null || worldIds.isEmpty()) {
+                    return; // Built from storage on first use, so nothing to catch up on
+                }
+                
+                CollectionReference collection = firestore
+                    .collection("projects").document(projectId)
+                    .collection(COLLECTION_NAME);
+                DocumentReference[] refs = worldIds.stream()
+                    .map(collection::document)
+                    .toArray(DocumentReference[]::new);
+                
+                for (DocumentSnapshot doc : firestore.getAll(refs).get()) {
+                    if (doc.exists()) {
+                        index.indexWorldMemory(doc.toObject(WorldMemory.class));
+                    } else {
+                        index.removeWorldMemory(doc.getId());
+                    }
+                }
+            } catch (Exception e) {
+                logger.severe("Error refreshing world memory: " + e.getMessage());
+                throw new RuntimeException("Failed to refresh world memory", e);
+            }
+        }, executor);
     }
     
     @Override
@@ -442,14 +615,31 @@ public class WorldMemoryServiceImpl implements WorldMemoryService {
                     .collection("projects").document(projectId)
                     .collection(COLLECTION_NAME).document(worldId);
                 
+                // Read what was embedded from the document before it goes
+                List<String> factIds = new ArrayList<>();
+                WorldMemory memory = docRef.get().get().toObject(WorldMemory.class);
+                if (memory != null && memory.getFacts() != null) {
+                    memory.getFacts().forEach(fact -> factIds.add(fact.getFactId()));
+                }
+                
                 ApiFuture<WriteResult> future = docRef.delete();
                 future.get();
                 
+                WorldFactIndex index = factIndexes.getIfPresent(projectId);
+                if (index != null) {
+                    index.removeWorldMemory(worldId);
+                }
+                
+                memoryVersions.bump(projectId);
+                semanticService.removeItems(projectId, MemoryItem.WORLD_FACT, factIds).exceptionally(e -> {
+                    logger.warning("Background embedding removal failed: " + e.getMessage());
+                    return null;
+                });
                 logger.info("Deleted world memory: " + worldId);
             } catch (Exception e) {
                 logger.severe("Error deleting world memory: " + e.getMessage());
                 throw new RuntimeException("Failed to delete world memory", e);
             }
-        });
+        }, executor);
     }
 }
\ No newline at end of file